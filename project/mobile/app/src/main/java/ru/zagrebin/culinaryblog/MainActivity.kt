@@ -45,6 +45,11 @@ class MainActivity : AppCompatActivity() {
         }
         binding.bottomNavigation.selectedItemId = DEFAULT_TAB_ID
 
+        // Feed is paged by cursor: fetch the next page when the scroll hits the bottom
+        binding.postsScroll.setOnScrollChangeListener { _, _, _, _, _ ->
+            if (!binding.postsScroll.canScrollVertically(1)) postViewModel.loadMore()
+        }
+
         lifecycleScope.launch {
             repeatOnLifecycle(Lifecycle.State.STARTED) {
                 postViewModel.uiState.collect { state ->
@@ -103,6 +108,13 @@ class MainActivity : AppCompatActivity() {
         binding.emptyText.isVisible = !state.isLoading && state.error == null && filteredPosts.isEmpty()
 
         renderPosts(filteredPosts)
+
+        // Tabs filter the feed client-side, so a page may not fill the screen
+        if (state.nextCursor != null && !state.loadMoreFailed) {
+            binding.postsScroll.post {
+                if (!binding.postsScroll.canScrollVertically(1)) postViewModel.loadMore()
+            }
+        }
     }
 
     private fun filterPosts(posts: List<PostCard>): List<PostCard> = when (currentTab) {
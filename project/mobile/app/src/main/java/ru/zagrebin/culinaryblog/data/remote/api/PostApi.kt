@@ -20,7 +20,10 @@ import ru.zagrebin.culinaryblog.model.PostCreateRequest
 
 interface PostApi {
     @GET("posts")
-    suspend fun getPublishedPosts(): Response<List<PostCardDto>>
+    suspend fun getPublishedPosts(
+        @Query("cursor") cursor: String? = null,
+        @Query("page_size") pageSize: Int = 20
+    ): Response<PaginatedResponseDto<PostCardDto>>
 
     @GET("posts/{id}")
     suspend fun getPost(
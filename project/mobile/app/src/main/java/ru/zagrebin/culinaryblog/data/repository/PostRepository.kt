@@ -4,11 +4,12 @@ import ru.zagrebin.culinaryblog.model.IngredientItem
 import ru.zagrebin.culinaryblog.model.PostCard
 import ru.zagrebin.culinaryblog.model.PostCreateRequest
 import ru.zagrebin.culinaryblog.model.PostFull
+import ru.zagrebin.culinaryblog.model.PostPage
 import ru.zagrebin.culinaryblog.model.TagItem
 
 
 interface PostRepository {
-    suspend fun getPublishedPosts(): Result<List<PostCard>>
+    suspend fun getPublishedPosts(cursor: String? = null): Result<PostPage>
     suspend fun getPost(id: Long): Result<PostFull>
     suspend fun getTags(search: String? = null): Result<List<TagItem>>
     suspend fun getIngredients(search: String? = null): Result<List<IngredientItem>>
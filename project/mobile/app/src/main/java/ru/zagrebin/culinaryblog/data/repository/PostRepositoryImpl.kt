@@ -1,5 +1,6 @@
 package ru.zagrebin.culinaryblog.data.repository
 
+import android.net.Uri
 import javax.inject.Inject
 import okhttp3.MediaType.Companion.toMediaTypeOrNull
 import okhttp3.MultipartBody
@@ -10,17 +11,23 @@ import ru.zagrebin.culinaryblog.model.IngredientItem
 import ru.zagrebin.culinaryblog.model.PostCard
 import ru.zagrebin.culinaryblog.model.PostCreateRequest
 import ru.zagrebin.culinaryblog.model.PostFull
+import ru.zagrebin.culinaryblog.model.PostPage
 import ru.zagrebin.culinaryblog.model.TagItem
 
 class PostRepositoryImpl @Inject constructor(
     private val api: PostApi
 ): PostRepository {
-    override suspend fun getPublishedPosts(): Result<List<PostCard>> {
+    override suspend fun getPublishedPosts(cursor: String?): Result<PostPage> {
         return try {
-            val resp = api.getPublishedPosts()
+            val resp = api.getPublishedPosts(cursor = cursor)
             if (resp.isSuccessful) {
-                val body = resp.body() ?: emptyList()
-                Result.success(body.map { it.toModel() })
+                val body = resp.body()
+                Result.success(
+                    PostPage(
+                        items = body?.results?.map { it.toModel() } ?: emptyList(),
+                        nextCursor = body?.next?.let { Uri.parse(it).getQueryParameter("cursor") }
+                    )
+                )
             } else {
                 Result.failure(RuntimeException("Server error: ${resp.code()}"))
             }
@@ -19,3 +19,8 @@ data class PostCard(
     val tags: Set<String>?,
     val viewsCount: Long?
 ): Parcelable
+
+data class PostPage(
+    val items: List<PostCard>,
+    val nextCursor: String?
+)
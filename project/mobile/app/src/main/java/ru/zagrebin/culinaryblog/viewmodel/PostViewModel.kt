@@ -13,7 +13,10 @@ import javax.inject.Inject
 data class PostsUiState(
     val isLoading: Boolean = false,
     val posts: List<PostCard> = emptyList(),
-    val error: String? = null
+    val error: String? = null,
+    val nextCursor: String? = null,
+    val isLoadingMore: Boolean = false,
+    val loadMoreFailed: Boolean = false
 )
 
 @HiltViewModel
@@ -33,10 +36,34 @@ class PostViewModel @Inject constructor(
         viewModelScope.launch {
             val res = repository.getPublishedPosts()
             if (res.isSuccess) {
-                _uiState.value = PostsUiState(isLoading = false, posts = res.getOrDefault(emptyList()))
+                val page = res.getOrThrow()
+                _uiState.value = PostsUiState(isLoading = false, posts = page.items, nextCursor = page.nextCursor)
             } else {
                 _uiState.value = PostsUiState(isLoading = false, error = res.exceptionOrNull()?.message ?: "Unknown")
             }
         }
     }
-}
\ No newline at end of file
+
+    fun loadMore() {
+        val state = _uiState.value
+        val cursor = state.nextCursor ?: return
+        if (state.isLoading || state.isLoadingMore) return
+        _uiState.value = state.copy(isLoadingMore = true, loadMoreFailed = false)
+        viewModelScope.launch {
+            val res = repository.getPublishedPosts(cursor)
+            val current = _uiState.value
+            if (res.isSuccess) {
+                val page = res.getOrThrow()
+                val known = current.posts.mapTo(HashSet()) { it.id }
+                _uiState.value = current.copy(
+                    posts = current.posts + page.items.filter { it.id !in known },
+                    nextCursor = page.nextCursor,
+                    isLoadingMore = false
+                )
+            } else {
+                // Keep the cursor so the next scroll retries
+                _uiState.value = current.copy(isLoadingMore = false, loadMoreFailed = true)
+            }
+        }
+    }
+}
@@ -1,26 +1,34 @@
 package ru.zagrebin.config;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
-import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import ru.zagrebin.controller.MediaServlet;
+import ru.zagrebin.service.media.MediaFiles;
 
 @Configuration
-public class StaticResourceConfig implements WebMvcConfigurer {
-
-    @Value("${media.path}")
-    private String mediaPath;
+public class StaticResourceConfig {
 
     @Value("${media.public-url-prefix:/media}")
     private String publicUrlPrefix;
 
-    @Override
-    public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        String resourceHandler = publicUrlPrefix + "/**";
-        // file: + mediaPath + "/" — важно, чтобы путь оканчивался '/'
-        String resourceLocation = "file:" + (mediaPath.endsWith("/") ? mediaPath : mediaPath + "/");
-        registry.addResourceHandler(resourceHandler)
-                .addResourceLocations(resourceLocation)
-                .setCachePeriod(3600);
+    // файлы неизменяемы, поэтому кэшируются клиентом и CDN на этот срок без перепроверки
+    @Value("${media.serving.max-age-seconds:31536000}")
+    private long maxAgeSeconds;
+
+    /**
+     * /media/** — отдельный сервлет (MediaServlet), а не ResourceHttpRequestHandler в DispatcherServlet.
+     */
+    @Bean
+    public ServletRegistrationBean<MediaServlet> mediaServlet(MediaFiles mediaFiles) {
+        String prefix = publicUrlPrefix.endsWith("/")
+                ? publicUrlPrefix.substring(0, publicUrlPrefix.length() - 1)
+                : publicUrlPrefix;
+        ServletRegistrationBean<MediaServlet> registration =
+                new ServletRegistrationBean<>(new MediaServlet(mediaFiles, maxAgeSeconds), prefix + "/*");
+        registration.setName("media");
+        registration.setLoadOnStartup(1);
+        return registration;
     }
-}
\ No newline at end of file
+}
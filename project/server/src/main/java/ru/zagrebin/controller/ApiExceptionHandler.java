@@ -0,0 +1,24 @@
+package ru.zagrebin.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import ru.zagrebin.service.InvalidRequestParameterException;
+
+/**
+ * Ошибки в параметрах запроса (битый курсор, неизвестный mode) приходят из сервисов как
+ * InvalidRequestParameterException — это 400 с причиной в detail, а не 500. Прочие
+ * IllegalArgumentException — ошибки сервера: их сообщения клиенту не отдаются.
+ */
+@RestControllerAdvice
+@Slf4j
+public class ApiExceptionHandler {
+
+    @ExceptionHandler(InvalidRequestParameterException.class)
+    public ProblemDetail badRequest(InvalidRequestParameterException ex) {
+        log.debug("Bad request: {}", ex.getMessage());
+        return ProblemDetail.forStatusAndDetail(HttpStatus.BAD_REQUEST, ex.getMessage());
+    }
+}
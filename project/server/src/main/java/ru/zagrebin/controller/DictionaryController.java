@@ -0,0 +1,49 @@
+package ru.zagrebin.controller;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.zagrebin.dto.DictionaryDeltaDto;
+import ru.zagrebin.service.dictionary.DictionaryIndex;
+
+@RestController
+@RequestMapping("/api/dictionary")
+public class DictionaryController {
+
+    private final DictionaryIndex dictionaryIndex;
+
+    public DictionaryController(DictionaryIndex dictionaryIndex) {
+        this.dictionaryIndex = dictionaryIndex;
+    }
+
+    /**
+     * GET /api/dictionary?since=...
+     * Теги и ингредиенты для локальной копии на клиенте: без since — целиком, с since (version
+     * из прошлого ответа) — только изменения. ETag — версия словаря: If-None-Match с текущей
+     * версией даёт 304 без тела.
+     */
+    @GetMapping
+    public ResponseEntity<DictionaryDeltaDto> get(
+            @RequestParam(required = false) Long since,
+            @RequestHeader(name = "If-None-Match", required = false) String ifNoneMatch
+    ) {
+        String current = etag(dictionaryIndex.version());
+        if (current.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(current).cacheControl(CacheControl.noCache()).build();
+        }
+        DictionaryDeltaDto delta = dictionaryIndex.delta(since);
+        return ResponseEntity.ok()
+                .eTag(etag(delta.getVersion()))
+                .cacheControl(CacheControl.noCache())
+                .body(delta);
+    }
+
+    private static String etag(long version) {
+        return "\"" + version + "\"";
+    }
+}
@@ -1,8 +1,5 @@
 package ru.zagrebin.controller;
 
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -11,21 +8,18 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.util.UriComponentsBuilder;
 import ru.zagrebin.dto.IngredientDto;
 import ru.zagrebin.dto.PaginatedResponse;
-import ru.zagrebin.mapper.IngredientMapper;
-import ru.zagrebin.model.Ingredient;
-import ru.zagrebin.repository.IngredientRepository;
+import ru.zagrebin.service.dictionary.DictionaryIndex;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/ingredients")
 public class IngredientController {
 
-    private final IngredientRepository ingredientRepository;
+    private final DictionaryIndex dictionaryIndex;
 
-    public IngredientController(IngredientRepository ingredientRepository) {
-        this.ingredientRepository = ingredientRepository;
+    public IngredientController(DictionaryIndex dictionaryIndex) {
+        this.dictionaryIndex = dictionaryIndex;
     }
 
     @GetMapping
@@ -35,17 +29,13 @@ public class IngredientController {
             @RequestParam(required = false) String search
     ) {
         int pageIndex = Math.max(page - 1, 0);
-        Pageable pageable = PageRequest.of(pageIndex, pageSize);
-        Page<Ingredient> ingredients = (search != null && !search.isBlank())
-                ? ingredientRepository.findByNameContainingIgnoreCase(search, pageable)
-                : ingredientRepository.findAll(pageable);
-
-        List<IngredientDto> results = ingredients.getContent().stream()
-                .map(IngredientMapper::toDto)
-                .collect(Collectors.toList());
+        int size = Math.max(pageSize, 1);
+        List<IngredientDto> found = dictionaryIndex.findIngredients(search, pageIndex * size, size + 1);
+        boolean hasNext = found.size() > size;
+        List<IngredientDto> results = hasNext ? found.subList(0, size) : found;
 
         String next = null;
-        if (ingredients.hasNext()) {
+        if (hasNext) {
             UriComponentsBuilder builder = UriComponentsBuilder.fromPath("/api/ingredients")
                     .queryParam("page", page + 1)
                     .queryParam("page_size", pageSize);
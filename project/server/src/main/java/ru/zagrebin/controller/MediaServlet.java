@@ -0,0 +1,186 @@
+package ru.zagrebin.controller;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import ru.zagrebin.service.media.MediaFiles;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Раздача /media/** отдельным сервлетом, мимо DispatcherServlet и конвертеров Spring MVC.
+ * Файлы после публикации не меняются (UUID или SHA-256 в имени, запись через atomic move), поэтому
+ * ETag строгий (размер + время изменения), а Cache-Control — immutable на год.
+ * Поддерживается один диапазон Range (несколько — отдаётся весь файл, RFC 9110 это допускает) и If-Range.
+ * Тело от 48 КиБ отдаётся через sendfile Tomcat (FileChannel.transferTo в сокет): байты не проходят
+ * через буферы сервлета в куче, а рабочий поток освобождается сразу после заголовков — передачу
+ * доводит поток NIO-поллера, и медиа не держит потоки, нужные API.
+ */
+public class MediaServlet extends HttpServlet {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    // меньше — sendfile не окупается (столько же по умолчанию у DefaultServlet Tomcat)
+    private static final long SENDFILE_MIN_BYTES = 48 * 1024;
+    // оригинал вместо ещё не построенной копии: ненадолго, чтобы потом клиент получил копию
+    private static final int FALLBACK_MAX_AGE_SECONDS = 60;
+    private static final long[] UNSATISFIABLE = new long[0];
+
+    private final transient MediaFiles mediaFiles;
+    private final long maxAgeSeconds;
+
+    public MediaServlet(MediaFiles mediaFiles, long maxAgeSeconds) {
+        this.mediaFiles = mediaFiles;
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        serve(request, response, true);
+    }
+
+    @Override
+    protected void doHead(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        serve(request, response, false);
+    }
+
+    private void serve(HttpServletRequest request, HttpServletResponse response, boolean body) throws IOException {
+        Integer quality = request.getParameter("q") != null ? intParam(request, "q") : null;
+        MediaFiles.Resolved resolved = mediaFiles.resolve(request.getPathInfo(), intParam(request, "w"), quality);
+        if (resolved == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        BasicFileAttributes attrs = Files.readAttributes(resolved.file(), BasicFileAttributes.class);
+        long size = attrs.size();
+        long modified = attrs.lastModifiedTime().toMillis();
+        String etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(modified) + "\"";
+
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", modified);
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setHeader("Cache-Control", resolved.exact()
+                ? "public, max-age=" + maxAgeSeconds + ", immutable"
+                : "public, max-age=" + FALLBACK_MAX_AGE_SECONDS);
+        if (notModified(request, etag, modified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        String contentType = getServletContext().getMimeType(resolved.file().getFileName().toString());
+        response.setContentType(contentType != null ? contentType : "application/octet-stream");
+
+        long start = 0;
+        long end = size - 1;
+        String rangeHeader = request.getHeader("Range");
+        if (rangeHeader != null && ifRangeMatches(request, etag, modified)) {
+            long[] range = parseRange(rangeHeader, size);
+            if (range == UNSATISFIABLE) {
+                response.setHeader("Content-Range", "bytes */" + size);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (range != null) {
+                start = range[0];
+                end = range[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + size);
+            }
+        }
+        long length = end - start + 1;
+        response.setContentLengthLong(length);
+        if (!body || length <= 0) return;
+
+        if (length >= SENDFILE_MIN_BYTES && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, resolved.file().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            // конец — не включая
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+        try (FileChannel in = FileChannel.open(resolved.file(), StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position <= end) {
+                long n = in.transferTo(position, end + 1 - position, out);
+                if (n <= 0) break;
+                position += n;
+            }
+        }
+    }
+
+    /**
+     * {first, last} включительно; null — заголовок игнорируется (весь файл); UNSATISFIABLE — 416.
+     */
+    static long[] parseRange(String header, long size) {
+        if (!header.startsWith("bytes=")) return null;
+        String spec = header.substring("bytes=".length()).trim();
+        if (spec.indexOf(',') >= 0) return null;
+        int dash = spec.indexOf('-');
+        if (dash < 0) return null;
+        try {
+            if (dash == 0) {
+                // bytes=-N — последние N байт
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0 || size == 0) return UNSATISFIABLE;
+                return new long[]{Math.max(0, size - suffix), size - 1};
+            }
+            long first = Long.parseLong(spec.substring(0, dash));
+            String lastPart = spec.substring(dash + 1);
+            long last = lastPart.isEmpty() ? Long.MAX_VALUE : Long.parseLong(lastPart);
+            if (first < 0 || last < first) return null;
+            if (first >= size) return UNSATISFIABLE;
+            return new long[]{first, Math.min(last, size - 1)};
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static boolean notModified(HttpServletRequest request, String etag, long modified) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                String t = tag.trim();
+                if (t.startsWith("W/")) t = t.substring(2);
+                if (t.equals("*") || t.equals(etag)) return true;
+            }
+            return false;
+        }
+        long since = dateHeader(request, "If-Modified-Since");
+        return since >= 0 && modified / 1000 <= since / 1000;
+    }
+
+    // If-Range: диапазон только если у клиента та же версия файла, иначе весь файл
+    private static boolean ifRangeMatches(HttpServletRequest request, String etag, long modified) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) return true;
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) return ifRange.equals(etag);
+        long date = dateHeader(request, "If-Range");
+        return date >= 0 && modified / 1000 == date / 1000;
+    }
+
+    private static long dateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException ex) {
+            return -1;
+        }
+    }
+
+    private static int intParam(HttpServletRequest request, String name) {
+        String value = request.getParameter(name);
+        if (value == null) return 0;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+}
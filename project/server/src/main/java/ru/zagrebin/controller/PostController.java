@@ -3,18 +3,28 @@ package ru.zagrebin.controller;
 import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.util.UriComponentsBuilder;
 import ru.zagrebin.dto.*;
 import ru.zagrebin.model.Post;
 import ru.zagrebin.service.LikeService;
 import ru.zagrebin.service.PostService;
+import ru.zagrebin.service.facet.PostFilter;
+import ru.zagrebin.service.facet.TagMatchMode;
+import ru.zagrebin.service.pagination.CursorPage;
+import ru.zagrebin.service.pagination.FacetedCursorPage;
+import ru.zagrebin.service.pantry.PantryMode;
 
 import java.net.URI;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/posts")
 public class PostController {
 
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final PostService postService;
     private final LikeService likeService;
 
@@ -24,13 +34,178 @@ public class PostController {
     }
 
     /**
-     * GET /api/v1/posts
-     * Возвращает карточки опубликованных постов
+     * GET /api/v1/posts?cursor=...&page_size=...&currentUserId=...&tags=a,b&mode=all|any
+     *     &calories_min=...&calories_max=...&time_min=...&time_max=...
+     * Возвращает страницу карточек опубликованных постов (новые сверху).
+     * next — ссылка на следующую страницу с курсором, null если это последняя.
+     * С currentUserId в карточках проставляется isLiked.
+     * С tags (id или slug) лента фильтруется по тегам, а в ответ добавляются count и facets —
+     * сколько постов подходит и как они распределены по тегам.
+     * calories_* и time_* (минуты) — диапазоны с включёнными границами, сочетаются с тегами.
      */
     @GetMapping
-    public ResponseEntity<List<PostCardDto>> listPublished() {
-        List<PostCardDto> cards = postService.getAllPublishedPosts();
-        return ResponseEntity.ok(cards);
+    public ResponseEntity<PaginatedResponse<PostCardDto>> listPublished(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(name = "page_size", defaultValue = "20") int pageSize,
+            @RequestParam(name = "currentUserId", required = false) Long currentUserId,
+            @RequestParam(required = false) List<String> tags,
+            @RequestParam(defaultValue = "all") String mode,
+            @RequestParam(name = "calories_min", required = false) Integer caloriesMin,
+            @RequestParam(name = "calories_max", required = false) Integer caloriesMax,
+            @RequestParam(name = "time_min", required = false) Integer timeMin,
+            @RequestParam(name = "time_max", required = false) Integer timeMax
+    ) {
+        int limit = Math.min(Math.max(pageSize, 1), MAX_PAGE_SIZE);
+        TagMatchMode matchMode = TagMatchMode.parse(mode);
+        PostFilter filter = PostFilter.builder()
+                .tags(tags == null ? Collections.emptyList() : tags)
+                .mode(matchMode)
+                .caloriesMin(caloriesMin)
+                .caloriesMax(caloriesMax)
+                .cookingTimeMin(timeMin)
+                .cookingTimeMax(timeMax)
+                .build();
+        boolean filtered = !filter.isEmpty();
+        CursorPage<PostCardDto> feed = filtered
+                ? postService.getPublishedFeedFiltered(filter, cursor, limit, currentUserId)
+                : postService.getPublishedFeed(cursor, limit, currentUserId);
+
+        String next = null;
+        if (feed.hasNext()) {
+            UriComponentsBuilder builder = UriComponentsBuilder.fromPath("/api/posts")
+                    .queryParam("cursor", feed.getNextCursor())
+                    .queryParam("page_size", limit);
+            if (currentUserId != null) {
+                builder.queryParam("currentUserId", currentUserId);
+            }
+            if (!filter.getTags().isEmpty()) {
+                builder.queryParam("tags", String.join(",", tags))
+                        .queryParam("mode", matchMode.name().toLowerCase());
+            }
+            if (caloriesMin != null) builder.queryParam("calories_min", caloriesMin);
+            if (caloriesMax != null) builder.queryParam("calories_max", caloriesMax);
+            if (timeMin != null) builder.queryParam("time_min", timeMin);
+            if (timeMax != null) builder.queryParam("time_max", timeMax);
+            next = builder.encode().build().toString();
+        }
+        if (feed instanceof FacetedCursorPage<PostCardDto> faceted) {
+            return ResponseEntity.ok(new FacetedPaginatedResponse<>(feed.getItems(), next, faceted.getTotal(), faceted.getFacets()));
+        }
+        return ResponseEntity.ok(new PaginatedResponse<>(feed.getItems(), next));
+    }
+
+    /**
+     * GET /api/v1/posts/following?userId=...&cursor=...&page_size=...
+     * Посты авторов, на которых подписан userId (новые сверху). В реальном приложении userId берём из токена.
+     */
+    @GetMapping("/following")
+    public ResponseEntity<PaginatedResponse<PostCardDto>> listFollowing(
+            @RequestParam Long userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(name = "page_size", defaultValue = "20") int pageSize
+    ) {
+        int limit = Math.min(Math.max(pageSize, 1), MAX_PAGE_SIZE);
+        CursorPage<PostCardDto> feed = postService.getFollowingFeed(userId, cursor, limit);
+
+        String next = null;
+        if (feed.hasNext()) {
+            next = UriComponentsBuilder.fromPath("/api/posts/following")
+                    .queryParam("userId", userId)
+                    .queryParam("cursor", feed.getNextCursor())
+                    .queryParam("page_size", limit)
+                    .encode().build().toString();
+        }
+        return ResponseEntity.ok(new PaginatedResponse<>(feed.getItems(), next));
+    }
+
+    /**
+     * GET /api/v1/posts/search?q=...&cursor=...&page_size=...&currentUserId=...
+     * Полнотекстовый поиск по опубликованным постам (русская морфология, синтаксис websearch: "фраза", or, -слово).
+     * Самые релевантные первыми; в каждом результате карточка, заголовок и фрагменты с <mark>.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<PaginatedResponse<PostSearchHitDto>> search(
+            @RequestParam String q,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(name = "page_size", defaultValue = "20") int pageSize,
+            @RequestParam(name = "currentUserId", required = false) Long currentUserId
+    ) {
+        int limit = Math.min(Math.max(pageSize, 1), MAX_PAGE_SIZE);
+        CursorPage<PostSearchHitDto> page = postService.search(q, cursor, limit, currentUserId);
+
+        String next = null;
+        if (page.hasNext()) {
+            UriComponentsBuilder builder = UriComponentsBuilder.fromPath("/api/posts/search")
+                    .queryParam("q", q)
+                    .queryParam("cursor", page.getNextCursor())
+                    .queryParam("page_size", limit);
+            if (currentUserId != null) {
+                builder.queryParam("currentUserId", currentUserId);
+            }
+            next = builder.encode().build().toString();
+        }
+        return ResponseEntity.ok(new PaginatedResponse<>(page.getItems(), next));
+    }
+
+    /**
+     * GET /api/v1/posts/suggest?q=...&limit=...
+     * Подсказки при наборе: каждое слово запроса — начало слова в заголовке, анонсе или ингредиентах.
+     * Отвечает из индекса в памяти; лучшие совпадения первыми.
+     */
+    @GetMapping("/suggest")
+    public ResponseEntity<List<PostSuggestionDto>> suggest(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "10") int limit
+    ) {
+        return ResponseEntity.ok(postService.suggest(q, Math.min(Math.max(limit, 1), MAX_PAGE_SIZE)));
+    }
+
+    /**
+     * GET /api/v1/posts/trending?page_size=...&currentUserId=...
+     * Популярные сейчас посты (лайки и просмотры с затуханием). Одна страница, next всегда null.
+     */
+    @GetMapping("/trending")
+    public ResponseEntity<PaginatedResponse<PostCardDto>> listTrending(
+            @RequestParam(name = "page_size", defaultValue = "20") int pageSize,
+            @RequestParam(name = "currentUserId", required = false) Long currentUserId
+    ) {
+        int limit = Math.min(Math.max(pageSize, 1), MAX_PAGE_SIZE);
+        List<PostCardDto> cards = postService.getTrending(limit, currentUserId);
+        return ResponseEntity.ok(new PaginatedResponse<>(cards, null));
+    }
+
+    /**
+     * GET /api/v1/posts/pantry?ingredients=1,2,3&mode=covered|missing|contains&max_missing=...&cursor=...&page_size=...
+     * «Готовлю из того, что есть»: covered — всё для рецепта есть, missing — не хватает не больше max_missing,
+     * contains — рецепт содержит все перечисленные ингредиенты.
+     */
+    @GetMapping("/pantry")
+    public ResponseEntity<PaginatedResponse<PostCardDto>> listByPantry(
+            @RequestParam List<Long> ingredients,
+            @RequestParam(defaultValue = "covered") String mode,
+            @RequestParam(name = "max_missing", defaultValue = "1") int maxMissing,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(name = "page_size", defaultValue = "20") int pageSize,
+            @RequestParam(name = "currentUserId", required = false) Long currentUserId
+    ) {
+        int limit = Math.min(Math.max(pageSize, 1), MAX_PAGE_SIZE);
+        PantryMode pantryMode = PantryMode.parse(mode);
+        CursorPage<PostCardDto> page = postService.getByPantry(ingredients, pantryMode, maxMissing, cursor, limit, currentUserId);
+
+        String next = null;
+        if (page.hasNext()) {
+            UriComponentsBuilder builder = UriComponentsBuilder.fromPath("/api/posts/pantry")
+                    .queryParam("ingredients", ingredients.stream().map(String::valueOf).collect(Collectors.joining(",")))
+                    .queryParam("mode", pantryMode.name().toLowerCase())
+                    .queryParam("max_missing", maxMissing)
+                    .queryParam("cursor", page.getNextCursor())
+                    .queryParam("page_size", limit);
+            if (currentUserId != null) {
+                builder.queryParam("currentUserId", currentUserId);
+            }
+            next = builder.encode().build().toString();
+        }
+        return ResponseEntity.ok(new PaginatedResponse<>(page.getItems(), next));
     }
 
     /**
@@ -46,6 +221,21 @@ public class PostController {
         return ResponseEntity.ok(dto);
     }
 
+    /**
+     * GET /api/v1/posts/{id}/related?page_size=...&currentUserId=...
+     * Рецепты с похожим составом. Одна страница, next всегда null.
+     */
+    @GetMapping("/{id}/related")
+    public ResponseEntity<PaginatedResponse<PostCardDto>> listRelated(
+            @PathVariable Long id,
+            @RequestParam(name = "page_size", defaultValue = "6") int pageSize,
+            @RequestParam(name = "currentUserId", required = false) Long currentUserId
+    ) {
+        int limit = Math.min(Math.max(pageSize, 1), MAX_PAGE_SIZE);
+        List<PostCardDto> cards = postService.getRelated(id, limit, currentUserId);
+        return ResponseEntity.ok(new PaginatedResponse<>(cards, null));
+    }
+
     /**
      * POST /api/v1/posts
      * Создание поста. В идеале currentUser берётся по JWT — сейчас authorId в dto.
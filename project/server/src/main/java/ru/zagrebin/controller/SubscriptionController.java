@@ -0,0 +1,36 @@
+package ru.zagrebin.controller;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import ru.zagrebin.service.SubscriptionService;
+
+@RestController
+@RequestMapping("/api/users")
+public class SubscriptionController {
+
+    private final SubscriptionService subscriptionService;
+
+    public SubscriptionController(SubscriptionService subscriptionService) {
+        this.subscriptionService = subscriptionService;
+    }
+
+    /**
+     * POST /api/users/{id}/subscription?userId=...
+     * Подписать userId на автора id. В реальном приложении userId берём из токена.
+     */
+    @PostMapping("/{id}/subscription")
+    public ResponseEntity<Void> subscribe(@PathVariable Long id, @RequestParam Long userId) {
+        boolean ok = subscriptionService.subscribe(userId, id);
+        return ok ? ResponseEntity.ok().build() : ResponseEntity.status(409).build();
+    }
+
+    /**
+     * DELETE /api/users/{id}/subscription?userId=...
+     * Отписаться
+     */
+    @DeleteMapping("/{id}/subscription")
+    public ResponseEntity<Void> unsubscribe(@PathVariable Long id, @RequestParam Long userId) {
+        boolean ok = subscriptionService.unsubscribe(userId, id);
+        return ok ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+}
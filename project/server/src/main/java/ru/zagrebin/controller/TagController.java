@@ -1,8 +1,5 @@
 package ru.zagrebin.controller;
 
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -11,21 +8,18 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.util.UriComponentsBuilder;
 import ru.zagrebin.dto.PaginatedResponse;
 import ru.zagrebin.dto.TagDto;
-import ru.zagrebin.mapper.TagMapper;
-import ru.zagrebin.model.Tag;
-import ru.zagrebin.repository.TagRepository;
+import ru.zagrebin.service.dictionary.DictionaryIndex;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/tags")
 public class TagController {
 
-    private final TagRepository tagRepository;
+    private final DictionaryIndex dictionaryIndex;
 
-    public TagController(TagRepository tagRepository) {
-        this.tagRepository = tagRepository;
+    public TagController(DictionaryIndex dictionaryIndex) {
+        this.dictionaryIndex = dictionaryIndex;
     }
 
     @GetMapping
@@ -35,17 +29,13 @@ public class TagController {
             @RequestParam(required = false) String search
     ) {
         int pageIndex = Math.max(page - 1, 0);
-        Pageable pageable = PageRequest.of(pageIndex, pageSize);
-        Page<Tag> tags = (search != null && !search.isBlank())
-                ? tagRepository.findByNameContainingIgnoreCase(search, pageable)
-                : tagRepository.findAll(pageable);
-
-        List<TagDto> results = tags.getContent().stream()
-                .map(TagMapper::toDto)
-                .collect(Collectors.toList());
+        int size = Math.max(pageSize, 1);
+        List<TagDto> found = dictionaryIndex.findTags(search, pageIndex * size, size + 1);
+        boolean hasNext = found.size() > size;
+        List<TagDto> results = hasNext ? found.subList(0, size) : found;
 
         String next = null;
-        if (tags.hasNext()) {
+        if (hasNext) {
             UriComponentsBuilder builder = UriComponentsBuilder.fromPath("/api/tags")
                     .queryParam("page", page + 1)
                     .queryParam("page_size", pageSize);
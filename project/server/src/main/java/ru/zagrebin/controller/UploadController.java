@@ -1,11 +1,20 @@
 package ru.zagrebin.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import ru.zagrebin.dto.UploadSessionDto;
 import ru.zagrebin.service.FileStorageService;
+import ru.zagrebin.service.media.ResumableUploads;
+import ru.zagrebin.service.media.UploadOffsetConflictException;
+import ru.zagrebin.service.media.UploadTooLargeException;
 
+import java.io.IOException;
+import java.net.URI;
 import java.util.Map;
 
 @RestController
@@ -13,9 +22,24 @@ import java.util.Map;
 public class UploadController {
 
     private final FileStorageService fileStorageService;
+    private final ResumableUploads resumableUploads;
 
-    public UploadController(FileStorageService fileStorageService) {
+    // лимиты размера по типу загрузки, байт
+    @Value("${media.max-bytes.cover:10485760}")
+    private long maxCoverBytes;
+
+    @Value("${media.max-bytes.step:10485760}")
+    private long maxStepBytes;
+
+    @Value("${media.max-bytes.avatar:2097152}")
+    private long maxAvatarBytes;
+
+    @Value("${media.max-bytes.misc:5242880}")
+    private long maxMiscBytes;
+
+    public UploadController(FileStorageService fileStorageService, ResumableUploads resumableUploads) {
         this.fileStorageService = fileStorageService;
+        this.resumableUploads = resumableUploads;
     }
 
     /**
@@ -28,14 +52,141 @@ public class UploadController {
             @PathVariable String type,
             @RequestPart("file") MultipartFile file
     ) {
-        String subdir;
-        switch (type) {
-            case "cover" -> subdir = "posts/covers";
-            case "step" -> subdir = "posts/steps";
-            case "avatar" -> subdir = "users/avatars";
-            default -> subdir = "misc";
+        if (file.getSize() > maxBytes(type)) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
         }
-        String url = fileStorageService.store(file, subdir);
+        String url = fileStorageService.store(file, subdir(type));
         return ResponseEntity.ok(Map.of("url", url));
     }
+
+    /**
+     * POST /api/uploads/{type}?filename=...  с самим файлом в теле (image/* или application/octet-stream).
+     * Без multipart: тело потоком пишется на диск, целиком в памяти не держится и не копируется
+     * повторно из временного файла multipart. Content-Length больше лимита типа — 413 до чтения тела;
+     * без Content-Length лимит проверяется по ходу записи.
+     * filename нужен только ради расширения; без него оно берётся из Content-Type.
+     */
+    @PostMapping(value = "/{type}", consumes = {"image/*", MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<Map<String, String>> uploadStream(
+            @PathVariable String type,
+            @RequestParam(required = false) String filename,
+            HttpServletRequest request
+    ) throws IOException {
+        long limit = maxBytes(type);
+        if (request.getContentLengthLong() > limit) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        }
+        String name = filename != null ? filename : "upload" + extension(request.getContentType());
+        try {
+            String url = fileStorageService.store(request.getInputStream(), name, subdir(type), limit);
+            return ResponseEntity.ok(Map.of("url", url));
+        } catch (UploadTooLargeException ex) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Докачиваемая загрузка. POST /api/uploads/{type}/sessions?size=...&filename=... — создать сессию
+     * (size — полный размер файла, не больше лимита типа), ответ 201 { id, offset, size }.
+     */
+    @PostMapping("/{type}/sessions")
+    public ResponseEntity<UploadSessionDto> createSession(
+            @PathVariable String type,
+            @RequestParam long size,
+            @RequestParam(required = false) String filename
+    ) throws IOException {
+        if (size <= 0) return ResponseEntity.badRequest().build();
+        if (size > maxBytes(type)) return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        ResumableUploads.Session session = resumableUploads.create(subdir(type), filename, size);
+        return ResponseEntity.created(URI.create("/api/uploads/sessions/" + session.getId())).body(toDto(session));
+    }
+
+    /**
+     * GET /api/uploads/sessions/{id} — сколько байт принято; после обрыва клиент продолжает с offset.
+     */
+    @GetMapping("/sessions/{id}")
+    public ResponseEntity<UploadSessionDto> getSession(@PathVariable String id) {
+        ResumableUploads.Session session = resumableUploads.get(id);
+        return session == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(toDto(session));
+    }
+
+    /**
+     * PUT /api/uploads/sessions/{id}?offset=... с куском в теле. offset должен быть равен принятому,
+     * иначе 409 с настоящим offset; так же 409, если в сессию ещё пишется другой кусок. Кусок за пределами size — 413.
+     */
+    @PutMapping("/sessions/{id}")
+    public ResponseEntity<UploadSessionDto> putChunk(
+            @PathVariable String id,
+            @RequestParam long offset,
+            HttpServletRequest request
+    ) throws IOException {
+        ResumableUploads.Session session = resumableUploads.get(id);
+        if (session == null) return ResponseEntity.notFound().build();
+        try {
+            resumableUploads.append(session, offset, request.getInputStream());
+            return ResponseEntity.ok(toDto(session));
+        } catch (UploadOffsetConflictException ex) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(toDto(session));
+        } catch (UploadTooLargeException ex) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(toDto(session));
+        }
+    }
+
+    /**
+     * POST /api/uploads/sessions/{id}/complete — все байты приняты: { "url": ... }, как у обычной загрузки.
+     */
+    @PostMapping("/sessions/{id}/complete")
+    public ResponseEntity<Map<String, String>> completeSession(@PathVariable String id) {
+        ResumableUploads.Session session = resumableUploads.get(id);
+        if (session == null) return ResponseEntity.notFound().build();
+        try {
+            return ResponseEntity.ok(Map.of("url", resumableUploads.complete(session)));
+        } catch (UploadOffsetConflictException ex) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    @DeleteMapping("/sessions/{id}")
+    public ResponseEntity<Void> abortSession(@PathVariable String id) {
+        ResumableUploads.Session session = resumableUploads.get(id);
+        if (session == null) return ResponseEntity.notFound().build();
+        resumableUploads.abort(session);
+        return ResponseEntity.noContent().build();
+    }
+
+    private static UploadSessionDto toDto(ResumableUploads.Session session) {
+        return new UploadSessionDto(session.getId(), session.getOffset(), session.getSize());
+    }
+
+    private static String subdir(String type) {
+        return switch (type) {
+            case "cover" -> "posts/covers";
+            case "step" -> "posts/steps";
+            case "avatar" -> "users/avatars";
+            default -> "misc";
+        };
+    }
+
+    private long maxBytes(String type) {
+        return switch (type) {
+            case "cover" -> maxCoverBytes;
+            case "step" -> maxStepBytes;
+            case "avatar" -> maxAvatarBytes;
+            default -> maxMiscBytes;
+        };
+    }
+
+    private static String extension(String contentType) {
+        if (contentType == null) return "";
+        return switch (MediaType.parseMediaType(contentType).getSubtype()) {
+            case "jpeg" -> ".jpg";
+            case "png" -> ".png";
+            case "webp" -> ".webp";
+            case "gif" -> ".gif";
+            case "heic" -> ".heic";
+            default -> "";
+        };
+    }
 }
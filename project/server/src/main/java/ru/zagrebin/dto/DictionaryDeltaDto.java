@@ -0,0 +1,25 @@
+package ru.zagrebin.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Словарь тегов и ингредиентов целиком (full = true) или изменения с версии since.
+ * Записи — компактные массивы, а не объекты, чтобы не повторять имена полей:
+ * тег [id, name, color, usage], ингредиент [id, name, usage]; usage — число постов с записью.
+ * При full = true removed* пусты, а клиент заменяет свою копию целиком.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DictionaryDeltaDto {
+    private long version;
+    private boolean full;
+    private List<List<Object>> tags;
+    private List<List<Object>> ingredients;
+    private List<Long> removedTags;
+    private List<Long> removedIngredients;
+}
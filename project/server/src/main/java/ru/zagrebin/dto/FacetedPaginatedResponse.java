@@ -0,0 +1,24 @@
+package ru.zagrebin.dto;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * PaginatedResponse с фасетами: общее число подходящих постов и счётчики тегов среди них.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class FacetedPaginatedResponse<T> extends PaginatedResponse<T> {
+    private long count;
+    private List<TagFacetDto> facets;
+
+    public FacetedPaginatedResponse(List<T> results, String next, long count, List<TagFacetDto> facets) {
+        super(results, next);
+        this.count = count;
+        this.facets = facets;
+    }
+}
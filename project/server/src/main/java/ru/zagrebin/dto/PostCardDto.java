@@ -3,6 +3,7 @@ package ru.zagrebin.dto;
 import lombok.Data;
 import ru.zagrebin.model.Tag;
 
+import java.util.Map;
 import java.util.Set;
 
 @Data
@@ -11,6 +12,10 @@ public class PostCardDto {
     private String title;
     private String excerpt;
     private String coverUrl;
+    // ширина → URL уменьшенной копии обложки (coverUrl?w=...); пусто для внешних и не-JPEG/PNG обложек
+    private Map<Integer, String> coverVariants;
+    // BlurHash обложки — клиент рисует его, пока грузится coverUrl; null — заглушки нет
+    private String coverPlaceholder;
     private Long authorId;
     private String postType;
     private int likesCount;
@@ -20,4 +25,5 @@ public class PostCardDto {
     private String publishedAt;
     private Set<String> tags;
     private Long viewsCount;
+    private boolean isLiked;
 }
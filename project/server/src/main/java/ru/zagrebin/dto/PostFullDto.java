@@ -16,6 +16,8 @@ public class PostFullDto {
     private String content;
 
     private String coverUrl;
+    // BlurHash обложки, null — заглушки нет
+    private String coverPlaceholder;
     private OffsetDateTime createdAt;
     private OffsetDateTime updatedAt;
 
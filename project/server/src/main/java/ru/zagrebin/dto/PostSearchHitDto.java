@@ -0,0 +1,15 @@
+package ru.zagrebin.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PostSearchHitDto {
+    private PostCardDto post;
+    private String titleHighlight; // заголовок с <mark>…</mark> вокруг совпадений
+    private String snippet;        // фрагменты анонса, текста и шагов с совпадениями
+    private float rank;
+}
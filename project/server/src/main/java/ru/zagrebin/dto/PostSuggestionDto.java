@@ -0,0 +1,14 @@
+package ru.zagrebin.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PostSuggestionDto {
+    private Long id;
+    private String title;
+    private double score; // BM25, сравним только внутри одного ответа
+}
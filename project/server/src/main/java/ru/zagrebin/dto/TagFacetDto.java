@@ -0,0 +1,11 @@
+package ru.zagrebin.dto;
+
+import lombok.Data;
+
+@Data
+public class TagFacetDto {
+    private Long id;
+    private String name;
+    private String color;
+    private long count; // сколько постов из отфильтрованной выборки помечены этим тегом
+}
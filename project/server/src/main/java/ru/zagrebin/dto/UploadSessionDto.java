@@ -0,0 +1,17 @@
+package ru.zagrebin.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Состояние докачиваемой загрузки: offset — сколько байт из size уже принято.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSessionDto {
+    private String id;
+    private long offset;
+    private long size;
+}
@@ -4,6 +4,7 @@ import ru.zagrebin.dto.PostIngredientDto;
 import ru.zagrebin.dto.IngredientDto;
 import ru.zagrebin.model.Ingredient;
 import ru.zagrebin.model.PostIngredient;
+import ru.zagrebin.repository.projection.DictionaryEntryView;
 
 public final class IngredientMapper {
     private IngredientMapper() {}
@@ -25,4 +26,11 @@ public final class IngredientMapper {
         dto.setName(ingredient.getName());
         return dto;
     }
+
+    public static IngredientDto toDto(DictionaryEntryView v) {
+        IngredientDto dto = new IngredientDto();
+        dto.setId(v.getId());
+        dto.setName(v.getName());
+        return dto;
+    }
 }
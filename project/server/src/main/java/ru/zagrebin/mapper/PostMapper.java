@@ -1,16 +1,22 @@
 package ru.zagrebin.mapper;
 
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
+import ru.zagrebin.dto.AuthorShortDto;
 import ru.zagrebin.dto.PostCardDto;
 import ru.zagrebin.dto.PostFullDto;
 import ru.zagrebin.model.Post;
 import ru.zagrebin.model.RecipeStep;
 import ru.zagrebin.model.Tag;
+import ru.zagrebin.repository.projection.PostCardView;
+import ru.zagrebin.service.media.ImageVariants;
 
 public final class PostMapper {
     private PostMapper() {}
@@ -22,6 +28,8 @@ public final class PostMapper {
         dto.setTitle(p.getTitle());
         dto.setExcerpt(p.getExcerpt());
         dto.setCoverUrl(p.getCoverUrl());
+        dto.setCoverVariants(ImageVariants.urls(p.getCoverUrl()));
+        dto.setCoverPlaceholder(placeholder(p.getCoverPlaceholder()));
         dto.setAuthorId(p.getAuthor() != null ? p.getAuthor().getId() : null);
         dto.setPostType(p.getPostType());
         dto.setLikesCount(p.getLikesCount() == null ? 0 : p.getLikesCount());
@@ -34,6 +42,33 @@ public final class PostMapper {
         return dto;
     }
 
+    /**
+     * Карточка из плоской проекции — без Post, persistence context и колонки content.
+     */
+    public static PostCardDto toCard(PostCardView v) {
+        if (v == null) return null;
+        PostCardDto dto = new PostCardDto();
+        dto.setId(v.getId());
+        dto.setTitle(v.getTitle());
+        dto.setExcerpt(v.getExcerpt());
+        dto.setCoverUrl(v.getCoverUrl());
+        dto.setCoverVariants(ImageVariants.urls(v.getCoverUrl()));
+        dto.setCoverPlaceholder(placeholder(v.getCoverPlaceholder()));
+        dto.setAuthorId(v.getAuthorId());
+        dto.setPostType(v.getPostType());
+        dto.setLikesCount(v.getLikesCount() == null ? 0 : v.getLikesCount());
+        dto.setCookingTimeMinutes(v.getCookingTimeMinutes());
+        dto.setCalories(v.getCalories());
+        dto.setAuthorName(v.getAuthorName());
+        // формат как у toCard(Post) — OffsetDateTime в UTC: Instant.toString всегда печатает секунды
+        dto.setPublishedAt(v.getCreatedAt() != null ? v.getCreatedAt().atOffset(ZoneOffset.UTC).toString() : "Unknown");
+        dto.setViewsCount(v.getViewsCount() == null ? 0 : v.getViewsCount());
+        dto.setTags(v.getTagNames() == null
+                ? Collections.emptySet()
+                : new LinkedHashSet<>(Arrays.asList(v.getTagNames().split(PostCardView.TAG_SEPARATOR))));
+        return dto;
+    }
+
     public static PostFullDto toFull(Post p, boolean isLiked, boolean isSubscribed) {
         if (p == null) return null;
         PostFullDto dto = new PostFullDto();
@@ -44,6 +79,7 @@ public final class PostMapper {
         dto.setExcerpt(p.getExcerpt());
         dto.setContent(p.getContent());
         dto.setCoverUrl(p.getCoverUrl());
+        dto.setCoverPlaceholder(placeholder(p.getCoverPlaceholder()));
         dto.setCreatedAt(p.getCreatedAt());
         dto.setUpdatedAt(p.getUpdatedAt());
         // author
@@ -53,19 +89,12 @@ public final class PostMapper {
         dto.setTags(p.getTags().stream().map(TagMapper::toDto).collect(Collectors.toList()));
         dto.setIngredients(p.getIngredients().stream().map(IngredientMapper::toDto).collect(Collectors.toList()));
 
-        // Дедуплируем шаги по id и сортируем по order
-        List<RecipeStep> uniqueSteps = p.getSteps().stream()
+        // Шаги грузятся отдельным запросом, дублей нет — только сортируем по order
+        dto.setSteps(p.getSteps().stream()
                 .filter(Objects::nonNull)
-                .collect(Collectors.toMap(
-                        RecipeStep::getId,
-                        s -> s,
-                        (a, b) -> a,
-                        LinkedHashMap::new
-                ))
-                .values().stream()
                 .sorted(Comparator.comparingInt(RecipeStep::getOrder))
-                .collect(Collectors.toList());
-        dto.setSteps(uniqueSteps.stream().map(StepMapper::toDto).collect(Collectors.toList()));
+                .map(StepMapper::toDto)
+                .collect(Collectors.toList()));
 
         dto.setLikesCount(p.getLikesCount() == null ? 0 : p.getLikesCount());
         dto.setLiked(isLiked);
@@ -74,4 +103,55 @@ public final class PostMapper {
         dto.setCookingTimeMinutes(p.getCookingTimeMinutes());
         return dto;
     }
+
+    /**
+     * Копия базового (общего для всех) DTO с флагами конкретного читателя.
+     * Списки не копируются — они разделяются с исходником и не должны меняться.
+     */
+    public static PostFullDto withViewer(PostFullDto base, boolean isLiked, boolean isSubscribed) {
+        if (base == null) return null;
+        PostFullDto dto = new PostFullDto();
+        dto.setId(base.getId());
+        dto.setPostType(base.getPostType());
+        dto.setStatus(base.getStatus());
+        dto.setTitle(base.getTitle());
+        dto.setExcerpt(base.getExcerpt());
+        dto.setContent(base.getContent());
+        dto.setCoverUrl(base.getCoverUrl());
+        dto.setCoverPlaceholder(base.getCoverPlaceholder());
+        dto.setCreatedAt(base.getCreatedAt());
+        dto.setUpdatedAt(base.getUpdatedAt());
+        if (base.getAuthor() != null) {
+            AuthorShortDto author = new AuthorShortDto();
+            author.setId(base.getAuthor().getId());
+            author.setDisplayName(base.getAuthor().getDisplayName());
+            author.setAvatarUrl(base.getAuthor().getAvatarUrl());
+            author.setSubscribed(isSubscribed);
+            dto.setAuthor(author);
+        }
+        dto.setTags(base.getTags());
+        dto.setIngredients(base.getIngredients());
+        dto.setSteps(base.getSteps());
+        dto.setLikesCount(base.getLikesCount());
+        dto.setLiked(isLiked);
+        dto.setViewsCount(base.getViewsCount());
+        dto.setCalories(base.getCalories());
+        dto.setCookingTimeMinutes(base.getCookingTimeMinutes());
+        return dto;
+    }
+
+    /**
+     * Делает списки DTO неизменяемыми перед тем, как разделять его между запросами.
+     */
+    public static PostFullDto freeze(PostFullDto dto) {
+        if (dto.getTags() != null) dto.setTags(Collections.unmodifiableList(dto.getTags()));
+        if (dto.getIngredients() != null) dto.setIngredients(Collections.unmodifiableList(dto.getIngredients()));
+        if (dto.getSteps() != null) dto.setSteps(Collections.unmodifiableList(dto.getSteps()));
+        return dto;
+    }
+
+    // '' в БД — «посчитать нельзя», клиенту это то же, что отсутствие заглушки
+    private static String placeholder(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
 }
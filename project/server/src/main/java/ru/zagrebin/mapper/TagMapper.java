@@ -2,6 +2,7 @@ package ru.zagrebin.mapper;
 
 import ru.zagrebin.dto.TagDto;
 import ru.zagrebin.model.Tag;
+import ru.zagrebin.repository.projection.DictionaryEntryView;
 
 public final class TagMapper {
     private TagMapper() {}
@@ -16,4 +17,12 @@ public final class TagMapper {
         dto.setColor(t.getColor());
         return dto;
     }
+
+    public static TagDto toDto(DictionaryEntryView v) {
+        TagDto dto = new TagDto();
+        dto.setId(v.getId());
+        dto.setName(v.getName());
+        dto.setColor(v.getColor());
+        return dto;
+    }
 }
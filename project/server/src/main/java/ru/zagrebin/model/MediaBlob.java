@@ -0,0 +1,41 @@
+package ru.zagrebin.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Файл в хранилище с адресацией по содержимому (FileStorageServiceImpl, media.storage-mode: content).
+ */
+@Entity
+@Table(name = "media_blobs")
+@Getter @Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MediaBlob {
+
+    // SHA-256 содержимого, hex
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    // путь относительно media.path
+    @Column(nullable = false)
+    private String path;
+
+    @Column(name = "size_bytes", nullable = false)
+    private long sizeBytes;
+
+    // сколько постов ссылается на файл (обложкой или фото шага)
+    @Column(name = "ref_count", nullable = false)
+    private int refCount;
+
+    @Column(name = "created_at")
+    private OffsetDateTime createdAt;
+
+    // последняя загрузка этих байтов: файл без ссылок не удаляется, пока загрузка свежая
+    @Column(name = "uploaded_at")
+    private OffsetDateTime uploadedAt;
+}
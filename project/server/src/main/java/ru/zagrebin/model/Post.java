@@ -39,6 +39,10 @@ public class Post {
     @Column(name = "cover_url")
     private String coverUrl;
 
+    // BlurHash обложки; '' — посчитать нельзя, null — ещё не посчитан
+    @Column(name = "cover_placeholder", length = 64)
+    private String coverPlaceholder;
+
     @Column(name = "created_at")
     private OffsetDateTime createdAt;
 
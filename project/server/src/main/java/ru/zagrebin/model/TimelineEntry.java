@@ -0,0 +1,25 @@
+package ru.zagrebin.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Строка ленты подписок user_timeline. Пишется и читается native-запросами TimelineRepository,
+ * поэтому связи с User/Post не маппятся — только ключи.
+ */
+@Entity
+@Table(name = "user_timeline")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TimelineEntry {
+
+    @EmbeddedId
+    private TimelineEntryId id;
+
+    @Column(name = "created_at", nullable = false)
+    private OffsetDateTime createdAt;
+}
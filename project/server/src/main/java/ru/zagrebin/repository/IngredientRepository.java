@@ -1,15 +1,23 @@
 package ru.zagrebin.repository;
 
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import ru.zagrebin.model.Ingredient;
+import ru.zagrebin.repository.projection.DictionaryEntryView;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface IngredientRepository extends JpaRepository<Ingredient, Long> {
     Optional<Ingredient> findByName(String name);
-    Page<Ingredient> findByNameContainingIgnoreCase(String name, Pageable pageable);
+
+    @Query(value = """
+        select i.id as "id", i.name as "name", cast(null as varchar) as "color", count(pi.post_id) as "usage"
+        from ingredients i
+        left join post_ingredient pi on pi.ingredient_id = i.id
+        group by i.id
+    """, nativeQuery = true)
+    List<DictionaryEntryView> findDictionaryEntries();
 }
@@ -0,0 +1,75 @@
+package ru.zagrebin.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.zagrebin.model.MediaBlob;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface MediaBlobRepository extends JpaRepository<MediaBlob, String> {
+
+    /**
+     * Те же байты загрузили ещё раз: продлить жизнь файлу без ссылок. Возвращает 1, если файл с таким hash есть, иначе 0.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "update media_blobs set uploaded_at = now() where hash = :hash", nativeQuery = true)
+    int touch(@Param("hash") String hash);
+
+    /**
+     * Новый файл пока без ссылок; если параллельная загрузка успела раньше — только продлить её.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+        insert into media_blobs (hash, path, size_bytes, ref_count, created_at, uploaded_at)
+        values (:hash, :path, :size, 0, now(), now())
+        on conflict (hash) do update set uploaded_at = now()
+    """, nativeQuery = true)
+    int insertOrTouch(@Param("hash") String hash, @Param("path") String path, @Param("size") long size);
+
+    /**
+     * Пост стал ссылаться на файл. Возвращает 1, если файл с таким hash есть, иначе 0.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "update media_blobs set ref_count = ref_count + 1 where hash = :hash", nativeQuery = true)
+    int acquire(@Param("hash") String hash);
+
+    /**
+     * Пост перестал ссылаться на файл.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "update media_blobs set ref_count = ref_count - 1 where hash = :hash and ref_count > 0", nativeQuery = true)
+    int release(@Param("hash") String hash);
+
+    /**
+     * Удалить запись о файле без ссылок, который не загружали повторно дольше graceMs.
+     * Возвращает 1 — файл можно удалять с диска.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+        delete from media_blobs
+        where hash = :hash and ref_count = 0 and uploaded_at <= now() - :graceMs * interval '1 millisecond'
+    """, nativeQuery = true)
+    int deleteUnreferenced(@Param("hash") String hash, @Param("graceMs") long graceMs);
+
+    @Query(value = """
+        select hash from media_blobs
+        where ref_count = 0 and uploaded_at <= now() - :graceMs * interval '1 millisecond'
+        order by uploaded_at
+        limit :limit
+    """, nativeQuery = true)
+    List<String> findUnreferenced(@Param("graceMs") long graceMs, @Param("limit") int limit);
+
+    @Query(value = "select path from media_blobs where hash = :hash", nativeQuery = true)
+    Optional<String> findPathByHash(@Param("hash") String hash);
+}
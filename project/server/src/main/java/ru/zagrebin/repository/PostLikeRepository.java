@@ -1,9 +1,18 @@
 package ru.zagrebin.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.zagrebin.model.PostLike;
 import ru.zagrebin.model.PostLikeId;
+import ru.zagrebin.repository.projection.RemovedLikeView;
+import ru.zagrebin.repository.projection.TrendingSeedView;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface PostLikeRepository extends JpaRepository<PostLike, Long> {
@@ -18,4 +27,79 @@ public interface PostLikeRepository extends JpaRepository<PostLike, Long> {
 
     void deleteById(PostLikeId id);
 
+    /**
+     * Какие из переданных постов лайкнуты пользователем — один запрос по PK (post_id, user_id) на всю страницу.
+     */
+    @Query(value = "select post_id from post_like where user_id = :userId and post_id = any(cast(:postIds as bigint[]))",
+            nativeQuery = true)
+    List<Long> findLikedPostIds(@Param("userId") Long userId, @Param("postIds") Long[] postIds);
+
+    /**
+     * Лайк одним запросом: вставка идемпотентна (on conflict do nothing),
+     * а likes_count увеличивается, только если строка действительно вставилась.
+     * Возвращает статус лайкнутого поста (в тренды идут только опубликованные); пусто — лайк уже стоял.
+     */
+    @Transactional
+    @Query(value = """
+        with ins as (
+            insert into post_like (post_id, user_id, created_at)
+            values (:postId, :userId, now())
+            on conflict (post_id, user_id) do nothing
+            returning post_id
+        )
+        update posts
+        set likes_count = coalesce(likes_count, 0) + 1
+        where id in (select post_id from ins)
+        returning status
+    """, nativeQuery = true)
+    Optional<String> insertLike(@Param("postId") Long postId, @Param("userId") Long userId);
+
+    /**
+     * Снятие лайка одним запросом; likes_count уменьшается (не ниже нуля), только если строка удалена.
+     * Возвращает время удалённого лайка в секундах эпохи (по нему из трендов вычитается его затухший вес)
+     * и статус поста; пусто — лайка не было.
+     */
+    @Transactional
+    @Query(value = """
+        with del as (
+            delete from post_like
+            where post_id = :postId and user_id = :userId
+            returning post_id, created_at
+        ), upd as (
+            update posts
+            set likes_count = greatest(coalesce(likes_count, 0) - 1, 0)
+            where id in (select post_id from del)
+            returning id, status
+        )
+        select cast(extract(epoch from coalesce(del.created_at, now())) as double precision) as "likedAt",
+               upd.status as "status"
+        from del left join upd on upd.id = del.post_id
+    """, nativeQuery = true)
+    Optional<RemovedLikeView> deleteLike(@Param("postId") Long postId, @Param("userId") Long userId);
+
+    /**
+     * Восстановление трендов при старте: каждый лайк весит likeWeight·e^(λ·(created_at − now)),
+     * просмотры без времени считаются по дате поста. Показатель ограничен снизу,
+     * потому что exp() в Postgres падает на underflow.
+     */
+    @Query(value = """
+        select x.post_id as "postId", sum(x.w) as "weight"
+        from (
+            select pl.post_id,
+                   :likeWeight * exp(greatest(:lambda * cast(extract(epoch from (coalesce(pl.created_at, :now) - :now)) as double precision), -700)) as w
+            from post_like pl
+            union all
+            select p.id,
+                   :viewWeight * p.views_count * exp(greatest(:lambda * cast(extract(epoch from (p.created_at - :now)) as double precision), -700))
+            from posts p
+            where p.views_count > 0
+        ) x
+        join posts p on p.id = x.post_id and p.status = 'published'
+        group by x.post_id
+    """, nativeQuery = true)
+    List<TrendingSeedView> findTrendingSeed(@Param("now") OffsetDateTime now,
+                                            @Param("lambda") double lambda,
+                                            @Param("likeWeight") double likeWeight,
+                                            @Param("viewWeight") double viewWeight);
+
 }
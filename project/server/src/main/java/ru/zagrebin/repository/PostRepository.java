@@ -1,54 +1,292 @@
 package ru.zagrebin.repository;
 
+import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.zagrebin.model.Post;
+import ru.zagrebin.repository.projection.PostCardView;
+import ru.zagrebin.repository.projection.PostCoverView;
+import ru.zagrebin.repository.projection.PostIngredientPairView;
+import ru.zagrebin.repository.projection.PostRangeView;
+import ru.zagrebin.repository.projection.PostSearchDocView;
+import ru.zagrebin.repository.projection.PostSearchHitView;
+import ru.zagrebin.repository.projection.PostTagPairView;
+import ru.zagrebin.repository.projection.PostViewsView;
+import ru.zagrebin.repository.projection.TimelineKeyView;
 
 @Repository
 public interface PostRepository extends JpaRepository<Post, Long> {
 
-    @EntityGraph(attributePaths = {"author", "tags"})
-    List<Post> findByStatusOrderByCreatedAtDesc(String status);
+    /**
+     * Колонки карточки (PostCardView). Теги агрегируются коррелированным подзапросом,
+     * поэтому одна строка результата = один пост, без размножения строк join'ом.
+     */
+    String CARD_SELECT = """
+        select p.id as "id",
+               p.title as "title",
+               p.excerpt as "excerpt",
+               p.cover_url as "coverUrl",
+               p.cover_placeholder as "coverPlaceholder",
+               p.post_type as "postType",
+               p.author_id as "authorId",
+               u.display_name as "authorName",
+               p.likes_count as "likesCount",
+               p.views_count as "viewsCount",
+               p.calories as "calories",
+               p.cooking_time_minutes as "cookingTimeMinutes",
+               p.created_at as "createdAt",
+               (select string_agg(t.name, chr(31) order by t.name)
+                  from post_tags pt join tags t on t.id = pt.tag_id
+                 where pt.post_id = p.id) as "tagNames"
+        from posts p
+        join users u on u.id = p.author_id
+        """;
+
+    /**
+     * Полнотекстовый поиск: совпадения по GIN-индексу idx_posts_search_vector, порядок — (ts_rank desc, id desc).
+     * ts_headline дорогой, поэтому считается только для строк страницы во внешнем запросе.
+     */
+    String SEARCH_HITS_WHERE = """
+        with q as (select websearch_to_tsquery('russian', :query) as query),
+        hits as (
+            select p.id, ts_rank(p.search_vector, q.query) as rank, p.title, p.excerpt, p.content
+            from posts p, q
+            where p.search_vector @@ q.query
+              and p.status = :status
+        """;
+
+    String SEARCH_HITS_PAGE = """
+            order by rank desc, p.id desc
+            limit :limit
+        )
+        select h.id as "postId",
+               h.rank as "rank",
+               ts_headline('russian', h.title, q.query,
+                           'HighlightAll=true, StartSel=<mark>, StopSel=</mark>') as "titleHighlight",
+               ts_headline('russian',
+                           concat_ws(' ', h.excerpt, h.content,
+                                     (select string_agg(s.description, ' ' order by s.step_order)
+                                        from recipe_step s where s.post_id = h.id)),
+                           q.query,
+                           'StartSel=<mark>, StopSel=</mark>, MinWords=10, MaxWords=30, MaxFragments=2') as "snippet"
+        from hits h, q
+        order by h.rank desc, h.id desc
+        """;
+
+    @Query(value = SEARCH_HITS_WHERE + SEARCH_HITS_PAGE, nativeQuery = true)
+    List<PostSearchHitView> searchHits(@Param("query") String query,
+                                       @Param("status") String status,
+                                       @Param("limit") int limit);
+
+    /**
+     * Следующая страница поиска: строго после позиции (rank, id) из курсора.
+     */
+    @Query(value = SEARCH_HITS_WHERE + """
+              and (ts_rank(p.search_vector, q.query), p.id) < (cast(:rank as real), :id)
+        """ + SEARCH_HITS_PAGE, nativeQuery = true)
+    List<PostSearchHitView> searchHitsAfter(@Param("query") String query,
+                                            @Param("status") String status,
+                                            @Param("rank") float rank,
+                                            @Param("id") Long id,
+                                            @Param("limit") int limit);
+
+    /**
+     * Первая страница ленты (keyset). Идёт по индексу idx_posts_status_created_at_id.
+     */
+    @Query(value = CARD_SELECT + """
+        where p.status = :status
+        order by p.created_at desc, p.id desc
+        limit :limit
+    """, nativeQuery = true)
+    List<PostCardView> findFeedCards(@Param("status") String status, @Param("limit") int limit);
+
+    /**
+     * Следующая страница ленты: строго после позиции (createdAt, id) из курсора.
+     */
+    @Query(value = CARD_SELECT + """
+        where p.status = :status
+          and (p.created_at, p.id) < (:createdAt, :id)
+        order by p.created_at desc, p.id desc
+        limit :limit
+    """, nativeQuery = true)
+    List<PostCardView> findFeedCardsAfter(@Param("status") String status,
+                                          @Param("createdAt") OffsetDateTime createdAt,
+                                          @Param("id") Long id,
+                                          @Param("limit") int limit);
+
+    /**
+     * Fan-out-on-read: последние опубликованные посты заданных авторов (позиции, без карточек).
+     */
+    @Query(value = """
+        select p.id as "postId", p.created_at as "createdAt"
+        from posts p
+        where p.author_id = any(cast(:authorIds as bigint[])) and p.status = 'published'
+        order by p.created_at desc, p.id desc
+        limit :limit
+    """, nativeQuery = true)
+    List<TimelineKeyView> findPublishedKeysByAuthors(@Param("authorIds") Long[] authorIds, @Param("limit") int limit);
+
+    @Query(value = """
+        select p.id as "postId", p.created_at as "createdAt"
+        from posts p
+        where p.author_id = any(cast(:authorIds as bigint[])) and p.status = 'published'
+          and (p.created_at, p.id) < (:createdAt, :id)
+        order by p.created_at desc, p.id desc
+        limit :limit
+    """, nativeQuery = true)
+    List<TimelineKeyView> findPublishedKeysByAuthorsAfter(@Param("authorIds") Long[] authorIds,
+                                                          @Param("createdAt") OffsetDateTime createdAt,
+                                                          @Param("id") Long id,
+                                                          @Param("limit") int limit);
+
+    /**
+     * Карточки по списку id (порядок не гарантируется — восстанавливает вызывающий).
+     */
+    @Query(value = CARD_SELECT + """
+        where p.id in (:ids)
+    """, nativeQuery = true)
+    List<PostCardView> findCardsByIds(@Param("ids") Collection<Long> ids);
+
+    @Query(value = CARD_SELECT + """
+        where p.id in (:ids) and p.status = :status
+    """, nativeQuery = true)
+    List<PostCardView> findCardsByIdsAndStatus(@Param("ids") Collection<Long> ids, @Param("status") String status);
+
+    /**
+     * Составы всех опубликованных постов, упорядоченные по (post_id, ingredient_id).
+     */
+    @Query(value = """
+        select pi.post_id as "postId", pi.ingredient_id as "ingredientId"
+        from post_ingredient pi
+        join posts p on p.id = pi.post_id
+        where p.status = 'published'
+        order by pi.post_id, pi.ingredient_id
+    """, nativeQuery = true)
+    List<PostIngredientPairView> findPublishedIngredientPairs();
+
+    @Query(value = """
+        select pt.post_id as "postId", pt.tag_id as "tagId"
+        from post_tags pt
+        join posts p on p.id = pt.post_id
+        where p.status = 'published'
+    """, nativeQuery = true)
+    List<PostTagPairView> findPublishedTagPairs();
+
+    /**
+     * Позиции всех опубликованных постов в ленте — для PostFeedOrder.
+     */
+    @Query(value = """
+        select p.id as "postId", p.created_at as "createdAt"
+        from posts p
+        where p.status = 'published'
+    """, nativeQuery = true)
+    List<TimelineKeyView> findPublishedKeys();
+
+    @Query(value = """
+        select p.id as "id", p.calories as "calories", p.cooking_time_minutes as "cookingTimeMinutes"
+        from posts p
+        where p.status = 'published'
+    """, nativeQuery = true)
+    List<PostRangeView> findPublishedRangeValues();
+
+    @Query(value = """
+        select p.id as "id", p.title as "title", p.excerpt as "excerpt",
+               (select string_agg(i.name, chr(31))
+                  from post_ingredient pi join ingredients i on i.id = pi.ingredient_id
+                 where pi.post_id = p.id) as "ingredientNames"
+        from posts p
+        where p.status = 'published'
+    """, nativeQuery = true)
+    List<PostSearchDocView> findPublishedSearchDocs();
 
     @Query("select p.id from Post p where p.status = :status order by p.createdAt desc")
     List<Long> findIdsByStatusOrderByCreatedAtDesc(@Param("status") String status, Pageable pageable);
 
-    @EntityGraph(attributePaths = {"author", "tags", "ingredients", "ingredients.ingredient", "steps"})
-    @Query("select distinct p from Post p where p.id in :ids")
-    List<Post> findAllByIdWithEntityGraph(@Param("ids") List<Long> ids);
-
     long countByStatus(String status);
 
     @Query("""
         select distinct p from Post p
-        left join fetch p.author
+        join fetch p.author
         left join fetch p.tags
+        where p.id = :id
+    """)
+    Optional<Post> findByIdWithAuthorAndTags(@Param("id") Long id);
+
+    @Query("""
+        select distinct p from Post p
         left join fetch p.ingredients pi
         left join fetch pi.ingredient
-        left join fetch p.steps s
         where p.id = :id
     """)
-    Optional<Post> findByIdWithAllRelations(@Param("id") Long id);
-
-    @Modifying
-    @Query("update Post p set p.likesCount = case when p.likesCount is null then 1 else p.likesCount + 1 end where p.id = :postId")
-    void incrementLikesCount(@Param("postId") Long postId);
+    Optional<Post> fetchIngredients(@Param("id") Long id);
 
-    @Modifying
     @Query("""
-        update Post p
-        set p.likesCount = case
-            when p.likesCount is null or p.likesCount <= 0 then 0
-            else p.likesCount - 1
-        end
-        where p.id = :postId
+        select distinct p from Post p
+        left join fetch p.steps
+        where p.id = :id
     """)
-    void decrementLikesCount(@Param("postId") Long postId);
+    Optional<Post> fetchSteps(@Param("id") Long id);
+
+    /**
+     * Полный пост со всеми связями. Каждая коллекция догружается своим запросом
+     * в тот же persistence context: строк выходит tags + ingredients + steps,
+     * а не их произведение, как при одном join fetch по всем трём коллекциям.
+     * Вызывать внутри транзакции — иначе запросы попадут в разные сессии.
+     */
+    @Transactional
+    default Optional<Post> findByIdWithAllRelations(Long id) {
+        Optional<Post> post = findByIdWithAuthorAndTags(id);
+        if (post.isPresent()) {
+            fetchIngredients(id);
+            fetchSteps(id);
+        }
+        return post;
+    }
+
+    /**
+     * Пакетное применение накопленных просмотров: один UPDATE на весь сброс.
+     * ids[i] получает прибавку deltas[i]; возвращает новые views_count (удалённых постов в ответе нет).
+     * Вызывается в транзакции сброса PostViewCounter.
+     */
+    @Query(value = """
+        update posts p
+        set views_count = coalesce(p.views_count, 0) + d.delta
+        from unnest(cast(:ids as bigint[]), cast(:deltas as bigint[])) as d(id, delta)
+        where p.id = d.id
+        returning p.id as "id", p.views_count as "viewsCount"
+    """, nativeQuery = true)
+    List<PostViewsView> addViews(@Param("ids") Long[] ids, @Param("deltas") Long[] deltas);
+
+    /**
+     * Посты с обложкой, для которой ещё не посчитана заглушка (частичный индекс idx_posts_cover_placeholder_missing).
+     */
+    @Query(value = """
+        select p.id as "id", p.cover_url as "coverUrl"
+        from posts p
+        where p.cover_url is not null and p.cover_placeholder is null
+        order by p.id
+        limit :limit
+    """, nativeQuery = true)
+    List<PostCoverView> findCoversWithoutPlaceholder(@Param("limit") int limit);
+
+    /**
+     * Записать заглушку, если обложку не сменили, пока она считалась.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+        update posts
+        set cover_placeholder = :placeholder
+        where id = :id and cover_url = :coverUrl
+    """, nativeQuery = true)
+    int setCoverPlaceholder(@Param("id") Long id, @Param("coverUrl") String coverUrl,
+                            @Param("placeholder") String placeholder);
 }
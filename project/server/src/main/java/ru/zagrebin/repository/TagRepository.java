@@ -1,16 +1,26 @@
 package ru.zagrebin.repository;
 
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import ru.zagrebin.model.Tag;
+import ru.zagrebin.repository.projection.DictionaryEntryView;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface TagRepository extends JpaRepository<Tag, Long> {
     Optional<Tag> findByName(String name);
     Optional<Tag> findBySlug(String slug);
-    Page<Tag> findByNameContainingIgnoreCase(String name, Pageable pageable);
+    List<Tag> findBySlugIn(Collection<String> slugs);
+
+    @Query(value = """
+        select t.id as "id", t.name as "name", t.color as "color", count(pt.post_id) as "usage"
+        from tags t
+        left join post_tags pt on pt.tag_id = t.id
+        group by t.id
+    """, nativeQuery = true)
+    List<DictionaryEntryView> findDictionaryEntries();
 }
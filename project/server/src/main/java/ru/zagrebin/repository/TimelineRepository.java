@@ -0,0 +1,94 @@
+package ru.zagrebin.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.zagrebin.model.TimelineEntry;
+import ru.zagrebin.model.TimelineEntryId;
+import ru.zagrebin.repository.projection.TimelineKeyView;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+@Repository
+public interface TimelineRepository extends JpaRepository<TimelineEntry, TimelineEntryId> {
+
+    /**
+     * Последние записи ленты пользователя (новые сверху) — содержимое буфера в памяти.
+     */
+    @Query(value = """
+        select t.post_id as "postId", t.created_at as "createdAt"
+        from user_timeline t
+        where t.user_id = :userId
+        order by t.created_at desc, t.post_id desc
+        limit :limit
+    """, nativeQuery = true)
+    List<TimelineKeyView> findLatest(@Param("userId") Long userId, @Param("limit") int limit);
+
+    /**
+     * Fan-out одного поста всем переданным подписчикам одним INSERT ... SELECT unnest.
+     * Повторная публикация не дублирует строки.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+        insert into user_timeline (user_id, post_id, created_at)
+        select u.id, :postId, :createdAt
+        from unnest(cast(:userIds as bigint[])) as u(id)
+        on conflict (user_id, post_id) do nothing
+    """, nativeQuery = true)
+    int fanOut(@Param("userIds") Long[] userIds,
+               @Param("postId") Long postId,
+               @Param("createdAt") OffsetDateTime createdAt);
+
+    /**
+     * Новая подписка: последние опубликованные посты автора сразу в ленту подписчика.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+        insert into user_timeline (user_id, post_id, created_at)
+        select :userId, p.id, p.created_at
+        from posts p
+        where p.author_id = :authorId and p.status = 'published'
+        order by p.created_at desc, p.id desc
+        limit :limit
+        on conflict (user_id, post_id) do nothing
+    """, nativeQuery = true)
+    int backfillAuthor(@Param("userId") Long userId, @Param("authorId") Long authorId, @Param("limit") int limit);
+
+    @Transactional
+    @Modifying
+    @Query(value = """
+        delete from user_timeline t
+        using posts p
+        where t.post_id = p.id and t.user_id = :userId and p.author_id = :authorId
+    """, nativeQuery = true)
+    int deleteAuthorEntries(@Param("userId") Long userId, @Param("authorId") Long authorId);
+
+    @Transactional
+    @Modifying
+    @Query(value = "delete from user_timeline where post_id = :postId", nativeQuery = true)
+    int deleteByPostId(@Param("postId") Long postId);
+
+    /**
+     * Срезать ленты до capacity последних записей на пользователя.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+        delete from user_timeline t
+        using (
+            select user_id, post_id
+            from (select user_id, post_id,
+                         row_number() over (partition by user_id order by created_at desc, post_id desc) as rn
+                  from user_timeline) ranked
+            where ranked.rn > :capacity
+        ) extra
+        where t.user_id = extra.user_id and t.post_id = extra.post_id
+    """, nativeQuery = true)
+    int trim(@Param("capacity") int capacity);
+}
@@ -1,9 +1,14 @@
 package ru.zagrebin.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.zagrebin.model.User;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -12,4 +17,44 @@ public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByEmail(String email);
     boolean existsByUsername(String username);
     boolean existsByEmail(String email);
+
+    // проверка подписки одной строкой по PK user_subscriptions, без загрузки коллекции subscriptions
+    @Query(value = "select exists(select 1 from user_subscriptions where subscriber_id = :subscriberId and subscribed_to_id = :authorId)",
+            nativeQuery = true)
+    boolean existsSubscription(@Param("subscriberId") Long subscriberId, @Param("authorId") Long authorId);
+
+    // id авторов, на которых подписан пользователь, по возрастанию — для SubscriptionIndex
+    @Query(value = "select subscribed_to_id from user_subscriptions where subscriber_id = :subscriberId order by subscribed_to_id limit :limit",
+            nativeQuery = true)
+    List<Long> findSubscribedToIds(@Param("subscriberId") Long subscriberId, @Param("limit") int limit);
+
+    // на кого из authorIds подписан пользователь — для хвоста неполного массива SubscriptionIndex
+    @Query(value = "select subscribed_to_id from user_subscriptions where subscriber_id = :subscriberId and subscribed_to_id = any(cast(:authorIds as bigint[]))",
+            nativeQuery = true)
+    List<Long> findSubscribedToIdsAmong(@Param("subscriberId") Long subscriberId, @Param("authorIds") Long[] authorIds);
+
+    // подписчики автора для fan-out ленты; limit = порог + 1, чтобы узнать, что порог превышен
+    @Query(value = "select subscriber_id from user_subscriptions where subscribed_to_id = :authorId limit :limit",
+            nativeQuery = true)
+    List<Long> findSubscriberIds(@Param("authorId") Long authorId, @Param("limit") int limit);
+
+    // авторы, чьи посты не раскладываются по лентам, а подмешиваются при чтении
+    @Query(value = "select subscribed_to_id from user_subscriptions group by subscribed_to_id having count(*) > :threshold",
+            nativeQuery = true)
+    List<Long> findAuthorIdsWithMoreSubscribersThan(@Param("threshold") int threshold);
+
+    @Transactional
+    @Modifying
+    @Query(value = """
+        insert into user_subscriptions (subscriber_id, subscribed_to_id, created_at)
+        values (:subscriberId, :authorId, now())
+        on conflict (subscriber_id, subscribed_to_id) do nothing
+    """, nativeQuery = true)
+    int insertSubscription(@Param("subscriberId") Long subscriberId, @Param("authorId") Long authorId);
+
+    @Transactional
+    @Modifying
+    @Query(value = "delete from user_subscriptions where subscriber_id = :subscriberId and subscribed_to_id = :authorId",
+            nativeQuery = true)
+    int deleteSubscription(@Param("subscriberId") Long subscriberId, @Param("authorId") Long authorId);
 }
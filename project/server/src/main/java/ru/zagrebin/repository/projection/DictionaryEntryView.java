@@ -0,0 +1,16 @@
+package ru.zagrebin.repository.projection;
+
+/**
+ * Запись словаря (тег или ингредиент) с числом постов, где она используется, — для DictionaryIndex.
+ * У ингредиентов color всегда null.
+ */
+public interface DictionaryEntryView {
+
+    Long getId();
+
+    String getName();
+
+    String getColor();
+
+    Long getUsage();
+}
@@ -0,0 +1,40 @@
+package ru.zagrebin.repository.projection;
+
+import java.time.Instant;
+
+/**
+ * Плоская строка карточки поста (native-проекция, без гидрации Post).
+ * Имена тегов приходят одной строкой, склеенной через {@link #TAG_SEPARATOR}.
+ */
+public interface PostCardView {
+
+    String TAG_SEPARATOR = "\u001F";
+
+    Long getId();
+
+    String getTitle();
+
+    String getExcerpt();
+
+    String getCoverUrl();
+
+    String getCoverPlaceholder();
+
+    String getPostType();
+
+    Long getAuthorId();
+
+    String getAuthorName();
+
+    Integer getLikesCount();
+
+    Long getViewsCount();
+
+    Integer getCalories();
+
+    Integer getCookingTimeMinutes();
+
+    Instant getCreatedAt();
+
+    String getTagNames();
+}
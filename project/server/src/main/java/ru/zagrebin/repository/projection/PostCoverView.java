@@ -0,0 +1,11 @@
+package ru.zagrebin.repository.projection;
+
+/**
+ * Пост и URL его обложки — для досчёта заглушек обложек.
+ */
+public interface PostCoverView {
+
+    Long getId();
+
+    String getCoverUrl();
+}
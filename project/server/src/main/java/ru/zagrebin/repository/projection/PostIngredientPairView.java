@@ -0,0 +1,11 @@
+package ru.zagrebin.repository.projection;
+
+/**
+ * Пара (пост, ингредиент) из post_ingredient — для построения индексов по составу.
+ */
+public interface PostIngredientPairView {
+
+    Long getPostId();
+
+    Long getIngredientId();
+}
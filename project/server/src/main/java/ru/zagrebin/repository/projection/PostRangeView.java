@@ -0,0 +1,13 @@
+package ru.zagrebin.repository.projection;
+
+/**
+ * Числовые поля поста для RecipeRangeIndex.
+ */
+public interface PostRangeView {
+
+    Long getId();
+
+    Integer getCalories();
+
+    Integer getCookingTimeMinutes();
+}
@@ -0,0 +1,15 @@
+package ru.zagrebin.repository.projection;
+
+/**
+ * Текст поста для PostSearchIndex: заголовок, анонс и названия ингредиентов (разделитель chr(31)).
+ */
+public interface PostSearchDocView {
+
+    Long getId();
+
+    String getTitle();
+
+    String getExcerpt();
+
+    String getIngredientNames();
+}
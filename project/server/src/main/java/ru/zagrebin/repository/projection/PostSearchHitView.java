@@ -0,0 +1,15 @@
+package ru.zagrebin.repository.projection;
+
+/**
+ * Совпадение полнотекстового поиска: ts_rank и подсвеченные фрагменты (ts_headline), без карточки.
+ */
+public interface PostSearchHitView {
+
+    Long getPostId();
+
+    Float getRank();
+
+    String getTitleHighlight();
+
+    String getSnippet();
+}
@@ -0,0 +1,11 @@
+package ru.zagrebin.repository.projection;
+
+/**
+ * Пара (пост, тег) из post_tags — для построения TagFacetIndex.
+ */
+public interface PostTagPairView {
+
+    Long getPostId();
+
+    Long getTagId();
+}
@@ -0,0 +1,11 @@
+package ru.zagrebin.repository.projection;
+
+/**
+ * Пост и его views_count сразу после прибавки просмотров.
+ */
+public interface PostViewsView {
+
+    Long getId();
+
+    Long getViewsCount();
+}
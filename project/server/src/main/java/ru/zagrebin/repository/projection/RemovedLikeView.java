@@ -0,0 +1,11 @@
+package ru.zagrebin.repository.projection;
+
+/**
+ * Снятый лайк: его время в секундах эпохи и статус поста, с которого он снят.
+ */
+public interface RemovedLikeView {
+
+    Double getLikedAt();
+
+    String getStatus();
+}
@@ -0,0 +1,13 @@
+package ru.zagrebin.repository.projection;
+
+import java.time.Instant;
+
+/**
+ * Позиция поста в ленте подписок: (createdAt, postId) без остальных колонок.
+ */
+public interface TimelineKeyView {
+
+    Long getPostId();
+
+    Instant getCreatedAt();
+}
@@ -0,0 +1,11 @@
+package ru.zagrebin.repository.projection;
+
+/**
+ * Начальный вес поста для TrendingScores: сумма затухших к заданному моменту лайков и просмотров.
+ */
+public interface TrendingSeedView {
+
+    Long getPostId();
+
+    Double getWeight();
+}
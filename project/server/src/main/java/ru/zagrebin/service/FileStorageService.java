@@ -2,6 +2,8 @@ package ru.zagrebin.service;
 
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
 
 public interface FileStorageService {
@@ -11,10 +13,40 @@ public interface FileStorageService {
     String store(MultipartFile file, String targetSubdir);
 
     /**
-     * Удалить файл (по URL/пути). Возвращает true если файл был удалён.
+     * Сохранить файл из потока (тело запроса без multipart). originalFilename нужен только ради расширения.
+     * Больше maxBytes — UploadTooLargeException, записанное удаляется.
+     */
+    String store(InputStream body, String originalFilename, String targetSubdir, long maxBytes);
+
+    /**
+     * Пустой временный файл на том же диске, что и хранилище, — чтобы потом отдать его в store(Path, ...).
+     */
+    Path createTempFile() throws IOException;
+
+    /**
+     * Сохранить целиком записанный временный файл (из createTempFile) так же, как store из потока;
+     * файл перемещается на место или удаляется. sha256 — хэш содержимого, если уже посчитан, иначе null.
+     */
+    String store(Path tempFile, String originalFilename, String targetSubdir, byte[] sha256);
+
+    /**
+     * Пост стал ссылаться на файл (обложкой или фото шага). Для media.storage-mode: content
+     * увеличивает счётчик ссылок: файл без ссылок удаляется, когда истекает срок свежей загрузки.
+     */
+    void attach(String fileUrl);
+
+    /**
+     * Пост перестал ссылаться на файл (по URL/пути). Возвращает true, если ссылка снята или файл удаляется.
+     * С диска файл удаляется только после коммита текущей транзакции: при откате пост не останется без файла.
+     * Для media.storage-mode: content снимается одна ссылка, файл уходит вместе с последней.
      */
     boolean delete(String fileUrl);
 
+    /**
+     * Файл на диске за публичным URL (как его вернул store), либо null — URL не из этого хранилища.
+     */
+    Path resolveUrl(String fileUrl);
+
     /**
      * Полезный метод: вернуть абсолютный путь на диске для заданного relativePath
      */
@@ -0,0 +1,16 @@
+package ru.zagrebin.service;
+
+/**
+ * Параметр запроса, который клиент передал неверно: битый курсор, неизвестный режим.
+ * Сообщение составляется здесь же и уходит клиенту в detail ответа 400, поэтому в нём только сам параметр.
+ */
+public class InvalidRequestParameterException extends IllegalArgumentException {
+
+    public InvalidRequestParameterException(String message) {
+        super(message);
+    }
+
+    public InvalidRequestParameterException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
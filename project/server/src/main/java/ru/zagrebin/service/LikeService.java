@@ -1,5 +1,8 @@
 package ru.zagrebin.service;
 
+import java.util.Collection;
+import java.util.Set;
+
 public interface LikeService {
     // поставить лайк (возвращает true если поставлен успешно, false если уже стоял)
     boolean like(Long postId, Long userId);
@@ -10,6 +13,9 @@ public interface LikeService {
     // проверить, залайкнул ли пользователь пост
     boolean isLiked(Long postId, Long userId);
 
+    // какие из постов залайканы пользователем (для списков — одним запросом, не isLiked на каждый)
+    Set<Long> findLikedPostIds(Collection<Long> postIds, Long userId);
+
     // получить количество лайков (обычно можно брать из post.likesCount, но иногда полезно считать)
     long countLikes(Long postId);
 }
\ No newline at end of file
@@ -1,15 +1,48 @@
 package ru.zagrebin.service;
 
-import java.util.List;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import ru.zagrebin.dto.PostCardDto;
+import ru.zagrebin.dto.PostSearchHitDto;
+import ru.zagrebin.dto.PostSuggestionDto;
 import ru.zagrebin.dto.PostCreateDto;
 import ru.zagrebin.dto.PostFullDto;
 import ru.zagrebin.dto.PostUpdateDto;
+import ru.zagrebin.service.facet.PostFilter;
+import ru.zagrebin.service.pagination.CursorPage;
+import ru.zagrebin.service.pagination.FacetedCursorPage;
+import ru.zagrebin.service.pantry.PantryMode;
+
+import java.util.List;
 
 public interface PostService {
-    List<PostCardDto> getAllPublishedPosts();
+    // cursor == null — первая страница; иначе значение nextCursor с предыдущей страницы.
+    // currentUserId != null — проставить isLiked в карточках
+    CursorPage<PostCardDto> getPublishedFeed(String cursor, int limit, Long currentUserId);
+
+    // лента с фильтром (теги, калории, время приготовления) и счётчиками тегов в отфильтрованной выборке
+    FacetedCursorPage<PostCardDto> getPublishedFeedFiltered(PostFilter filter, String cursor, int limit,
+                                                            Long currentUserId);
+
+    // посты авторов, на которых подписан userId (новые сверху), курсор как у getPublishedFeed
+    CursorPage<PostCardDto> getFollowingFeed(Long userId, String cursor, int limit);
+
+    // популярные опубликованные посты (лайки и просмотры с затуханием), самые популярные первыми
+    List<PostCardDto> getTrending(int limit, Long currentUserId);
+
+    // опубликованные рецепты с похожим набором ингредиентов, самые похожие первыми
+    List<PostCardDto> getRelated(Long postId, int limit, Long currentUserId);
+
+    // рецепты, которые можно приготовить из ingredientIds (см. PantryMode); курсор — id последней карточки
+    CursorPage<PostCardDto> getByPantry(List<Long> ingredientIds, PantryMode mode, int maxMissing,
+                                        String cursor, int limit, Long currentUserId);
+
+    // полнотекстовый поиск по опубликованным постам, самые релевантные первыми; курсор — SearchCursor
+    CursorPage<PostSearchHitDto> search(String query, String cursor, int limit, Long currentUserId);
+
+    // подсказки по мере набора: опубликованные посты, где каждое слово запроса — начало слова заголовка,
+    // анонса или ингредиента; из индекса в памяти, без запросов к БД
+    List<PostSuggestionDto> suggest(String query, int limit);
 
     Page<PostCardDto> getPostsPageByStatus(String status, Pageable pageable);
 
@@ -0,0 +1,12 @@
+package ru.zagrebin.service;
+
+public interface SubscriptionService {
+    // подписаться на автора (true если подписка создана, false если уже была)
+    boolean subscribe(Long subscriberId, Long authorId);
+
+    // отписаться (true если подписка удалена, false если её не было)
+    boolean unsubscribe(Long subscriberId, Long authorId);
+
+    // подписан ли пользователь на автора — из SubscriptionIndex, без обращения к User.subscriptions
+    boolean isSubscribed(Long subscriberId, Long authorId);
+}
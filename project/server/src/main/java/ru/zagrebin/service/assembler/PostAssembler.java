@@ -42,6 +42,7 @@ public class PostAssembler {
         post.setTitle(dto.getTitle());
         post.setExcerpt(dto.getExcerpt());
         post.setContent(dto.getContent());
+        // cover_placeholder остаётся null: картинку в транзакции не декодируем, заглушку досчитает CoverPlaceholderBackfill
         post.setCoverUrl(dto.getCoverUrl());
         post.setCookingTimeMinutes(dto.getCookingTimeMinutes());
         post.setCalories(dto.getCalories());
@@ -113,6 +114,10 @@ public class PostAssembler {
         post.setTitle(dto.getTitle());
         post.setExcerpt(dto.getExcerpt());
         post.setContent(dto.getContent());
+        // обложку сменили — старая заглушка сбрасывается, новую досчитает CoverPlaceholderBackfill
+        if (!Objects.equals(post.getCoverUrl(), dto.getCoverUrl())) {
+            post.setCoverPlaceholder(null);
+        }
         post.setCoverUrl(dto.getCoverUrl());
         post.setCookingTimeMinutes(dto.getCookingTimeMinutes());
         post.setCalories(dto.getCalories());
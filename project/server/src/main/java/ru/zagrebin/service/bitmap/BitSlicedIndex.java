@@ -0,0 +1,100 @@
+package ru.zagrebin.service.bitmap;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bit-sliced индекс неотрицательного целого значения поста: j-й срез — битмап постов,
+ * у которых в значении выставлен j-й бит. Диапазонный запрос — O(число срезов) операций
+ * над битмапами, независимо от того, сколько постов в него попадает; изменение поста — тоже O(срезов).
+ * Не потокобезопасен: синхронизацию обеспечивает владелец.
+ */
+public class BitSlicedIndex {
+
+    private final List<RoaringBitmap> slices = new ArrayList<>();
+    private final RoaringBitmap present = new RoaringBitmap();
+
+    public void put(int postId, int value) {
+        if (value < 0) throw new IllegalArgumentException("value must be non-negative: " + value);
+        remove(postId);
+        present.add(postId);
+        for (int j = 0; (value >>> j) != 0; j++) {
+            while (slices.size() <= j) slices.add(new RoaringBitmap());
+            if (((value >>> j) & 1) == 1) slices.get(j).add(postId);
+        }
+    }
+
+    public void remove(int postId) {
+        if (!present.checkedRemove(postId)) return;
+        for (RoaringBitmap slice : slices) slice.remove(postId);
+    }
+
+    /**
+     * Значение поста или null, если его нет; O(срезов).
+     */
+    public Integer get(int postId) {
+        if (!present.contains(postId)) return null;
+        int value = 0;
+        for (int j = 0; j < slices.size(); j++) {
+            if (slices.get(j).contains(postId)) value |= 1 << j;
+        }
+        return value;
+    }
+
+    public void clear() {
+        slices.clear();
+        present.clear();
+    }
+
+    public void optimize() {
+        slices.forEach(RoaringBitmap::runOptimize);
+        present.runOptimize();
+    }
+
+    /**
+     * Посты со значением в [min, max]; null — граница не задана. Возвращает новый битмап.
+     */
+    public RoaringBitmap between(Integer min, Integer max) {
+        RoaringBitmap result = min == null ? present.clone() : atLeast(min);
+        if (max != null) result.and(atMost(max));
+        return result;
+    }
+
+    private RoaringBitmap atLeast(int c) {
+        if (c <= 0) return present.clone();
+        if (slices.size() < 31 && c >= (1 << slices.size())) return new RoaringBitmap();
+        RoaringBitmap gt = new RoaringBitmap();
+        RoaringBitmap eq = present.clone();
+        for (int j = slices.size() - 1; j >= 0; j--) {
+            RoaringBitmap slice = slices.get(j);
+            if (((c >>> j) & 1) == 1) {
+                eq.and(slice);
+            } else {
+                gt.or(RoaringBitmap.and(eq, slice));
+                eq.andNot(slice);
+            }
+        }
+        gt.or(eq);
+        return gt;
+    }
+
+    private RoaringBitmap atMost(int c) {
+        if (c < 0) return new RoaringBitmap();
+        if (slices.size() < 31 && c >= (1 << slices.size()) - 1) return present.clone();
+        RoaringBitmap lt = new RoaringBitmap();
+        RoaringBitmap eq = present.clone();
+        for (int j = slices.size() - 1; j >= 0; j--) {
+            RoaringBitmap slice = slices.get(j);
+            if (((c >>> j) & 1) == 1) {
+                lt.or(RoaringBitmap.andNot(eq, slice));
+                eq.and(slice);
+            } else {
+                eq.andNot(slice);
+            }
+        }
+        lt.or(eq);
+        return lt;
+    }
+}
@@ -0,0 +1,210 @@
+package ru.zagrebin.service.bitmap;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Инвертированный индекс «ключ (ингредиент, тег) → Roaring-битмап id постов» плюс обратное
+ * отображение пост → ключи, чтобы заменять и удалять пост без полного пересчёта.
+ * RoaringBitmap не потокобезопасен: запросы выполняются под read-lock и только читают общие
+ * битмапы (операции and/or создают новые), изменения — под write-lock.
+ * Id постов хранятся как int: bigserial posts.id за пределы int на практике не выходит,
+ * а выход ловится Math.toIntExact при индексации.
+ * Пересборка из БД идёт при обслуживании запросов: put/remove между beginLoad и load переживают
+ * загрузку выборки, в которой эти посты уже устарели.
+ */
+public class PostBitmapIndex {
+
+    private static final long[] NONE = new long[0];
+    private static final RoaringBitmap EMPTY = new RoaringBitmap();
+
+    private final Map<Long, RoaringBitmap> byKey = new HashMap<>();
+    // число ключей поста -> посты с таким числом (для запросов «не хватает не больше N»)
+    private final Map<Integer, RoaringBitmap> bySize = new HashMap<>();
+    private final Map<Integer, long[]> keysByPost = new HashMap<>();
+    private final RoaringBitmap all = new RoaringBitmap();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // посты, изменённые после beginLoad: в выборке для load они устарели; null — пересборка не идёт
+    private Set<Integer> changedDuringLoad;
+    // растёт при каждом изменении: по нему читатели узнают, что посчитанное по индексу устарело
+    private long version;
+
+    /**
+     * Заменить ключи поста; пустой набор убирает пост из индекса.
+     */
+    public void put(long postId, Collection<Long> keys) {
+        int id = Math.toIntExact(postId);
+        long[] next = keys.stream().filter(Objects::nonNull).mapToLong(Long::longValue).distinct().sorted().toArray();
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+            version++;
+            if (changedDuringLoad != null) changedDuringLoad.add(id);
+            if (next.length == 0) return;
+            addLocked(id, next);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long postId) {
+        int id = Math.toIntExact(postId);
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+            version++;
+            if (changedDuringLoad != null) changedDuringLoad.add(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Вызвать перед запросом выборки для load: изменения постов с этого момента load не затрёт.
+     */
+    public void beginLoad() {
+        lock.writeLock().lock();
+        try {
+            changedDuringLoad = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Выборку для load получить не удалось: индекс остаётся как есть.
+     */
+    public void abortLoad() {
+        lock.writeLock().lock();
+        try {
+            changedDuringLoad = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Загрузить индекс целиком из пар (пост, ключ); существующее содержимое заменяется.
+     * Посты, изменённые после beginLoad, берутся из текущего индекса, а не из выборки.
+     */
+    public void load(Map<Long, ? extends Collection<Long>> keysByPostId) {
+        lock.writeLock().lock();
+        try {
+            Set<Integer> changed = changedDuringLoad != null ? changedDuringLoad : Collections.emptySet();
+            Map<Integer, long[]> current = new HashMap<>();
+            for (int id : changed) {
+                long[] keys = keysByPost.get(id);
+                if (keys != null) current.put(id, keys);
+            }
+            changedDuringLoad = null;
+            version++;
+            byKey.clear();
+            keysByPost.clear();
+            all.clear();
+            bySize.clear();
+            keysByPostId.forEach((postId, keys) -> {
+                int id = Math.toIntExact(postId);
+                if (changed.contains(id)) return;
+                long[] arr = keys.stream().filter(Objects::nonNull).mapToLong(Long::longValue).distinct().sorted().toArray();
+                if (arr.length > 0) addLocked(id, arr);
+            });
+            current.forEach(this::addLocked);
+            byKey.values().forEach(RoaringBitmap::runOptimize);
+            bySize.values().forEach(RoaringBitmap::runOptimize);
+            all.runOptimize();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Выполнить запрос над индексом под read-lock. Внутри можно читать bitmap()/all()/withSize()/keys(),
+     * но не изменять возвращённые ими битмапы.
+     */
+    public <T> T read(Function<PostBitmapIndex, T> query) {
+        lock.readLock().lock();
+        try {
+            return query.apply(this);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // --- только внутри read(...) ---
+
+    public RoaringBitmap bitmap(long key) {
+        RoaringBitmap b = byKey.get(key);
+        return b != null ? b : EMPTY;
+    }
+
+    public RoaringBitmap all() {
+        return all;
+    }
+
+    public RoaringBitmap withSize(int size) {
+        RoaringBitmap b = bySize.get(size);
+        return b != null ? b : EMPTY;
+    }
+
+    public Set<Integer> sizes() {
+        return Collections.unmodifiableSet(bySize.keySet());
+    }
+
+    public long[] keys(int postId) {
+        return keysByPost.getOrDefault(postId, NONE);
+    }
+
+    public Set<Long> keySet() {
+        return Collections.unmodifiableSet(byKey.keySet());
+    }
+
+    public long version() {
+        return version;
+    }
+
+    /**
+     * До limit id из битмапа по убыванию, строго меньше before (null — с самого большого).
+     */
+    public static List<Long> pageDesc(RoaringBitmap bitmap, Long before, int limit) {
+        List<Long> out = new ArrayList<>(limit);
+        long from = before == null ? Integer.MAX_VALUE : before - 1;
+        if (from < 0) return out;
+        long v = bitmap.previousValue((int) Math.min(from, Integer.MAX_VALUE));
+        while (v >= 0 && out.size() < limit) {
+            out.add(v);
+            if (v == 0) break;
+            v = bitmap.previousValue((int) v - 1);
+        }
+        return out;
+    }
+
+    private void addLocked(int id, long[] keys) {
+        for (long key : keys) {
+            byKey.computeIfAbsent(key, k -> new RoaringBitmap()).add(id);
+        }
+        bySize.computeIfAbsent(keys.length, k -> new RoaringBitmap()).add(id);
+        keysByPost.put(id, keys);
+        all.add(id);
+    }
+
+    private void removeLocked(int id) {
+        long[] old = keysByPost.remove(id);
+        if (old == null) return;
+        for (long key : old) {
+            RoaringBitmap b = byKey.get(key);
+            if (b == null) continue;
+            b.remove(id);
+            if (b.isEmpty()) byKey.remove(key);
+        }
+        RoaringBitmap sized = bySize.get(old.length);
+        if (sized != null) {
+            sized.remove(id);
+            if (sized.isEmpty()) bySize.remove(old.length);
+        }
+        all.remove(id);
+    }
+}
@@ -0,0 +1,113 @@
+package ru.zagrebin.service.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.zagrebin.dto.PostFullDto;
+import ru.zagrebin.dto.PostIngredientDto;
+import ru.zagrebin.dto.RecipeStepDto;
+import ru.zagrebin.dto.TagDto;
+import ru.zagrebin.mapper.PostMapper;
+import ru.zagrebin.service.tx.TransactionHooks;
+
+import java.util.function.Function;
+
+/**
+ * Кэш пользовательски-независимой части PostFullDto (isLiked/isSubscribed = false).
+ * Ограничен оценкой занимаемой памяти, а не числом записей: рецепт с длинным content
+ * и десятками шагов весит на порядки больше короткого поста.
+ * Записи, лежащие в кэше, наружу не отдаются — только копии через PostMapper.withViewer.
+ * Статистика: /actuator/metrics/cache.gets?tag=cache:posts.full (+ cache.evictions, cache.size).
+ */
+@Component
+public class PostFullCache {
+
+    public static final String NAME = "posts.full";
+
+    private final Cache<Long, PostFullDto> cache;
+
+    public PostFullCache(@Value("${posts.cache.max-bytes:67108864}") long maxBytes,
+                         MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Long id, PostFullDto dto) -> estimateBytes(dto))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, NAME);
+    }
+
+    /**
+     * Базовый DTO поста: из кэша или через loader (loader может вернуть null — тогда ничего не кэшируем).
+     */
+    public PostFullDto get(Long postId, Function<Long, PostFullDto> loader) {
+        return cache.get(postId, id -> {
+            PostFullDto dto = loader.apply(id);
+            return dto == null ? null : PostMapper.freeze(dto);
+        });
+    }
+
+    public void invalidate(Long postId) {
+        cache.invalidate(postId);
+    }
+
+    /**
+     * Инвалидация после коммита текущей транзакции: до коммита другие потоки
+     * ещё читают старое состояние и могли бы закэшировать его заново.
+     */
+    public void invalidateAfterCommit(Long postId) {
+        TransactionHooks.afterCommit(() -> invalidate(postId));
+    }
+
+    /**
+     * Сдвинуть счётчик лайков в закэшированной записи (после коммита), не выбрасывая её.
+     */
+    public void adjustLikesAfterCommit(Long postId, int delta) {
+        TransactionHooks.afterCommit(() -> cache.asMap().computeIfPresent(postId, (id, dto) -> {
+            PostFullDto copy = PostMapper.withViewer(dto, false, false);
+            copy.setLikesCount(Math.max(0, dto.getLikesCount() + delta));
+            return PostMapper.freeze(copy);
+        }));
+    }
+
+    /**
+     * Поднять views_count записи до значения, записанного в БД счётчиком PostViewCounter.
+     * Значение абсолютное, а не прибавка: запись, загруженная уже после записи в БД, не увеличится второй раз.
+     */
+    public void raiseViews(Long postId, long views) {
+        cache.asMap().computeIfPresent(postId, (id, dto) -> {
+            if (dto.getViewsCount() >= views) return dto;
+            PostFullDto copy = PostMapper.withViewer(dto, false, false);
+            copy.setViewsCount(views);
+            return PostMapper.freeze(copy);
+        });
+    }
+
+    /**
+     * Грубая оценка размера DTO в куче: строки по 2 байта на символ плюс накладные расходы объектов.
+     */
+    static int estimateBytes(PostFullDto dto) {
+        long bytes = 256;
+        bytes += chars(dto.getTitle()) + chars(dto.getExcerpt()) + chars(dto.getContent()) + chars(dto.getCoverUrl())
+                + chars(dto.getCoverPlaceholder());
+        if (dto.getAuthor() != null) {
+            bytes += 64 + chars(dto.getAuthor().getDisplayName()) + chars(dto.getAuthor().getAvatarUrl());
+        }
+        if (dto.getTags() != null) {
+            for (TagDto t : dto.getTags()) bytes += 64 + chars(t.getName()) + chars(t.getColor());
+        }
+        if (dto.getIngredients() != null) {
+            for (PostIngredientDto i : dto.getIngredients()) bytes += 80 + chars(i.getIngredientName()) + chars(i.getUnit());
+        }
+        if (dto.getSteps() != null) {
+            for (RecipeStepDto s : dto.getSteps()) bytes += 64 + chars(s.getDescription()) + chars(s.getImageUrl());
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    private static long chars(String s) {
+        return s == null ? 0 : 40 + 2L * s.length();
+    }
+}
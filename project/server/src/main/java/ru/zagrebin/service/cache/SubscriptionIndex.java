@@ -0,0 +1,139 @@
+package ru.zagrebin.service.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.zagrebin.repository.UserRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Подписки читателей в памяти: для каждого подписчика — отсортированный long[] id авторов.
+ * Проверка «подписан ли» — бинарный поиск, без загрузки User.subscriptions.
+ * Массив грузится одним запросом при первом обращении и дальше поддерживается write-through
+ * из SubscriptionService. У пользователей с подписками сверх max-follows массив неполный —
+ * для них отрицательный ответ перепроверяется запросом existsSubscription.
+ */
+@Component
+public class SubscriptionIndex {
+
+    public static final String NAME = "subscriptions.following";
+
+    private static final long[] EMPTY = new long[0];
+
+    private final Cache<Long, Following> cache;
+    private final UserRepository userRepository;
+    private final int maxFollows;
+
+    public SubscriptionIndex(UserRepository userRepository,
+                             MeterRegistry meterRegistry,
+                             @Value("${subscriptions.index.max-entries:4000000}") long maxEntries,
+                             @Value("${subscriptions.index.max-follows:10000}") int maxFollows) {
+        this.userRepository = userRepository;
+        this.maxFollows = maxFollows;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxEntries)
+                .weigher((Long id, Following f) -> f.ids.length + 1)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, NAME);
+    }
+
+    public boolean isSubscribed(Long subscriberId, Long authorId) {
+        if (subscriberId == null || authorId == null) return false;
+        Following f = cache.get(subscriberId, this::load);
+        if (Arrays.binarySearch(f.ids, authorId) >= 0) return true;
+        return !f.complete && userRepository.existsSubscription(subscriberId, authorId);
+    }
+
+    /**
+     * Те из authors (отсортированы по возрастанию), на кого подписан пользователь, в том же порядке — пересечение
+     * отсортированных массивов. Неполный массив хранит наименьшие id, поэтому в БД перепроверяются
+     * одним запросом только авторы больше последнего из них.
+     */
+    public Long[] subscribedAmong(Long subscriberId, long[] authors) {
+        if (subscriberId == null || authors.length == 0) return new Long[0];
+        Following f = cache.get(subscriberId, this::load);
+        List<Long> out = new ArrayList<>();
+        long last = f.ids.length == 0 ? Long.MIN_VALUE : f.ids[f.ids.length - 1];
+        List<Long> beyond = new ArrayList<>();
+        // бинарный поиск элементов меньшего массива в большем
+        if (authors.length <= f.ids.length) {
+            for (long a : authors) {
+                if (Arrays.binarySearch(f.ids, a) >= 0) out.add(a);
+                else if (!f.complete && a > last) beyond.add(a);
+            }
+        } else {
+            for (long a : f.ids) {
+                if (Arrays.binarySearch(authors, a) >= 0) out.add(a);
+            }
+            if (!f.complete) {
+                int from = Arrays.binarySearch(authors, last);
+                for (int i = from >= 0 ? from + 1 : -from - 1; i < authors.length; i++) beyond.add(authors[i]);
+            }
+        }
+        if (!beyond.isEmpty()) {
+            List<Long> found = new ArrayList<>(userRepository.findSubscribedToIdsAmong(subscriberId, beyond.toArray(new Long[0])));
+            Collections.sort(found);
+            out.addAll(found);
+        }
+        return out.toArray(new Long[0]);
+    }
+
+    /**
+     * Write-through после коммита подписки. Если массива нет в кэше — ничего не делаем,
+     * следующая проверка загрузит его из БД уже с новой строкой.
+     */
+    public void added(Long subscriberId, Long authorId) {
+        cache.asMap().computeIfPresent(subscriberId, (id, f) -> {
+            int pos = Arrays.binarySearch(f.ids, authorId);
+            if (pos >= 0) return f;
+            if (!f.complete) return null; // хранится только префикс — проще перечитать при следующей проверке
+            int at = -pos - 1;
+            long[] next = new long[f.ids.length + 1];
+            System.arraycopy(f.ids, 0, next, 0, at);
+            next[at] = authorId;
+            System.arraycopy(f.ids, at, next, at + 1, f.ids.length - at);
+            return new Following(next, true);
+        });
+    }
+
+    public void removed(Long subscriberId, Long authorId) {
+        cache.asMap().computeIfPresent(subscriberId, (id, f) -> {
+            int pos = Arrays.binarySearch(f.ids, authorId);
+            if (pos < 0) return f;
+            long[] next = new long[f.ids.length - 1];
+            System.arraycopy(f.ids, 0, next, 0, pos);
+            System.arraycopy(f.ids, pos + 1, next, pos, f.ids.length - pos - 1);
+            return new Following(next, f.complete);
+        });
+    }
+
+    private Following load(Long subscriberId) {
+        List<Long> ids = userRepository.findSubscribedToIds(subscriberId, maxFollows + 1);
+        boolean complete = ids.size() <= maxFollows;
+        int n = Math.min(ids.size(), maxFollows);
+        long[] arr = n == 0 ? EMPTY : new long[n];
+        for (int i = 0; i < n; i++) arr[i] = ids.get(i);
+        return new Following(arr, complete);
+    }
+
+    /**
+     * Неизменяемый снимок подписок; при изменениях заменяется целиком (copy-on-write).
+     */
+    private static final class Following {
+        final long[] ids;
+        final boolean complete;
+
+        Following(long[] ids, boolean complete) {
+            this.ids = ids;
+            this.complete = complete;
+        }
+    }
+}
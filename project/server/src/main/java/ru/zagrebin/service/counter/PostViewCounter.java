@@ -0,0 +1,198 @@
+package ru.zagrebin.service.counter;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.zagrebin.repository.PostRepository;
+import ru.zagrebin.repository.projection.PostViewsView;
+import ru.zagrebin.service.cache.PostFullCache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Буфер просмотров постов. На горячем пути только LongAdder.increment() — без обращения к БД;
+ * накопленные дельты раз в posts.views.flush-interval-ms пишутся одним UPDATE (PostRepository.addViews).
+ * При падении процесса теряется не больше одного интервала, при штатной остановке буфер сбрасывается.
+ * Сброс идёт в собственном потоке, а не в общем пуле @Scheduled: долгие фоновые задачи
+ * (пересборки индексов, чистка лент) не задерживают его, и граница потерь держится.
+ * <p>
+ * Число просмотров для ответа — views(): запись PostFullCache могла быть загружена до сброса или после
+ * него, поэтому к ней прибавляется не дельта, а берётся максимум с views_count, который вернул последний
+ * сброс. Дельта переносится из буфера в этот views_count ещё до коммита и одним шагом для читателей:
+ * сумма не проседает и не удваивается ни в какой момент сброса.
+ */
+@Component
+@Slf4j
+public class PostViewCounter {
+
+    private static final class Counter {
+        final LongAdder pending = new LongAdder();
+        // views_count в БД после последнего сброса; -1 — в этом процессе ещё не сбрасывался
+        volatile long flushed = -1;
+    }
+
+    private final ConcurrentHashMap<Long, Counter> counters = new ConcurrentHashMap<>();
+    // перенос дельт из pending во flushed; читатели — оптимистично, без блокировки
+    private final StampedLock transfer = new StampedLock();
+
+    private final PostRepository postRepository;
+    private final PostFullCache postFullCache;
+    private final TransactionTemplate flushTx;
+    private final long flushIntervalMs;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "post-views-flush");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public PostViewCounter(PostRepository postRepository, PostFullCache postFullCache,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${posts.views.flush-interval-ms:5000}") long flushIntervalMs) {
+        this.postRepository = postRepository;
+        this.postFullCache = postFullCache;
+        this.flushTx = new TransactionTemplate(transactionManager);
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher.scheduleWithFixedDelay(() -> {
+            // исключение отменило бы все следующие запуски
+            try {
+                flush();
+            } catch (RuntimeException ex) {
+                log.warn("Post view flush failed: {}", ex.getMessage());
+            }
+        }, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void increment(Long postId) {
+        counters.computeIfAbsent(postId, id -> new Counter()).pending.increment();
+    }
+
+    /**
+     * Просмотры, ещё не записанные в БД.
+     */
+    public long pending(Long postId) {
+        Counter c = counters.get(postId);
+        return c == null ? 0 : c.pending.sum();
+    }
+
+    /**
+     * Число просмотров поста для ответа: cachedViews — views_count из закэшированной записи.
+     */
+    public long views(Long postId, long cachedViews) {
+        Counter c = counters.get(postId);
+        if (c == null) return cachedViews;
+        long stamp = transfer.tryOptimisticRead();
+        long flushed = c.flushed;
+        long pending = c.pending.sum();
+        if (!transfer.validate(stamp)) {
+            stamp = transfer.readLock();
+            try {
+                flushed = c.flushed;
+                pending = c.pending.sum();
+            } finally {
+                transfer.unlockRead(stamp);
+            }
+        }
+        return Math.max(cachedViews, flushed) + pending;
+    }
+
+    public void flush() {
+        if (counters.isEmpty()) return;
+
+        List<Long> ids = new ArrayList<>();
+        List<Long> deltas = new ArrayList<>();
+        List<Counter> flushing = new ArrayList<>();
+        for (Map.Entry<Long, Counter> e : counters.entrySet()) {
+            // параллельные increment не теряются: из буфера потом вычитается ровно записанная дельта
+            long delta = e.getValue().pending.sum();
+            if (delta > 0) {
+                ids.add(e.getKey());
+                deltas.add(delta);
+                flushing.add(e.getValue());
+            } else {
+                evictIdle(e.getKey(), e.getValue());
+            }
+        }
+        if (ids.isEmpty()) return;
+
+        long[] before = new long[ids.size()];
+        Map<Long, Long> written = new HashMap<>();
+        boolean[] moved = {false};
+        try {
+            flushTx.executeWithoutResult(status -> {
+                for (PostViewsView row : postRepository.addViews(ids.toArray(new Long[0]), deltas.toArray(new Long[0]))) {
+                    written.put(row.getId(), row.getViewsCount());
+                }
+                // до коммита: загрузка поста из БД ещё видит старый views_count, и он не больше нового flushed
+                long stamp = transfer.writeLock();
+                try {
+                    for (int i = 0; i < ids.size(); i++) {
+                        Counter c = flushing.get(i);
+                        before[i] = c.flushed;
+                        Long views = written.get(ids.get(i));
+                        if (views != null) c.flushed = views;
+                        c.pending.add(-deltas.get(i));
+                    }
+                    moved[0] = true;
+                } finally {
+                    transfer.unlockWrite(stamp);
+                }
+            });
+        } catch (RuntimeException ex) {
+            // откат — вернуть дельты в буфер, попробуем при следующем сбросе
+            if (moved[0]) {
+                long stamp = transfer.writeLock();
+                try {
+                    for (int i = 0; i < ids.size(); i++) {
+                        flushing.get(i).flushed = before[i];
+                        flushing.get(i).pending.add(deltas.get(i));
+                    }
+                } finally {
+                    transfer.unlockWrite(stamp);
+                }
+            }
+            log.warn("Failed to flush {} post view counters: {}", ids.size(), ex.getMessage());
+            return;
+        }
+        for (Map.Entry<Long, Long> e : written.entrySet()) {
+            postFullCache.raiseViews(e.getKey(), e.getValue());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // дождаться идущего сброса, чтобы последний не шёл параллельно с ним
+        flusher.shutdown();
+        flusher.awaitTermination(flushIntervalMs, TimeUnit.MILLISECONDS);
+        flush();
+    }
+
+    /**
+     * Убрать пустой счётчик, чтобы карта не росла на все когда-либо открытые посты. Запись кэша уже
+     * поднята до flushed предыдущим сбросом. Если инкремент успел попасть в удалённый счётчик — переносим его обратно.
+     */
+    private void evictIdle(Long postId, Counter counter) {
+        if (counters.remove(postId, counter)) {
+            long late = counter.pending.sumThenReset();
+            if (late > 0) {
+                counters.computeIfAbsent(postId, id -> new Counter()).pending.add(late);
+            }
+        }
+    }
+}
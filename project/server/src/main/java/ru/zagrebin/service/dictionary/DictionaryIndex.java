@@ -0,0 +1,291 @@
+package ru.zagrebin.service.dictionary;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.zagrebin.dto.DictionaryDeltaDto;
+import ru.zagrebin.dto.IngredientDto;
+import ru.zagrebin.dto.TagDto;
+import ru.zagrebin.mapper.IngredientMapper;
+import ru.zagrebin.mapper.TagMapper;
+import ru.zagrebin.repository.IngredientRepository;
+import ru.zagrebin.repository.TagRepository;
+import ru.zagrebin.repository.projection.DictionaryEntryView;
+import ru.zagrebin.service.tx.TransactionHooks;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Автодополнение тегов и ингредиентов из памяти: словари маленькие и почти не меняются, поэтому
+ * держатся целиком как неизменяемый снимок (SubstringDictionary) и подменяются новым при пересборке.
+ * Целиком в памяти — чтобы автодополнение не делало ILIKE и count(*) в БД на каждое нажатие клавиши.
+ * Ранг — число постов, где запись используется (post_tags / post_ingredient).
+ * Изменение постов запускает пересборку в собственном потоке через debounce-ms после коммита; изменения,
+ * пришедшие за это время, входят в ту же пересборку. Поэтому словари отстают от БД на debounce-ms плюс
+ * время пересборки. Раз в check-ms повторяется неудавшаяся пересборка и делается плановая, если снимок
+ * старше max-age-ms: так подхватываются правки словарей мимо приложения.
+ * Каждый изменившийся снимок получает новую версию, а отличия от предыдущего пишутся в журнал —
+ * из него клиенту с локальной копией отдаются только изменения (delta).
+ */
+@Component
+@Slf4j
+public class DictionaryIndex {
+
+    private static final Comparator<DictionaryEntryView> BY_RANK =
+            Comparator.comparing((DictionaryEntryView v) -> usage(v)).reversed()
+                    .thenComparing(v -> SubstringDictionary.fold(v.getName()))
+                    .thenComparing(DictionaryEntryView::getId);
+
+    private final TagRepository tagRepository;
+    private final IngredientRepository ingredientRepository;
+    private final long debounceMs;
+    private final long maxAgeMs;
+    private final int maxChanges;
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    // изменения по версиям, от старых к новым; полон начиная с версии logBase
+    private final Deque<Change> changes = new ArrayDeque<>();
+    private long logBase;
+    private final Object lock = new Object();
+    // пересборки по событию старта и по расписанию не пересекаются: иначе снимок из более раннего
+    // чтения БД мог бы подменить более свежий
+    private final Object rebuildLock = new Object();
+    // есть изменения, не вошедшие в снимок; пока стоит, новые изменения пересборку не назначают
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private volatile long builtAt;
+    private final ScheduledExecutorService rebuilder = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "dictionary-rebuild");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public DictionaryIndex(TagRepository tagRepository,
+                           IngredientRepository ingredientRepository,
+                           @Value("${posts.dictionary.debounce-ms:500}") long debounceMs,
+                           @Value("${posts.dictionary.max-age-ms:600000}") long maxAgeMs,
+                           @Value("${posts.dictionary.max-changes:1000}") int maxChanges) {
+        this.tagRepository = tagRepository;
+        this.ingredientRepository = ingredientRepository;
+        this.debounceMs = debounceMs;
+        this.maxAgeMs = maxAgeMs;
+        this.maxChanges = maxChanges;
+    }
+
+    /**
+     * Теги, в названии которых есть search (без учёта регистра), самые используемые первыми.
+     */
+    public List<TagDto> findTags(String search, int offset, int limit) {
+        return snapshot.tags.find(search, offset, limit);
+    }
+
+    public List<IngredientDto> findIngredients(String search, int offset, int limit) {
+        return snapshot.ingredients.find(search, offset, limit);
+    }
+
+    public long version() {
+        return snapshot.version;
+    }
+
+    /**
+     * Изменения с версии since. Весь словарь — если since не задан, старше журнала
+     * или не выдавался этим экземпляром (больше текущей версии).
+     */
+    public DictionaryDeltaDto delta(Long since) {
+        Snapshot s;
+        List<Change> newer = new ArrayList<>();
+        synchronized (lock) {
+            s = snapshot;
+            if (since == null || since < logBase || since > s.version) {
+                return new DictionaryDeltaDto(s.version, true, new ArrayList<>(s.tagRows.values()),
+                        new ArrayList<>(s.ingredientRows.values()), List.of(), List.of());
+            }
+            for (Iterator<Change> it = changes.descendingIterator(); it.hasNext(); ) {
+                Change c = it.next();
+                if (c.version <= since) break;
+                newer.add(c);
+            }
+        }
+        Collections.reverse(newer);
+        Set<Long> tagIds = new LinkedHashSet<>();
+        Set<Long> removedTags = new LinkedHashSet<>();
+        Set<Long> ingredientIds = new LinkedHashSet<>();
+        Set<Long> removedIngredients = new LinkedHashSet<>();
+        for (Change c : newer) {
+            merge(c.tags, tagIds, removedTags);
+            merge(c.ingredients, ingredientIds, removedIngredients);
+        }
+        return new DictionaryDeltaDto(s.version, false, rows(s.tagRows, tagIds), rows(s.ingredientRows, ingredientIds),
+                new ArrayList<>(removedTags), new ArrayList<>(removedIngredients));
+    }
+
+    /**
+     * Теги или ингредиенты поста изменились — после коммита назначить пересборку через debounce-ms.
+     */
+    public void changedAfterCommit() {
+        TransactionHooks.afterCommit(() -> {
+            if (dirty.compareAndSet(false, true)) {
+                rebuilder.schedule(this::rebuildQuietly, debounceMs, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    @Scheduled(initialDelayString = "${posts.dictionary.check-ms:60000}", fixedDelayString = "${posts.dictionary.check-ms:60000}")
+    public void refresh() {
+        if (dirty.get() || System.currentTimeMillis() - builtAt >= maxAgeMs) {
+            rebuild();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuilder.shutdownNow();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            rebuildSnapshot();
+        }
+    }
+
+    // исключение в задаче исполнителя пропало бы молча
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (RuntimeException ex) {
+            log.warn("Dictionary rebuild failed: {}", ex.getMessage());
+        }
+    }
+
+    private void rebuildSnapshot() {
+        // сброс до чтения: изменение, закоммиченное во время пересборки, снова пометит словари
+        dirty.set(false);
+        List<DictionaryEntryView> tagRows;
+        List<DictionaryEntryView> ingredientRows;
+        try {
+            tagRows = new ArrayList<>(tagRepository.findDictionaryEntries());
+            ingredientRows = new ArrayList<>(ingredientRepository.findDictionaryEntries());
+        } catch (RuntimeException ex) {
+            // повторит refresh(); до тех пор изменения пересборку не назначают
+            dirty.set(true);
+            log.warn("Failed to build dictionary index: {}", ex.getMessage());
+            return;
+        }
+        tagRows.sort(BY_RANK);
+        ingredientRows.sort(BY_RANK);
+        Map<Long, List<Object>> tags = new LinkedHashMap<>();
+        for (DictionaryEntryView v : tagRows) {
+            tags.put(v.getId(), Arrays.asList(v.getId(), v.getName(), v.getColor(), usage(v)));
+        }
+        Map<Long, List<Object>> ingredients = new LinkedHashMap<>();
+        for (DictionaryEntryView v : ingredientRows) {
+            ingredients.put(v.getId(), Arrays.asList(v.getId(), v.getName(), usage(v)));
+        }
+
+        synchronized (lock) {
+            Snapshot old = snapshot;
+            Map<Long, Boolean> tagDiff = diff(old.tagRows, tags);
+            Map<Long, Boolean> ingredientDiff = diff(old.ingredientRows, ingredients);
+            if (old != Snapshot.EMPTY && tagDiff.isEmpty() && ingredientDiff.isEmpty()) {
+                builtAt = System.currentTimeMillis();
+                return;
+            }
+            // часы, а не счётчик: версии растут и через перезапуск, и старая версия клиента получит весь словарь
+            long version = Math.max(System.currentTimeMillis(), old.version + 1);
+            if (old == Snapshot.EMPTY) {
+                logBase = version;
+            } else {
+                changes.addLast(new Change(version, tagDiff, ingredientDiff));
+                while (changes.size() > maxChanges) logBase = changes.removeFirst().version;
+            }
+            snapshot = new Snapshot(version,
+                    new SubstringDictionary<>(map(tagRows, TagMapper::toDto), TagDto::getName),
+                    new SubstringDictionary<>(map(ingredientRows, IngredientMapper::toDto), IngredientDto::getName),
+                    tags, ingredients);
+        }
+        builtAt = System.currentTimeMillis();
+        log.info("Dictionary index built: {} tags, {} ingredients, version {}",
+                tags.size(), ingredients.size(), snapshot.version);
+    }
+
+    // id → true (добавлен или изменён) / false (удалён)
+    private static Map<Long, Boolean> diff(Map<Long, List<Object>> before, Map<Long, List<Object>> after) {
+        Map<Long, Boolean> changed = new HashMap<>();
+        for (Map.Entry<Long, List<Object>> e : after.entrySet()) {
+            if (!e.getValue().equals(before.get(e.getKey()))) changed.put(e.getKey(), true);
+        }
+        for (Long id : before.keySet()) {
+            if (!after.containsKey(id)) changed.put(id, false);
+        }
+        return changed;
+    }
+
+    private static void merge(Map<Long, Boolean> change, Set<Long> upserted, Set<Long> removed) {
+        for (Map.Entry<Long, Boolean> e : change.entrySet()) {
+            if (e.getValue()) {
+                removed.remove(e.getKey());
+                upserted.add(e.getKey());
+            } else {
+                upserted.remove(e.getKey());
+                removed.add(e.getKey());
+            }
+        }
+    }
+
+    private static List<List<Object>> rows(Map<Long, List<Object>> all, Set<Long> ids) {
+        List<List<Object>> result = new ArrayList<>(ids.size());
+        for (Long id : ids) result.add(all.get(id));
+        return result;
+    }
+
+    private static <T> List<T> map(List<DictionaryEntryView> rows, Function<DictionaryEntryView, T> mapper) {
+        return rows.stream().map(mapper).collect(Collectors.toList());
+    }
+
+    private static long usage(DictionaryEntryView v) {
+        return v.getUsage() == null ? 0L : v.getUsage();
+    }
+
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(0, SubstringDictionary.empty(), SubstringDictionary.empty(),
+                Collections.emptyMap(), Collections.emptyMap());
+
+        final long version;
+        final SubstringDictionary<TagDto> tags;
+        final SubstringDictionary<IngredientDto> ingredients;
+        // компактные строки DictionaryDeltaDto в порядке ранга
+        final Map<Long, List<Object>> tagRows;
+        final Map<Long, List<Object>> ingredientRows;
+
+        Snapshot(long version, SubstringDictionary<TagDto> tags, SubstringDictionary<IngredientDto> ingredients,
+                 Map<Long, List<Object>> tagRows, Map<Long, List<Object>> ingredientRows) {
+            this.version = version;
+            this.tags = tags;
+            this.ingredients = ingredients;
+            this.tagRows = tagRows;
+            this.ingredientRows = ingredientRows;
+        }
+    }
+
+    private static final class Change {
+        final long version;
+        final Map<Long, Boolean> tags;
+        final Map<Long, Boolean> ingredients;
+
+        Change(long version, Map<Long, Boolean> tags, Map<Long, Boolean> ingredients) {
+            this.version = version;
+            this.tags = tags;
+            this.ingredients = ingredients;
+        }
+    }
+}
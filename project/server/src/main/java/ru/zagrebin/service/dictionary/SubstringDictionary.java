@@ -0,0 +1,124 @@
+package ru.zagrebin.service.dictionary;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Неизменяемый словарь с поиском по подстроке. Записи хранятся в порядке ранга (чаще используемые
+ * первыми), над приведёнными к нижнему регистру именами строится суффиксный массив: все вхождения
+ * запроса — один непрерывный диапазон суффиксов, который находится двоичным поиском.
+ * Номера записей из диапазона собираются в BitSet, и его обход по возрастанию сразу даёт выдачу по рангу.
+ */
+final class SubstringDictionary<T> {
+
+    private final List<T> entries;
+    private final String[] keys;
+    // суффикс k — keys[suffixEntry[k]].substring(suffixOffset[k])
+    private final int[] suffixEntry;
+    private final int[] suffixOffset;
+
+    SubstringDictionary(List<T> ranked, Function<T, String> name) {
+        this.entries = List.copyOf(ranked);
+        this.keys = new String[entries.size()];
+        int total = 0;
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = fold(name.apply(entries.get(i)));
+            total += keys[i].length();
+        }
+
+        long[] suffixes = new long[total];
+        int k = 0;
+        for (int e = 0; e < keys.length; e++) {
+            for (int o = 0; o < keys[e].length(); o++) {
+                suffixes[k++] = ((long) e << 32) | o;
+            }
+        }
+        Long[] boxed = new Long[total];
+        for (int i = 0; i < total; i++) boxed[i] = suffixes[i];
+        Arrays.sort(boxed, (a, b) -> compareSuffixes(a, b));
+
+        this.suffixEntry = new int[total];
+        this.suffixOffset = new int[total];
+        for (int i = 0; i < total; i++) {
+            suffixEntry[i] = (int) (boxed[i] >>> 32);
+            suffixOffset[i] = (int) (long) boxed[i];
+        }
+    }
+
+    static <T> SubstringDictionary<T> empty() {
+        return new SubstringDictionary<>(Collections.emptyList(), t -> "");
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Записи, в имени которых есть query (без учёта регистра), по рангу: пропустив offset, не больше limit.
+     * Пустой запрос — весь словарь.
+     */
+    List<T> find(String query, int offset, int limit) {
+        String q = query == null ? "" : fold(query.strip());
+        if (q.isEmpty()) {
+            int from = Math.min(offset, entries.size());
+            return entries.subList(from, Math.min(entries.size(), from + limit));
+        }
+
+        BitSet matched = new BitSet(entries.size());
+        for (int k = lowerBound(q); k < suffixEntry.length && startsWith(k, q); k++) {
+            matched.set(suffixEntry[k]);
+        }
+        List<T> page = new ArrayList<>(Math.min(limit, 64));
+        int skipped = 0;
+        for (int e = matched.nextSetBit(0); e >= 0 && page.size() < limit; e = matched.nextSetBit(e + 1)) {
+            if (skipped++ < offset) continue;
+            page.add(entries.get(e));
+        }
+        return page;
+    }
+
+    // первый суффикс, не меньший q
+    private int lowerBound(String q) {
+        int lo = 0;
+        int hi = suffixEntry.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareToQuery(mid, q) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private boolean startsWith(int k, String q) {
+        return keys[suffixEntry[k]].startsWith(q, suffixOffset[k]);
+    }
+
+    private int compareToQuery(int k, String q) {
+        String key = keys[suffixEntry[k]];
+        int o = suffixOffset[k];
+        int n = Math.min(key.length() - o, q.length());
+        for (int i = 0; i < n; i++) {
+            int c = Character.compare(key.charAt(o + i), q.charAt(i));
+            if (c != 0) return c;
+        }
+        return (key.length() - o) - q.length();
+    }
+
+    private int compareSuffixes(long a, long b) {
+        String ka = keys[(int) (a >>> 32)];
+        String kb = keys[(int) (b >>> 32)];
+        int oa = (int) a;
+        int ob = (int) b;
+        int n = Math.min(ka.length() - oa, kb.length() - ob);
+        for (int i = 0; i < n; i++) {
+            int c = Character.compare(ka.charAt(oa + i), kb.charAt(ob + i));
+            if (c != 0) return c;
+        }
+        return (ka.length() - oa) - (kb.length() - ob);
+    }
+
+    // без учёта регистра, ё = е
+    static String fold(String s) {
+        return s == null ? "" : s.toLowerCase(Locale.ROOT).replace('ё', 'е');
+    }
+}
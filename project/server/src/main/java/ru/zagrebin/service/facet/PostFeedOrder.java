@@ -0,0 +1,267 @@
+package ru.zagrebin.service.facet;
+
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.zagrebin.repository.PostRepository;
+import ru.zagrebin.repository.projection.TimelineKeyView;
+import ru.zagrebin.service.pagination.PostCursor;
+import ru.zagrebin.service.tx.TransactionHooks;
+
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Порядок ленты (created_at desc, id desc) опубликованных постов: страница выборки TagFacetIndex
+ * и RecipeRangeIndex идёт тем же keyset, что и общая лента, с курсором того же формата.
+ * created_at не обязан расти вместе с id (время транзакции, перенесённые посты), поэтому порядок хранится отдельно.
+ * <p>
+ * Основа — отсортированные массивы; новые позиции копятся в небольшом TreeSet и вливаются в основу
+ * слиянием, когда он дорастает до доли основы. Удалённые и сдвинутые посты остаются в основе до слияния
+ * и отсеиваются сверкой с картой id → created_at.
+ * Страница берётся одним из двух путей, что дешевле: маленькая выборка — отбором лучших из неё,
+ * большая — проходом по порядку ленты до limit постов выборки.
+ */
+@Component
+@Slf4j
+public class PostFeedOrder {
+
+    private static final int MIN_MERGE = 1024;
+    // по убыванию позиции в ленте: сначала новые
+    private static final Comparator<Key> ORDER =
+            Comparator.comparingLong(Key::micros).thenComparingInt(Key::id).reversed();
+
+    private final PostRepository postRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // created_at (мкс) опубликованных постов
+    private Map<Integer, Long> micros = new HashMap<>();
+    private long[] baseMicros = new long[0];
+    private int[] baseIds = new int[0];
+    // записей основы, чья позиция устарела
+    private int stale;
+    private final TreeSet<Key> recent = new TreeSet<>(ORDER);
+    // посты, изменённые после начала пересборки: в её выборке они устарели; null — пересборка не идёт
+    private Set<Integer> changedDuringRebuild;
+
+    public PostFeedOrder(PostRepository postRepository) {
+        this.postRepository = postRepository;
+    }
+
+    /**
+     * До limit позиций постов из matched по порядку ленты, строго после after (null — с начала).
+     */
+    public List<PostCursor> page(RoaringBitmap matched, PostCursor after, int limit) {
+        if (limit <= 0 || matched.isEmpty()) return Collections.emptyList();
+        Key from = after == null ? null : new Key(after.getCreatedAtMicros(), Math.toIntExact(after.getId()));
+        lock.readLock().lock();
+        try {
+            long size = matched.getLongCardinality();
+            // проход по ленте встречает пост выборки в среднем раз в micros.size() / size позиций
+            List<Key> keys = size * size <= (long) limit * micros.size()
+                    ? bestOf(matched, from, limit)
+                    : scan(matched, from, limit);
+            List<PostCursor> out = new ArrayList<>(keys.size());
+            for (Key k : keys) out.add(PostCursor.ofMicros(k.micros, k.id));
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void putAfterCommit(Long postId, OffsetDateTime createdAt) {
+        int id = Math.toIntExact(postId);
+        long m = PostCursor.toMicros(createdAt.toInstant());
+        TransactionHooks.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                put(id, m);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    public void removeAfterCommit(Long postId) {
+        int id = Math.toIntExact(postId);
+        TransactionHooks.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                if (changedDuringRebuild != null) changedDuringRebuild.add(id);
+                Long old = micros.remove(id);
+                if (old != null) forget(old, id);
+                mergeIfNeeded();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Порядок заменяется целиком выборкой из БД; посты, изменённые после запроса, берутся из текущего.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        setChangedDuringRebuild(new HashSet<>());
+        List<TimelineKeyView> rows;
+        try {
+            rows = postRepository.findPublishedKeys();
+        } catch (RuntimeException ex) {
+            setChangedDuringRebuild(null);
+            log.warn("Failed to build post feed order: {}", ex.getMessage());
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            Set<Integer> changed = changedDuringRebuild;
+            changedDuringRebuild = null;
+            Map<Integer, Long> next = new HashMap<>(rows.size() * 2);
+            for (TimelineKeyView row : rows) {
+                int id = Math.toIntExact(row.getPostId());
+                if (!changed.contains(id)) next.put(id, PostCursor.toMicros(row.getCreatedAt()));
+            }
+            for (int id : changed) {
+                Long current = micros.get(id);
+                if (current != null) next.put(id, current);
+            }
+            micros = next;
+            recent.clear();
+            stale = 0;
+            List<Key> all = new ArrayList<>(next.size());
+            next.forEach((id, m) -> all.add(new Key(m, id)));
+            all.sort(ORDER);
+            setBase(all);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Post feed order built: {} posts", rows.size());
+    }
+
+    private void setChangedDuringRebuild(Set<Integer> changed) {
+        lock.writeLock().lock();
+        try {
+            changedDuringRebuild = changed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void put(int id, long m) {
+        if (changedDuringRebuild != null) changedDuringRebuild.add(id);
+        Long old = micros.put(id, m);
+        if (old != null) {
+            if (old == m) return;
+            forget(old, id);
+        }
+        // пост вернулся на позицию, которая ещё лежит в основе
+        if (baseIndexOf(m, id) >= 0) stale--;
+        else recent.add(new Key(m, id));
+        mergeIfNeeded();
+    }
+
+    // старая позиция поста: из recent убирается сразу, в основе остаётся до слияния
+    private void forget(long old, int id) {
+        if (!recent.remove(new Key(old, id))) stale++;
+    }
+
+    private void mergeIfNeeded() {
+        int threshold = Math.max(MIN_MERGE, baseIds.length / 8);
+        if (recent.size() <= threshold && stale <= threshold) return;
+        List<Key> merged = new ArrayList<>(micros.size());
+        Iterator<Key> r = recent.iterator();
+        Key nextRecent = r.hasNext() ? r.next() : null;
+        int i = 0;
+        while (i < baseIds.length || nextRecent != null) {
+            if (i < baseIds.length && (nextRecent == null || before(baseMicros[i], baseIds[i], nextRecent))) {
+                if (live(i)) merged.add(new Key(baseMicros[i], baseIds[i]));
+                i++;
+            } else {
+                merged.add(nextRecent);
+                nextRecent = r.hasNext() ? r.next() : null;
+            }
+        }
+        recent.clear();
+        stale = 0;
+        setBase(merged);
+    }
+
+    private void setBase(List<Key> sorted) {
+        baseMicros = new long[sorted.size()];
+        baseIds = new int[sorted.size()];
+        for (int i = 0; i < sorted.size(); i++) {
+            baseMicros[i] = sorted.get(i).micros;
+            baseIds[i] = sorted.get(i).id;
+        }
+    }
+
+    // маленькая выборка: лучшие limit её постов после from
+    private List<Key> bestOf(RoaringBitmap matched, Key from, int limit) {
+        PriorityQueue<Key> top = new PriorityQueue<>(limit + 1, ORDER.reversed());
+        matched.forEach((int id) -> {
+            Long m = micros.get(id);
+            if (m == null) return;
+            Key k = new Key(m, id);
+            if (from != null && ORDER.compare(k, from) <= 0) return;
+            if (top.size() == limit && ORDER.compare(k, top.peek()) >= 0) return;
+            top.add(k);
+            if (top.size() > limit) top.poll();
+        });
+        List<Key> out = new ArrayList<>(top);
+        out.sort(ORDER);
+        return out;
+    }
+
+    // большая выборка: по порядку ленты (основа и recent слиянием) до limit её постов
+    private List<Key> scan(RoaringBitmap matched, Key from, int limit) {
+        List<Key> out = new ArrayList<>(limit);
+        int i = from == null ? 0 : firstAfter(from);
+        Iterator<Key> r = (from == null ? recent : recent.tailSet(from, false)).iterator();
+        Key nextRecent = r.hasNext() ? r.next() : null;
+        while (out.size() < limit && (i < baseIds.length || nextRecent != null)) {
+            if (i < baseIds.length && (nextRecent == null || before(baseMicros[i], baseIds[i], nextRecent))) {
+                if (matched.contains(baseIds[i]) && live(i)) out.add(new Key(baseMicros[i], baseIds[i]));
+                i++;
+            } else {
+                if (matched.contains(nextRecent.id)) out.add(nextRecent);
+                nextRecent = r.hasNext() ? r.next() : null;
+            }
+        }
+        return out;
+    }
+
+    private boolean live(int i) {
+        Long m = micros.get(baseIds[i]);
+        return m != null && m == baseMicros[i];
+    }
+
+    // первая позиция основы строго после from
+    private int firstAfter(Key from) {
+        int lo = 0;
+        int hi = baseIds.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (before(baseMicros[mid], baseIds[mid], from) || (baseMicros[mid] == from.micros && baseIds[mid] == from.id)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int baseIndexOf(long m, int id) {
+        Key k = new Key(m, id);
+        int i = firstAfter(k) - 1;
+        return i >= 0 && baseMicros[i] == m && baseIds[i] == id ? i : -1;
+    }
+
+    // позиция (m, id) в ленте раньше k
+    private static boolean before(long m, int id, Key k) {
+        return m != k.micros ? m > k.micros : id > k.id;
+    }
+
+    private record Key(long micros, int id) {}
+}
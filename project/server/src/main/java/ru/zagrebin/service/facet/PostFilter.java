@@ -0,0 +1,29 @@
+package ru.zagrebin.service.facet;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Фильтр ленты: теги (id или slug) и диапазоны калорийности/времени приготовления.
+ * null у границы — граница не задана.
+ */
+@Getter
+@Builder
+public class PostFilter {
+    @Builder.Default
+    private final List<String> tags = Collections.emptyList();
+    @Builder.Default
+    private final TagMatchMode mode = TagMatchMode.ALL;
+    private final Integer caloriesMin;
+    private final Integer caloriesMax;
+    private final Integer cookingTimeMin;
+    private final Integer cookingTimeMax;
+
+    public boolean isEmpty() {
+        return tags.isEmpty() && caloriesMin == null && caloriesMax == null
+                && cookingTimeMin == null && cookingTimeMax == null;
+    }
+}
@@ -0,0 +1,138 @@
+package ru.zagrebin.service.facet;
+
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.zagrebin.repository.PostRepository;
+import ru.zagrebin.repository.projection.PostRangeView;
+import ru.zagrebin.service.bitmap.BitSlicedIndex;
+import ru.zagrebin.service.tx.TransactionHooks;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Диапазонные фильтры ленты по калорийности и времени приготовления: по BitSlicedIndex на поле,
+ * только опубликованные посты. Результат — битмап id, который TagFacetIndex пересекает с фильтром
+ * по тегам; страница из выборки берётся в порядке ленты (PostFeedOrder).
+ * Пост без значения поля в фильтр по этому полю не попадает.
+ */
+@Component
+@Slf4j
+public class RecipeRangeIndex {
+
+    private final PostRepository postRepository;
+    private final BitSlicedIndex calories = new BitSlicedIndex();
+    private final BitSlicedIndex cookingTime = new BitSlicedIndex();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // посты, изменённые после начала пересборки: в её выборке они устарели; null — пересборка не идёт
+    private Set<Integer> changedDuringRebuild;
+
+    public RecipeRangeIndex(PostRepository postRepository) {
+        this.postRepository = postRepository;
+    }
+
+    /**
+     * Посты, попадающие во все заданные диапазоны; null, если ни одна граница не задана.
+     */
+    public RoaringBitmap match(Integer caloriesMin, Integer caloriesMax, Integer timeMin, Integer timeMax) {
+        boolean byCalories = caloriesMin != null || caloriesMax != null;
+        boolean byTime = timeMin != null || timeMax != null;
+        if (!byCalories && !byTime) return null;
+
+        lock.readLock().lock();
+        try {
+            RoaringBitmap result = byCalories ? calories.between(caloriesMin, caloriesMax) : null;
+            if (byTime) {
+                RoaringBitmap time = cookingTime.between(timeMin, timeMax);
+                if (result == null) result = time;
+                else result.and(time);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void putAfterCommit(Long postId, Integer caloriesValue, Integer cookingTimeMinutes) {
+        TransactionHooks.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                put(Math.toIntExact(postId), caloriesValue, cookingTimeMinutes);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    public void removeAfterCommit(Long postId) {
+        TransactionHooks.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                put(Math.toIntExact(postId), null, null);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Индекс заменяется целиком выборкой из БД; посты, изменённые после запроса, берутся из текущего индекса.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        setChangedDuringRebuild(new HashSet<>());
+        List<PostRangeView> rows;
+        try {
+            rows = postRepository.findPublishedRangeValues();
+        } catch (RuntimeException ex) {
+            setChangedDuringRebuild(null);
+            log.warn("Failed to build recipe range index: {}", ex.getMessage());
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            Set<Integer> changed = changedDuringRebuild;
+            changedDuringRebuild = null;
+            Map<Integer, Integer[]> current = new HashMap<>();
+            for (int id : changed) current.put(id, new Integer[]{calories.get(id), cookingTime.get(id)});
+            calories.clear();
+            cookingTime.clear();
+            for (PostRangeView row : rows) {
+                int id = Math.toIntExact(row.getId());
+                if (!changed.contains(id)) put(id, row.getCalories(), row.getCookingTimeMinutes());
+            }
+            current.forEach((id, values) -> put(id, values[0], values[1]));
+            calories.optimize();
+            cookingTime.optimize();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Recipe range index built: {} posts", rows.size());
+    }
+
+    private void setChangedDuringRebuild(Set<Integer> changed) {
+        lock.writeLock().lock();
+        try {
+            changedDuringRebuild = changed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // null или отрицательное значение убирает пост из индекса поля
+    private void put(int id, Integer caloriesValue, Integer cookingTimeMinutes) {
+        if (changedDuringRebuild != null) changedDuringRebuild.add(id);
+        if (caloriesValue != null && caloriesValue >= 0) calories.put(id, caloriesValue);
+        else calories.remove(id);
+        if (cookingTimeMinutes != null && cookingTimeMinutes >= 0) cookingTime.put(id, cookingTimeMinutes);
+        else cookingTime.remove(id);
+    }
+}
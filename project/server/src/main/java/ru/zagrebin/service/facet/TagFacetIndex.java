@@ -0,0 +1,179 @@
+package ru.zagrebin.service.facet;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.zagrebin.repository.PostRepository;
+import ru.zagrebin.repository.projection.PostTagPairView;
+import ru.zagrebin.service.bitmap.PostBitmapIndex;
+import ru.zagrebin.service.tx.TransactionHooks;
+
+import java.util.*;
+
+/**
+ * Фильтр ленты по тегам с живыми фасетами. Тег → битмап опубликованных постов (PostBitmapIndex);
+ * выборка — пересечение (all) или объединение (any) битмапов, счётчик каждого тега —
+ * мощность пересечения его битмапа с выборкой. Ни GROUP BY, ни запросов к БД на каждый фильтр.
+ * Теги перебираются по убыванию числа постов, пока оно не меньше худшего из уже набранных max-tags:
+ * пересечение не больше самого битмапа, и на каждый запрос считается несколько десятков пересечений,
+ * а не по одному на каждый тег. Маленькая выборка считается по тегам своих постов.
+ */
+@Component
+@Slf4j
+public class TagFacetIndex {
+
+    private final PostRepository postRepository;
+    private final PostBitmapIndex index = new PostBitmapIndex();
+    private final int maxFacets;
+    // теги по убыванию числа постов для версии индекса; пересчитывается после изменений при первом запросе
+    private volatile TagOrder order;
+
+    public TagFacetIndex(PostRepository postRepository,
+                         @Value("${posts.facets.max-tags:30}") int maxFacets) {
+        this.postRepository = postRepository;
+        this.maxFacets = maxFacets;
+    }
+
+    /**
+     * Выборка (новый битмап, страницу из неё берёт PostFeedOrder), её размер и до max-tags
+     * самых частых тегов в ней (count > 0, по убыванию count).
+     * restrict — дополнительное ограничение выборки (например, из RecipeRangeIndex), null — без него.
+     * Без тегов выборка — сам restrict (в нём могут быть и посты без тегов).
+     */
+    public Result filter(Collection<Long> tagIds, TagMatchMode mode, RoaringBitmap restrict) {
+        return index.read(ix -> {
+            RoaringBitmap matched;
+            if (tagIds.isEmpty() && restrict != null) {
+                matched = restrict;
+            } else {
+                matched = match(ix, tagIds, mode);
+                if (restrict != null) matched.and(restrict);
+            }
+
+            long total = matched.getLongCardinality();
+            List<long[]> counts = total <= ix.keySet().size() ? countByPosts(ix, matched) : countByTags(ix, matched);
+            counts.sort(BETTER);
+            Map<Long, Long> facets = new LinkedHashMap<>();
+            for (int i = 0; i < counts.size() && i < maxFacets; i++) {
+                facets.put(counts.get(i)[0], counts.get(i)[1]);
+            }
+
+            return new Result(matched, total, facets);
+        });
+    }
+
+    // {tagId, count}: больше count, при равенстве меньше id — выше
+    private static final Comparator<long[]> BETTER =
+            (a, b) -> a[1] != b[1] ? Long.compare(b[1], a[1]) : Long.compare(a[0], b[0]);
+
+    // кандидаты в max-tags: тег, у которого постов меньше худшего из набранных, его уже не обойдёт
+    private List<long[]> countByTags(PostBitmapIndex ix, RoaringBitmap matched) {
+        if (maxFacets <= 0) return new ArrayList<>();
+        TagOrder o = order(ix);
+        PriorityQueue<long[]> top = new PriorityQueue<>(maxFacets + 1, BETTER.reversed());
+        for (int i = 0; i < o.tagIds.length; i++) {
+            if (top.size() == maxFacets && o.sizes[i] < top.peek()[1]) break;
+            long c = RoaringBitmap.andCardinality(ix.bitmap(o.tagIds[i]), matched);
+            if (c == 0) continue;
+            top.add(new long[]{o.tagIds[i], c});
+            if (top.size() > maxFacets) top.poll();
+        }
+        return new ArrayList<>(top);
+    }
+
+    // выборка меньше числа тегов: проще пройти по тегам её постов
+    private static List<long[]> countByPosts(PostBitmapIndex ix, RoaringBitmap matched) {
+        Map<Long, long[]> counts = new HashMap<>();
+        matched.forEach((int postId) -> {
+            for (long tagId : ix.keys(postId)) counts.computeIfAbsent(tagId, k -> new long[]{k, 0})[1]++;
+        });
+        return new ArrayList<>(counts.values());
+    }
+
+    // под read-lock индекс не меняется; гонка двух читателей за пересчёт безвредна — результат один
+    private TagOrder order(PostBitmapIndex ix) {
+        TagOrder o = order;
+        if (o != null && o.version == ix.version()) return o;
+        List<long[]> sized = new ArrayList<>(ix.keySet().size());
+        for (Long tagId : ix.keySet()) sized.add(new long[]{tagId, ix.bitmap(tagId).getLongCardinality()});
+        sized.sort(BETTER);
+        long[] tagIds = new long[sized.size()];
+        long[] sizes = new long[sized.size()];
+        for (int i = 0; i < sized.size(); i++) {
+            tagIds[i] = sized.get(i)[0];
+            sizes[i] = sized.get(i)[1];
+        }
+        o = new TagOrder(ix.version(), tagIds, sizes);
+        order = o;
+        return o;
+    }
+
+    private record TagOrder(long version, long[] tagIds, long[] sizes) {}
+
+    public void putAfterCommit(Long postId, Collection<Long> tagIds) {
+        List<Long> ids = new ArrayList<>(tagIds);
+        TransactionHooks.afterCommit(() -> index.put(postId, ids));
+    }
+
+    public void removeAfterCommit(Long postId) {
+        TransactionHooks.afterCommit(() -> index.remove(postId));
+    }
+
+    /**
+     * Индекс заменяется целиком выборкой из БД; посты, изменённые после запроса, берутся из текущего индекса.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        index.beginLoad();
+        List<PostTagPairView> pairs;
+        try {
+            pairs = postRepository.findPublishedTagPairs();
+        } catch (RuntimeException ex) {
+            index.abortLoad();
+            log.warn("Failed to build tag facet index: {}", ex.getMessage());
+            return;
+        }
+        Map<Long, List<Long>> byPost = new HashMap<>();
+        for (PostTagPairView p : pairs) {
+            byPost.computeIfAbsent(p.getPostId(), k -> new ArrayList<>()).add(p.getTagId());
+        }
+        index.load(byPost);
+        log.info("Tag facet index built: {} posts", byPost.size());
+    }
+
+    private static RoaringBitmap match(PostBitmapIndex ix, Collection<Long> tagIds, TagMatchMode mode) {
+        if (tagIds.isEmpty()) {
+            return mode == TagMatchMode.ALL ? ix.all().clone() : new RoaringBitmap();
+        }
+        RoaringBitmap acc = null;
+        for (Long tagId : tagIds) {
+            RoaringBitmap b = ix.bitmap(tagId);
+            if (acc == null) {
+                acc = b.clone();
+            } else if (mode == TagMatchMode.ALL) {
+                acc.and(b);
+            } else {
+                acc.or(b);
+            }
+            if (mode == TagMatchMode.ALL && acc.isEmpty()) break;
+        }
+        return acc;
+    }
+
+    @Getter
+    public static final class Result {
+        private final RoaringBitmap matched;
+        private final long total;
+        private final Map<Long, Long> facetCounts;
+
+        Result(RoaringBitmap matched, long total, Map<Long, Long> facetCounts) {
+            this.matched = matched;
+            this.total = total;
+            this.facetCounts = facetCounts;
+        }
+    }
+}
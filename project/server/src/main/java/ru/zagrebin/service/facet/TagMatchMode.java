@@ -0,0 +1,22 @@
+package ru.zagrebin.service.facet;
+
+import ru.zagrebin.service.InvalidRequestParameterException;
+
+/**
+ * Как сочетать несколько тегов фильтра ленты.
+ */
+public enum TagMatchMode {
+    /** пост помечен всеми тегами */
+    ALL,
+    /** пост помечен хотя бы одним тегом */
+    ANY;
+
+    public static TagMatchMode parse(String value) {
+        if (value == null || value.isBlank()) return ALL;
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestParameterException("Unknown tag match mode: " + value);
+        }
+    }
+}
@@ -1,23 +1,49 @@
 package ru.zagrebin.service.impl;
 
 import jakarta.annotation.PostConstruct;
+import ru.zagrebin.repository.MediaBlobRepository;
 import ru.zagrebin.service.FileStorageService;
+import ru.zagrebin.service.media.ImageDerivatives;
+import ru.zagrebin.service.media.UploadTooLargeException;
+import ru.zagrebin.service.tx.TransactionHooks;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.regex.Pattern;
 
 @Service
 @Slf4j
 public class FileStorageServiceImpl implements FileStorageService {
 
+    // хранилище с адресацией по содержимому (media.storage-mode: content)
+    private static final String BLOBS_DIR = "blobs";
+    // ссылки на файл умеют считать только посты (обложка, фото шагов): аватары и прочее — отдельными файлами
+    private static final String POST_MEDIA_DIR = "posts";
+    private static final String TMP_DIR = ".tmp";
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-f]{64}");
+    private static final Pattern SAFE_EXT = Pattern.compile("\\.[a-z0-9]{1,10}");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     // Абсолютный путь к папке MEDIA на диске, задаётся в application.yml
     @Value("${media.path}")
     private String mediaRoot;
@@ -26,6 +52,36 @@ public class FileStorageServiceImpl implements FileStorageService {
     @Value("${media.public-url-prefix:/media}")
     private String publicUrlPrefix;
 
+    // uuid — каждая загрузка отдельным файлом; content — один файл на SHA-256 содержимого со счётчиком ссылок
+    @Value("${media.storage-mode:uuid}")
+    private String storageMode;
+
+    @Value("${media.tmp-max-age-ms:86400000}")
+    private long tmpMaxAgeMs;
+
+    // файл без ссылок живёт столько после последней загрузки: успеть сохранить пост с выданным URL
+    @Value("${media.blobs.orphan-max-age-ms:86400000}")
+    private long orphanMaxAgeMs;
+
+    @Value("${media.blobs.sweep-batch:100}")
+    private int sweepBatch;
+
+    private final MediaBlobRepository mediaBlobRepository;
+    private final ImageDerivatives imageDerivatives;
+    // после коммита транзакция поста уже закрыта: удаление записи о файле — в своей
+    private final TransactionTemplate purgeTx;
+    // загрузка и удаление одного hash не должны пересекаться: иначе файл могут удалить сразу после выдачи URL
+    private final Object[] hashLocks = new Object[64];
+
+    public FileStorageServiceImpl(MediaBlobRepository mediaBlobRepository, ImageDerivatives imageDerivatives,
+                                  PlatformTransactionManager transactionManager) {
+        this.mediaBlobRepository = mediaBlobRepository;
+        this.imageDerivatives = imageDerivatives;
+        this.purgeTx = new TransactionTemplate(transactionManager);
+        this.purgeTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        for (int i = 0; i < hashLocks.length; i++) hashLocks[i] = new Object();
+    }
+
     @PostConstruct
     public void init() throws IOException {
         if (mediaRoot == null || mediaRoot.isBlank()) {
@@ -41,80 +97,302 @@ public class FileStorageServiceImpl implements FileStorageService {
     @Override
     public String store(MultipartFile file, String targetSubdir) {
         if (file == null || file.isEmpty()) throw new IllegalArgumentException("file is empty");
-        String original = StringUtils.cleanPath(file.getOriginalFilename());
-        // prevent path traversal
-        if (original.contains("..")) {
-            throw new IllegalArgumentException("Invalid file name: " + original);
+        try (InputStream is = file.getInputStream()) {
+            return store(is, file.getOriginalFilename(), targetSubdir, Long.MAX_VALUE);
+        } catch (IOException e) {
+            log.error("Failed to store file: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to store file", e);
         }
+    }
 
-        String ext = "";
-        int idx = original.lastIndexOf('.');
-        if (idx > 0) ext = original.substring(idx).toLowerCase();
+    /**
+     * Поток пишется во временный файл в media.path/.tmp и только целиком перемещается на место
+     * (atomic move в пределах одного диска): недописанный файл никогда не виден по URL.
+     */
+    @Override
+    public String store(InputStream body, String originalFilename, String targetSubdir, long maxBytes) {
+        Path tmp = null;
+        try {
+            tmp = createTempFile();
+            MessageDigest sha256 = contentAddressed(targetSubdir) ? MessageDigest.getInstance("SHA-256") : null;
+            writeToTemp(body, tmp, sha256, maxBytes);
+            return store(tmp, originalFilename, targetSubdir, sha256 != null ? sha256.digest() : null);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            log.error("Failed to store file: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to store file", e);
+        } finally {
+            deleteTemp(tmp);
+        }
+    }
 
-        String filename = UUID.randomUUID().toString() + ext;
-        Path subdir = (targetSubdir == null || targetSubdir.isBlank())
-                ? Path.of("")
-                : Path.of(targetSubdir);
-        Path targetDir = Path.of(mediaRoot).resolve(subdir).normalize();
+    @Override
+    public Path createTempFile() throws IOException {
+        Path tmpDir = Path.of(mediaRoot).toAbsolutePath().normalize().resolve(TMP_DIR);
+        Files.createDirectories(tmpDir);
+        return Files.createTempFile(tmpDir, "upload-", ".part");
+    }
 
+    @Override
+    public String store(Path tempFile, String originalFilename, String targetSubdir, byte[] sha256) {
+        String ext = extension(originalFilename);
+        Path root = Path.of(mediaRoot).toAbsolutePath().normalize();
         try {
-            Files.createDirectories(targetDir);
-            Path target = targetDir.resolve(filename).normalize();
+            long size = Files.size(tempFile);
+            if (size == 0) throw new IllegalArgumentException("file is empty");
+            String relative;
+            if (contentAddressed(targetSubdir)) {
+                // хэш не посчитан при записи — один проход по готовому файлу
+                byte[] hash = sha256 != null ? sha256 : sha256(tempFile);
+                relative = publishBlob(root, tempFile, HexFormat.of().formatHex(hash), ext, size);
+            } else {
+                relative = publishUnique(root, tempFile, targetSubdir, ext);
+            }
+            return joinUrl(publicUrlPrefix, relative);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            log.error("Failed to store file: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to store file", e);
+        } finally {
+            // после перемещения на месте tmp ничего нет; остаётся он только при ошибке или дубликате
+            deleteTemp(tempFile);
+        }
+    }
 
-            // additional check: target must be inside mediaRoot
-            Path mediaRootPath = Path.of(mediaRoot).toAbsolutePath().normalize();
-            if (!target.toAbsolutePath().normalize().startsWith(mediaRootPath)) {
-                throw new SecurityException("Attempt to write outside media root");
+    /**
+     * Временные файлы, брошенные при сбое или перезапуске (в том числе куски докачиваемых загрузок),
+     * удаляются, если не менялись дольше media.tmp-max-age-ms.
+     */
+    @Scheduled(fixedDelayString = "${media.tmp-sweep-ms:3600000}")
+    public void sweepTemp() {
+        Path tmpDir = Path.of(mediaRoot).toAbsolutePath().normalize().resolve(TMP_DIR);
+        if (!Files.isDirectory(tmpDir)) return;
+        long cutoff = System.currentTimeMillis() - tmpMaxAgeMs;
+        int removed = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(tmpDir)) {
+            for (Path f : files) {
+                if (Files.getLastModifiedTime(f).toMillis() < cutoff && Files.deleteIfExists(f)) removed++;
             }
+        } catch (IOException ex) {
+            log.warn("Failed to sweep temp files: {}", ex.getMessage());
+        }
+        if (removed > 0) log.info("Removed {} stale temp files", removed);
+    }
 
-            // write file (overwrite not expected due to UUID)
-            try (var is = file.getInputStream()) {
-                Files.copy(is, target, StandardCopyOption.REPLACE_EXISTING);
+    /**
+     * Файлы без ссылок (загружены, но ни один пост их так и не сохранил, либо ссылки сняты,
+     * пока загрузка была свежей) удаляются, если не загружались повторно дольше media.blobs.orphan-max-age-ms.
+     */
+    @Scheduled(fixedDelayString = "${media.blobs.sweep-ms:3600000}")
+    public void sweepOrphanBlobs() {
+        if (!contentAddressed()) return;
+        Path root = Path.of(mediaRoot).toAbsolutePath().normalize();
+        int removed = 0;
+        List<String> batch;
+        do {
+            batch = mediaBlobRepository.findUnreferenced(orphanMaxAgeMs, sweepBatch);
+            for (String hash : batch) {
+                if (purgeBlob(root, hash)) removed++;
             }
+        } while (batch.size() == sweepBatch);
+        if (removed > 0) log.info("Removed {} unreferenced blobs", removed);
+    }
 
-            // Return public URL (prefix + relative path)
-            String relative = mediaRootPath.relativize(target.toAbsolutePath()).toString().replace('\\', '/');
-            String publicUrl = joinUrl(publicUrlPrefix, relative);
-            return publicUrl;
-        } catch (IOException e) {
-            log.error("Failed to store file: {}", e.getMessage(), e);
-            throw new RuntimeException("Failed to store file", e);
+    private boolean contentAddressed() {
+        return "content".equalsIgnoreCase(storageMode);
+    }
+
+    /**
+     * В blobs/ со счётчиком ссылок попадают только файлы постов: attach/delete вызываются лишь из поста,
+     * и аватар (users.avatar_url) с ref_count 0 удалила бы уборка файлов без ссылок.
+     */
+    private boolean contentAddressed(String targetSubdir) {
+        return contentAddressed() && targetSubdir != null
+                && (targetSubdir.equals(POST_MEDIA_DIR) || targetSubdir.startsWith(POST_MEDIA_DIR + "/"));
+    }
+
+    private static byte[] sha256(Path file) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) != -1) digest.update(buffer, 0, n);
+        }
+        return digest.digest();
+    }
+
+    private static void deleteTemp(Path tmp) {
+        if (tmp == null) return;
+        try { Files.deleteIfExists(tmp); } catch (IOException ex) { log.warn("Failed to delete temp file {}: {}", tmp, ex.getMessage()); }
+    }
+
+    /**
+     * Поток → FileChannel через один буфер фиксированного размера: в памяти никогда не больше
+     * BUFFER_SIZE байт загрузки. SHA-256 (если нужен) считается в том же проходе — второго чтения нет.
+     */
+    private static long writeToTemp(InputStream in, Path tmp, MessageDigest digest, long maxBytes) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long written = 0;
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                written += n;
+                if (written > maxBytes) throw new UploadTooLargeException(maxBytes);
+                if (digest != null) digest.update(buffer, 0, n);
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, n);
+                while (chunk.hasRemaining()) out.write(chunk);
+            }
+        }
+        return written;
+    }
+
+    // media.storage-mode: uuid — каждая загрузка отдельным файлом в targetSubdir
+    private String publishUnique(Path root, Path tmp, String targetSubdir, String ext) throws IOException {
+        Path subdir = (targetSubdir == null || targetSubdir.isBlank())
+                ? Path.of("")
+                : Path.of(targetSubdir);
+        Path targetDir = root.resolve(subdir).normalize();
+        Path target = targetDir.resolve(UUID.randomUUID() + ext).normalize();
+        // additional check: target must be inside mediaRoot
+        if (!target.startsWith(root)) {
+            throw new SecurityException("Attempt to write outside media root");
+        }
+        Files.createDirectories(targetDir);
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        imageDerivatives.submit(target);
+        return root.relativize(target).toString().replace('\\', '/');
+    }
+
+    /**
+     * media.storage-mode: content. Те же байты уже лежат в хранилище — возвращается их путь,
+     * временный файл удаляется. Ссылку на файл даёт не загрузка, а пост (attach), поэтому
+     * загрузка только продлевает жизнь файлу без ссылок. Подкаталог поста не используется:
+     * одинаковые обложка и фото шага — один файл.
+     */
+    private String publishBlob(Path root, Path tmp, String hash, String ext, long size) throws IOException {
+        synchronized (hashLock(hash)) {
+            if (mediaBlobRepository.touch(hash) == 1) {
+                return mediaBlobRepository.findPathByHash(hash).orElseThrow();
+            }
+            // blobs/ab/cd/<hash><ext>: не больше 65536 каталогов, в каждом немного файлов
+            String relative = BLOBS_DIR + "/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + ext;
+            Path target = root.resolve(relative);
+            Files.createDirectories(target.getParent());
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            mediaBlobRepository.insertOrTouch(hash, relative, size);
+            // копии строятся только для нового файла: у дубликата они уже есть
+            imageDerivatives.submit(target);
+            return relative;
+        }
+    }
+
+    // расширение из имени файла — единственное, что от имени попадает в путь; всё подозрительное отбрасывается
+    private static String extension(String originalFilename) {
+        if (originalFilename == null) return "";
+        String name = StringUtils.cleanPath(originalFilename);
+        int idx = name.lastIndexOf('.');
+        String ext = idx > 0 ? name.substring(idx).toLowerCase() : "";
+        return SAFE_EXT.matcher(ext).matches() ? ext : "";
+    }
+
+    @Override
+    public void attach(String fileUrl) {
+        String hash = blobHash(resolveUrl(fileUrl));
+        if (hash != null && mediaBlobRepository.acquire(hash) == 0) {
+            log.warn("Post references a missing blob: {}", fileUrl);
         }
     }
 
     @Override
     public boolean delete(String fileUrl) {
-        if (fileUrl == null || fileUrl.isBlank()) return false;
-        // Convert publicUrlPrefix + relative -> real path
         try {
-            String relative = fileUrl;
-            // if fileUrl contains publicUrlPrefix, strip it
-            if (fileUrl.startsWith(publicUrlPrefix)) {
-                relative = fileUrl.substring(publicUrlPrefix.length());
-            } else {
-                // if full URL provided (http...), try to extract path part
-                try {
-                    URI uri = URI.create(fileUrl);
-                    relative = uri.getPath();
-                    if (relative.startsWith(publicUrlPrefix)) relative = relative.substring(publicUrlPrefix.length());
-                } catch (Exception ignored) {}
-            }
-            // remove leading slash
-            if (relative.startsWith("/")) relative = relative.substring(1);
-            Path target = Path.of(mediaRoot).resolve(relative).normalize();
-
-            Path mediaRootPath = Path.of(mediaRoot).toAbsolutePath().normalize();
-            if (!target.toAbsolutePath().normalize().startsWith(mediaRootPath)) {
-                log.warn("Attempt to delete file outside media root: {}", target);
-                return false;
+            Path target = resolveUrl(fileUrl);
+            if (target == null) return false;
+            String hash = blobHash(target);
+            if (hash != null) {
+                if (mediaBlobRepository.release(hash) == 0) return false;
+                // запись и файл удаляются после коммита: откат вернёт ссылку, и файл должен остаться
+                Path root = Path.of(mediaRoot).toAbsolutePath().normalize();
+                TransactionHooks.afterCommit(() -> purgeBlob(root, hash));
+                return true;
             }
-            return Files.deleteIfExists(target);
+            if (!Files.exists(target)) return false;
+            TransactionHooks.afterCommit(() -> {
+                imageDerivatives.deleteVariants(target);
+                try {
+                    Files.deleteIfExists(target);
+                } catch (IOException ex) {
+                    log.warn("Failed to delete file {}: {}", fileUrl, ex.getMessage());
+                }
+            });
+            return true;
         } catch (Exception ex) {
             log.warn("Failed to delete file {}: {}", fileUrl, ex.getMessage());
             return false;
         }
     }
 
+    @Override
+    public Path resolveUrl(String fileUrl) {
+        if (fileUrl == null || fileUrl.isBlank()) return null;
+        // Convert publicUrlPrefix + relative -> real path
+        String relative = fileUrl;
+        // if fileUrl contains publicUrlPrefix, strip it
+        if (fileUrl.startsWith(publicUrlPrefix)) {
+            relative = fileUrl.substring(publicUrlPrefix.length());
+        } else {
+            // if full URL provided (http...), try to extract path part
+            try {
+                URI uri = URI.create(fileUrl);
+                relative = uri.getPath();
+                if (relative == null) return null;
+                if (relative.startsWith(publicUrlPrefix)) relative = relative.substring(publicUrlPrefix.length());
+            } catch (Exception ignored) {}
+        }
+        // remove leading slash
+        if (relative.startsWith("/")) relative = relative.substring(1);
+        Path mediaRootPath = Path.of(mediaRoot).toAbsolutePath().normalize();
+        Path target = mediaRootPath.resolve(relative).normalize();
+        if (!target.startsWith(mediaRootPath) || target.equals(mediaRootPath)) {
+            log.warn("Attempt to access file outside media root: {}", target);
+            return null;
+        }
+        return target;
+    }
+
+    // hash файла из blobs/, либо null — файл не из хранилища с адресацией по содержимому
+    private String blobHash(Path target) {
+        if (target == null) return null;
+        String relative = Path.of(mediaRoot).toAbsolutePath().normalize().relativize(target).toString().replace('\\', '/');
+        if (!relative.startsWith(BLOBS_DIR + "/")) return null;
+        String name = target.getFileName().toString();
+        int dot = name.indexOf('.');
+        String hash = dot < 0 ? name : name.substring(0, dot);
+        return SHA256_HEX.matcher(hash).matches() ? hash : null;
+    }
+
+    // под тем же замком, что и загрузка: повторная загрузка тех же байтов не получит URL удаляемого файла
+    private boolean purgeBlob(Path root, String hash) {
+        synchronized (hashLock(hash)) {
+            String relative = purgeTx.execute(status -> {
+                Optional<String> path = mediaBlobRepository.findPathByHash(hash);
+                return path.isPresent() && mediaBlobRepository.deleteUnreferenced(hash, orphanMaxAgeMs) == 1
+                        ? path.get() : null;
+            });
+            if (relative == null) return false;
+            Path target = root.resolve(relative);
+            imageDerivatives.deleteVariants(target);
+            try {
+                Files.deleteIfExists(target);
+            } catch (IOException ex) {
+                log.warn("Failed to delete blob {}: {}", target, ex.getMessage());
+            }
+            return true;
+        }
+    }
+
+    private Object hashLock(String hash) {
+        return hashLocks[Integer.parseInt(hash.substring(0, 2), 16) % hashLocks.length];
+    }
+
     @Override
     public Path resolvePath(String relativePath) {
         if (relativePath.startsWith("/")) relativePath = relativePath.substring(1);
@@ -2,64 +2,75 @@ package ru.zagrebin.service.impl;
 
 import jakarta.persistence.EntityNotFoundException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import ru.zagrebin.model.PostLike;
 import ru.zagrebin.model.PostLikeId;
 import ru.zagrebin.repository.PostLikeRepository;
-import ru.zagrebin.repository.PostRepository;
-import ru.zagrebin.repository.UserRepository;
+import ru.zagrebin.repository.projection.RemovedLikeView;
 import ru.zagrebin.service.LikeService;
+import ru.zagrebin.service.cache.PostFullCache;
+import ru.zagrebin.service.trending.TrendingScores;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
 
 @Service
 @Slf4j
 public class LikeServiceImpl implements LikeService {
 
+    private static final String PUBLISHED = "published";
+
     private final PostLikeRepository postLikeRepository;
-    private final PostRepository postRepository;
-    private final UserRepository userRepository;
+    private final PostFullCache postFullCache;
+    private final TrendingScores trendingScores;
 
     public LikeServiceImpl(PostLikeRepository postLikeRepository,
-                           PostRepository postRepository,
-                           UserRepository userRepository) {
+                           PostFullCache postFullCache,
+                           TrendingScores trendingScores) {
         this.postLikeRepository = postLikeRepository;
-        this.postRepository = postRepository;
-        this.userRepository = userRepository;
+        this.postFullCache = postFullCache;
+        this.trendingScores = trendingScores;
     }
 
     @Override
     @Transactional
     public boolean like(Long postId, Long userId) {
-        if (!postRepository.existsById(postId)) throw new EntityNotFoundException("Post not found: " + postId);
-        if (!userRepository.existsById(userId)) throw new EntityNotFoundException("User not found: " + userId);
-
-        PostLikeId id = new PostLikeId(postId, userId);
-        if (postLikeRepository.existsById(id)) {
+        Optional<String> status;
+        try {
+            // вставка + счётчик одним атомарным запросом, без предварительных existsById
+            status = postLikeRepository.insertLike(postId, userId);
+        } catch (DataIntegrityViolationException ex) {
+            // FK post_like -> posts/users: нет такого поста или пользователя
+            throw new EntityNotFoundException("Post or user not found: post=" + postId + ", user=" + userId);
+        }
+        if (status.isEmpty()) {
             return false; // уже лайкнут
         }
-
-        PostLike like = PostLike.builder()
-                .id(id)
-                .post(postRepository.getReferenceById(postId))
-                .user(userRepository.getReferenceById(userId))
-                .build();
-        postLikeRepository.save(like);
-
-        // atomic increment at DB-level
-        postRepository.incrementLikesCount(postId);
+        postFullCache.adjustLikesAfterCommit(postId, 1);
+        // черновики и снятые с публикации в тренды не попадают (как и их просмотры)
+        if (PUBLISHED.equals(status.get())) {
+            trendingScores.likedAfterCommit(postId);
+        }
         return true;
     }
 
     @Override
     @Transactional
     public boolean unlike(Long postId, Long userId) {
-        PostLikeId id = new PostLikeId(postId, userId);
-        if (!postLikeRepository.existsById(id)) {
+        Optional<RemovedLikeView> removed = postLikeRepository.deleteLike(postId, userId);
+        if (removed.isEmpty()) {
             return false;
         }
-        postLikeRepository.deleteById(id);
-        // decrement (guarded to not go below zero)
-        postRepository.decrementLikesCount(postId);
+        postFullCache.adjustLikesAfterCommit(postId, -1);
+        if (PUBLISHED.equals(removed.get().getStatus())) {
+            Instant likedAt = Instant.ofEpochMilli(Math.round(removed.get().getLikedAt() * 1000));
+            trendingScores.unlikedAfterCommit(postId, likedAt);
+        }
         return true;
     }
 
@@ -70,9 +81,16 @@ public class LikeServiceImpl implements LikeService {
         return postLikeRepository.existsById(new PostLikeId(postId, userId));
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public Set<Long> findLikedPostIds(Collection<Long> postIds, Long userId) {
+        if (userId == null || postIds == null || postIds.isEmpty()) return Collections.emptySet();
+        return new HashSet<>(postLikeRepository.findLikedPostIds(userId, postIds.toArray(new Long[0])));
+    }
+
     @Override
     @Transactional(readOnly = true)
     public long countLikes(Long postId) {
         return postLikeRepository.countByIdPostId(postId);
     }
-}
\ No newline at end of file
+}
@@ -2,6 +2,7 @@ package ru.zagrebin.service.impl;
 
 import jakarta.persistence.EntityNotFoundException;
 import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
@@ -10,16 +11,42 @@ import org.springframework.transaction.annotation.Transactional;
 import ru.zagrebin.dto.PostCardDto;
 import ru.zagrebin.dto.PostCreateDto;
 import ru.zagrebin.dto.PostFullDto;
+import ru.zagrebin.dto.PostSearchHitDto;
+import ru.zagrebin.dto.PostSuggestionDto;
 import ru.zagrebin.dto.PostUpdateDto;
+import ru.zagrebin.dto.TagFacetDto;
 import ru.zagrebin.mapper.PostMapper;
 import ru.zagrebin.model.Post;
 import ru.zagrebin.model.RecipeStep;
+import ru.zagrebin.model.Tag;
 import ru.zagrebin.repository.PostRepository;
-import ru.zagrebin.repository.UserRepository;
+import ru.zagrebin.repository.TagRepository;
+import ru.zagrebin.repository.projection.PostCardView;
+import ru.zagrebin.repository.projection.PostSearchHitView;
 import ru.zagrebin.service.FileStorageService;
+import ru.zagrebin.service.InvalidRequestParameterException;
 import ru.zagrebin.service.LikeService;
 import ru.zagrebin.service.PostService;
+import ru.zagrebin.service.SubscriptionService;
 import ru.zagrebin.service.assembler.PostAssembler;
+import ru.zagrebin.service.cache.PostFullCache;
+import ru.zagrebin.service.dictionary.DictionaryIndex;
+import ru.zagrebin.service.facet.PostFeedOrder;
+import ru.zagrebin.service.facet.PostFilter;
+import ru.zagrebin.service.facet.RecipeRangeIndex;
+import ru.zagrebin.service.facet.TagFacetIndex;
+import ru.zagrebin.service.facet.TagMatchMode;
+import ru.zagrebin.service.counter.PostViewCounter;
+import ru.zagrebin.service.pagination.CursorPage;
+import ru.zagrebin.service.pagination.FacetedCursorPage;
+import ru.zagrebin.service.pagination.PostCursor;
+import ru.zagrebin.service.pagination.SearchCursor;
+import ru.zagrebin.service.pantry.PantryIndex;
+import ru.zagrebin.service.pantry.PantryMode;
+import ru.zagrebin.service.related.RelatedRecipesIndex;
+import ru.zagrebin.service.search.PostSearchIndex;
+import ru.zagrebin.service.timeline.TimelineFanout;
+import ru.zagrebin.service.trending.TrendingScores;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -28,38 +55,308 @@ import java.util.stream.Collectors;
 @Slf4j
 public class PostServiceImpl implements PostService {
 
+    private static final String PUBLISHED = "published";
+
     private final PostRepository postRepository;
     private final PostAssembler postAssembler;
     private final LikeService likeService;
-    private final UserRepository userRepository;
+    private final SubscriptionService subscriptionService;
     private final FileStorageService fileStorageService;
+    private final PostFullCache postFullCache;
+    private final PostViewCounter postViewCounter;
+    private final TimelineFanout timelineFanout;
+    private final TrendingScores trendingScores;
+    private final RelatedRecipesIndex relatedRecipesIndex;
+    private final PantryIndex pantryIndex;
+    private final TagFacetIndex tagFacetIndex;
+    private final TagRepository tagRepository;
+    private final RecipeRangeIndex recipeRangeIndex;
+    private final PostFeedOrder postFeedOrder;
+    private final PostSearchIndex postSearchIndex;
+    private final DictionaryIndex dictionaryIndex;
 
     public PostServiceImpl(PostRepository postRepository,
                            PostAssembler postAssembler,
                            LikeService likeService,
-                           UserRepository userRepository,
-                           FileStorageService fileStorageService) {
+                           SubscriptionService subscriptionService,
+                           FileStorageService fileStorageService,
+                           PostFullCache postFullCache,
+                           PostViewCounter postViewCounter,
+                           TimelineFanout timelineFanout,
+                           TrendingScores trendingScores,
+                           RelatedRecipesIndex relatedRecipesIndex,
+                           PantryIndex pantryIndex,
+                           TagFacetIndex tagFacetIndex,
+                           TagRepository tagRepository,
+                           RecipeRangeIndex recipeRangeIndex,
+                           PostFeedOrder postFeedOrder,
+                           PostSearchIndex postSearchIndex,
+                           DictionaryIndex dictionaryIndex) {
         this.postRepository = postRepository;
         this.postAssembler = postAssembler;
         this.likeService = likeService;
-        this.userRepository = userRepository;
+        this.subscriptionService = subscriptionService;
         this.fileStorageService = fileStorageService;
+        this.postFullCache = postFullCache;
+        this.postViewCounter = postViewCounter;
+        this.timelineFanout = timelineFanout;
+        this.trendingScores = trendingScores;
+        this.relatedRecipesIndex = relatedRecipesIndex;
+        this.pantryIndex = pantryIndex;
+        this.tagFacetIndex = tagFacetIndex;
+        this.tagRepository = tagRepository;
+        this.recipeRangeIndex = recipeRangeIndex;
+        this.postFeedOrder = postFeedOrder;
+        this.postSearchIndex = postSearchIndex;
+        this.dictionaryIndex = dictionaryIndex;
     }
 
     /**
-     * Старый простой метод — возвращает все опубликованные посты (карточки) без тяжёлых связей.
+     * Лента опубликованных постов с keyset-пагинацией по (createdAt, id).
+     * Берём limit + 1 строку, чтобы понять, есть ли следующая страница, без count(*).
+     * Карточки читаются плоской проекцией одним запросом — Post не гидрируется.
      */
     @Override
     @Transactional(readOnly = true)
-    public List<PostCardDto> getAllPublishedPosts() {
-        return postRepository.findByStatusOrderByCreatedAtDesc("published")
-                .stream()
+    public CursorPage<PostCardDto> getPublishedFeed(String cursor, int limit, Long currentUserId) {
+        List<PostCardView> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = postRepository.findFeedCards(PUBLISHED, limit + 1);
+        } else {
+            PostCursor after = PostCursor.decode(cursor);
+            rows = postRepository.findFeedCardsAfter(PUBLISHED, after.getCreatedAt(), after.getId(), limit + 1);
+        }
+
+        boolean hasNext = rows.size() > limit;
+        if (hasNext) {
+            rows = rows.subList(0, limit);
+        }
+
+        List<PostCardDto> cards = rows.stream()
                 .map(PostMapper::toCard)
                 .collect(Collectors.toList());
+        markLiked(cards, currentUserId);
+
+        String next = null;
+        if (hasNext) {
+            PostCardView last = rows.get(rows.size() - 1);
+            next = PostCursor.of(last.getCreatedAt(), last.getId()).encode();
+        }
+        return new CursorPage<>(cards, next);
+    }
+
+    /**
+     * Лента подписок: позиции берутся из TimelineFanout (срез буфера в памяти), карточки — одним
+     * запросом по id. Курсор тот же, что у общей ленты, — позиция последней отданной записи.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<PostCardDto> getFollowingFeed(Long userId, String cursor, int limit) {
+        PostCursor after = (cursor == null || cursor.isBlank()) ? null : PostCursor.decode(cursor);
+        List<PostCursor> keys = timelineFanout.page(userId, after, limit + 1);
+
+        boolean hasNext = keys.size() > limit;
+        if (hasNext) {
+            keys = keys.subList(0, limit);
+        }
+        if (keys.isEmpty()) {
+            return new CursorPage<>(Collections.emptyList(), null);
+        }
+
+        List<Long> ids = keys.stream().map(PostCursor::getId).collect(Collectors.toList());
+        List<PostCardDto> cards = loadCardsInOrder(ids);
+        markLiked(cards, userId);
+
+        String next = hasNext ? keys.get(keys.size() - 1).encode() : null;
+        return new CursorPage<>(cards, next);
+    }
+
+    /**
+     * Лента с фильтром по тегам (id или slug) и диапазонам калорийности/времени. Диапазоны дают битмап
+     * RecipeRangeIndex, теги и фасеты — TagFacetIndex, страница выборки — PostFeedOrder в порядке общей ленты
+     * (created_at, id) с тем же курсором, карточки страницы — один запрос.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public FacetedCursorPage<PostCardDto> getPublishedFeedFiltered(PostFilter filter, String cursor, int limit,
+                                                                   Long currentUserId) {
+        PostCursor after = (cursor == null || cursor.isBlank()) ? null : PostCursor.decode(cursor);
+        TagMatchMode mode = filter.getMode();
+
+        Set<Long> tagIds = new LinkedHashSet<>();
+        List<String> slugs = new ArrayList<>();
+        for (String t : filter.getTags()) {
+            String token = t.trim();
+            if (token.isEmpty()) continue;
+            if (token.chars().allMatch(Character::isDigit)) tagIds.add(Long.parseLong(token));
+            else slugs.add(token);
+        }
+        if (!slugs.isEmpty()) {
+            List<Tag> found = tagRepository.findBySlugIn(slugs);
+            if (mode == TagMatchMode.ALL && found.size() < new HashSet<>(slugs).size()) {
+                // неизвестный тег в режиме all — пересечение пусто
+                return new FacetedCursorPage<>(Collections.emptyList(), null, 0, Collections.emptyList());
+            }
+            found.forEach(tag -> tagIds.add(tag.getId()));
+        }
+
+        RoaringBitmap ranges = recipeRangeIndex.match(filter.getCaloriesMin(), filter.getCaloriesMax(),
+                filter.getCookingTimeMin(), filter.getCookingTimeMax());
+        TagFacetIndex.Result result = tagFacetIndex.filter(tagIds, mode, ranges);
+        List<PostCursor> keys = postFeedOrder.page(result.getMatched(), after, limit + 1);
+        boolean hasNext = keys.size() > limit;
+        if (hasNext) {
+            keys = keys.subList(0, limit);
+        }
+
+        List<Long> ids = keys.stream().map(PostCursor::getId).collect(Collectors.toList());
+        List<PostCardDto> cards = ids.isEmpty()
+                ? Collections.emptyList()
+                : orderByIds(ids, postRepository.findCardsByIdsAndStatus(ids, PUBLISHED));
+        markLiked(cards, currentUserId);
+
+        String next = hasNext ? keys.get(keys.size() - 1).encode() : null;
+        return new FacetedCursorPage<>(cards, next, result.getTotal(), toFacets(result.getFacetCounts()));
+    }
+
+    private List<TagFacetDto> toFacets(Map<Long, Long> counts) {
+        if (counts.isEmpty()) return Collections.emptyList();
+        Map<Long, Tag> tags = tagRepository.findAllById(counts.keySet()).stream()
+                .collect(Collectors.toMap(Tag::getId, t -> t));
+        List<TagFacetDto> facets = new ArrayList<>(counts.size());
+        counts.forEach((tagId, count) -> {
+            Tag tag = tags.get(tagId);
+            if (tag == null) return;
+            TagFacetDto dto = new TagFacetDto();
+            dto.setId(tag.getId());
+            dto.setName(tag.getName());
+            dto.setColor(tag.getColor());
+            dto.setCount(count);
+            facets.add(dto);
+        });
+        return facets;
     }
 
     /**
-     * Новая реализация: пагинация + двухэтапная загрузка (IDs -> fetch by entity graph).
+     * Популярные посты: порядок — из TrendingScores в памяти, карточки — одним запросом.
+     * Лайки и просмотры черновиков в тренды не попадают, снятые с публикации посты из них убираются,
+     * поэтому топ берётся без запаса; фильтр по статусу в запросе карточек — на случай гонки со снятием.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<PostCardDto> getTrending(int limit, Long currentUserId) {
+        List<Long> ids = trendingScores.top(limit);
+        if (ids.isEmpty()) return Collections.emptyList();
+
+        List<PostCardDto> cards = orderByIds(ids, postRepository.findCardsByIdsAndStatus(ids, PUBLISHED));
+        markLiked(cards, currentUserId);
+        return cards;
+    }
+
+    /**
+     * Похожие по составу рецепты: кандидаты и порядок — из RelatedRecipesIndex, карточки — одним запросом.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<PostCardDto> getRelated(Long postId, int limit, Long currentUserId) {
+        List<Long> ids = relatedRecipesIndex.related(postId, limit);
+        if (ids.isEmpty()) return Collections.emptyList();
+
+        List<PostCardDto> cards = orderByIds(ids, postRepository.findCardsByIdsAndStatus(ids, PUBLISHED));
+        markLiked(cards, currentUserId);
+        return cards;
+    }
+
+    /**
+     * Рецепты по набору ингредиентов: id подбираются в PantryIndex битмапами, карточки — одним запросом.
+     * Порядок — по убыванию id (новые сверху), курсор — id последней отданной карточки.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<PostCardDto> getByPantry(List<Long> ingredientIds, PantryMode mode, int maxMissing,
+                                               String cursor, int limit, Long currentUserId) {
+        Long before = null;
+        if (cursor != null && !cursor.isBlank()) {
+            try {
+                before = Long.parseLong(cursor);
+            } catch (NumberFormatException e) {
+                throw new InvalidRequestParameterException("Invalid cursor: " + cursor, e);
+            }
+        }
+
+        List<Long> ids = pantryIndex.find(mode, ingredientIds, maxMissing, before, limit + 1);
+        boolean hasNext = ids.size() > limit;
+        if (hasNext) {
+            ids = ids.subList(0, limit);
+        }
+        if (ids.isEmpty()) {
+            return new CursorPage<>(Collections.emptyList(), null);
+        }
+
+        List<PostCardDto> cards = orderByIds(ids, postRepository.findCardsByIdsAndStatus(ids, PUBLISHED));
+        markLiked(cards, currentUserId);
+        String next = hasNext ? String.valueOf(ids.get(ids.size() - 1)) : null;
+        return new CursorPage<>(cards, next);
+    }
+
+    /**
+     * Поиск по search_vector (заголовок, анонс, ингредиенты, шаги, текст; см. V5). Совпадения с подсвеченными
+     * фрагментами — один запрос, карточки — второй по id. Keyset по (ts_rank, id): курсор хранит позицию
+     * последнего совпадения, поэтому глубокие страницы не перечитывают пропущенные строки.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<PostSearchHitDto> search(String query, String cursor, int limit, Long currentUserId) {
+        if (query == null || query.isBlank()) {
+            return new CursorPage<>(Collections.emptyList(), null);
+        }
+        String q = query.trim();
+        List<PostSearchHitView> hits;
+        if (cursor == null || cursor.isBlank()) {
+            hits = postRepository.searchHits(q, PUBLISHED, limit + 1);
+        } else {
+            SearchCursor after = SearchCursor.decode(cursor);
+            hits = postRepository.searchHitsAfter(q, PUBLISHED, after.getRank(), after.getId(), limit + 1);
+        }
+
+        boolean hasNext = hits.size() > limit;
+        if (hasNext) {
+            hits = hits.subList(0, limit);
+        }
+        if (hits.isEmpty()) {
+            return new CursorPage<>(Collections.emptyList(), null);
+        }
+
+        List<Long> ids = hits.stream().map(PostSearchHitView::getPostId).collect(Collectors.toList());
+        List<PostCardDto> cards = loadCardsInOrder(ids);
+        markLiked(cards, currentUserId);
+        Map<Long, PostCardDto> byId = cards.stream().collect(Collectors.toMap(PostCardDto::getId, c -> c));
+
+        List<PostSearchHitDto> items = new ArrayList<>(hits.size());
+        for (PostSearchHitView hit : hits) {
+            PostCardDto card = byId.get(hit.getPostId());
+            if (card != null) {
+                items.add(new PostSearchHitDto(card, hit.getTitleHighlight(), hit.getSnippet(), hit.getRank()));
+            }
+        }
+
+        PostSearchHitView last = hits.get(hits.size() - 1);
+        String next = hasNext ? new SearchCursor(last.getRank(), last.getPostId()).encode() : null;
+        return new CursorPage<>(items, next);
+    }
+
+    /**
+     * Подсказки целиком из PostSearchIndex: ни запросов к БД, ни транзакции.
+     */
+    @Override
+    public List<PostSuggestionDto> suggest(String query, int limit) {
+        return postSearchIndex.suggest(query, limit).stream()
+                .map(hit -> new PostSuggestionDto(hit.getPostId(), hit.getTitle(), hit.getScore()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Пагинация по смещению: сначала id страницы, затем карточки проекцией.
      * Возвращает страницу PostCardDto, сохраняя порядок по createdAt desc (через ids).
      */
     @Transactional(readOnly = true)
@@ -71,44 +368,73 @@ public class PostServiceImpl implements PostService {
             return new PageImpl<>(Collections.emptyList(), pageable, 0);
         }
 
-        // 2) Загружаем сущности с графом (tags, steps, ingredients + their ingredient)
-        List<Post> posts = postRepository.findAllByIdWithEntityGraph(ids);
+        // 2) Карточки плоской проекцией и восстановление порядка по ids
+        List<PostCardDto> orderedDtos = loadCardsInOrder(ids);
 
-        // 3) Сопоставляем и восстанавливаем порядок по ids
-        Map<Long, Post> map = posts.stream()
-                .collect(Collectors.toMap(Post::getId, p -> p));
+        long total = postRepository.countByStatus(status);
 
-        List<PostCardDto> orderedDtos = new ArrayList<>(ids.size());
-        for (Long id : ids) {
-            Post p = map.get(id);
-            if (p != null) {
-                orderedDtos.add(PostMapper.toCard(p));
-            }
+        return new PageImpl<>(orderedDtos, pageable, total);
+    }
+
+    /**
+     * Флаги isLiked для всей страницы одним запросом к post_like.
+     */
+    private void markLiked(List<PostCardDto> cards, Long currentUserId) {
+        if (currentUserId == null || cards.isEmpty()) return;
+        List<Long> ids = cards.stream().map(PostCardDto::getId).collect(Collectors.toList());
+        Set<Long> liked = likeService.findLikedPostIds(ids, currentUserId);
+        for (PostCardDto card : cards) {
+            card.setLiked(liked.contains(card.getId()));
         }
+    }
 
-        long total = postRepository.countByStatus(status);
+    /**
+     * Карточки для заданных id в том же порядке; отсутствующие (удалённые) id пропускаются.
+     */
+    private List<PostCardDto> loadCardsInOrder(List<Long> ids) {
+        return orderByIds(ids, postRepository.findCardsByIds(ids));
+    }
 
-        return new PageImpl<>(orderedDtos, pageable, total);
+    private static List<PostCardDto> orderByIds(List<Long> ids, List<PostCardView> views) {
+        Map<Long, PostCardView> map = views.stream()
+                .collect(Collectors.toMap(PostCardView::getId, v -> v));
+
+        List<PostCardDto> ordered = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            PostCardView v = map.get(id);
+            if (v != null) {
+                ordered.add(PostMapper.toCard(v));
+            }
+        }
+        return ordered;
     }
 
     /**
-     * Возвращает полный пост с отношениями (EntityGraph single fetch).
+     * Возвращает полный пост. Общая для всех часть берётся из PostFullCache
+     * (при промахе — findByIdWithAllRelations), флаги читателя накладываются поверх копии.
+     * Без @Transactional: попадание в кэш не должно открывать транзакцию и брать соединение.
      */
     @Override
-    @Transactional(readOnly = true)
     public PostFullDto getFullPost(Long postId, Long currentUserId) {
-        Post post = postRepository.findByIdWithAllRelations(postId)
-                .orElseThrow(() -> new EntityNotFoundException("Post not found: " + postId));
+        PostFullDto base = postFullCache.get(postId, id -> postRepository.findByIdWithAllRelations(id)
+                .map(p -> PostMapper.toFull(p, false, false))
+                .orElse(null));
+        if (base == null) {
+            throw new EntityNotFoundException("Post not found: " + postId);
+        }
 
-        boolean isLiked = currentUserId != null && likeService.isLiked(postId, currentUserId);
-        boolean isSubscribed = false;
-        if (currentUserId != null && post.getAuthor() != null) {
-            isSubscribed = userRepository.findById(currentUserId)
-                    .map(u -> u.getSubscriptions().contains(post.getAuthor()))
-                    .orElse(false);
+        postViewCounter.increment(postId);
+        // черновики и снятые с публикации в тренды не попадают (как и при восстановлении из БД)
+        if ("published".equals(base.getStatus())) {
+            trendingScores.viewed(postId);
         }
 
-        return PostMapper.toFull(post, isLiked, isSubscribed);
+        boolean isLiked = currentUserId != null && likeService.isLiked(postId, currentUserId);
+        Long authorId = base.getAuthor() != null ? base.getAuthor().getId() : null;
+        PostFullDto dto = PostMapper.withViewer(base, isLiked, isSubscribed(currentUserId, authorId));
+        // с учётом ещё не сброшенных в БД просмотров (включая этот)
+        dto.setViewsCount(postViewCounter.views(postId, base.getViewsCount()));
+        return dto;
     }
 
     @Override
@@ -118,6 +444,19 @@ public class PostServiceImpl implements PostService {
         Post created = postAssembler.createFromDto(dto);
         // Сохраняем сущность (assembler должен заполнить необходимые поля)
         Post saved = postRepository.save(created);
+        mediaUrls(saved).forEach(fileStorageService::attach);
+        if (PUBLISHED.equals(saved.getStatus())) {
+            timelineFanout.published(saved.getId(), saved.getAuthor().getId(), saved.getCreatedAt());
+            List<Long> ingredientIds = ingredientIds(saved);
+            relatedRecipesIndex.putAfterCommit(saved.getId(), ingredientIds);
+            pantryIndex.putAfterCommit(saved.getId(), ingredientIds);
+            tagFacetIndex.putAfterCommit(saved.getId(), tagIds(saved));
+            recipeRangeIndex.putAfterCommit(saved.getId(), saved.getCalories(), saved.getCookingTimeMinutes());
+            postFeedOrder.putAfterCommit(saved.getId(), saved.getCreatedAt());
+            postSearchIndex.putAfterCommit(saved.getId(), saved.getTitle(), saved.getExcerpt(), ingredientNames(saved));
+        }
+        // ранги тегов и ингредиентов считаются по всем постам, не только опубликованным
+        dictionaryIndex.changedAfterCommit();
         return PostMapper.toCard(saved);
     }
 
@@ -133,18 +472,44 @@ public class PostServiceImpl implements PostService {
             // при необходимости бросаем исключение контроля доступа
         }
 
+        boolean wasPublished = PUBLISHED.equals(existing.getStatus());
+        // existing и updated — одна и та же сущность, поэтому старые URL запоминаются до изменения
+        Set<String> oldMedia = mediaUrls(existing);
+
         Post updated = postAssembler.updateFromDto(postId, dto);
         Post saved = postRepository.save(updated);
+        syncMedia(oldMedia, mediaUrls(saved));
 
-        boolean isLiked = currentUserId != null && likeService.isLiked(postId, currentUserId);
-        boolean isSubscribed = false;
-        if (currentUserId != null && saved.getAuthor() != null) {
-            isSubscribed = userRepository.findById(currentUserId)
-                    .map(u -> u.getSubscriptions().contains(saved.getAuthor()))
-                    .orElse(false);
+        boolean isPublished = PUBLISHED.equals(saved.getStatus());
+        if (isPublished && !wasPublished) {
+            timelineFanout.published(saved.getId(), saved.getAuthor().getId(), saved.getCreatedAt());
+        } else if (wasPublished && !isPublished) {
+            timelineFanout.unpublished(postId, saved.getAuthor() != null ? saved.getAuthor().getId() : null, true);
+            trendingScores.removeAfterCommit(postId);
+        }
+        if (isPublished) {
+            List<Long> ingredientIds = ingredientIds(saved);
+            relatedRecipesIndex.putAfterCommit(postId, ingredientIds);
+            pantryIndex.putAfterCommit(postId, ingredientIds);
+            tagFacetIndex.putAfterCommit(postId, tagIds(saved));
+            recipeRangeIndex.putAfterCommit(postId, saved.getCalories(), saved.getCookingTimeMinutes());
+            postFeedOrder.putAfterCommit(postId, saved.getCreatedAt());
+            postSearchIndex.putAfterCommit(postId, saved.getTitle(), saved.getExcerpt(), ingredientNames(saved));
+        } else {
+            relatedRecipesIndex.removeAfterCommit(postId);
+            pantryIndex.removeAfterCommit(postId);
+            tagFacetIndex.removeAfterCommit(postId);
+            recipeRangeIndex.removeAfterCommit(postId);
+            postFeedOrder.removeAfterCommit(postId);
+            postSearchIndex.removeAfterCommit(postId);
         }
 
-        return PostMapper.toFull(saved, isLiked, isSubscribed);
+        postFullCache.invalidateAfterCommit(postId);
+        dictionaryIndex.changedAfterCommit();
+
+        boolean isLiked = currentUserId != null && likeService.isLiked(postId, currentUserId);
+        Long authorId = saved.getAuthor() != null ? saved.getAuthor().getId() : null;
+        return PostMapper.toFull(saved, isLiked, isSubscribed(currentUserId, authorId));
     }
 
     @Override
@@ -156,17 +521,68 @@ public class PostServiceImpl implements PostService {
 
         Post post = postRepository.findByIdWithAllRelations(postId).orElse(null);
         if (post != null) {
-            if (post.getCoverUrl() != null) {
-                try { fileStorageService.delete(post.getCoverUrl()); } catch (Exception ex) { log.warn("Failed to delete cover: {}", ex.getMessage()); }
-            }
+            syncMedia(mediaUrls(post), Collections.emptySet());
+        }
+        Long authorId = post != null && post.getAuthor() != null ? post.getAuthor().getId() : null;
+
+        postRepository.deleteById(postId);
+        postFullCache.invalidateAfterCommit(postId);
+        timelineFanout.unpublished(postId, authorId, false);
+        trendingScores.removeAfterCommit(postId);
+        relatedRecipesIndex.removeAfterCommit(postId);
+        pantryIndex.removeAfterCommit(postId);
+        tagFacetIndex.removeAfterCommit(postId);
+        recipeRangeIndex.removeAfterCommit(postId);
+        postFeedOrder.removeAfterCommit(postId);
+        postSearchIndex.removeAfterCommit(postId);
+        dictionaryIndex.changedAfterCommit();
+    }
+
+    // обложка и фото шагов; один URL в посте — одна ссылка на файл
+    private static Set<String> mediaUrls(Post post) {
+        Set<String> urls = new LinkedHashSet<>();
+        if (post.getCoverUrl() != null && !post.getCoverUrl().isBlank()) urls.add(post.getCoverUrl());
+        if (post.getSteps() != null) {
             for (RecipeStep s : post.getSteps()) {
-                if (s.getImageUrl() != null) {
-                    try { fileStorageService.delete(s.getImageUrl()); } catch (Exception ex) { log.warn("Failed to delete step image: {}", ex.getMessage()); }
-                }
+                if (s.getImageUrl() != null && !s.getImageUrl().isBlank()) urls.add(s.getImageUrl());
             }
         }
+        return urls;
+    }
 
-        postRepository.deleteById(postId);
+    // ссылки на файлы меняются в транзакции поста, а с диска файлы уходят только после коммита
+    private void syncMedia(Set<String> before, Set<String> after) {
+        for (String url : after) {
+            if (!before.contains(url)) fileStorageService.attach(url);
+        }
+        for (String url : before) {
+            if (after.contains(url)) continue;
+            try { fileStorageService.delete(url); } catch (Exception ex) { log.warn("Failed to release file {}: {}", url, ex.getMessage()); }
+        }
+    }
+
+    private static List<Long> tagIds(Post post) {
+        if (post.getTags() == null) return Collections.emptyList();
+        return post.getTags().stream().map(Tag::getId).collect(Collectors.toList());
+    }
+
+    private static List<Long> ingredientIds(Post post) {
+        if (post.getIngredients() == null) return Collections.emptyList();
+        return post.getIngredients().stream()
+                .map(pi -> pi.getIngredient().getId())
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> ingredientNames(Post post) {
+        if (post.getIngredients() == null) return Collections.emptyList();
+        return post.getIngredients().stream()
+                .map(pi -> pi.getIngredient().getName())
+                .collect(Collectors.toList());
+    }
+
+    private boolean isSubscribed(Long currentUserId, Long authorId) {
+        if (currentUserId == null || authorId == null) return false;
+        return subscriptionService.isSubscribed(currentUserId, authorId);
     }
 
     // Дополнительные утилитарные методы (например, для лайков) можно добавить здесь.
@@ -0,0 +1,68 @@
+package ru.zagrebin.service.impl;
+
+import jakarta.persistence.EntityNotFoundException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.zagrebin.repository.UserRepository;
+import ru.zagrebin.service.SubscriptionService;
+import ru.zagrebin.service.cache.SubscriptionIndex;
+import ru.zagrebin.service.timeline.TimelineFanout;
+import ru.zagrebin.service.tx.TransactionHooks;
+
+@Service
+public class SubscriptionServiceImpl implements SubscriptionService {
+
+    private final UserRepository userRepository;
+    private final SubscriptionIndex subscriptionIndex;
+    private final TimelineFanout timelineFanout;
+
+    public SubscriptionServiceImpl(UserRepository userRepository,
+                                   SubscriptionIndex subscriptionIndex,
+                                   TimelineFanout timelineFanout) {
+        this.userRepository = userRepository;
+        this.subscriptionIndex = subscriptionIndex;
+        this.timelineFanout = timelineFanout;
+    }
+
+    @Override
+    @Transactional
+    public boolean subscribe(Long subscriberId, Long authorId) {
+        requireDifferent(subscriberId, authorId);
+        int changed;
+        try {
+            changed = userRepository.insertSubscription(subscriberId, authorId);
+        } catch (DataIntegrityViolationException ex) {
+            // FK user_subscriptions -> users
+            throw new EntityNotFoundException("User not found: subscriber=" + subscriberId + ", author=" + authorId);
+        }
+        if (changed == 0) {
+            return false; // уже подписан
+        }
+        TransactionHooks.afterCommit(() -> subscriptionIndex.added(subscriberId, authorId));
+        timelineFanout.subscribed(subscriberId, authorId);
+        return true;
+    }
+
+    @Override
+    @Transactional
+    public boolean unsubscribe(Long subscriberId, Long authorId) {
+        if (userRepository.deleteSubscription(subscriberId, authorId) == 0) {
+            return false;
+        }
+        TransactionHooks.afterCommit(() -> subscriptionIndex.removed(subscriberId, authorId));
+        timelineFanout.unsubscribed(subscriberId, authorId);
+        return true;
+    }
+
+    @Override
+    public boolean isSubscribed(Long subscriberId, Long authorId) {
+        return subscriptionIndex.isSubscribed(subscriberId, authorId);
+    }
+
+    private static void requireDifferent(Long subscriberId, Long authorId) {
+        if (subscriberId != null && subscriberId.equals(authorId)) {
+            throw new IllegalArgumentException("User cannot subscribe to himself: " + subscriberId);
+        }
+    }
+}
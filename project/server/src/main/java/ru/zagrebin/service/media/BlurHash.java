@@ -0,0 +1,99 @@
+package ru.zagrebin.service.media;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Кодировщик BlurHash (https://blurha.sh): несколько низкочастотных косинусных компонент картинки
+ * в строке base83. Клиент разворачивает её в размытое превью без запроса к серверу.
+ * На вход нужна уже уменьшенная картинка — стоимость растёт как пиксели × компоненты.
+ */
+final class BlurHash {
+
+    private static final String BASE83 =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~";
+
+    private BlurHash() {}
+
+    static String encode(BufferedImage image, int componentsX, int componentsY) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] rgb = image.getRGB(0, 0, width, height, null, 0, width);
+        double[] r = new double[rgb.length];
+        double[] g = new double[rgb.length];
+        double[] b = new double[rgb.length];
+        for (int i = 0; i < rgb.length; i++) {
+            r[i] = srgbToLinear((rgb[i] >> 16) & 0xFF);
+            g[i] = srgbToLinear((rgb[i] >> 8) & 0xFF);
+            b[i] = srgbToLinear(rgb[i] & 0xFF);
+        }
+
+        double[][] factors = new double[componentsX * componentsY][];
+        for (int j = 0; j < componentsY; j++) {
+            for (int i = 0; i < componentsX; i++) {
+                double normalisation = (i == 0 && j == 0) ? 1 : 2;
+                double fr = 0, fg = 0, fb = 0;
+                for (int y = 0; y < height; y++) {
+                    double cosY = Math.cos(Math.PI * j * y / height);
+                    for (int x = 0; x < width; x++) {
+                        double basis = Math.cos(Math.PI * i * x / width) * cosY;
+                        int p = y * width + x;
+                        fr += basis * r[p];
+                        fg += basis * g[p];
+                        fb += basis * b[p];
+                    }
+                }
+                double scale = normalisation / (width * height);
+                factors[j * componentsX + i] = new double[]{fr * scale, fg * scale, fb * scale};
+            }
+        }
+
+        StringBuilder hash = new StringBuilder();
+        base83(hash, (componentsX - 1) + (componentsY - 1) * 9, 1);
+        double maximumValue;
+        if (factors.length > 1) {
+            double actualMax = 0;
+            for (int k = 1; k < factors.length; k++) {
+                for (double v : factors[k]) actualMax = Math.max(actualMax, Math.abs(v));
+            }
+            int quantisedMax = (int) Math.max(0, Math.min(82, Math.floor(actualMax * 166 - 0.5)));
+            maximumValue = (quantisedMax + 1) / 166.0;
+            base83(hash, quantisedMax, 1);
+        } else {
+            maximumValue = 1;
+            base83(hash, 0, 1);
+        }
+        double[] dc = factors[0];
+        base83(hash, (linearToSrgb(dc[0]) << 16) + (linearToSrgb(dc[1]) << 8) + linearToSrgb(dc[2]), 4);
+        for (int k = 1; k < factors.length; k++) {
+            double[] ac = factors[k];
+            base83(hash, quantiseAc(ac[0], maximumValue) * 19 * 19
+                    + quantiseAc(ac[1], maximumValue) * 19
+                    + quantiseAc(ac[2], maximumValue), 2);
+        }
+        return hash.toString();
+    }
+
+    private static int quantiseAc(double value, double maximumValue) {
+        double v = Math.signum(value) * Math.sqrt(Math.abs(value / maximumValue));
+        return (int) Math.max(0, Math.min(18, Math.floor(v * 9 + 9.5)));
+    }
+
+    private static double srgbToLinear(int value) {
+        double v = value / 255.0;
+        return v <= 0.04045 ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4);
+    }
+
+    private static int linearToSrgb(double value) {
+        double v = Math.max(0, Math.min(1, value));
+        return v <= 0.0031308
+                ? (int) (v * 12.92 * 255 + 0.5)
+                : (int) ((1.055 * Math.pow(v, 1 / 2.4) - 0.055) * 255 + 0.5);
+    }
+
+    private static void base83(StringBuilder out, int value, int length) {
+        for (int i = 1; i <= length; i++) {
+            int digit = (value / (int) Math.pow(83, length - i)) % 83;
+            out.append(BASE83.charAt(digit));
+        }
+    }
+}
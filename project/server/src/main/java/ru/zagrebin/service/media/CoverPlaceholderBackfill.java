@@ -0,0 +1,87 @@
+package ru.zagrebin.service.media;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.zagrebin.repository.PostRepository;
+import ru.zagrebin.repository.projection.PostCoverView;
+import ru.zagrebin.service.cache.PostFullCache;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Заглушки обложек (cover_placeholder is null): и для старых постов, и для только что созданных
+ * или сменивших обложку — при записи поста картинка не декодируется. Запуск @Scheduled только выбирает
+ * пачку, а декодирование идёт на пуле ImageDerivatives: общий поток планировщика не занимается,
+ * а заглушка считается после уменьшенных копий, поставленных в ту же очередь при загрузке.
+ * Пока пачка не досчитана, следующая не берётся. Когда досчитывать нечего, запуск — один запрос
+ * по пустому частичному индексу.
+ */
+@Component
+@Slf4j
+public class CoverPlaceholderBackfill {
+
+    private final PostRepository postRepository;
+    private final CoverPlaceholders coverPlaceholders;
+    private final PostFullCache postFullCache;
+    private final ImageDerivatives imageDerivatives;
+    private final int batchSize;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public CoverPlaceholderBackfill(PostRepository postRepository,
+                                    CoverPlaceholders coverPlaceholders,
+                                    PostFullCache postFullCache,
+                                    ImageDerivatives imageDerivatives,
+                                    @Value("${posts.placeholders.backfill-batch:50}") int batchSize) {
+        this.postRepository = postRepository;
+        this.coverPlaceholders = coverPlaceholders;
+        this.postFullCache = postFullCache;
+        this.imageDerivatives = imageDerivatives;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(initialDelayString = "${posts.placeholders.backfill-interval-ms:2000}",
+            fixedDelayString = "${posts.placeholders.backfill-interval-ms:2000}")
+    public void backfill() {
+        if (!running.compareAndSet(false, true)) return;
+        List<PostCoverView> batch;
+        try {
+            batch = postRepository.findCoversWithoutPlaceholder(batchSize);
+        } catch (RuntimeException ex) {
+            running.set(false);
+            log.warn("Failed to load covers for placeholders: {}", ex.getMessage());
+            return;
+        }
+        if (batch.isEmpty()) {
+            running.set(false);
+            return;
+        }
+        try {
+            imageDerivatives.run(() -> fill(batch))
+                    .whenComplete((r, ex) -> {
+                        running.set(false);
+                        if (ex != null) log.warn("Failed to fill cover placeholders: {}", ex.getMessage());
+                    });
+        } catch (RejectedExecutionException ex) {
+            // очередь занята копиями — пачка возьмётся в следующий запуск
+            running.set(false);
+        }
+    }
+
+    private void fill(List<PostCoverView> batch) {
+        int filled = 0;
+        for (PostCoverView post : batch) {
+            // "" тоже записывается: иначе внешняя или битая обложка выбиралась бы снова каждый запуск
+            String placeholder = coverPlaceholders.compute(post.getCoverUrl());
+            if (placeholder == null) placeholder = "";
+            if (postRepository.setCoverPlaceholder(post.getId(), post.getCoverUrl(), placeholder) == 1) {
+                postFullCache.invalidate(post.getId());
+                if (!placeholder.isEmpty()) filled++;
+            }
+        }
+        log.info("Cover placeholders: {} of {} posts filled", filled, batch.size());
+    }
+}
@@ -0,0 +1,52 @@
+package ru.zagrebin.service.media;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.zagrebin.service.FileStorageService;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * BlurHash обложки поста — заглушка, которую клиент рисует сразу, ещё до загрузки картинки.
+ * Считается по уменьшенной копии 320 (ImageDerivatives), если она уже есть, иначе по оригиналу
+ * с сильным прореживанием: в обоих случаях это миллисекунды.
+ */
+@Component
+@Slf4j
+public class CoverPlaceholders {
+
+    // ширина, до которой картинка уменьшается перед кодированием: больше на размытом превью не видно
+    private static final int SAMPLE_WIDTH = 32;
+
+    private final FileStorageService fileStorageService;
+
+    public CoverPlaceholders(FileStorageService fileStorageService) {
+        this.fileStorageService = fileStorageService;
+    }
+
+    /**
+     * null — обложки нет; "" — заглушку не посчитать (внешний URL, не JPEG/PNG, файл не читается).
+     */
+    public String compute(String coverUrl) {
+        if (coverUrl == null || coverUrl.isBlank()) return null;
+        Path original = fileStorageService.resolveUrl(coverUrl);
+        if (original == null || !ImageVariants.isDerivable(original.getFileName().toString())
+                || !Files.isRegularFile(original)) {
+            return "";
+        }
+        Path small = original.resolveSibling(ImageVariants.variantName(original.getFileName().toString(), ImageVariants.WIDTHS[0]));
+        try {
+            BufferedImage image = ImageDerivatives.decode(Files.isRegularFile(small) ? small : original, SAMPLE_WIDTH);
+            if (image == null) return "";
+            if (image.getWidth() > SAMPLE_WIDTH) image = ImageDerivatives.scale(image, SAMPLE_WIDTH, BufferedImage.TYPE_INT_RGB);
+            // 4×3 компоненты для горизонтальной обложки, 3×4 — для вертикальной
+            boolean landscape = image.getWidth() >= image.getHeight();
+            return BlurHash.encode(image, landscape ? 4 : 3, landscape ? 3 : 4);
+        } catch (Exception ex) {
+            log.warn("Failed to compute placeholder for {}: {}", coverUrl, ex.getMessage());
+            return "";
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ru.zagrebin.service.media;
+
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Тег Orientation (0x0112) из EXIF JPEG и его применение к картинке — без сторонних библиотек:
+ * разбираются только маркеры до начала данных (SOS) и IFD0 внутри APP1.
+ */
+final class ExifOrientation {
+
+    private ExifOrientation() {}
+
+    /**
+     * 1..8 по спецификации EXIF; 1 — если тега нет или файл не JPEG.
+     */
+    static int read(Path jpeg) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(jpeg)))) {
+            if (in.readUnsignedShort() != 0xFFD8) return 1;
+            while (true) {
+                int marker = in.readUnsignedShort();
+                // SOS/EOI: метаданных дальше нет
+                if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFDA || marker == 0xFFD9) return 1;
+                int length = in.readUnsignedShort() - 2;
+                if (length < 0) return 1;
+                if (marker == 0xFFE1) {
+                    byte[] segment = new byte[length];
+                    in.readFully(segment);
+                    int orientation = parse(segment);
+                    if (orientation > 0) return orientation;
+                } else {
+                    in.skipNBytes(length);
+                }
+            }
+        } catch (IOException e) {
+            return 1;
+        }
+    }
+
+    // 0 — в сегменте нет EXIF с Orientation
+    static int parse(byte[] s) {
+        if (s.length < 14 || s[0] != 'E' || s[1] != 'x' || s[2] != 'i' || s[3] != 'f' || s[4] != 0 || s[5] != 0) return 0;
+        int tiff = 6;
+        boolean le = s[tiff] == 'I' && s[tiff + 1] == 'I';
+        long ifd = tiff + u32(s, tiff + 4, le);
+        if (ifd + 2 > s.length) return 0;
+        int entries = u16(s, (int) ifd, le);
+        for (int i = 0; i < entries; i++) {
+            int e = (int) ifd + 2 + 12 * i;
+            if (e + 12 > s.length) return 0;
+            if (u16(s, e, le) == 0x0112) {
+                int v = u16(s, e + 8, le);
+                return v >= 1 && v <= 8 ? v : 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Повернуть/отразить так, как картинку нужно показывать; 5..8 меняют местами ширину и высоту.
+     */
+    static BufferedImage apply(BufferedImage src, int orientation, int type) {
+        if (orientation <= 1 || orientation > 8) return src;
+        int w = src.getWidth();
+        int h = src.getHeight();
+        // x' = m00·x + m01·y + m02, y' = m10·x + m11·y + m12
+        AffineTransform t = switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, w, 0);
+            case 3 -> new AffineTransform(-1, 0, 0, -1, w, h);
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, h);
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);
+            case 6 -> new AffineTransform(0, 1, -1, 0, h, 0);
+            case 7 -> new AffineTransform(0, -1, -1, 0, h, w);
+            default -> new AffineTransform(0, -1, 1, 0, 0, w);
+        };
+        boolean swap = orientation >= 5;
+        BufferedImage out = new BufferedImage(swap ? h : w, swap ? w : h, type);
+        Graphics2D g = out.createGraphics();
+        g.drawImage(src, t, null);
+        g.dispose();
+        return out;
+    }
+
+    private static int u16(byte[] s, int at, boolean le) {
+        int a = s[at] & 0xFF;
+        int b = s[at + 1] & 0xFF;
+        return le ? (b << 8) | a : (a << 8) | b;
+    }
+
+    private static long u32(byte[] s, int at, boolean le) {
+        if (at + 4 > s.length) return Integer.MAX_VALUE;
+        long hi = u16(s, le ? at + 2 : at, le);
+        long lo = u16(s, le ? at : at + 2, le);
+        return (hi << 16) | lo;
+    }
+}
@@ -0,0 +1,222 @@
+package ru.zagrebin.service.media;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Уменьшенные копии загруженных изображений (ImageVariants.WIDTHS) на чистом ImageIO.
+ * Строятся в фоне на ограниченном пуле: очередь переполнена — копии пропускаются, а клиент
+ * по ?w= получает оригинал. Поворот из EXIF применяется сразу, копии всегда «правильной» стороной вверх.
+ * Декодирование с прореживанием (source subsampling), чтобы 12-мегапиксельное фото не занимало
+ * в памяти больше, чем нужно для самой большой копии.
+ */
+@Component
+@Slf4j
+public class ImageDerivatives {
+
+    static final float JPEG_QUALITY = 0.85f;
+
+    private final boolean enabled;
+    private final ThreadPoolExecutor executor;
+
+    public ImageDerivatives(@Value("${media.derivatives.enabled:true}") boolean enabled,
+                            @Value("${media.derivatives.threads:2}") int threads,
+                            @Value("${media.derivatives.queue-size:200}") int queueSize) {
+        this.enabled = enabled;
+        AtomicInteger n = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                r -> {
+                    Thread t = new Thread(r, "image-derivatives-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Поставить в очередь построение копий для только что сохранённого файла.
+     * media.derivatives.enabled: false — заранее ничего не строится, копии делает по запросу VariantCache.
+     */
+    public void submit(Path original) {
+        if (!enabled || !ImageVariants.isDerivable(original.getFileName().toString())) return;
+        try {
+            executor.execute(() -> {
+                try {
+                    generate(original);
+                } catch (Exception ex) {
+                    log.warn("Failed to build variants for {}: {}", original, ex.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            log.warn("Image derivative queue is full, variants skipped");
+        }
+    }
+
+    /**
+     * Другая работа с декодированием изображений (например, заглушки обложек) на том же ограниченном пуле,
+     * чтобы не занимать ею общие потоки @Scheduled. Очередь переполнена — RejectedExecutionException.
+     */
+    public CompletableFuture<Void> run(Runnable task) {
+        return CompletableFuture.runAsync(task, executor);
+    }
+
+    /**
+     * Удалить копии вместе с оригиналом.
+     */
+    public void deleteVariants(Path original) {
+        String name = original.getFileName().toString();
+        if (!ImageVariants.isDerivable(name)) return;
+        for (int w : ImageVariants.WIDTHS) {
+            try {
+                Files.deleteIfExists(original.resolveSibling(ImageVariants.variantName(name, w)));
+            } catch (IOException ex) {
+                log.warn("Failed to delete variant of {}: {}", original, ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Синхронно построить копии, которые уже оригинала (с учётом поворота); возвращает их число.
+     */
+    int generate(Path original) throws IOException {
+        String name = original.getFileName().toString();
+        boolean png = ImageVariants.isPng(name);
+        BufferedImage source = decode(original, ImageVariants.WIDTHS[ImageVariants.WIDTHS.length - 1]);
+        if (source == null) return 0;
+
+        // от большей копии к меньшей: каждая следующая уменьшается из предыдущей, а не из оригинала
+        int built = 0;
+        for (int i = ImageVariants.WIDTHS.length - 1; i >= 0; i--) {
+            int w = ImageVariants.WIDTHS[i];
+            if (w >= source.getWidth()) continue;
+            source = scale(source, w, png ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            write(source, original.resolveSibling(ImageVariants.variantName(name, w)), png, JPEG_QUALITY);
+            built++;
+        }
+        return built;
+    }
+
+    /**
+     * Ширина картинки после поворота по EXIF — только из заголовков, без декодирования пикселей;
+     * -1 — формат не читается.
+     */
+    static int displayWidth(Path original) throws IOException {
+        boolean png = ImageVariants.isPng(original.getFileName().toString());
+        int orientation = png ? 1 : ExifOrientation.read(original);
+        try (ImageInputStream in = ImageIO.createImageInputStream(original.toFile())) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) return -1;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return orientation >= 5 ? reader.getHeight(0) : reader.getWidth(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Картинка, повёрнутая по EXIF и прочитанная с прореживанием так, чтобы на пиксель ширины
+     * targetWidth приходилось не меньше двух пикселей исходника; null — формат не читается.
+     */
+    static BufferedImage decode(Path original, int targetWidth) throws IOException {
+        boolean png = ImageVariants.isPng(original.getFileName().toString());
+        int type = png ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        int orientation = png ? 1 : ExifOrientation.read(original);
+
+        BufferedImage source;
+        try (ImageInputStream in = ImageIO.createImageInputStream(original.toFile())) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int displayWidth = orientation >= 5 ? reader.getHeight(0) : reader.getWidth(0);
+                // дальше сглаживает масштабирование, а в памяти не весь 12-мегапиксельный кадр
+                int step = Math.max(1, displayWidth / (targetWidth * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                source = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+        return ExifOrientation.apply(source, orientation, type);
+    }
+
+    // уменьшение не больше чем вдвое за шаг: билинейная интерполяция за один большой шаг даёт «лесенку»
+    static BufferedImage scale(BufferedImage src, int targetWidth, int type) {
+        int targetHeight = Math.max(1, (int) Math.round((double) src.getHeight() * targetWidth / src.getWidth()));
+        BufferedImage current = src;
+        int w = src.getWidth();
+        int h = src.getHeight();
+        do {
+            w = Math.max(targetWidth, w / 2);
+            h = w == targetWidth ? targetHeight : Math.max(targetHeight, h / 2);
+            BufferedImage next = new BufferedImage(w, h, type);
+            Graphics2D g = next.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(current, 0, 0, w, h, null);
+            g.dispose();
+            current = next;
+        } while (w > targetWidth);
+        return current;
+    }
+
+    // во временный файл рядом и атомарный move: недописанная копия не отдаётся по ?w=
+    static void write(BufferedImage image, Path target, boolean png, float quality) throws IOException {
+        Path tmp = Files.createTempFile(target.getParent(), ".variant-", ".tmp");
+        try {
+            if (png) {
+                ImageIO.write(image, "png", tmp.toFile());
+            } else {
+                ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+                try (ImageOutputStream out = ImageIO.createImageOutputStream(tmp.toFile())) {
+                    writer.setOutput(out);
+                    ImageWriteParam param = writer.getDefaultWriteParam();
+                    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                    param.setCompressionQuality(quality);
+                    writer.write(null, new IIOImage(image, null, null), param);
+                } finally {
+                    writer.dispose();
+                }
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
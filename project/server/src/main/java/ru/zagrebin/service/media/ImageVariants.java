@@ -0,0 +1,63 @@
+package ru.zagrebin.service.media;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Фиксированные ширины уменьшенных копий изображений и их имена: рядом с оригиналом
+ * name.jpg лежат name_w320.jpg, name_w720.jpg, name_w1280.jpg (только те, что уже оригинала).
+ * Клиент просит копию как url?w=ширина — отдаётся ближайшая не меньше запрошенной либо оригинал.
+ */
+public final class ImageVariants {
+
+    public static final int[] WIDTHS = {320, 720, 1280};
+
+    private ImageVariants() {}
+
+    /**
+     * Ширина → URL копии для локального изображения (/media/...jpg|png), иначе пустая карта.
+     */
+    public static Map<Integer, String> urls(String url) {
+        if (url == null || !url.startsWith("/") || url.contains("?") || !isDerivable(url)) {
+            return Collections.emptyMap();
+        }
+        Map<Integer, String> urls = new LinkedHashMap<>();
+        for (int w : WIDTHS) urls.put(w, url + "?w=" + w);
+        return urls;
+    }
+
+    /**
+     * Ширина копии для запроса ?w=requested: наименьшая не меньше запрошенной, либо самая большая.
+     */
+    public static int pick(int requested) {
+        for (int w : WIDTHS) {
+            if (w >= requested) return w;
+        }
+        return WIDTHS[WIDTHS.length - 1];
+    }
+
+    /**
+     * Путь копии для запроса path?w=requested, либо null, если у такого файла копий не бывает.
+     */
+    public static String variantPath(String path, int requested) {
+        if (requested <= 0 || !isDerivable(path)) return null;
+        return variantName(path, pick(requested));
+    }
+
+    public static String variantName(String fileName, int width) {
+        int dot = fileName.lastIndexOf('.');
+        return fileName.substring(0, dot) + "_w" + width + fileName.substring(dot);
+    }
+
+    // ImageIO без плагинов читает и пишет JPEG и PNG — копии делаются только для них
+    static boolean isDerivable(String name) {
+        String n = name.toLowerCase(Locale.ROOT);
+        return n.endsWith(".jpg") || n.endsWith(".jpeg") || n.endsWith(".png");
+    }
+
+    static boolean isPng(String name) {
+        return name.toLowerCase(Locale.ROOT).endsWith(".png");
+    }
+}
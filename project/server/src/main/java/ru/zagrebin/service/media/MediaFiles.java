@@ -0,0 +1,57 @@
+package ru.zagrebin.service.media;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Какой файл отдать на /media/{relative}[?w=&q=]. Без q сначала ищется заранее построенная копия
+ * (ImageDerivatives), затем копия строится по запросу (VariantCache). Если копия не нужна — оригинал
+ * и есть точный ответ; если она не получилась или ещё не готова — оригинал с пометкой, что это замена.
+ * Служебные каталоги (.tmp с недокачанными загрузками, .variants) снаружи не видны.
+ */
+@Component
+public class MediaFiles {
+
+    private final Path root;
+    private final VariantCache variantCache;
+
+    public MediaFiles(@Value("${media.path}") String mediaRoot, VariantCache variantCache) {
+        this.root = Path.of(mediaRoot).toAbsolutePath().normalize();
+        this.variantCache = variantCache;
+    }
+
+    /**
+     * null — такого файла нет. width ≤ 0 — оригинал; quality null — по умолчанию.
+     */
+    public Resolved resolve(String relative, int width, Integer quality) {
+        if (relative == null) return null;
+        if (relative.startsWith("/")) relative = relative.substring(1);
+        for (String segment : relative.split("/")) {
+            if (segment.isEmpty() || segment.startsWith(".")) return null;
+        }
+        Path original = root.resolve(relative).normalize();
+        if (!original.startsWith(root) || !Files.isRegularFile(original)) return null;
+        if (width <= 0) return new Resolved(original, true);
+
+        if (quality == null) {
+            String variant = ImageVariants.variantPath(original.getFileName().toString(), width);
+            if (variant != null) {
+                Path prebuilt = original.resolveSibling(variant);
+                if (Files.isRegularFile(prebuilt)) return new Resolved(prebuilt, true);
+            }
+        }
+        // original в ответе — копия не нужна, его можно кэшировать так же, как копию
+        Path cached = variantCache.get(original, relative, width, quality);
+        if (cached != null && Files.isRegularFile(cached)) return new Resolved(cached, true);
+        return new Resolved(original, false);
+    }
+
+    /**
+     * exact = false — вместо запрошенной копии отдаётся оригинал: копия может появиться позже,
+     * поэтому такой ответ нельзя кэшировать навсегда.
+     */
+    public record Resolved(Path file, boolean exact) {}
+}
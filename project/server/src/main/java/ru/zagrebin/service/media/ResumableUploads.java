@@ -0,0 +1,202 @@
+package ru.zagrebin.service.media;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.zagrebin.service.FileStorageService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Докачиваемые загрузки: сессия с заявленным размером, куски пишутся в её временный файл
+ * позиционными записями FileChannel строго подряд (offset куска = уже принятому), принятое смещение
+ * можно спросить и продолжить с него после обрыва. SHA-256 копится по ходу, поэтому на завершении
+ * файл не перечитывается, а сохраняется через FileStorageService.store так же, как обычная загрузка.
+ * Сессии живут в памяти: после перезапуска клиент начинает заново. Брошенные сессии удаляются по session-ttl-ms.
+ * <p>
+ * Кусок пишется под блокировкой сессии, но её никто не ждёт: тело запроса читается из сети сколько угодно
+ * долго, поэтому второй кусок той же сессии сразу получает конфликт с текущим смещением, чистка пропускает
+ * сессию, а отмена не дожидается записи — файл удаляет сам пишущий, отпуская блокировку.
+ */
+@Component
+@Slf4j
+public class ResumableUploads {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileStorageService fileStorageService;
+    private final long sessionTtlMs;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    public ResumableUploads(FileStorageService fileStorageService,
+                            @Value("${media.uploads.session-ttl-ms:86400000}") long sessionTtlMs) {
+        this.fileStorageService = fileStorageService;
+        this.sessionTtlMs = sessionTtlMs;
+    }
+
+    public Session create(String targetSubdir, String filename, long size) throws IOException {
+        Path file = fileStorageService.createTempFile();
+        Session session;
+        try {
+            session = new Session(UUID.randomUUID().toString(), targetSubdir, filename, size, file,
+                    MessageDigest.getInstance("SHA-256"));
+        } catch (NoSuchAlgorithmException e) {
+            Files.deleteIfExists(file);
+            throw new IllegalStateException(e);
+        }
+        sessions.put(session.id, session);
+        return session;
+    }
+
+    /**
+     * null — сессии нет (завершена, брошена или была до перезапуска).
+     */
+    public Session get(String id) {
+        return sessions.get(id);
+    }
+
+    /**
+     * Дописать кусок с позиции offset. offset должен совпадать с принятым смещением, а другой кусок
+     * этой сессии не должен писаться в тот же момент, иначе UploadOffsetConflictException;
+     * кусок не должен выходить за заявленный размер.
+     * При обрыве посреди куска принятым остаётся всё, что успело записаться.
+     */
+    public long append(Session session, long offset, InputStream body) throws IOException {
+        if (!session.lock.tryLock()) throw new UploadOffsetConflictException(session.offset);
+        try {
+            if (session.closed) throw new UploadOffsetConflictException(session.offset);
+            if (offset != session.offset) throw new UploadOffsetConflictException(session.offset);
+            session.touchedAt = System.currentTimeMillis();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (FileChannel out = FileChannel.open(session.file, StandardOpenOption.WRITE)) {
+                int n;
+                while ((n = body.read(buffer)) != -1) {
+                    // отменена, пока кусок шёл: дальше не пишем
+                    if (session.closed) throw new UploadOffsetConflictException(session.offset);
+                    if (session.offset + n > session.size) throw new UploadTooLargeException(session.size);
+                    ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, n);
+                    long position = session.offset;
+                    while (chunk.hasRemaining()) position += out.write(chunk, position);
+                    session.digest.update(buffer, 0, n);
+                    session.offset += n;
+                }
+            } finally {
+                session.touchedAt = System.currentTimeMillis();
+            }
+            return session.offset;
+        } finally {
+            session.lock.unlock();
+            // отмена или чистка не смогли взять блокировку, пока шла запись, — файл удаляется здесь
+            if (session.abandoned) discard(session);
+        }
+    }
+
+    /**
+     * Все байты приняты — файл сохраняется как обычная загрузка, возвращается его URL.
+     */
+    public String complete(Session session) {
+        if (!session.lock.tryLock()) throw new UploadOffsetConflictException(session.offset);
+        try {
+            if (session.closed || session.offset != session.size) {
+                throw new UploadOffsetConflictException(session.offset);
+            }
+            session.closed = true;
+            sessions.remove(session.id);
+            return fileStorageService.store(session.file, session.filename, session.targetSubdir, session.digest.digest());
+        } finally {
+            session.lock.unlock();
+            if (session.abandoned) discard(session);
+        }
+    }
+
+    /**
+     * Не ждёт идущей записи куска: она прервётся на следующем буфере, а файл удалит пишущий поток.
+     */
+    public void abort(Session session) {
+        if (session.closed) return;
+        session.abandoned = true;
+        session.closed = true;
+        sessions.remove(session.id);
+        discard(session);
+    }
+
+    /**
+     * Сессия, в которую сейчас пишется кусок, не брошена — её чистка пропускает, не дожидаясь записи.
+     */
+    @Scheduled(fixedDelayString = "${media.uploads.gc-interval-ms:600000}")
+    public void expire() {
+        long cutoff = System.currentTimeMillis() - sessionTtlMs;
+        int expired = 0;
+        for (Session s : sessions.values()) {
+            if (s.touchedAt >= cutoff || !s.lock.tryLock()) continue;
+            try {
+                if (s.touchedAt < cutoff && !s.closed) {
+                    s.abandoned = true;
+                    s.closed = true;
+                    sessions.remove(s.id);
+                    expired++;
+                }
+            } finally {
+                s.lock.unlock();
+            }
+            if (s.abandoned) discard(s);
+        }
+        if (expired > 0) log.info("Expired {} upload sessions", expired);
+    }
+
+    // файл брошенной сессии удаляется, когда в него никто не пишет; иначе — тем, кто пишет, после записи
+    private void discard(Session session) {
+        if (!session.lock.tryLock()) return;
+        try {
+            Files.deleteIfExists(session.file);
+        } catch (IOException ex) {
+            log.warn("Failed to delete upload part {}: {}", session.file, ex.getMessage());
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    public static final class Session {
+        @Getter
+        private final String id;
+        private final String targetSubdir;
+        private final String filename;
+        @Getter
+        private final long size;
+        private final Path file;
+        private final MessageDigest digest;
+        // запись куска и завершение; ожидающих нет — только tryLock
+        private final ReentrantLock lock = new ReentrantLock();
+        // принято байт; меняется только под lock
+        @Getter
+        private volatile long offset;
+        private volatile long touchedAt = System.currentTimeMillis();
+        // больше не принимает кусков: завершена или брошена
+        private volatile boolean closed;
+        // отменена или истекла — файл удаляется
+        private volatile boolean abandoned;
+
+        private Session(String id, String targetSubdir, String filename, long size, Path file, MessageDigest digest) {
+            this.id = id;
+            this.targetSubdir = targetSubdir;
+            this.filename = filename;
+            this.size = size;
+            this.file = file;
+            this.digest = digest;
+        }
+    }
+}
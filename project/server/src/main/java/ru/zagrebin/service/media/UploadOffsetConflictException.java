@@ -0,0 +1,18 @@
+package ru.zagrebin.service.media;
+
+import lombok.Getter;
+
+/**
+ * Кусок докачиваемой загрузки не с того места (или сессия ещё не принята целиком / уже закрыта);
+ * offset — сколько байт сессия приняла на самом деле, с него клиент и продолжает.
+ */
+@Getter
+public class UploadOffsetConflictException extends RuntimeException {
+
+    private final long offset;
+
+    public UploadOffsetConflictException(long offset) {
+        super("Upload offset is " + offset);
+        this.offset = offset;
+    }
+}
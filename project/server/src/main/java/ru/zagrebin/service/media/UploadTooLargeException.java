@@ -0,0 +1,11 @@
+package ru.zagrebin.service.media;
+
+/**
+ * Загрузка больше лимита своего типа (media.max-bytes.*); запись прерывается, как только лимит превышен.
+ */
+public class UploadTooLargeException extends RuntimeException {
+
+    public UploadTooLargeException(long maxBytes) {
+        super("Upload exceeds " + maxBytes + " bytes");
+    }
+}
@@ -0,0 +1,229 @@
+package ru.zagrebin.service.media;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+/**
+ * Копии изображений произвольной ширины и качества (/media/...?w=&q=), которые строятся при первом
+ * запросе и складываются в media.path/.variants. Общий объём ограничен max-bytes: при переполнении
+ * удаляются давно не запрошенные (LRU). Одновременные запросы одной и той же недостающей копии
+ * ждут одно построение, а не масштабируют каждый своё; одновременно строится не больше max-concurrent копий.
+ * Ни ожидание свободного места для построения, ни ожидание чужого построения не длятся дольше wait-ms:
+ * поток Tomcat не висит на занятом масштабировании, а клиент получает оригинал (exact = false).
+ * Ширина округляется вверх до WIDTH_STEP, качество — до QUALITY_STEP, чтобы число разных копий
+ * одного файла оставалось небольшим. Ширина оригинала читается из заголовка, без декодирования, и запоминается:
+ * запрос не меньше неё отвечается самим оригиналом, не занимая место для построения. Копии удалённых оригиналов не удаляются сразу: до них уже
+ * не дойти по URL, и они уходят по LRU.
+ */
+@Component
+@Slf4j
+public class VariantCache {
+
+    static final String CACHE_DIR = ".variants";
+    static final int WIDTH_STEP = 32;
+    static final int MAX_WIDTH = 2560;
+    static final int QUALITY_STEP = 5;
+    static final int MIN_QUALITY = 30;
+    static final int MAX_QUALITY = 95;
+    // оригиналы неизменны, поэтому их ширина не устаревает; ограничен только объём
+    static final int MAX_KNOWN_WIDTHS = 50_000;
+
+    private final Path cacheDir;
+    private final long maxBytes;
+    private final Semaphore resizes;
+    private final long waitMs;
+    // имя файла копии → размер; порядок доступа, самые старые первыми
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+    // путь оригинала → его ширина после поворота по EXIF; -1 — не читается
+    private final Cache<String, Integer> originalWidths = Caffeine.newBuilder()
+            .maximumSize(MAX_KNOWN_WIDTHS)
+            .build();
+
+    public VariantCache(@Value("${media.path}") String mediaRoot,
+                        @Value("${media.variants.max-bytes:536870912}") long maxBytes,
+                        @Value("${media.variants.max-concurrent:2}") int maxConcurrent,
+                        @Value("${media.variants.wait-ms:1000}") long waitMs) throws IOException {
+        this.cacheDir = Path.of(mediaRoot).toAbsolutePath().normalize().resolve(CACHE_DIR);
+        this.maxBytes = maxBytes;
+        this.resizes = new Semaphore(maxConcurrent);
+        this.waitMs = waitMs;
+        Files.createDirectories(cacheDir);
+        load();
+    }
+
+    /**
+     * Копия original (relative — его путь от media.path) шириной не больше width и качества quality
+     * (null — по умолчанию; для PNG не используется). Сам original — копия не нужна и не появится
+     * (оригинал не шире, формат не масштабируется или не читается). null — копию не удалось построить
+     * или она не готова за wait-ms: оригинал отдаётся как временная замена.
+     */
+    public Path get(Path original, String relative, int width, Integer quality) {
+        if (width <= 0) return null;
+        if (!ImageVariants.isDerivable(relative)) return original;
+        boolean png = ImageVariants.isPng(relative);
+        int w = normalizeWidth(width);
+        int q = png ? 0 : normalizeQuality(quality);
+        String name = fileName(relative, w, q);
+        Path target = cacheDir.resolve(name);
+        if (touch(name)) return target;
+        Integer originalWidth = originalWidth(original, relative);
+        if (originalWidth == null) return null;
+        if (originalWidth <= w) return original;
+
+        CompletableFuture<Path> mine = new CompletableFuture<>();
+        CompletableFuture<Path> running = inFlight.putIfAbsent(name, mine);
+        if (running != null) {
+            try {
+                return running.get(waitMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException | TimeoutException ex) {
+                // копия ещё строится или не построилась — пока отдаётся оригинал
+                return null;
+            }
+        }
+        try {
+            // пока ставились в очередь, копию мог достроить и снять из inFlight другой запрос
+            Path result = touch(name) ? target : build(original, target, name, w, q, png);
+            mine.complete(result);
+            return result;
+        } catch (Exception ex) {
+            log.warn("Failed to build variant of {}: {}", relative, ex.getMessage());
+            mine.completeExceptionally(ex);
+            return null;
+        } finally {
+            inFlight.remove(name, mine);
+        }
+    }
+
+    private Path build(Path original, Path target, String name, int w, int q, boolean png)
+            throws IOException, InterruptedException {
+        if (!resizes.tryAcquire(waitMs, TimeUnit.MILLISECONDS)) {
+            log.debug("Variant resizes are busy, serving original of {}", original);
+            return null;
+        }
+        try {
+            BufferedImage image = ImageDerivatives.decode(original, w);
+            if (image == null) return null;
+            image = ImageDerivatives.scale(image, w, png ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            ImageDerivatives.write(image, target, png, q / 100f);
+        } finally {
+            resizes.release();
+        }
+        add(name, Files.size(target));
+        return target;
+    }
+
+    // null — заголовок не прочитался (ошибка ввода-вывода): не запоминается
+    private Integer originalWidth(Path original, String relative) {
+        Integer known = originalWidths.getIfPresent(relative);
+        if (known != null) return known;
+        try {
+            int width = ImageDerivatives.displayWidth(original);
+            originalWidths.put(relative, width);
+            return width;
+        } catch (IOException ex) {
+            log.warn("Failed to read image header of {}: {}", relative, ex.getMessage());
+            return null;
+        }
+    }
+
+    static int normalizeWidth(int width) {
+        int w = Math.min(MAX_WIDTH, Math.max(WIDTH_STEP, width));
+        return (w + WIDTH_STEP - 1) / WIDTH_STEP * WIDTH_STEP;
+    }
+
+    static int normalizeQuality(Integer quality) {
+        if (quality == null) return Math.round(ImageDerivatives.JPEG_QUALITY * 100);
+        int q = Math.min(MAX_QUALITY, Math.max(MIN_QUALITY, quality));
+        return (q + QUALITY_STEP - 1) / QUALITY_STEP * QUALITY_STEP;
+    }
+
+    // плоский каталог с именами из хэша: пути оригиналов любой глубины, а вытеснению не нужен обход дерева
+    private static String fileName(String relative, int w, int q) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest((relative + "|" + w + "|" + q).getBytes(StandardCharsets.UTF_8));
+            String ext = relative.substring(relative.lastIndexOf('.')).toLowerCase();
+            return HexFormat.of().formatHex(hash, 0, 16) + ext;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private synchronized boolean touch(String name) {
+        return entries.get(name) != null;
+    }
+
+    private void add(String name, long size) {
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            Long old = entries.put(name, size);
+            totalBytes += size - (old == null ? 0 : old);
+            for (Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+                 totalBytes > maxBytes && it.hasNext(); ) {
+                Map.Entry<String, Long> e = it.next();
+                if (e.getKey().equals(name)) continue;
+                totalBytes -= e.getValue();
+                evicted.add(e.getKey());
+                it.remove();
+            }
+        }
+        for (String n : evicted) {
+            try {
+                Files.deleteIfExists(cacheDir.resolve(n));
+            } catch (IOException ex) {
+                log.warn("Failed to evict variant {}: {}", n, ex.getMessage());
+            }
+        }
+    }
+
+    // после перезапуска порядок восстанавливается по времени изменения: сначала самые старые копии
+    private void load() throws IOException {
+        record Entry(String name, long size, long modified) {}
+        List<Entry> found = new ArrayList<>();
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            for (Path f : (Iterable<Path>) files::iterator) {
+                String name = f.getFileName().toString();
+                if (name.startsWith(".")) {
+                    // недописанная при остановке копия
+                    Files.deleteIfExists(f);
+                    continue;
+                }
+                BasicFileAttributes attrs = Files.readAttributes(f, BasicFileAttributes.class);
+                if (attrs.isRegularFile()) found.add(new Entry(name, attrs.size(), attrs.lastModifiedTime().toMillis()));
+            }
+        }
+        found.sort((a, b) -> Long.compare(a.modified, b.modified));
+        for (Entry e : found) add(e.name, e.size);
+        if (!found.isEmpty()) log.info("Variant cache: {} files, {} bytes", entries.size(), totalBytes);
+    }
+}
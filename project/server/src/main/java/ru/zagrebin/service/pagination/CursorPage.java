@@ -0,0 +1,20 @@
+package ru.zagrebin.service.pagination;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Страница keyset-пагинации: элементы и курсор следующей страницы (null — дальше ничего нет).
+ */
+@Getter
+@AllArgsConstructor
+public class CursorPage<T> {
+    private final List<T> items;
+    private final String nextCursor;
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
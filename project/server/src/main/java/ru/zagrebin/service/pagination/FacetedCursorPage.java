@@ -0,0 +1,21 @@
+package ru.zagrebin.service.pagination;
+
+import lombok.Getter;
+import ru.zagrebin.dto.TagFacetDto;
+
+import java.util.List;
+
+/**
+ * Страница отфильтрованной ленты вместе с размером всей выборки и счётчиками тегов в ней.
+ */
+@Getter
+public class FacetedCursorPage<T> extends CursorPage<T> {
+    private final long total;
+    private final List<TagFacetDto> facets;
+
+    public FacetedCursorPage(List<T> items, String nextCursor, long total, List<TagFacetDto> facets) {
+        super(items, nextCursor);
+        this.total = total;
+        this.facets = facets;
+    }
+}
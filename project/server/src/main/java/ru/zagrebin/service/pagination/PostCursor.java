@@ -0,0 +1,64 @@
+package ru.zagrebin.service.pagination;
+
+import lombok.Getter;
+import ru.zagrebin.service.InvalidRequestParameterException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+
+/**
+ * Непрозрачный курсор ленты: позиция (created_at, id) последнего отданного поста.
+ * Клиент получает его строкой и передаёт обратно как есть.
+ */
+@Getter
+public final class PostCursor {
+
+    private final OffsetDateTime createdAt;
+    private final long id;
+
+    public PostCursor(OffsetDateTime createdAt, long id) {
+        this.createdAt = createdAt;
+        this.id = id;
+    }
+
+    public static PostCursor of(Instant createdAt, long id) {
+        return new PostCursor(OffsetDateTime.ofInstant(createdAt, ZoneOffset.UTC), id);
+    }
+
+    public static PostCursor ofMicros(long micros, long id) {
+        Instant instant = Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1_000L);
+        return new PostCursor(OffsetDateTime.ofInstant(instant, ZoneOffset.UTC), id);
+    }
+
+    // Postgres хранит timestamptz с точностью до микросекунд
+    public static long toMicros(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1_000;
+    }
+
+    public long getCreatedAtMicros() {
+        return toMicros(createdAt.toInstant());
+    }
+
+    public String encode() {
+        String raw = getCreatedAtMicros() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public static PostCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            throw new InvalidRequestParameterException("cursor is empty");
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII);
+            int sep = raw.indexOf(':');
+            long micros = Long.parseLong(raw.substring(0, sep));
+            long id = Long.parseLong(raw.substring(sep + 1));
+            return ofMicros(micros, id);
+        } catch (RuntimeException e) {
+            throw new InvalidRequestParameterException("Invalid cursor: " + token, e);
+        }
+    }
+}
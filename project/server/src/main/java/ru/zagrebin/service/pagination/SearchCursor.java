@@ -0,0 +1,44 @@
+package ru.zagrebin.service.pagination;
+
+import lombok.Getter;
+import ru.zagrebin.service.InvalidRequestParameterException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Курсор поисковой выдачи: позиция (rank, id) последнего отданного поста.
+ * rank хранится битами float — ровно тем значением real, что вернул ts_rank, иначе сравнение
+ * на границе страницы могло бы потерять или повторить пост.
+ */
+@Getter
+public final class SearchCursor {
+
+    private final float rank;
+    private final long id;
+
+    public SearchCursor(float rank, long id) {
+        this.rank = rank;
+        this.id = id;
+    }
+
+    public String encode() {
+        String raw = Float.floatToIntBits(rank) + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public static SearchCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            throw new InvalidRequestParameterException("cursor is empty");
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII);
+            int sep = raw.indexOf(':');
+            float rank = Float.intBitsToFloat(Integer.parseInt(raw.substring(0, sep)));
+            long id = Long.parseLong(raw.substring(sep + 1));
+            return new SearchCursor(rank, id);
+        } catch (RuntimeException e) {
+            throw new InvalidRequestParameterException("Invalid cursor: " + token, e);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package ru.zagrebin.service.pantry;
+
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.zagrebin.repository.PostRepository;
+import ru.zagrebin.repository.projection.PostIngredientPairView;
+import ru.zagrebin.service.bitmap.PostBitmapIndex;
+import ru.zagrebin.service.tx.TransactionHooks;
+
+import java.util.*;
+
+/**
+ * Подбор рецептов по набору ингредиентов пользователя на битмапах PostBitmapIndex (ингредиент → посты).
+ * «Содержит все» — пересечение битмапов. «Не хватает не больше N» — число совпавших ингредиентов
+ * каждого поста считается побитовым сложением битмапов в bit-sliced счётчик, после чего для каждого
+ * размера рецепта k берутся посты со счётом ≥ k − N. «Всё есть» — тот же запрос с N = 0.
+ * Ни один запрос не перебирает посты по одному. В индексе только опубликованные посты.
+ */
+@Component
+@Slf4j
+public class PantryIndex {
+
+    private final PostRepository postRepository;
+    private final PostBitmapIndex index = new PostBitmapIndex();
+
+    public PantryIndex(PostRepository postRepository) {
+        this.postRepository = postRepository;
+    }
+
+    /**
+     * До limit id подходящих постов по убыванию id, строго меньше before (null — с начала).
+     */
+    public List<Long> find(PantryMode mode, Collection<Long> ingredientIds, int maxMissing, Long before, int limit) {
+        long[] pantry = ingredientIds.stream().filter(Objects::nonNull).mapToLong(Long::longValue).distinct().toArray();
+        if (pantry.length == 0) return Collections.emptyList();
+
+        return index.read(ix -> {
+            RoaringBitmap matched = switch (mode) {
+                case CONTAINS -> containsAll(ix, pantry);
+                case COVERED -> missingAtMost(ix, pantry, 0);
+                case MISSING -> missingAtMost(ix, pantry, Math.max(0, maxMissing));
+            };
+            return PostBitmapIndex.pageDesc(matched, before, limit);
+        });
+    }
+
+    public void putAfterCommit(Long postId, Collection<Long> ingredientIds) {
+        List<Long> ids = new ArrayList<>(ingredientIds);
+        TransactionHooks.afterCommit(() -> index.put(postId, ids));
+    }
+
+    public void removeAfterCommit(Long postId) {
+        TransactionHooks.afterCommit(() -> index.remove(postId));
+    }
+
+    /**
+     * Индекс заменяется целиком выборкой из БД; посты, изменённые после запроса, берутся из текущего индекса.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        index.beginLoad();
+        List<PostIngredientPairView> pairs;
+        try {
+            pairs = postRepository.findPublishedIngredientPairs();
+        } catch (RuntimeException ex) {
+            index.abortLoad();
+            log.warn("Failed to build pantry index: {}", ex.getMessage());
+            return;
+        }
+        Map<Long, List<Long>> byPost = new HashMap<>();
+        for (PostIngredientPairView p : pairs) {
+            byPost.computeIfAbsent(p.getPostId(), k -> new ArrayList<>()).add(p.getIngredientId());
+        }
+        index.load(byPost);
+        log.info("Pantry index built: {} posts", byPost.size());
+    }
+
+    private static RoaringBitmap containsAll(PostBitmapIndex ix, long[] pantry) {
+        RoaringBitmap acc = ix.bitmap(pantry[0]).clone();
+        for (int i = 1; i < pantry.length && !acc.isEmpty(); i++) {
+            acc.and(ix.bitmap(pantry[i]));
+        }
+        return acc;
+    }
+
+    private static RoaringBitmap missingAtMost(PostBitmapIndex ix, long[] pantry, int maxMissing) {
+        // slices[j] — j-й бит числа совпавших ингредиентов у каждого поста
+        List<RoaringBitmap> slices = new ArrayList<>();
+        RoaringBitmap any = new RoaringBitmap();
+        for (long ingredientId : pantry) {
+            RoaringBitmap b = ix.bitmap(ingredientId);
+            if (b.isEmpty()) continue;
+            any.or(b);
+            addOne(slices, b);
+        }
+        RoaringBitmap result = new RoaringBitmap();
+        if (any.isEmpty()) return result;
+
+        for (int size : ix.sizes()) {
+            RoaringBitmap sized = RoaringBitmap.and(ix.withSize(size), any);
+            if (sized.isEmpty()) continue;
+            int need = size - maxMissing;
+            result.or(need <= 1 ? sized : RoaringBitmap.and(sized, atLeast(slices, any, need)));
+        }
+        return result;
+    }
+
+    // +1 к счётчику каждого поста из b: сложение с переносом по битовым срезам
+    private static void addOne(List<RoaringBitmap> slices, RoaringBitmap b) {
+        RoaringBitmap carry = b;
+        for (int j = 0; !carry.isEmpty(); j++) {
+            if (j == slices.size()) {
+                slices.add(carry.clone());
+                return;
+            }
+            RoaringBitmap slice = slices.get(j);
+            RoaringBitmap nextCarry = RoaringBitmap.and(slice, carry);
+            slice.xor(carry);
+            carry = nextCarry;
+        }
+    }
+
+    // посты из universe со счётчиком ≥ c (сравнение bit-sliced числа с константой от старшего бита)
+    private static RoaringBitmap atLeast(List<RoaringBitmap> slices, RoaringBitmap universe, int c) {
+        if (c >= (1L << slices.size())) return new RoaringBitmap();
+        RoaringBitmap gt = new RoaringBitmap();
+        RoaringBitmap eq = universe.clone();
+        for (int j = slices.size() - 1; j >= 0; j--) {
+            RoaringBitmap slice = slices.get(j);
+            if (((c >> j) & 1) == 1) {
+                eq.and(slice);
+            } else {
+                gt.or(RoaringBitmap.and(eq, slice));
+                eq.andNot(slice);
+            }
+        }
+        gt.or(eq);
+        return gt;
+    }
+}
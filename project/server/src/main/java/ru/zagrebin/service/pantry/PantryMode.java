@@ -0,0 +1,24 @@
+package ru.zagrebin.service.pantry;
+
+import ru.zagrebin.service.InvalidRequestParameterException;
+
+/**
+ * Режим запроса «готовлю из того, что есть».
+ */
+public enum PantryMode {
+    /** все ингредиенты рецепта есть в списке */
+    COVERED,
+    /** не хватает не больше maxMissing ингредиентов рецепта (и хотя бы один есть) */
+    MISSING,
+    /** рецепт содержит все перечисленные ингредиенты */
+    CONTAINS;
+
+    public static PantryMode parse(String value) {
+        if (value == null || value.isBlank()) return COVERED;
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestParameterException("Unknown pantry mode: " + value);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package ru.zagrebin.service.related;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.zagrebin.repository.PostRepository;
+import ru.zagrebin.repository.projection.PostIngredientPairView;
+import ru.zagrebin.service.tx.TransactionHooks;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Похожие рецепты по составу: MinHash-подпись множества id ингредиентов поста, разбитая на
+ * posts.related.bands полос по posts.related.rows значений (LSH). Посты с совпавшей хотя бы одной
+ * полосой — кандидаты; для них считается точный коэффициент Жаккара по отсортированным id.
+ * Кандидатов больше max-candidates — проверяются те, у кого совпало больше полос (оценка сходства
+ * по MinHash), при равенстве новее. Индекс живёт в памяти, строится при старте одним запросом
+ * и обновляется после коммита создания/изменения поста. В индексе только опубликованные посты с ингредиентами.
+ * <p>
+ * Корзина частого сочетания ингредиентов может держать большую часть постов, поэтому из каждой
+ * читается не больше max-bucket-scan первых постов. Посты в корзинах упорядочены по хэшу id: первые —
+ * одна и та же случайная выборка во всех корзинах, и число совпавших полос у попавшего в неё поста
+ * не занижается. Работа на запрос — не больше bands * max-bucket-scan.
+ */
+@Component
+@Slf4j
+public class RelatedRecipesIndex {
+
+    private static final long[] EMPTY = new long[0];
+    // порядок постов в корзине: по хэшу id, при совпадении — по id
+    private static final Comparator<Long> BUCKET_ORDER =
+            Comparator.comparingLong(RelatedRecipesIndex::rank).thenComparingLong(Long::longValue);
+
+    private final PostRepository postRepository;
+    private final int bands;
+    private final int rows;
+    private final int maxCandidates;
+    private final int maxBucketScan;
+    private final long[] seeds;
+
+    // пост -> отсортированные id ингредиентов
+    private volatile ConcurrentHashMap<Long, long[]> ingredients = new ConcurrentHashMap<>();
+    // ключ полосы -> id постов в BUCKET_ORDER (массив заменяется целиком)
+    private volatile ConcurrentHashMap<Long, long[]> buckets = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    // посты, изменённые после запроса идущего rebuild: в его выборке они устарели; null — rebuild не идёт
+    private Set<Long> changedDuringRebuild;
+
+    public RelatedRecipesIndex(PostRepository postRepository,
+                               @Value("${posts.related.bands:16}") int bands,
+                               @Value("${posts.related.rows:2}") int rows,
+                               @Value("${posts.related.max-candidates:2000}") int maxCandidates,
+                               @Value("${posts.related.max-bucket-scan:8000}") int maxBucketScan) {
+        this.postRepository = postRepository;
+        this.bands = bands;
+        this.rows = rows;
+        this.maxCandidates = maxCandidates;
+        this.maxBucketScan = maxBucketScan;
+        this.seeds = new long[bands * rows];
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = mix(0x9E3779B97F4A7C15L * (i + 1));
+        }
+    }
+
+    /**
+     * До limit похожих постов: по убыванию сходства состава, при равенстве — новее выше.
+     */
+    public List<Long> related(Long postId, int limit) {
+        // оба снимка берутся один раз: rebuild заменяет карты целиком
+        Map<Long, long[]> ingredients = this.ingredients;
+        Map<Long, long[]> buckets = this.buckets;
+        long[] own = ingredients.get(postId);
+        if (own == null) return Collections.emptyList();
+
+        // кандидат -> число совпавших полос
+        Map<Long, int[]> hits = new HashMap<>();
+        for (long key : bandKeys(signature(own))) {
+            long[] bucket = buckets.getOrDefault(key, EMPTY);
+            for (int i = 0; i < Math.min(bucket.length, maxBucketScan); i++) {
+                if (bucket[i] != postId) hits.computeIfAbsent(bucket[i], k -> new int[1])[0]++;
+            }
+        }
+        Collection<Long> candidates = hits.keySet();
+        if (candidates.size() > maxCandidates) {
+            // лучшие по (числу полос, id) без сортировки всех: в куче худший сверху
+            Comparator<Long> worstFirst = Comparator.<Long>comparingInt(id -> hits.get(id)[0]).thenComparingLong(id -> id);
+            PriorityQueue<Long> best = new PriorityQueue<>(maxCandidates + 1, worstFirst);
+            for (Long id : hits.keySet()) {
+                best.add(id);
+                if (best.size() > maxCandidates) best.poll();
+            }
+            candidates = best;
+        }
+
+        List<long[]> scored = new ArrayList<>(candidates.size()); // {postId, jaccard * 2^32}
+        for (Long id : candidates) {
+            long[] other = ingredients.get(id);
+            if (other == null) continue;
+            scored.add(new long[]{id, (long) (jaccard(own, other) * (1L << 32))});
+        }
+        scored.sort((a, b) -> a[1] != b[1] ? Long.compare(b[1], a[1]) : Long.compare(b[0], a[0]));
+
+        List<Long> out = new ArrayList<>(Math.min(limit, scored.size()));
+        for (int i = 0; i < scored.size() && out.size() < limit; i++) {
+            out.add(scored.get(i)[0]);
+        }
+        return out;
+    }
+
+    /**
+     * Добавить или заменить пост в индексе после коммита. Пустой состав — убрать.
+     */
+    public void putAfterCommit(Long postId, Collection<Long> ingredientIds) {
+        long[] ids = ingredientIds.stream().filter(Objects::nonNull).mapToLong(Long::longValue)
+                .distinct().sorted().toArray();
+        TransactionHooks.afterCommit(() -> {
+            synchronized (writeLock) {
+                removeLocked(postId);
+                if (changedDuringRebuild != null) changedDuringRebuild.add(postId);
+                if (ids.length == 0) return;
+                ingredients.put(postId, ids);
+                for (long key : bandKeys(signature(ids))) {
+                    buckets.compute(key, (k, bucket) -> insertSorted(bucket == null ? EMPTY : bucket, postId));
+                }
+            }
+        });
+    }
+
+    public void removeAfterCommit(Long postId) {
+        TransactionHooks.afterCommit(() -> {
+            synchronized (writeLock) {
+                removeLocked(postId);
+                if (changedDuringRebuild != null) changedDuringRebuild.add(postId);
+            }
+        });
+    }
+
+    /**
+     * Индекс заменяется целиком выборкой из БД; посты, изменённые после запроса, берутся из текущего индекса.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        synchronized (writeLock) {
+            changedDuringRebuild = new HashSet<>();
+        }
+        List<PostIngredientPairView> pairs;
+        try {
+            pairs = postRepository.findPublishedIngredientPairs();
+        } catch (RuntimeException ex) {
+            synchronized (writeLock) {
+                changedDuringRebuild = null;
+            }
+            log.warn("Failed to build related recipes index: {}", ex.getMessage());
+            return;
+        }
+
+        // строки отсортированы по (post_id, ingredient_id) — собираем массивы за один проход
+        Map<Long, long[]> byPost = new HashMap<>();
+        Map<Long, List<Long>> byBand = new HashMap<>();
+        int i = 0;
+        while (i < pairs.size()) {
+            Long postId = pairs.get(i).getPostId();
+            int j = i;
+            while (j < pairs.size() && pairs.get(j).getPostId().equals(postId)) j++;
+            long[] ids = pairs.subList(i, j).stream().mapToLong(PostIngredientPairView::getIngredientId)
+                    .distinct().toArray();
+            byPost.put(postId, ids);
+            for (long key : bandKeys(signature(ids))) {
+                byBand.computeIfAbsent(key, k -> new ArrayList<>()).add(postId);
+            }
+            i = j;
+        }
+
+        ConcurrentHashMap<Long, long[]> nextBuckets = new ConcurrentHashMap<>();
+        byBand.forEach((key, ids) -> {
+            ids.sort(BUCKET_ORDER);
+            nextBuckets.put(key, ids.stream().mapToLong(Long::longValue).toArray());
+        });
+
+        synchronized (writeLock) {
+            ConcurrentHashMap<Long, long[]> nextIngredients = new ConcurrentHashMap<>(byPost);
+            for (Long postId : changedDuringRebuild) {
+                long[] stale = nextIngredients.remove(postId);
+                if (stale != null) removeFrom(nextBuckets, postId, stale);
+                long[] current = ingredients.get(postId);
+                if (current != null) {
+                    nextIngredients.put(postId, current);
+                    for (long key : bandKeys(signature(current))) {
+                        nextBuckets.compute(key, (k, bucket) -> insertSorted(bucket == null ? EMPTY : bucket, postId));
+                    }
+                }
+            }
+            changedDuringRebuild = null;
+            ingredients = nextIngredients;
+            buckets = nextBuckets;
+        }
+        log.info("Related recipes index built: {} posts, {} buckets", byPost.size(), nextBuckets.size());
+    }
+
+    private void removeLocked(Long postId) {
+        long[] old = ingredients.remove(postId);
+        if (old != null) removeFrom(buckets, postId, old);
+    }
+
+    private void removeFrom(Map<Long, long[]> target, long postId, long[] ingredientIds) {
+        for (long key : bandKeys(signature(ingredientIds))) {
+            target.computeIfPresent(key, (k, bucket) -> {
+                long[] next = removeSorted(bucket, postId);
+                return next.length == 0 ? null : next;
+            });
+        }
+    }
+
+    // минимум хэша по всем ингредиентам для каждой из bands * rows хэш-функций
+    private long[] signature(long[] ingredientIds) {
+        long[] sig = new long[seeds.length];
+        Arrays.fill(sig, Long.MAX_VALUE);
+        for (long x : ingredientIds) {
+            for (int h = 0; h < seeds.length; h++) {
+                long v = mix(x ^ seeds[h]);
+                if (v < sig[h]) sig[h] = v;
+            }
+        }
+        return sig;
+    }
+
+    private long[] bandKeys(long[] sig) {
+        long[] keys = new long[bands];
+        for (int b = 0; b < bands; b++) {
+            long k = mix(b + 1);
+            for (int r = 0; r < rows; r++) {
+                k = mix(k ^ sig[b * rows + r]);
+            }
+            keys[b] = k;
+        }
+        return keys;
+    }
+
+    static double jaccard(long[] a, long[] b) {
+        int i = 0, j = 0, common = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) { common++; i++; j++; }
+            else if (a[i] < b[j]) i++;
+            else j++;
+        }
+        int union = a.length + b.length - common;
+        return union == 0 ? 0 : (double) common / union;
+    }
+
+    static long rank(long postId) {
+        return mix(postId ^ 0x5DEECE66DL);
+    }
+
+    // splitmix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static long[] insertSorted(long[] arr, long value) {
+        int pos = indexOf(arr, value);
+        if (pos >= 0) return arr;
+        int at = -pos - 1;
+        long[] next = new long[arr.length + 1];
+        System.arraycopy(arr, 0, next, 0, at);
+        next[at] = value;
+        System.arraycopy(arr, at, next, at + 1, arr.length - at);
+        return next;
+    }
+
+    private static long[] removeSorted(long[] arr, long value) {
+        int pos = indexOf(arr, value);
+        if (pos < 0) return arr;
+        long[] next = new long[arr.length - 1];
+        System.arraycopy(arr, 0, next, 0, pos);
+        System.arraycopy(arr, pos + 1, next, pos, arr.length - pos - 1);
+        return next;
+    }
+
+    // двоичный поиск в корзине по BUCKET_ORDER; как Arrays.binarySearch: -(точка вставки) - 1, если нет
+    private static int indexOf(long[] bucket, long postId) {
+        long rank = rank(postId);
+        int lo = 0;
+        int hi = bucket.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long midRank = rank(bucket[mid]);
+            int c = midRank != rank ? Long.compare(midRank, rank) : Long.compare(bucket[mid], postId);
+            if (c < 0) lo = mid + 1;
+            else if (c > 0) hi = mid - 1;
+            else return mid;
+        }
+        return -(lo + 1);
+    }
+}
@@ -0,0 +1,39 @@
+package ru.zagrebin.service.search;
+
+/**
+ * Множество id без упаковки в Integer (открытая адресация, линейное пробирование; id поста > 0).
+ */
+final class DocSet {
+    private int[] slots = new int[256];
+    private int size;
+
+    boolean add(int doc) {
+        if (size * 2 >= slots.length) grow();
+        int mask = slots.length - 1;
+        for (int i = (doc * 0x9E3779B9) >>> 8 & mask; ; i = (i + 1) & mask) {
+            if (slots[i] == doc) return false;
+            if (slots[i] == 0) {
+                slots[i] = doc;
+                size++;
+                return true;
+            }
+        }
+    }
+
+    boolean contains(int doc) {
+        int mask = slots.length - 1;
+        for (int i = (doc * 0x9E3779B9) >>> 8 & mask; ; i = (i + 1) & mask) {
+            if (slots[i] == doc) return true;
+            if (slots[i] == 0) return false;
+        }
+    }
+
+    private void grow() {
+        int[] old = slots;
+        slots = new int[old.length * 2];
+        size = 0;
+        for (int doc : old) {
+            if (doc != 0) add(doc);
+        }
+    }
+}
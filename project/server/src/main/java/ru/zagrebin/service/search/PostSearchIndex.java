@@ -0,0 +1,516 @@
+package ru.zagrebin.service.search;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.zagrebin.repository.PostRepository;
+import ru.zagrebin.repository.projection.PostSearchDocView;
+import ru.zagrebin.service.tx.TransactionHooks;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Поиск по мере набора без похода в БД: инвертированный индекс по префиксам слов (edge n-граммы
+ * длиной min-gram..max-gram) заголовка, анонса и названий ингредиентов опубликованных постов.
+ * Каждое слово запроса — префикс, все слова обязательны; ранжирование BM25 с весами полей
+ * (заголовок 3, ингредиенты 2, анонс 1) и бонусом за слово, совпавшее с запросом целиком.
+ * Posting lists — int-массивы (Postings). Короткие списки пересекаются по id галопирующим поиском,
+ * длинные (частые префиксы) обходятся по убыванию вклада с ранним остановом — top-k при этом точный.
+ * Слово запроса длиннее max-gram ищется по списку своей граммы, а совпадение проверяется по словам
+ * документа длиннее граммы, которые хранятся целиком.
+ * Заголовки хранятся в индексе, поэтому подсказке не нужна ни одна строка из БД.
+ */
+@Component
+@Slf4j
+public class PostSearchIndex {
+
+    private static final int TITLE_WEIGHT = 3;
+    private static final int INGREDIENT_WEIGHT = 2;
+    private static final int EXCERPT_WEIGHT = 1;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // с какой длины ведущего списка обходить его по убыванию вклада, а не по id
+    private static final int IMPACT_ORDER_MIN_SIZE = 4096;
+    private static final double BOUND_EPSILON = 1e-9;
+
+    private final PostRepository postRepository;
+    private final int minGram;
+    private final int maxGram;
+
+    private final Map<String, Postings> postings = new HashMap<>();
+    // данные документа по id поста: длина 0 — поста в индексе нет
+    private int[] lengths = new int[0];
+    private String[] titles = new String[0];
+    private Postings[][] docPostings = new Postings[0][];
+    // слова документа длиннее max-gram; null — таких нет
+    private LongWords[] longWords = new LongWords[0];
+    private int docCount;
+    private long totalLength;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // посты, изменённые после начала пересборки: в её выборке они устарели; null — пересборка не идёт
+    private Set<Integer> changedDuringRebuild;
+
+    public PostSearchIndex(PostRepository postRepository,
+                           @Value("${posts.search.min-gram:2}") int minGram,
+                           @Value("${posts.search.max-gram:12}") int maxGram) {
+        this.postRepository = postRepository;
+        this.minGram = minGram;
+        this.maxGram = maxGram;
+    }
+
+    /**
+     * До limit постов, в которых каждое слово запроса начинает какое-то слово документа; лучшие первыми.
+     */
+    public List<Hit> suggest(String query, int limit) {
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty() || limit <= 0) return Collections.emptyList();
+
+        lock.readLock().lock();
+        try {
+            int n = tokens.size();
+            Term[] terms = new Term[n];
+            int lead = 0;
+            for (int i = 0; i < n; i++) {
+                String token = tokens.get(i);
+                Postings p = postings.get(gram(token));
+                if (p == null || p.size == 0) return Collections.emptyList();
+                double prefixIdf = idf(p.size);
+                if (token.length() > maxGram) {
+                    // df целого длинного слова не хранится: берётся df граммы, он не меньше настоящего
+                    terms[i] = new Term(p, prefixIdf, prefixIdf, token);
+                } else {
+                    terms[i] = new Term(p, prefixIdf, p.exactDocs > 0 ? idf(p.exactDocs) : 0, null);
+                }
+                if (p.size < terms[lead].postings.size) lead = i;
+            }
+            double avgLength = docCount == 0 ? 1 : (double) totalLength / docCount;
+
+            // порядки по вкладу есть у всех длинных списков, а остальные списки не короче ведущего
+            PriorityQueue<Hit> top = new PriorityQueue<>(limit + 1, Hit.WORST_FIRST);
+            if (terms[lead].postings.size >= IMPACT_ORDER_MIN_SIZE && terms[lead].postings.impactOrder() != null) {
+                collectByImpact(terms, avgLength, limit, top);
+            } else {
+                collectInDocOrder(terms, lead, avgLength, limit, top);
+            }
+            List<Hit> result = new ArrayList<>(top);
+            result.sort(Hit.WORST_FIRST.reversed());
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // короткий ведущий список: обход по id, остальные списки — галопирующим поиском с курсором
+    private void collectInDocOrder(Term[] terms, int lead, double avgLength, int limit, PriorityQueue<Hit> top) {
+        int n = terms.length;
+        int[] cursor = new int[n];
+        Postings leader = terms[lead].postings;
+        outer:
+        for (int k = 0; k < leader.size; k++) {
+            int doc = leader.docs[k];
+            double norm = norm(lengths[doc], avgLength);
+            double score = 0;
+            for (int i = 0; i < n; i++) {
+                Term t = terms[i];
+                int pos = i == lead ? k : t.postings.find(doc, cursor[i]);
+                if (pos < 0) {
+                    cursor[i] = -pos - 1;
+                    if (cursor[i] >= t.postings.size) break outer;
+                    continue outer;
+                }
+                cursor[i] = pos;
+                double s = score(t, doc, pos, norm);
+                if (Double.isNaN(s)) continue outer;
+                score += s;
+            }
+            offer(top, limit, doc, score);
+        }
+    }
+
+    /**
+     * Длинные списки (частые префиксы): threshold algorithm — все слова читаются параллельно в порядке
+     * убывания вклада (Postings.ImpactOrder), каждый новый документ досчитывается по остальным спискам.
+     * Непросмотренный документ не может набрать больше суммы «фронтов» списков, поэтому обход
+     * останавливается, как только эта сумма ниже худшего из top. Сумма, равная худшему, тоже останавливает,
+     * если хотя бы в одном списке фронт даёт текущая группа, а последний прочитанный id меньше худшего:
+     * документ с таким же score стоит в этой группе дальше и id у него ещё меньше, то есть он не выше.
+     * Без этого при одинаковых длинах (частый случай) обход шёл бы до конца группы. Все списки не короче ведущего.
+     * Документы, изменённые после построения порядков, досчитываются до обхода, а их устаревшие записи
+     * в порядках границ не двигают: непросмотренный документ тогда во всех списках неизменён, и его место
+     * в порядке точное.
+     */
+    private void collectByImpact(Term[] terms, double avgLength, int limit, PriorityQueue<Hit> top) {
+        int n = terms.length;
+        Postings.ImpactOrder[] orders = new Postings.ImpactOrder[n];
+        double[][] suffixMax = new double[n][];
+        for (int i = 0; i < n; i++) {
+            orders[i] = terms[i].postings.impactOrder();
+            suffixMax[i] = suffixMax(terms[i], orders[i], avgLength);
+        }
+        int[] next = new int[n];
+        int[] group = new int[n];
+        double[] frontier = new double[n];
+        int[] last = new int[n];
+        boolean[] inGroup = new boolean[n];
+        for (int i = 0; i < n; i++) frontier[i] = suffixMax[i][0];
+        DocSet seen = new DocSet();
+        DocSet changed = new DocSet();
+        for (Term t : terms) {
+            int[] dirty = t.postings.dirty();
+            for (int k = 0; k < t.postings.dirtySize(); k++) {
+                if (!changed.add(dirty[k])) continue;
+                seen.add(dirty[k]);
+                double score = scoreRandomAccess(dirty[k], terms, avgLength);
+                if (!Double.isNaN(score)) offer(top, limit, dirty[k], score);
+            }
+        }
+        while (true) {
+            for (int i = 0; i < n; i++) {
+                Postings.ImpactOrder o = orders[i];
+                // конъюнкция: все подходящие документы есть в списке i, и он уже прочитан целиком
+                if (next[i] == o.docs.length) return;
+                while (next[i] >= o.groupStart[group[i] + 1]) group[i]++;
+                int doc = o.docs[next[i]++];
+                // уже досчитан, а место в порядке могло устареть: прежняя граница остаётся верной
+                if (changed.contains(doc)) continue;
+                // следующие документы группы длиннее, дальше — не выше максимумов следующих групп
+                double norm = norm(Math.min(lengths[doc], Postings.MAX_LENGTH), avgLength);
+                double current = terms[i].bound(o.groupFreq[group[i]], o.groupExactFreq[group[i]], norm);
+                double later = suffixMax[i][group[i] + 1];
+                frontier[i] = Math.max(current, later);
+                last[i] = doc;
+                inGroup[i] = current > later + BOUND_EPSILON;
+                if (seen.add(doc)) {
+                    double score = scoreRandomAccess(doc, terms, avgLength);
+                    if (!Double.isNaN(score)) offer(top, limit, doc, score);
+                }
+            }
+            if (top.size() == limit) {
+                Hit worst = top.peek();
+                double threshold = 0;
+                boolean tieLoses = false;
+                for (int i = 0; i < n; i++) {
+                    threshold += frontier[i];
+                    if (inGroup[i] && last[i] < worst.postId) tieLoses = true;
+                }
+                if (threshold < worst.score - BOUND_EPSILON) return;
+                if (tieLoses && threshold <= worst.score + BOUND_EPSILON) return;
+            }
+        }
+    }
+
+    // suffixMax[g] — наибольший вклад слова в группах g.. (в группе он у первого, самого короткого документа);
+    // длина — та, по которой строился порядок (ограничена, как в ключе ImpactOrder), чтобы граница не занижалась
+    private double[] suffixMax(Term t, Postings.ImpactOrder order, double avgLength) {
+        int groups = order.groups();
+        double[] max = new double[groups + 1];
+        for (int g = groups - 1; g >= 0; g--) {
+            double norm = norm(order.groupMinLength[g], avgLength);
+            max[g] = Math.max(max[g + 1], t.bound(order.groupFreq[g], order.groupExactFreq[g], norm));
+        }
+        return max;
+    }
+
+    // NaN — какое-то слово запроса в документе не встречается
+    private double scoreRandomAccess(int doc, Term[] terms, double avgLength) {
+        double norm = norm(lengths[doc], avgLength);
+        double score = 0;
+        for (Term t : terms) {
+            int pos = Arrays.binarySearch(t.postings.docs, 0, t.postings.size, doc);
+            if (pos < 0) return Double.NaN;
+            double s = score(t, doc, pos, norm);
+            if (Double.isNaN(s)) return Double.NaN;
+            score += s;
+        }
+        return score;
+    }
+
+    // вклад слова в документ на позиции pos его списка; NaN — длинное слово запроса не начинает ни одного слова документа
+    private double score(Term t, int doc, int pos, double norm) {
+        if (t.full == null) return t.score(pos, norm);
+        LongWords words = longWords[doc];
+        if (words == null) return Double.NaN;
+        int freq = 0;
+        int exactFreq = 0;
+        for (int i = 0; i < words.words.length; i++) {
+            if (!words.words[i].startsWith(t.full)) continue;
+            freq += words.weights[i];
+            if (words.words[i].length() == t.full.length()) exactFreq += words.weights[i];
+        }
+        if (freq == 0) return Double.NaN;
+        return t.score(Math.min(freq, Postings.MAX_FREQ), Math.min(exactFreq, Postings.MAX_FREQ), norm);
+    }
+
+    private static double norm(int length, double avgLength) {
+        return K1 * (1 - B + B * length / avgLength);
+    }
+
+    private void offer(PriorityQueue<Hit> top, int limit, int doc, double score) {
+        if (top.size() == limit) {
+            Hit worst = top.peek();
+            if (score < worst.score || (score == worst.score && doc < worst.postId)) return;
+            top.poll();
+        }
+        top.add(new Hit(doc, titles[doc], score));
+    }
+
+    public void putAfterCommit(Long postId, String title, String excerpt, Collection<String> ingredientNames) {
+        List<String> names = new ArrayList<>(ingredientNames);
+        TransactionHooks.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                put(Math.toIntExact(postId), title, excerpt, names);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    public void removeAfterCommit(Long postId) {
+        TransactionHooks.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                remove(Math.toIntExact(postId));
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Индекс заменяется целиком выборкой из БД; посты, изменённые после запроса, берутся из текущего индекса.
+     * Порядки по вкладу строятся один раз в конце, а не по ходу загрузки.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        setChangedDuringRebuild(new HashSet<>());
+        List<PostSearchDocView> rows;
+        try {
+            rows = postRepository.findPublishedSearchDocs();
+        } catch (RuntimeException ex) {
+            setChangedDuringRebuild(null);
+            log.warn("Failed to build post search index: {}", ex.getMessage());
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            Set<Integer> changed = changedDuringRebuild;
+            changedDuringRebuild = null;
+            Map<Integer, Doc> current = new HashMap<>();
+            for (int id : changed) {
+                Doc doc = snapshot(id);
+                if (doc != null) current.put(id, doc);
+            }
+            postings.clear();
+            lengths = new int[0];
+            titles = new String[0];
+            docPostings = new Postings[0][];
+            longWords = new LongWords[0];
+            docCount = 0;
+            totalLength = 0;
+            for (PostSearchDocView row : rows) {
+                int id = Math.toIntExact(row.getId());
+                if (changed.contains(id)) continue;
+                List<String> names = row.getIngredientNames() == null
+                        ? Collections.emptyList()
+                        : Arrays.asList(row.getIngredientNames().split(String.valueOf((char) 31)));
+                insert(id, analyze(row.getTitle(), row.getExcerpt(), names), false);
+            }
+            current.forEach((id, doc) -> insert(id, doc, false));
+            for (Postings p : postings.values()) {
+                p.trim();
+                p.refreshImpactOrder(lengths, IMPACT_ORDER_MIN_SIZE);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Post search index built: {} posts, {} grams", rows.size(), postings.size());
+    }
+
+    private void setChangedDuringRebuild(Set<Integer> changed) {
+        lock.writeLock().lock();
+        try {
+            changedDuringRebuild = changed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void put(int id, String title, String excerpt, List<String> ingredientNames) {
+        insert(id, analyze(title, excerpt, ingredientNames), true);
+    }
+
+    // refresh = false — при массовой загрузке: порядки по вкладу строятся после неё
+    private void insert(int id, Doc doc, boolean refresh) {
+        remove(id);
+        if (doc.freqs.isEmpty()) return;
+
+        // документ ссылается на общие Postings, а не на свои копии строк грамм
+        Postings[] lists = new Postings[doc.freqs.size()];
+        int i = 0;
+        for (Map.Entry<String, int[]> e : doc.freqs.entrySet()) {
+            Postings p = postings.computeIfAbsent(e.getKey(), Postings::new);
+            p.add(id, e.getValue()[0], e.getValue()[1]);
+            lists[i++] = p;
+        }
+        if (id >= lengths.length) {
+            int capacity = Math.max(id + 1, lengths.length + (lengths.length >> 1));
+            lengths = Arrays.copyOf(lengths, capacity);
+            titles = Arrays.copyOf(titles, capacity);
+            docPostings = Arrays.copyOf(docPostings, capacity);
+            longWords = Arrays.copyOf(longWords, capacity);
+        }
+        lengths[id] = Math.max(doc.length, 1);
+        titles[id] = doc.title;
+        docPostings[id] = lists;
+        longWords[id] = doc.longWords;
+        docCount++;
+        totalLength += lengths[id];
+        if (refresh) {
+            for (Postings p : lists) p.refreshImpactOrder(lengths, IMPACT_ORDER_MIN_SIZE);
+        }
+    }
+
+    private void remove(int id) {
+        if (changedDuringRebuild != null) changedDuringRebuild.add(id);
+        if (id >= lengths.length || lengths[id] == 0) return;
+        Postings[] lists = docPostings[id];
+        for (Postings p : lists) {
+            if (p.remove(id) && p.size == 0) postings.remove(p.gram);
+        }
+        totalLength -= lengths[id];
+        docCount--;
+        lengths[id] = 0;
+        titles[id] = null;
+        docPostings[id] = null;
+        longWords[id] = null;
+        // списки, из которых документ только ушёл, тоже копят изменения до слияния
+        for (Postings p : lists) p.refreshImpactOrder(lengths, IMPACT_ORDER_MIN_SIZE);
+    }
+
+    // документ в индексе как есть — чтобы вернуть его после пересборки; null — его нет
+    private Doc snapshot(int id) {
+        if (id >= lengths.length || lengths[id] == 0) return null;
+        Map<String, int[]> freqs = new HashMap<>();
+        for (Postings p : docPostings[id]) {
+            int pos = Arrays.binarySearch(p.docs, 0, p.size, id);
+            freqs.put(p.gram, new int[]{p.freqs[pos], p.exactFreqs[pos]});
+        }
+        return new Doc(titles[id], lengths[id], freqs, longWords[id]);
+    }
+
+    private Doc analyze(String title, String excerpt, List<String> ingredientNames) {
+        // грамма -> {tf префикса, tf целого слова}
+        Map<String, int[]> freqs = new HashMap<>();
+        Map<String, Integer> longs = new HashMap<>();
+        int length = addField(freqs, longs, title, TITLE_WEIGHT)
+                + addField(freqs, longs, excerpt, EXCERPT_WEIGHT)
+                + addField(freqs, longs, String.join(" ", ingredientNames), INGREDIENT_WEIGHT);
+        LongWords words = null;
+        if (!longs.isEmpty()) {
+            words = new LongWords(longs.keySet().toArray(new String[0]), new int[longs.size()]);
+            for (int i = 0; i < words.words.length; i++) words.weights[i] = longs.get(words.words[i]);
+        }
+        return new Doc(title, length, freqs, words);
+    }
+
+    // взвешенные частоты префиксов поля (и целых слов — в граммах, совпадающих со словом), слова длиннее
+    // граммы — целиком в longs; возвращает взвешенную длину поля в словах
+    private int addField(Map<String, int[]> freqs, Map<String, Integer> longs, String text, int weight) {
+        List<String> tokens = tokenize(text);
+        for (String token : tokens) {
+            int max = Math.min(token.length(), maxGram);
+            for (int len = minGram; len <= max; len++) {
+                int[] f = freqs.computeIfAbsent(token.substring(0, len), k -> new int[2]);
+                f[0] += weight;
+                if (len == token.length()) f[1] += weight;
+            }
+            if (token.length() > maxGram) longs.merge(token, weight, Integer::sum);
+        }
+        return tokens.size() * weight;
+    }
+
+    private String gram(String token) {
+        return token.length() > maxGram ? token.substring(0, maxGram) : token;
+    }
+
+    private List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) return Collections.emptyList();
+        List<String> tokens = new ArrayList<>();
+        String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean letter = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                if (i - start >= minGram) tokens.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private double idf(int df) {
+        return Math.log(1 + (docCount - df + 0.5) / (df + 0.5));
+    }
+
+    // текст документа, разобранный для индекса
+    private record Doc(String title, int length, Map<String, int[]> freqs, LongWords longWords) {}
+
+    // различные слова документа длиннее граммы и их взвешенные частоты
+    private record LongWords(String[] words, int[] weights) {}
+
+    // слово запроса: список его граммы и idf префикса и целого слова (0 — бонуса нет);
+    // full — само слово, если оно длиннее граммы и совпадение надо проверять по словам документа
+    private static final class Term {
+        final Postings postings;
+        final double prefixIdf;
+        final double exactIdf;
+        final String full;
+
+        Term(Postings postings, double prefixIdf, double exactIdf, String full) {
+            this.postings = postings;
+            this.prefixIdf = prefixIdf;
+            this.exactIdf = exactIdf;
+            this.full = full;
+        }
+
+        double score(int pos, double norm) {
+            return score(postings.freqs[pos], postings.exactFreqs[pos], norm);
+        }
+
+        double score(int freq, int exactFreq, double norm) {
+            double s = prefixIdf * freq * (K1 + 1) / (freq + norm);
+            if (exactFreq > 0) s += exactIdf * exactFreq * (K1 + 1) / (exactFreq + norm);
+            return s;
+        }
+
+        // верхняя граница вклада по tf граммы: у длинного слова tf не больше, и целиком может совпасть каждое
+        double bound(int freq, int exactFreq, double norm) {
+            return full == null ? score(freq, exactFreq, norm) : score(freq, freq, norm);
+        }
+    }
+
+    @Getter
+    public static final class Hit {
+        // худший первым: при равном score выше пост с большим id (новее)
+        static final Comparator<Hit> WORST_FIRST = Comparator.comparingDouble(Hit::getScore)
+                .thenComparingLong(Hit::getPostId);
+
+        private final long postId;
+        private final String title;
+        private final double score;
+
+        Hit(long postId, String title, double score) {
+            this.postId = postId;
+            this.title = title;
+            this.score = score;
+        }
+    }
+}
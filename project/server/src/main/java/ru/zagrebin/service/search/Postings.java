@@ -0,0 +1,266 @@
+package ru.zagrebin.service.search;
+
+import java.util.Arrays;
+
+/**
+ * Posting list одной n-граммы: отсортированные id постов и две частоты в параллельных int-массивах —
+ * сколько слов документа начинается с граммы и сколько совпадает с ней целиком (оба tf взвешены по полям).
+ * Новые посты почти всегда получают больший id, поэтому вставка обычно — дописывание в конец.
+ * Не потокобезопасен: синхронизацию обеспечивает PostSearchIndex (порядок обхода по вкладу
+ * перестраивается только под его write-lock, запросы его лишь читают).
+ */
+final class Postings {
+
+    static final int MAX_FREQ = (1 << 7) - 1;
+    static final int MAX_LENGTH = (1 << 20) - 1;
+
+    final String gram;
+    int[] docs = new int[4];
+    int[] freqs = new int[4];
+    int[] exactFreqs = new int[4];
+    int size;
+    // сколько документов содержат грамму целым словом (df для idf бонуса)
+    int exactDocs;
+    // порядок обхода по вкладу на момент построения; null — список короткий, обходится по id
+    private ImpactOrder impactOrder;
+    // документы, добавленные, изменённые или удалённые после построения impactOrder (могут повторяться)
+    private int[] dirty = new int[0];
+    private int dirtySize;
+
+    Postings(String gram) {
+        this.gram = gram;
+    }
+
+    void add(int doc, int freq, int exactFreq) {
+        markDirty(doc);
+        freq = Math.min(freq, MAX_FREQ);
+        exactFreq = Math.min(exactFreq, MAX_FREQ);
+        int pos = size > 0 && docs[size - 1] < doc ? size : Arrays.binarySearch(docs, 0, size, doc);
+        if (pos >= 0 && pos < size) {
+            if (exactFreqs[pos] > 0) exactDocs--;
+            freqs[pos] = freq;
+            exactFreqs[pos] = exactFreq;
+            if (exactFreq > 0) exactDocs++;
+            return;
+        }
+        if (pos < 0) pos = -pos - 1;
+        if (size == docs.length) {
+            int capacity = size + (size >> 1) + 1;
+            docs = Arrays.copyOf(docs, capacity);
+            freqs = Arrays.copyOf(freqs, capacity);
+            exactFreqs = Arrays.copyOf(exactFreqs, capacity);
+        }
+        System.arraycopy(docs, pos, docs, pos + 1, size - pos);
+        System.arraycopy(freqs, pos, freqs, pos + 1, size - pos);
+        System.arraycopy(exactFreqs, pos, exactFreqs, pos + 1, size - pos);
+        docs[pos] = doc;
+        freqs[pos] = freq;
+        exactFreqs[pos] = exactFreq;
+        if (exactFreq > 0) exactDocs++;
+        size++;
+    }
+
+    boolean remove(int doc) {
+        int pos = Arrays.binarySearch(docs, 0, size, doc);
+        if (pos < 0) return false;
+        markDirty(doc);
+        if (exactFreqs[pos] > 0) exactDocs--;
+        System.arraycopy(docs, pos + 1, docs, pos, size - pos - 1);
+        System.arraycopy(freqs, pos + 1, freqs, pos, size - pos - 1);
+        System.arraycopy(exactFreqs, pos + 1, exactFreqs, pos, size - pos - 1);
+        size--;
+        return true;
+    }
+
+    private void markDirty(int doc) {
+        if (impactOrder == null) return;
+        if (dirtySize == dirty.length) dirty = Arrays.copyOf(dirty, Math.max(16, dirtySize * 2));
+        dirty[dirtySize++] = doc;
+    }
+
+    /**
+     * Позиция doc не левее from (галопирующий поиск), либо отрицательное значение -(точка вставки) - 1.
+     */
+    int find(int doc, int from) {
+        int bound = 1;
+        while (from + bound < size && docs[from + bound] < doc) bound <<= 1;
+        return Arrays.binarySearch(docs, from + (bound >> 1), Math.min(from + bound + 1, size), doc);
+    }
+
+    void trim() {
+        docs = Arrays.copyOf(docs, size);
+        freqs = Arrays.copyOf(freqs, size);
+        exactFreqs = Arrays.copyOf(exactFreqs, size);
+    }
+
+    /**
+     * Порядок обхода для раннего останова: группы по (tf префикса, tf целого слова) по убыванию,
+     * внутри группы — длина документа по возрастанию, при равной длине — id по убыванию (как при равном
+     * score в выдаче). При одинаковых tf вклад BM25 убывает с длиной при любых idf и средней длине,
+     * поэтому порядок устаревает только при изменении самого списка. Устаревший порядок остаётся годным:
+     * записи неизменённых документов в нём точны, а добавленные, изменённые и удалённые перечислены
+     * в dirty() и досчитываются отдельно (удалённые при досчёте не находятся в списке). Длина документа
+     * меняется только вместе с его записями во всех списках, поэтому у неизменённых она та же, что при построении.
+     */
+    ImpactOrder impactOrder() {
+        return impactOrder;
+    }
+
+    int[] dirty() {
+        return dirty;
+    }
+
+    int dirtySize() {
+        return dirtySize;
+    }
+
+    /**
+     * Вызывается после изменений под write-lock индекса: порядок строится, когда список дорастает до minSize,
+     * а изменённые документы вливаются в него линейным слиянием, когда их набирается больше 128 и 1/1024 списка.
+     * Сортировка не попадает на путь запроса, а досчёт изменённых в запросе остаётся дешёвым.
+     */
+    void refreshImpactOrder(int[] lengths, int minSize) {
+        if (size < minSize) {
+            impactOrder = null;
+        } else if (impactOrder == null) {
+            impactOrder = ImpactOrder.build(this, lengths);
+        } else if (dirtySize > Math.max(128, size >> 10)) {
+            impactOrder = ImpactOrder.merge(this, impactOrder, lengths);
+        } else {
+            return;
+        }
+        dirty = new int[0];
+        dirtySize = 0;
+    }
+
+    static final class ImpactOrder {
+        final int[] docs;
+        final int[] groupFreq;       // tf префикса в группе
+        final int[] groupExactFreq;  // tf целого слова в группе
+        final int[] groupMinLength;  // длина первого, самого короткого документа группы на момент построения
+        final int[] groupStart;      // начало группы в docs; последний элемент — docs.length
+
+        private ImpactOrder(int[] docs, int[] groupFreq, int[] groupExactFreq, int[] groupMinLength, int[] groupStart) {
+            this.docs = docs;
+            this.groupFreq = groupFreq;
+            this.groupExactFreq = groupExactFreq;
+            this.groupMinLength = groupMinLength;
+            this.groupStart = groupStart;
+        }
+
+        int groups() {
+            return groupFreq.length;
+        }
+
+        private static ImpactOrder build(Postings p, int[] lengths) {
+            long[] keys = new long[p.size];
+            for (int i = 0; i < p.size; i++) {
+                keys[i] = key(p.freqs[i], p.exactFreqs[i], lengths[p.docs[i]], p.size - 1 - i);
+            }
+            Arrays.sort(keys);
+
+            Builder b = new Builder(p.size);
+            for (long key : keys) {
+                int pos = p.size - 1 - (int) (key & ((1 << 28) - 1));
+                b.add(p.docs[pos], lengthOf(key), p.freqs[pos], p.exactFreqs[pos]);
+            }
+            return b.build();
+        }
+
+        // прежний порядок без изменённых документов + изменённые, оставшиеся в списке, заново отсортированные
+        private static ImpactOrder merge(Postings p, ImpactOrder old, int[] lengths) {
+            int[] changed = Arrays.copyOf(p.dirty, p.dirtySize);
+            Arrays.sort(changed);
+            int m = 0;
+            DocSet changedSet = new DocSet();
+            for (int i = 0; i < changed.length; i++) {
+                if (m == 0 || changed[i] != changed[m - 1]) {
+                    changed[m++] = changed[i];
+                    changedSet.add(changed[i]);
+                }
+            }
+            long[] keys = new long[m];
+            int k = 0;
+            for (int j = 0; j < m; j++) {
+                int pos = Arrays.binarySearch(p.docs, 0, p.size, changed[j]);
+                if (pos >= 0) keys[k++] = key(p.freqs[pos], p.exactFreqs[pos], lengths[changed[j]], m - 1 - j);
+            }
+            Arrays.sort(keys, 0, k);
+
+            Builder b = new Builder(p.size);
+            int group = 0;
+            int n = 0;
+            for (int i = 0; i < old.docs.length || n < k; ) {
+                if (i < old.docs.length) {
+                    while (old.groupStart[group + 1] <= i) group++;
+                    if (changedSet.contains(old.docs[i])) {
+                        i++;
+                        continue;
+                    }
+                }
+                boolean takeOld = i < old.docs.length;
+                if (takeOld && n < k) {
+                    long oldKey = key(old.groupFreq[group], old.groupExactFreq[group], lengths[old.docs[i]], 0) >>> 28;
+                    long newKey = keys[n] >>> 28;
+                    int newDoc = changed[m - 1 - (int) (keys[n] & ((1 << 28) - 1))];
+                    takeOld = oldKey != newKey ? oldKey < newKey : old.docs[i] > newDoc;
+                }
+                if (takeOld) {
+                    b.add(old.docs[i], Math.min(lengths[old.docs[i]], MAX_LENGTH), old.groupFreq[group], old.groupExactFreq[group]);
+                    i++;
+                } else {
+                    int doc = changed[m - 1 - (int) (keys[n] & ((1 << 28) - 1))];
+                    int pos = Arrays.binarySearch(p.docs, 0, p.size, doc);
+                    b.add(doc, lengthOf(keys[n]), p.freqs[pos], p.exactFreqs[pos]);
+                    n++;
+                }
+            }
+            return b.build();
+        }
+
+        // ключ: tf (7 бит) | tf слова (7 бит) | длина (20 бит) | порядковый номер (28 бит) — сортировка long[]
+        private static long key(int freq, int exactFreq, int length, int rank) {
+            return ((long) (MAX_FREQ - freq) << 55) | ((long) (MAX_FREQ - exactFreq) << 48)
+                    | ((long) Math.min(length, MAX_LENGTH) << 28) | rank;
+        }
+
+        private static int lengthOf(long key) {
+            return (int) ((key >>> 28) & MAX_LENGTH);
+        }
+    }
+
+    // записи порядка по очереди; группы выделяются по смене tf
+    private static final class Builder {
+        final int[] docs;
+        final int[] freq;
+        final int[] exact;
+        final int[] minLength;
+        final int[] start;
+        int size;
+        int groups;
+
+        Builder(int capacity) {
+            docs = new int[capacity];
+            freq = new int[capacity];
+            exact = new int[capacity];
+            minLength = new int[capacity];
+            start = new int[capacity + 1];
+        }
+
+        void add(int doc, int length, int f, int e) {
+            if (groups == 0 || f != freq[groups - 1] || e != exact[groups - 1]) {
+                freq[groups] = f;
+                exact[groups] = e;
+                minLength[groups] = length;
+                start[groups++] = size;
+            }
+            docs[size++] = doc;
+        }
+
+        ImpactOrder build() {
+            start[groups] = size;
+            return new ImpactOrder(Arrays.copyOf(docs, size), Arrays.copyOf(freq, groups), Arrays.copyOf(exact, groups),
+                    Arrays.copyOf(minLength, groups), Arrays.copyOf(start, groups + 1));
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package ru.zagrebin.service.timeline;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.zagrebin.repository.TimelineRepository;
+import ru.zagrebin.repository.projection.TimelineKeyView;
+import ru.zagrebin.service.pagination.PostCursor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ленты подписок в памяти: на пользователя — не больше capacity последних позиций (createdAt, postId),
+ * новые сверху, в двух примитивных массивах. Чтение страницы — бинарный поиск курсора и срез массива.
+ * Буфер грузится из user_timeline при первом чтении; новые посты дописываются в уже загруженные
+ * буферы после коммита fan-out (снимок заменяется целиком, читатели не блокируются).
+ */
+@Component
+public class TimelineBuffer {
+
+    public static final String NAME = "posts.timeline";
+
+    private final Cache<Long, Timeline> cache;
+    private final TimelineRepository timelineRepository;
+    private final int capacity;
+
+    public TimelineBuffer(TimelineRepository timelineRepository,
+                          MeterRegistry meterRegistry,
+                          @Value("${posts.timeline.capacity:500}") int capacity,
+                          @Value("${posts.timeline.max-entries:5000000}") long maxEntries) {
+        this.timelineRepository = timelineRepository;
+        this.capacity = capacity;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxEntries)
+                .weigher((Long id, Timeline t) -> t.ids.length + 1)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, NAME);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * До limit позиций строго после курсора (after == null — с начала ленты).
+     */
+    public List<PostCursor> slice(Long userId, PostCursor after, int limit) {
+        Timeline t = cache.get(userId, this::load);
+        int from = after == null ? 0 : t.firstBelow(after.getCreatedAtMicros(), after.getId());
+        int to = Math.min(t.ids.length, from + limit);
+        List<PostCursor> out = new ArrayList<>(Math.max(to - from, 0));
+        for (int i = from; i < to; i++) {
+            out.add(PostCursor.ofMicros(t.micros[i], t.ids[i]));
+        }
+        return out;
+    }
+
+    /**
+     * Дописать пост в загруженные буферы подписчиков; незагруженные прочитают его из таблицы.
+     */
+    public void push(Collection<Long> userIds, long postId, long createdAtMicros) {
+        for (Long userId : userIds) {
+            cache.asMap().computeIfPresent(userId, (id, t) -> t.insert(createdAtMicros, postId, capacity));
+        }
+    }
+
+    /**
+     * Убрать пост (снят с публикации или удалён) из загруженных буферов перечисленных пользователей.
+     */
+    public void removePost(Collection<Long> userIds, long postId) {
+        for (Long userId : userIds) {
+            cache.asMap().computeIfPresent(userId, (id, t) -> t.without(postId));
+        }
+    }
+
+    /**
+     * Убрать пост из всех загруженных буферов, когда неизвестно, в чьих он лентах. Снимки просматриваются
+     * без блокировок, заменяются только те, где пост есть.
+     */
+    public void removePostEverywhere(long postId) {
+        for (Map.Entry<Long, Timeline> e : cache.asMap().entrySet()) {
+            if (e.getValue().indexOf(postId) >= 0) {
+                cache.asMap().computeIfPresent(e.getKey(), (id, t) -> t.without(postId));
+            }
+        }
+    }
+
+    public void invalidate(Long userId) {
+        cache.invalidate(userId);
+    }
+
+    private Timeline load(Long userId) {
+        List<TimelineKeyView> rows = timelineRepository.findLatest(userId, capacity);
+        long[] micros = new long[rows.size()];
+        long[] ids = new long[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            micros[i] = PostCursor.toMicros(rows.get(i).getCreatedAt());
+            ids[i] = rows.get(i).getPostId();
+        }
+        return new Timeline(micros, ids);
+    }
+
+    /**
+     * Неизменяемый снимок ленты, отсортирован по (micros, id) по убыванию.
+     */
+    static final class Timeline {
+        final long[] micros;
+        final long[] ids;
+
+        Timeline(long[] micros, long[] ids) {
+            this.micros = micros;
+            this.ids = ids;
+        }
+
+        // первый индекс, позиция которого строго меньше (m, id)
+        int firstBelow(long m, long id) {
+            int lo = 0, hi = ids.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                boolean below = micros[mid] < m || (micros[mid] == m && ids[mid] < id);
+                if (below) hi = mid; else lo = mid + 1;
+            }
+            return lo;
+        }
+
+        Timeline insert(long m, long id, int capacity) {
+            int at = firstBelow(m, id);
+            if (at > 0 && ids[at - 1] == id && micros[at - 1] == m) return this;
+            if (at >= capacity) return this; // старше всего, что помещается в буфер
+            int n = Math.min(ids.length + 1, capacity);
+            long[] nm = new long[n];
+            long[] ni = new long[n];
+            System.arraycopy(micros, 0, nm, 0, at);
+            System.arraycopy(ids, 0, ni, 0, at);
+            nm[at] = m;
+            ni[at] = id;
+            int tail = n - at - 1;
+            System.arraycopy(micros, at, nm, at + 1, tail);
+            System.arraycopy(ids, at, ni, at + 1, tail);
+            return new Timeline(nm, ni);
+        }
+
+        int indexOf(long id) {
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == id) return i;
+            }
+            return -1;
+        }
+
+        Timeline without(long id) {
+            int pos = indexOf(id);
+            if (pos < 0) return this;
+            long[] nm = new long[ids.length - 1];
+            long[] ni = new long[ids.length - 1];
+            System.arraycopy(micros, 0, nm, 0, pos);
+            System.arraycopy(ids, 0, ni, 0, pos);
+            System.arraycopy(micros, pos + 1, nm, pos, ids.length - pos - 1);
+            System.arraycopy(ids, pos + 1, ni, pos, ids.length - pos - 1);
+            return new Timeline(nm, ni);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package ru.zagrebin.service.timeline;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.zagrebin.repository.PostRepository;
+import ru.zagrebin.repository.TimelineRepository;
+import ru.zagrebin.repository.UserRepository;
+import ru.zagrebin.repository.projection.TimelineKeyView;
+import ru.zagrebin.service.cache.SubscriptionIndex;
+import ru.zagrebin.service.pagination.PostCursor;
+import ru.zagrebin.service.tx.TransactionHooks;
+
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Лента «посты тех, на кого я подписан».
+ * Запись (fan-out-on-write): при публикации id поста раскладывается в user_timeline всем подписчикам
+ * автора, после коммита — в загруженные TimelineBuffer. Авторы, у которых подписчиков больше
+ * posts.timeline.fanout-max-followers, не раскладываются: их посты подмешиваются при чтении
+ * одним запросом по индексу (author_id, status, created_at, id).
+ */
+@Component
+@Slf4j
+public class TimelineFanout {
+
+    private static final long[] NONE = new long[0];
+
+    private final TimelineRepository timelineRepository;
+    private final UserRepository userRepository;
+    private final PostRepository postRepository;
+    private final TimelineBuffer timelineBuffer;
+    private final SubscriptionIndex subscriptionIndex;
+    private final int maxFollowers;
+
+    // авторы с fan-out-on-read, отсортированы; обновляется refreshHighFollowerAuthors()
+    private volatile long[] highFollowerAuthors = NONE;
+
+    public TimelineFanout(TimelineRepository timelineRepository,
+                          UserRepository userRepository,
+                          PostRepository postRepository,
+                          TimelineBuffer timelineBuffer,
+                          SubscriptionIndex subscriptionIndex,
+                          @Value("${posts.timeline.fanout-max-followers:10000}") int maxFollowers) {
+        this.timelineRepository = timelineRepository;
+        this.userRepository = userRepository;
+        this.postRepository = postRepository;
+        this.timelineBuffer = timelineBuffer;
+        this.subscriptionIndex = subscriptionIndex;
+        this.maxFollowers = maxFollowers;
+    }
+
+    /**
+     * Пост стал опубликованным. Вызывается внутри транзакции публикации.
+     */
+    public void published(Long postId, Long authorId, OffsetDateTime createdAt) {
+        if (authorId == null || createdAt == null) return;
+        List<Long> followers = userRepository.findSubscriberIds(authorId, maxFollowers + 1);
+        if (followers.size() > maxFollowers) {
+            // не ждём планового обновления — пост должен подмешиваться при чтении сразу
+            markHighFollower(authorId);
+            return;
+        }
+        if (followers.isEmpty()) return;
+        // в памяти и в таблице одна и та же позиция с точностью БД
+        OffsetDateTime at = createdAt.truncatedTo(ChronoUnit.MICROS);
+        timelineRepository.fanOut(followers.toArray(new Long[0]), postId, at);
+        long micros = PostCursor.toMicros(at.toInstant());
+        TransactionHooks.afterCommit(() -> timelineBuffer.push(followers, postId, micros));
+    }
+
+    /**
+     * Пост снят с публикации или удалён (строки удалённого поста уберёт ON DELETE CASCADE).
+     * Позиция поста может быть только в буферах текущих подписчиков автора: подписка и отписка
+     * сбрасывают буфер, — поэтому обходятся они, а не все загруженные ленты.
+     */
+    public void unpublished(Long postId, Long authorId, boolean deleteRows) {
+        if (deleteRows) {
+            timelineRepository.deleteByPostId(postId);
+        }
+        List<Long> followers = authorId == null ? null : userRepository.findSubscriberIds(authorId, maxFollowers + 1);
+        if (followers != null && followers.size() <= maxFollowers) {
+            if (!followers.isEmpty()) {
+                TransactionHooks.afterCommit(() -> timelineBuffer.removePost(followers, postId));
+            }
+        } else {
+            // пост мог попасть в ленты ещё до того, как автор перешёл порог подписчиков
+            TransactionHooks.afterCommit(() -> timelineBuffer.removePostEverywhere(postId));
+        }
+    }
+
+    public void subscribed(Long userId, Long authorId) {
+        if (Arrays.binarySearch(highFollowerAuthors, authorId) < 0) {
+            timelineRepository.backfillAuthor(userId, authorId, timelineBuffer.capacity());
+        }
+        TransactionHooks.afterCommit(() -> timelineBuffer.invalidate(userId));
+    }
+
+    public void unsubscribed(Long userId, Long authorId) {
+        timelineRepository.deleteAuthorEntries(userId, authorId);
+        TransactionHooks.afterCommit(() -> timelineBuffer.invalidate(userId));
+    }
+
+    /**
+     * До limit позиций ленты строго после курсора: срез буфера, слитый с постами авторов
+     * с fan-out-on-read, на которых подписан пользователь.
+     */
+    public List<PostCursor> page(Long userId, PostCursor after, int limit) {
+        List<PostCursor> own = timelineBuffer.slice(userId, after, limit);
+
+        Long[] pulled = followedHighFollowerAuthors(userId);
+        if (pulled.length == 0) return own;
+
+        List<TimelineKeyView> rows = after == null
+                ? postRepository.findPublishedKeysByAuthors(pulled, limit)
+                : postRepository.findPublishedKeysByAuthorsAfter(pulled, after.getCreatedAt(), after.getId(), limit);
+        if (rows.isEmpty()) return own;
+
+        List<PostCursor> merged = new ArrayList<>(own.size() + rows.size());
+        merged.addAll(own);
+        Set<Long> seen = new HashSet<>();
+        for (PostCursor c : own) seen.add(c.getId());
+        for (TimelineKeyView r : rows) {
+            // пост мог попасть в ленту ещё до того, как автор перешёл порог подписчиков
+            if (seen.add(r.getPostId())) merged.add(PostCursor.of(r.getCreatedAt(), r.getPostId()));
+        }
+        merged.sort(Comparator.comparingLong(PostCursor::getCreatedAtMicros)
+                .thenComparingLong(PostCursor::getId)
+                .reversed());
+        return merged.size() > limit ? merged.subList(0, limit) : merged;
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${posts.timeline.high-follower-refresh-ms:60000}")
+    public void refreshHighFollowerAuthors() {
+        try {
+            long[] ids = userRepository.findAuthorIdsWithMoreSubscribersThan(maxFollowers).stream()
+                    .mapToLong(Long::longValue)
+                    .sorted()
+                    .toArray();
+            highFollowerAuthors = ids;
+        } catch (RuntimeException ex) {
+            log.warn("Failed to refresh high-follower authors: {}", ex.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${posts.timeline.trim-interval-ms:600000}")
+    public void trim() {
+        try {
+            int removed = timelineRepository.trim(timelineBuffer.capacity());
+            if (removed > 0) log.debug("Trimmed {} timeline rows", removed);
+        } catch (RuntimeException ex) {
+            log.warn("Failed to trim timelines: {}", ex.getMessage());
+        }
+    }
+
+    private synchronized void markHighFollower(long authorId) {
+        long[] authors = highFollowerAuthors;
+        int pos = Arrays.binarySearch(authors, authorId);
+        if (pos >= 0) return;
+        int at = -pos - 1;
+        long[] next = new long[authors.length + 1];
+        System.arraycopy(authors, 0, next, 0, at);
+        next[at] = authorId;
+        System.arraycopy(authors, at, next, at + 1, authors.length - at);
+        highFollowerAuthors = next;
+    }
+
+    // подписки читателя берутся один раз и пересекаются со списком авторов, а не проверяются по одному
+    private Long[] followedHighFollowerAuthors(Long userId) {
+        return subscriptionIndex.subscribedAmong(userId, highFollowerAuthors);
+    }
+}
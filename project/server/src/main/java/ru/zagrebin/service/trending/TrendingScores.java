@@ -0,0 +1,244 @@
+package ru.zagrebin.service.trending;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.zagrebin.repository.PostLikeRepository;
+import ru.zagrebin.repository.projection.TrendingSeedView;
+import ru.zagrebin.service.tx.TransactionHooks;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Популярность постов с экспоненциальным затуханием (период полураспада posts.trending.half-life-hours).
+ * Событие веса w в момент t добавляет w·2^((t − t0)/H) к счёту поста. Все счета растут с одним и тем же
+ * множителем, поэтому порядок не зависит от «сейчас» и пересчитывать старые счета не нужно.
+ * Чтобы не переполнить double, счёт хранится логарифмом (log-sum-exp).
+ * Топ держится в отсортированном наборе размером 2·top-k и обновляется на каждом событии,
+ * которое может в него попасть; раз в rebuild-top-ms он пересобирается из карты счетов в памяти
+ * (вытесненные из запаса посты могли с тех пор обогнать оставшиеся).
+ * При старте счета восстанавливаются из post_like и views_count.
+ */
+@Component
+@Slf4j
+public class TrendingScores {
+
+    private final PostLikeRepository postLikeRepository;
+    private final Clock clock;
+    private final double lambda;          // ln 2 / H, на секунду
+    private final double likeWeight;
+    private final double viewWeight;
+    private final int capacity;
+    private final double minLogScore;     // ниже — пост выпадает из карты при пересборке
+
+    private final Instant epoch;
+    private final ConcurrentHashMap<Long, Double> scores = new ConcurrentHashMap<>();
+
+    private final Object topLock = new Object();
+    private final TreeSet<Ranked> top = new TreeSet<>();
+    // меняется только под topLock, читается и без неё
+    private final Map<Long, Ranked> inTop = new ConcurrentHashMap<>();
+    // минимальный счёт в заполненном топе; события ниже него не берут блокировку
+    private volatile double topFloor = Double.NEGATIVE_INFINITY;
+
+    @Autowired
+    public TrendingScores(PostLikeRepository postLikeRepository,
+                          @Value("${posts.trending.half-life-hours:24}") double halfLifeHours,
+                          @Value("${posts.trending.like-weight:1.0}") double likeWeight,
+                          @Value("${posts.trending.view-weight:0.05}") double viewWeight,
+                          @Value("${posts.trending.top-k:100}") int topK) {
+        this(postLikeRepository, halfLifeHours, likeWeight, viewWeight, topK, Clock.systemUTC());
+    }
+
+    TrendingScores(PostLikeRepository postLikeRepository, double halfLifeHours, double likeWeight,
+                   double viewWeight, int topK, Clock clock) {
+        this.postLikeRepository = postLikeRepository;
+        this.clock = clock;
+        this.lambda = Math.log(2) / (halfLifeHours * 3600.0);
+        this.likeWeight = likeWeight;
+        this.viewWeight = viewWeight;
+        this.capacity = Math.max(1, topK) * 2;
+        this.minLogScore = Math.log(0.01);
+        this.epoch = clock.instant();
+    }
+
+    public void viewed(Long postId) {
+        add(postId, viewWeight, clock.instant(), +1);
+    }
+
+    /**
+     * Лайк/анлайк — после коммита, чтобы откат не оставлял следа в счёте.
+     */
+    public void likedAfterCommit(Long postId) {
+        TransactionHooks.afterCommit(() -> add(postId, likeWeight, clock.instant(), +1));
+    }
+
+    /**
+     * Снятие лайка, поставленного в likedAt: вычитается ровно его вклад на тот момент,
+     * а не свежий лайк — иначе анлайк старого лайка съедал бы счёт за остальные.
+     */
+    public void unlikedAfterCommit(Long postId, Instant likedAt) {
+        TransactionHooks.afterCommit(() -> add(postId, likeWeight, likedAt, -1));
+    }
+
+    public void removeAfterCommit(Long postId) {
+        TransactionHooks.afterCommit(() -> {
+            scores.remove(postId);
+            synchronized (topLock) {
+                Ranked r = inTop.remove(postId);
+                if (r != null) top.remove(r);
+                updateFloor();
+            }
+        });
+    }
+
+    /**
+     * До limit id постов по убыванию текущего счёта.
+     */
+    public List<Long> top(int limit) {
+        synchronized (topLock) {
+            List<Long> out = new ArrayList<>(Math.min(limit, top.size()));
+            for (Ranked r : top) {
+                if (out.size() >= limit) break;
+                out.add(r.postId);
+            }
+            return out;
+        }
+    }
+
+    /**
+     * Текущий (затухший к этому моменту) счёт поста; 0 — нет событий.
+     */
+    public double score(Long postId) {
+        Double s = scores.get(postId);
+        return s == null ? 0 : Math.exp(s - lambda * secondsSinceEpoch(clock.instant()));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        OffsetDateTime now = OffsetDateTime.ofInstant(epoch, ZoneOffset.UTC);
+        List<TrendingSeedView> rows;
+        try {
+            rows = postLikeRepository.findTrendingSeed(now, lambda, likeWeight, viewWeight);
+        } catch (RuntimeException ex) {
+            log.warn("Failed to rebuild trending scores: {}", ex.getMessage());
+            return;
+        }
+        for (TrendingSeedView row : rows) {
+            if (row.getWeight() == null || row.getWeight() <= 0) continue;
+            // веса посчитаны относительно epoch, значит их логарифм и есть хранимый счёт
+            scores.merge(row.getPostId(), Math.log(row.getWeight()), TrendingScores::logAdd);
+        }
+        rebuildTop();
+        log.info("Trending scores rebuilt for {} posts", rows.size());
+    }
+
+    /**
+     * Пересобрать топ из карты в памяти (без запросов к БД) и выбросить затухшие счета.
+     */
+    @Scheduled(fixedDelayString = "${posts.trending.rebuild-top-ms:60000}")
+    public void rebuildTop() {
+        double cutoff = lambda * secondsSinceEpoch(clock.instant()) + minLogScore;
+        PriorityQueue<Ranked> heap = new PriorityQueue<>(capacity + 1, Comparator.reverseOrder());
+        for (Map.Entry<Long, Double> e : scores.entrySet()) {
+            double s = e.getValue();
+            if (s < cutoff) {
+                scores.remove(e.getKey(), s);
+                continue;
+            }
+            heap.add(new Ranked(e.getKey(), s));
+            if (heap.size() > capacity) heap.poll(); // голова — наименьший счёт
+        }
+        synchronized (topLock) {
+            top.clear();
+            inTop.clear();
+            for (Ranked r : heap) {
+                top.add(r);
+                inTop.put(r.postId, r);
+            }
+            updateFloor();
+        }
+    }
+
+    private void add(Long postId, double weight, Instant at, int sign) {
+        if (postId == null || weight <= 0) return;
+        double term = Math.log(weight) + lambda * secondsSinceEpoch(at);
+        double updated;
+        if (sign > 0) {
+            updated = scores.merge(postId, term, TrendingScores::logAdd);
+        } else {
+            Double after = scores.computeIfPresent(postId, (id, s) -> {
+                double r = logSub(s, term);
+                return r == Double.NEGATIVE_INFINITY ? null : r;
+            });
+            updated = after == null ? Double.NEGATIVE_INFINITY : after;
+        }
+        offer(postId, updated);
+    }
+
+    private void offer(Long postId, double score) {
+        // быстрый путь: пост не в топе и не дотягивает до нижней границы
+        if (score <= topFloor && !inTop.containsKey(postId)) return;
+        synchronized (topLock) {
+            Ranked old = inTop.remove(postId);
+            if (old != null) top.remove(old);
+            if (score != Double.NEGATIVE_INFINITY) {
+                Ranked r = new Ranked(postId, score);
+                top.add(r);
+                inTop.put(postId, r);
+                if (top.size() > capacity) {
+                    Ranked evicted = top.pollLast();
+                    inTop.remove(evicted.postId);
+                }
+            }
+            updateFloor();
+        }
+    }
+
+    private void updateFloor() {
+        topFloor = top.size() < capacity ? Double.NEGATIVE_INFINITY : top.last().score;
+    }
+
+    private double secondsSinceEpoch(Instant now) {
+        return (now.toEpochMilli() - epoch.toEpochMilli()) / 1000.0;
+    }
+
+    static double logAdd(double a, double b) {
+        double hi = Math.max(a, b), lo = Math.min(a, b);
+        return hi + Math.log1p(Math.exp(lo - hi));
+    }
+
+    // log(e^a − e^b); −∞, если вычитаемое не меньше (счёт не уходит в минус)
+    static double logSub(double a, double b) {
+        if (b >= a) return Double.NEGATIVE_INFINITY;
+        return a + Math.log1p(-Math.exp(b - a));
+    }
+
+    /**
+     * Элемент топа: по убыванию счёта, при равенстве — по убыванию id (новее выше).
+     */
+    private static final class Ranked implements Comparable<Ranked> {
+        final long postId;
+        final double score;
+
+        Ranked(long postId, double score) {
+            this.postId = postId;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Ranked o) {
+            int c = Double.compare(o.score, score);
+            return c != 0 ? c : Long.compare(o.postId, postId);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package ru.zagrebin.service.tx;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Действия над состоянием в памяти (кэши, индексы, ленты), которые нельзя выполнять до коммита:
+ * иначе другие потоки увидят изменения, которые ещё могут откатиться.
+ */
+public final class TransactionHooks {
+
+    private TransactionHooks() {}
+
+    /**
+     * Выполнить после коммита текущей транзакции; вне транзакции — сразу.
+     * При откате действие не выполняется.
+     */
+    public static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,10 @@
+-- V8 считал ссылки только из постов, а в storage-mode: content в blobs/ успели попасть и аватары:
+-- с ref_count 0 их удалила бы уборка файлов без ссылок. Новые аватары в blobs/ не попадают,
+-- а уже загруженные держит ссылка из users.avatar_url.
+UPDATE media_blobs b SET ref_count = (
+    SELECT count(*) FROM posts p
+    WHERE p.cover_url LIKE '%/' || b.path
+       OR EXISTS (SELECT 1 FROM recipe_step s WHERE s.post_id = p.id AND s.image_url LIKE '%/' || b.path)
+) + (
+    SELECT count(*) FROM users u WHERE u.avatar_url LIKE '%/' || b.path
+);
@@ -0,0 +1,4 @@
+-- Keyset-пагинация ленты: WHERE status = ? AND (created_at, id) < (?, ?) ORDER BY created_at DESC, id DESC
+-- Индекс покрывает и фильтр, и порядок, поэтому глубина прокрутки не влияет на стоимость запроса.
+CREATE INDEX IF NOT EXISTS idx_posts_status_created_at_id
+    ON posts (status, created_at DESC, id DESC);
@@ -0,0 +1,22 @@
+-- Ленты подписок (fan-out-on-write): при публикации id поста раскладывается подписчикам автора.
+-- Таблица — долговременная копия ограниченных буферов TimelineBuffer; лишнее срезает TimelineFanout.trim().
+CREATE TABLE IF NOT EXISTS user_timeline (
+    user_id BIGINT NOT NULL,
+    post_id BIGINT NOT NULL,
+    created_at TIMESTAMPTZ NOT NULL,
+    PRIMARY KEY (user_id, post_id),
+    CONSTRAINT fk_user_timeline_user FOREIGN KEY (user_id) REFERENCES users (id) ON DELETE CASCADE,
+    CONSTRAINT fk_user_timeline_post FOREIGN KEY (post_id) REFERENCES posts (id) ON DELETE CASCADE
+);
+
+-- загрузка буфера: WHERE user_id = ? ORDER BY created_at DESC, post_id DESC LIMIT capacity
+CREATE INDEX IF NOT EXISTS idx_user_timeline_user_created_post
+    ON user_timeline (user_id, created_at DESC, post_id DESC);
+
+-- каскадное удаление и снятие с публикации: WHERE post_id = ?
+CREATE INDEX IF NOT EXISTS idx_user_timeline_post_id ON user_timeline (post_id);
+
+-- fan-out-on-read для авторов с большим числом подписчиков:
+-- WHERE author_id = ANY(?) AND status = 'published' AND (created_at, id) < (?, ?)
+CREATE INDEX IF NOT EXISTS idx_posts_author_status_created_at_id
+    ON posts (author_id, status, created_at DESC, id DESC);
@@ -0,0 +1,72 @@
+-- Полнотекстовый поиск по постам: включает закомментированный блок из V1 и расширяет документ
+-- названиями ингредиентов и текстом шагов. Веса для ts_rank: A — заголовок, B — анонс и ингредиенты,
+-- C — шаги рецепта, D — основной текст. Стемминг — словарь russian.
+ALTER TABLE posts ADD COLUMN IF NOT EXISTS search_vector tsvector;
+
+CREATE OR REPLACE FUNCTION posts_search_document(p_id BIGINT, p_title TEXT, p_excerpt TEXT, p_content TEXT)
+    RETURNS tsvector AS $$
+SELECT setweight(to_tsvector('russian', coalesce(p_title, '')), 'A')
+    || setweight(to_tsvector('russian', coalesce(p_excerpt, '')), 'B')
+    || setweight(to_tsvector('russian', coalesce(
+           (SELECT string_agg(i.name, ' ')
+              FROM post_ingredient pi JOIN ingredients i ON i.id = pi.ingredient_id
+             WHERE pi.post_id = p_id), '')), 'B')
+    || setweight(to_tsvector('russian', coalesce(
+           (SELECT string_agg(s.description, ' ' ORDER BY s.step_order)
+              FROM recipe_step s
+             WHERE s.post_id = p_id), '')), 'C')
+    || setweight(to_tsvector('russian', coalesce(p_content, '')), 'D');
+$$ LANGUAGE sql STABLE;
+
+-- Свой текст поста: пересчёт при вставке и при изменении заголовка, анонса или текста
+CREATE OR REPLACE FUNCTION posts_search_vector_trigger() RETURNS trigger AS $$
+BEGIN
+    NEW.search_vector := posts_search_document(NEW.id, NEW.title, NEW.excerpt, NEW.content);
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_posts_search_vector ON posts;
+CREATE TRIGGER trg_posts_search_vector BEFORE INSERT OR UPDATE OF title, excerpt, content
+    ON posts FOR EACH ROW EXECUTE FUNCTION posts_search_vector_trigger();
+
+-- Ингредиенты и шаги сохраняются после самого поста, поэтому их изменения пересчитывают вектор родителя
+CREATE OR REPLACE FUNCTION posts_search_vector_refresh() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        UPDATE posts p SET search_vector = posts_search_document(p.id, p.title, p.excerpt, p.content)
+         WHERE p.id = OLD.post_id;
+    END IF;
+    IF TG_OP = 'INSERT' OR (TG_OP = 'UPDATE' AND NEW.post_id IS DISTINCT FROM OLD.post_id) THEN
+        UPDATE posts p SET search_vector = posts_search_document(p.id, p.title, p.excerpt, p.content)
+         WHERE p.id = NEW.post_id;
+    END IF;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_post_ingredient_search_vector ON post_ingredient;
+CREATE TRIGGER trg_post_ingredient_search_vector AFTER INSERT OR UPDATE OR DELETE
+    ON post_ingredient FOR EACH ROW EXECUTE FUNCTION posts_search_vector_refresh();
+
+DROP TRIGGER IF EXISTS trg_recipe_step_search_vector ON recipe_step;
+CREATE TRIGGER trg_recipe_step_search_vector AFTER INSERT OR UPDATE OF post_id, description OR DELETE
+    ON recipe_step FOR EACH ROW EXECUTE FUNCTION posts_search_vector_refresh();
+
+-- Переименование ингредиента меняет документ всех постов с ним
+CREATE OR REPLACE FUNCTION ingredients_search_vector_refresh() RETURNS trigger AS $$
+BEGIN
+    UPDATE posts p SET search_vector = posts_search_document(p.id, p.title, p.excerpt, p.content)
+     WHERE p.id IN (SELECT pi.post_id FROM post_ingredient pi WHERE pi.ingredient_id = NEW.id);
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_ingredients_search_vector ON ingredients;
+CREATE TRIGGER trg_ingredients_search_vector AFTER UPDATE OF name
+    ON ingredients FOR EACH ROW EXECUTE FUNCTION ingredients_search_vector_refresh();
+
+UPDATE posts p SET search_vector = posts_search_document(p.id, p.title, p.excerpt, p.content);
+
+-- WHERE search_vector @@ query
+CREATE INDEX IF NOT EXISTS idx_posts_search_vector ON posts USING GIN (search_vector);
@@ -0,0 +1,9 @@
+-- Медиа с адресацией по содержимому: один файл на SHA-256, путь blobs/ab/cd/<hash><ext>.
+-- ref_count — сколько выданных URL ссылаются на файл; файл удаляется, когда ссылок не остаётся.
+CREATE TABLE IF NOT EXISTS media_blobs (
+    hash CHAR(64) PRIMARY KEY,
+    path VARCHAR(255) NOT NULL,
+    size_bytes BIGINT NOT NULL,
+    ref_count INT NOT NULL CHECK (ref_count >= 0),
+    created_at TIMESTAMPTZ NOT NULL DEFAULT now()
+);
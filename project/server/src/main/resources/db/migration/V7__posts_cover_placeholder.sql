@@ -0,0 +1,7 @@
+-- Заглушка обложки для карточки до загрузки картинки: BlurHash (~30 символов).
+-- NULL — ещё не посчитана (её досчитает фоновая задача), '' — посчитать нельзя (внешний URL, не JPEG/PNG).
+ALTER TABLE posts ADD COLUMN IF NOT EXISTS cover_placeholder VARCHAR(64);
+
+CREATE INDEX IF NOT EXISTS idx_posts_cover_placeholder_missing
+    ON posts (id)
+    WHERE cover_url IS NOT NULL AND cover_placeholder IS NULL;
@@ -0,0 +1,12 @@
+-- ref_count теперь считает посты, которые ссылаются на файл (обложкой или фото шага), а не загрузки:
+-- брошенная загрузка не держит файл вечно, а два поста с одним URL — две ссылки.
+-- Файл без ссылок удаляется, если его не загружали повторно дольше media.blobs.orphan-max-age-ms.
+ALTER TABLE media_blobs ADD COLUMN IF NOT EXISTS uploaded_at TIMESTAMPTZ NOT NULL DEFAULT now();
+
+UPDATE media_blobs b SET ref_count = (
+    SELECT count(*) FROM posts p
+    WHERE p.cover_url LIKE '%/' || b.path
+       OR EXISTS (SELECT 1 FROM recipe_step s WHERE s.post_id = p.id AND s.image_url LIKE '%/' || b.path)
+);
+
+CREATE INDEX IF NOT EXISTS idx_media_blobs_unreferenced ON media_blobs (uploaded_at) WHERE ref_count = 0;
@@ -0,0 +1,41 @@
+-- Пересчёт search_vector поста после изменений ингредиентов и шагов: раньше (V5) триггер FOR EACH ROW
+-- пересобирал весь документ на каждую строку post_ingredient и recipe_step, то есть N раз при сохранении
+-- рецепта из N строк. Теперь триггеры отложенные (срабатывают при коммите, когда все строки уже записаны),
+-- и пост пересчитывается один раз за транзакцию — уже обработанные id хранятся в настройке
+-- posts.search_refreshed, которая живёт до конца транзакции (set_config(..., true)).
+-- SET CONSTRAINTS ... IMMEDIATE посреди транзакции с последующими правками того же поста не поддерживается:
+-- второй пересчёт будет пропущен.
+CREATE OR REPLACE FUNCTION posts_search_vector_refresh_once(p_id BIGINT) RETURNS void AS $$
+DECLARE
+    done TEXT := coalesce(nullif(current_setting('posts.search_refreshed', true), ''), ',');
+BEGIN
+    IF p_id IS NULL OR position(',' || p_id || ',' IN done) > 0 THEN
+        RETURN;
+    END IF;
+    PERFORM set_config('posts.search_refreshed', done || p_id || ',', true);
+    UPDATE posts p SET search_vector = posts_search_document(p.id, p.title, p.excerpt, p.content)
+     WHERE p.id = p_id;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION posts_search_vector_refresh() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        PERFORM posts_search_vector_refresh_once(OLD.post_id);
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        PERFORM posts_search_vector_refresh_once(NEW.post_id);
+    END IF;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_post_ingredient_search_vector ON post_ingredient;
+CREATE CONSTRAINT TRIGGER trg_post_ingredient_search_vector AFTER INSERT OR UPDATE OR DELETE
+    ON post_ingredient DEFERRABLE INITIALLY DEFERRED
+    FOR EACH ROW EXECUTE FUNCTION posts_search_vector_refresh();
+
+DROP TRIGGER IF EXISTS trg_recipe_step_search_vector ON recipe_step;
+CREATE CONSTRAINT TRIGGER trg_recipe_step_search_vector AFTER INSERT OR UPDATE OF post_id, description OR DELETE
+    ON recipe_step DEFERRABLE INITIALLY DEFERRED
+    FOR EACH ROW EXECUTE FUNCTION posts_search_vector_refresh();
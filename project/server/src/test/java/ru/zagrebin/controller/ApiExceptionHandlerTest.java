@@ -0,0 +1,69 @@
+package ru.zagrebin.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Битые курсоры и неизвестные режимы — 400, а не 500; прочие IllegalArgumentException в 400 не превращаются.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class ApiExceptionHandlerTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Test
+    void malformedCursorIsBadRequest() throws Exception {
+        mvc.perform(get("/api/posts").param("cursor", "not-a-cursor"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.detail").value("Invalid cursor: not-a-cursor"));
+        mvc.perform(get("/api/posts/search").param("q", "суп").param("cursor", "%%%"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/api/posts/pantry").param("ingredients", "1").param("cursor", "AAAA"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void unknownModeIsBadRequest() throws Exception {
+        mvc.perform(get("/api/posts").param("tags", "1").param("mode", "some"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/api/posts/pantry").param("ingredients", "1").param("mode", "some"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void otherIllegalArgumentIsNotBadRequest() {
+        MockMvc standalone = MockMvcBuilders.standaloneSetup(new FailingController())
+                .setControllerAdvice(new ApiExceptionHandler())
+                .build();
+        // не перехвачено советом — уходит в обработку ошибок контейнера (500), сообщение клиенту не попадает
+        assertThatThrownBy(() -> standalone.perform(get("/fail")))
+                .hasRootCauseInstanceOf(IllegalArgumentException.class);
+    }
+
+    @RestController
+    static class FailingController {
+        @GetMapping("/fail")
+        String fail() {
+            throw new IllegalArgumentException("internal detail");
+        }
+    }
+
+    @Test
+    void validRequestIsUnaffected() throws Exception {
+        mvc.perform(get("/api/posts").param("page_size", "1"))
+                .andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,85 @@
+package ru.zagrebin.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import ru.zagrebin.dto.DictionaryDeltaDto;
+import ru.zagrebin.repository.projection.DictionaryEntryView;
+import ru.zagrebin.service.dictionary.DictionaryIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.zagrebin.service.dictionary.DictionaryTestRepositories.entry;
+import static ru.zagrebin.service.dictionary.DictionaryTestRepositories.ingredients;
+import static ru.zagrebin.service.dictionary.DictionaryTestRepositories.tags;
+
+/**
+ * ETag — версия словаря: совпал — 304 без тела; since — только изменения с той версии.
+ */
+class DictionaryControllerTest {
+
+    private final List<DictionaryEntryView> tagRows = new ArrayList<>(List.of(
+            entry(1, "Суп", "#f00", 5),
+            entry(2, "Десерт", "#0f0", 3)));
+    private final List<DictionaryEntryView> ingredientRows = new ArrayList<>(List.of(
+            entry(10, "Морковь", null, 4)));
+    private final DictionaryIndex index = new DictionaryIndex(tags(() -> tagRows), ingredients(() -> ingredientRows), 500, 600_000, 100);
+    private final DictionaryController controller = new DictionaryController(index);
+
+    @Test
+    void matchingEtagIsNotModified() {
+        index.rebuild();
+        ResponseEntity<DictionaryDeltaDto> full = controller.get(null, null);
+        assertThat(full.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(full.getBody().isFull()).isTrue();
+        String etag = full.getHeaders().getETag();
+        assertThat(etag).isEqualTo("\"" + index.version() + "\"");
+
+        ResponseEntity<DictionaryDeltaDto> again = controller.get(full.getBody().getVersion(), etag);
+        assertThat(again.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(again.getBody()).isNull();
+        assertThat(again.getHeaders().getETag()).isEqualTo(etag);
+
+        // словарь изменился — старый ETag больше не совпадает
+        tagRows.add(entry(3, "Салат", null, 1));
+        index.rebuild();
+        assertThat(controller.get(full.getBody().getVersion(), etag).getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    void sinceReturnsOnlyChanges() throws Exception {
+        index.rebuild();
+        long v1 = index.version();
+
+        // тег 2 удалён, у тега 1 выросло использование, добавлен ингредиент
+        tagRows.remove(1);
+        tagRows.set(0, entry(1, "Суп", "#f00", 6));
+        ingredientRows.add(entry(11, "Лук", null, 1));
+        Thread.sleep(2); // версия — время пересборки
+        index.rebuild();
+        long v2 = index.version();
+        assertThat(v2).isGreaterThan(v1);
+
+        DictionaryDeltaDto delta = controller.get(v1, null).getBody();
+        assertThat(delta.isFull()).isFalse();
+        assertThat(delta.getVersion()).isEqualTo(v2);
+        assertThat(delta.getTags()).containsExactly(Arrays.asList(1L, "Суп", "#f00", 6L));
+        assertThat(delta.getRemovedTags()).containsExactly(2L);
+        assertThat(delta.getIngredients()).containsExactly(Arrays.asList(11L, "Лук", 1L));
+        assertThat(delta.getRemovedIngredients()).isEmpty();
+
+        // с текущей версии изменений нет
+        DictionaryDeltaDto none = controller.get(v2, null).getBody();
+        assertThat(none.isFull()).isFalse();
+        assertThat(none.getTags()).isEmpty();
+        assertThat(none.getRemovedTags()).isEmpty();
+
+        // версия не из этого журнала (старше или «из будущего») — словарь целиком
+        assertThat(controller.get(v1 - 1, null).getBody().isFull()).isTrue();
+        assertThat(controller.get(v2 + 1, null).getBody().isFull()).isTrue();
+        assertThat(controller.get(null, null).getBody().getTags()).hasSize(1);
+    }
+}
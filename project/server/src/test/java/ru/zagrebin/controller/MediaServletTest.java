@@ -0,0 +1,187 @@
+package ru.zagrebin.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletConfig;
+import ru.zagrebin.service.media.MediaFiles;
+import ru.zagrebin.service.media.VariantCache;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Раздача медиа: Range, условные запросы, кэширование, sendfile и закрытые служебные каталоги.
+ */
+class MediaServletTest {
+
+    @TempDir
+    Path dir;
+
+    private MediaServlet servlet;
+    private byte[] data;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        data = new byte[100_000];
+        new Random(7).nextBytes(data);
+        Files.createDirectories(dir.resolve("posts/covers"));
+        Files.write(dir.resolve("posts/covers/a.bin"), data);
+        Files.createDirectories(dir.resolve(".tmp"));
+        Files.write(dir.resolve(".tmp/upload-1.part"), data);
+
+        VariantCache variantCache = new VariantCache(dir.toString(), Long.MAX_VALUE, 1, 5000);
+        servlet = new MediaServlet(new MediaFiles(dir.toString(), variantCache), 31536000);
+        servlet.init(new MockServletConfig());
+    }
+
+    @Test
+    void servesWholeFileWithImmutableCaching() throws Exception {
+        MockHttpServletResponse response = get("/posts/covers/a.bin");
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsByteArray()).isEqualTo(data);
+        assertThat(response.getHeader("Accept-Ranges")).isEqualTo("bytes");
+        assertThat(response.getHeader("Cache-Control")).isEqualTo("public, max-age=31536000, immutable");
+        assertThat(response.getHeader("ETag")).startsWith("\"").doesNotStartWith("W/");
+    }
+
+    @Test
+    void servesSingleRange() throws Exception {
+        MockHttpServletRequest request = request("/posts/covers/a.bin");
+        request.addHeader("Range", "bytes=10-19");
+        MockHttpServletResponse response = serve(request);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader("Content-Range")).isEqualTo("bytes 10-19/100000");
+        assertThat(response.getContentAsByteArray()).isEqualTo(Arrays.copyOfRange(data, 10, 20));
+    }
+
+    @Test
+    void parsesRangeForms() {
+        assertThat(MediaServlet.parseRange("bytes=-500", 1000)).containsExactly(500, 999);
+        assertThat(MediaServlet.parseRange("bytes=900-", 1000)).containsExactly(900, 999);
+        assertThat(MediaServlet.parseRange("bytes=0-5000", 1000)).containsExactly(0, 999);
+        assertThat(MediaServlet.parseRange("bytes=1000-", 1000)).isEmpty();
+        assertThat(MediaServlet.parseRange("bytes=-0", 1000)).isEmpty();
+        assertThat(MediaServlet.parseRange("bytes=0-1,5-6", 1000)).isNull();
+        assertThat(MediaServlet.parseRange("bytes=5-1", 1000)).isNull();
+        assertThat(MediaServlet.parseRange("items=0-1", 1000)).isNull();
+    }
+
+    @Test
+    void unsatisfiableRangeIs416() throws Exception {
+        MockHttpServletRequest request = request("/posts/covers/a.bin");
+        request.addHeader("Range", "bytes=200000-");
+        MockHttpServletResponse response = serve(request);
+
+        assertThat(response.getStatus()).isEqualTo(416);
+        assertThat(response.getHeader("Content-Range")).isEqualTo("bytes */100000");
+    }
+
+    @Test
+    void conditionalRequests() throws Exception {
+        String etag = get("/posts/covers/a.bin").getHeader("ETag");
+
+        MockHttpServletRequest revalidate = request("/posts/covers/a.bin");
+        revalidate.addHeader("If-None-Match", etag);
+        assertThat(serve(revalidate).getStatus()).isEqualTo(304);
+
+        // файл у клиента другой версии — диапазон не применяется, отдаётся весь файл
+        MockHttpServletRequest staleRange = request("/posts/covers/a.bin");
+        staleRange.addHeader("Range", "bytes=0-9");
+        staleRange.addHeader("If-Range", "\"other\"");
+        MockHttpServletResponse response = serve(staleRange);
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsByteArray()).hasSize(data.length);
+    }
+
+    @Test
+    void handsLargeBodiesToSendfile() throws Exception {
+        MockHttpServletRequest request = request("/posts/covers/a.bin");
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        request.addHeader("Range", "bytes=1000-");
+        MockHttpServletResponse response = serve(request);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getContentLengthLong()).isEqualTo(99_000);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.filename"))
+                .isEqualTo(dir.resolve("posts/covers/a.bin").toAbsolutePath().toString());
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.start")).isEqualTo(1000L);
+        assertThat(request.getAttribute("org.apache.tomcat.sendfile.end")).isEqualTo(100_000L);
+    }
+
+    @Test
+    void hiddenDirectoriesAndMissingFilesAre404() throws Exception {
+        assertThat(get("/.tmp/upload-1.part").getStatus()).isEqualTo(404);
+        assertThat(get("/posts/../.tmp/upload-1.part").getStatus()).isEqualTo(404);
+        assertThat(get("/posts/covers/missing.jpg").getStatus()).isEqualTo(404);
+    }
+
+    @Test
+    void fallbackToOriginalIsCachedBriefly() throws Exception {
+        image("posts/covers/big.jpg", 1200, 800);
+        // мест для построения нет: копия не готова, вместо неё оригинал
+        VariantCache busy = new VariantCache(dir.toString(), Long.MAX_VALUE, 0, 50);
+        servlet = new MediaServlet(new MediaFiles(dir.toString(), busy), 31536000);
+        servlet.init(new MockServletConfig());
+
+        MockHttpServletRequest request = request("/posts/covers/big.jpg");
+        request.setParameter("w", "320");
+        MockHttpServletResponse response = serve(request);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader("Cache-Control")).isEqualTo("public, max-age=60");
+    }
+
+    @Test
+    void originalIsExactWhenNoVariantIsNeeded() throws Exception {
+        Path small = image("posts/covers/small.jpg", 200, 100);
+
+        MockHttpServletRequest request = request("/posts/covers/small.jpg");
+        request.setParameter("w", "640");
+        MockHttpServletResponse response = serve(request);
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsByteArray()).isEqualTo(Files.readAllBytes(small));
+        assertThat(response.getHeader("Cache-Control")).isEqualTo("public, max-age=31536000, immutable");
+
+        // формат без копий: ответ на ?w= всегда будет оригиналом
+        MockHttpServletRequest binary = request("/posts/covers/a.bin");
+        binary.setParameter("w", "320");
+        assertThat(serve(binary).getHeader("Cache-Control")).isEqualTo("public, max-age=31536000, immutable");
+    }
+
+    private Path image(String relative, int w, int h) throws Exception {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < h; y++) for (int x = 0; x < w; x++) img.setRGB(x, y, (x * 31 + y * 17) & 0xFFFFFF);
+        Path file = dir.resolve(relative);
+        ImageIO.write(img, "jpeg", file.toFile());
+        return file;
+    }
+
+    private MockHttpServletResponse get(String path) throws Exception {
+        return serve(request(path));
+    }
+
+    private static MockHttpServletRequest request(String path) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/media" + path);
+        request.setServletPath("/media");
+        request.setPathInfo(path);
+        return request;
+    }
+
+    private MockHttpServletResponse serve(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        servlet.service(request, response);
+        return response;
+    }
+}
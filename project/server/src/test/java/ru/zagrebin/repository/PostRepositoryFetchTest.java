@@ -0,0 +1,99 @@
+package ru.zagrebin.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import ru.zagrebin.model.*;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional
+class PostRepositoryFetchTest {
+
+    private static final int TAGS = 5;
+    private static final int INGREDIENTS = 20;
+    private static final int STEPS = 15;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void fullPostIsLoadedWithOneBoundedQueryPerCollection() {
+        Long postId = persistLargeRecipe();
+        entityManager.flush();
+        entityManager.clear();
+
+        Statistics stats = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        stats.clear();
+
+        Post post = postRepository.findByIdWithAllRelations(postId).orElseThrow();
+
+        // post+author+tags, ingredients+ingredient, steps — по одному запросу,
+        // строк TAGS + INGREDIENTS + STEPS вместо TAGS * INGREDIENTS * STEPS
+        assertThat(stats.getPrepareStatementCount()).isEqualTo(3);
+        assertThat(post.getTags()).hasSize(TAGS);
+        assertThat(post.getIngredients()).hasSize(INGREDIENTS);
+        assertThat(post.getSteps()).hasSize(STEPS);
+        post.getIngredients().forEach(pi -> pi.getIngredient().getName());
+        assertThat(stats.getPrepareStatementCount()).isEqualTo(3);
+    }
+
+    private Long persistLargeRecipe() {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        User author = userRepository.findAll().get(0);
+
+        Post post = new Post();
+        post.setTitle("Большой рецепт " + suffix);
+        post.setStatus("published");
+        post.setPostType("recipe");
+        post.setAuthor(author);
+
+        Set<Tag> tags = new HashSet<>();
+        for (int i = 0; i < TAGS; i++) {
+            Tag tag = Tag.builder().name("tag-" + suffix + "-" + i).slug("tag-" + suffix + "-" + i).build();
+            entityManager.persist(tag);
+            tags.add(tag);
+        }
+        post.setTags(tags);
+
+        for (int i = 0; i < INGREDIENTS; i++) {
+            Ingredient ing = Ingredient.builder().name("ing-" + suffix + "-" + i).build();
+            entityManager.persist(ing);
+            post.getIngredients().add(PostIngredient.builder()
+                    .post(post)
+                    .ingredient(ing)
+                    .quantityValue((double) i)
+                    .unit("г")
+                    .build());
+        }
+
+        for (int i = 1; i <= STEPS; i++) {
+            post.getSteps().add(RecipeStep.builder()
+                    .post(post)
+                    .order(i)
+                    .description("Шаг " + i)
+                    .build());
+        }
+
+        return postRepository.save(post).getId();
+    }
+}
@@ -0,0 +1,142 @@
+package ru.zagrebin.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.zagrebin.model.Post;
+import ru.zagrebin.model.User;
+import ru.zagrebin.repository.PostLikeRepository;
+import ru.zagrebin.repository.PostRepository;
+import ru.zagrebin.repository.UserRepository;
+import ru.zagrebin.service.trending.TrendingScores;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Лайки из многих потоков в один пост: счётчик posts.likes_count должен совпадать
+ * с числом строк post_like, повторные лайки/анлайки — отвечать false, а не падать на PK.
+ * Лайки черновика считаются, но в тренды не попадают.
+ */
+@SpringBootTest
+class LikeServiceConcurrencyTest {
+
+    private static final int USERS = 32;
+    private static final int THREADS = 16;
+    private static final int REPEATS = 4;
+
+    @Autowired
+    private LikeService likeService;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PostLikeRepository postLikeRepository;
+
+    @Autowired
+    private TrendingScores trendingScores;
+
+    private final List<Long> userIds = new ArrayList<>();
+    private Long postId;
+
+    @BeforeEach
+    void setUp() {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        for (int i = 0; i < USERS; i++) {
+            User u = userRepository.save(User.builder()
+                    .username("like-" + suffix + "-" + i)
+                    .email("like-" + suffix + "-" + i + "@example.local")
+                    .build());
+            userIds.add(u.getId());
+        }
+        Post post = new Post();
+        post.setTitle("Лайки " + suffix);
+        post.setStatus("published");
+        post.setPostType("recipe");
+        post.setAuthor(userRepository.getReferenceById(userIds.get(0)));
+        postId = postRepository.save(post).getId();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (postId != null) postRepository.deleteById(postId);
+        userRepository.deleteAllById(userIds);
+    }
+
+    @Test
+    void concurrentLikesAndUnlikesKeepCounterConsistent() throws Exception {
+        // каждый пользователь лайкает REPEATS раз из разных потоков — успешно ровно один раз
+        AtomicInteger liked = new AtomicInteger();
+        hammer(userId -> {
+            if (likeService.like(postId, userId)) liked.incrementAndGet();
+        });
+        assertThat(liked.get()).isEqualTo(USERS);
+        assertThat(likesCount()).isEqualTo(USERS);
+        assertThat(postLikeRepository.countByIdPostId(postId)).isEqualTo(USERS);
+
+        AtomicInteger unliked = new AtomicInteger();
+        hammer(userId -> {
+            if (likeService.unlike(postId, userId)) unliked.incrementAndGet();
+        });
+        assertThat(unliked.get()).isEqualTo(USERS);
+        assertThat(likesCount()).isZero();
+        assertThat(postLikeRepository.countByIdPostId(postId)).isZero();
+    }
+
+    @Test
+    void draftLikesStayOutOfTrending() {
+        Post post = postRepository.findById(postId).orElseThrow();
+        post.setStatus("draft");
+        postRepository.save(post);
+
+        assertThat(likeService.like(postId, userIds.get(1))).isTrue();
+        assertThat(likesCount()).isEqualTo(1);
+        assertThat(trendingScores.score(postId)).isZero();
+        assertThat(likeService.unlike(postId, userIds.get(1))).isTrue();
+        assertThat(trendingScores.score(postId)).isZero();
+
+        post.setStatus("published");
+        postRepository.save(post);
+        assertThat(likeService.like(postId, userIds.get(1))).isTrue();
+        assertThat(trendingScores.score(postId)).isPositive();
+        assertThat(likeService.unlike(postId, userIds.get(1))).isTrue();
+        assertThat(trendingScores.score(postId)).isCloseTo(0, within(1e-6));
+    }
+
+    private void hammer(Consumer<Long> action) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int r = 0; r < REPEATS; r++) {
+            for (Long userId : userIds) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    action.accept(userId);
+                    return null;
+                }));
+            }
+        }
+        start.countDown();
+        for (Future<?> f : futures) {
+            f.get(30, TimeUnit.SECONDS); // пробрасывает исключения из потоков
+        }
+        pool.shutdown();
+    }
+
+    private int likesCount() {
+        return postRepository.findById(postId).orElseThrow().getLikesCount();
+    }
+}
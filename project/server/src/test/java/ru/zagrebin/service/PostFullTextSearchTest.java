@@ -0,0 +1,197 @@
+package ru.zagrebin.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.zagrebin.dto.PostCreateDto;
+import ru.zagrebin.dto.PostIngredientCreateDto;
+import ru.zagrebin.dto.PostSearchHitDto;
+import ru.zagrebin.dto.PostUpdateDto;
+import ru.zagrebin.dto.RecipeStepCreateDto;
+import ru.zagrebin.model.Ingredient;
+import ru.zagrebin.model.User;
+import ru.zagrebin.repository.IngredientRepository;
+import ru.zagrebin.repository.PostRepository;
+import ru.zagrebin.repository.UserRepository;
+import ru.zagrebin.service.pagination.CursorPage;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Полнотекстовый поиск по постам на настоящей БД: веса полей в ранжировании, ингредиенты и шаги
+ * в документе после создания и правки (отложенные триггеры V9), постраничный обход по курсору, ё и стемминг,
+ * только опубликованные посты.
+ * В текст каждого поста добавляется своё случайное слово, чтобы запросы не задевали чужие посты.
+ * Искомые слова в тексте постов строчные: в БД с LC_CTYPE=C парсер не приводит кириллицу к нижнему регистру.
+ */
+@SpringBootTest
+class PostFullTextSearchTest {
+
+    @Autowired
+    private PostService postService;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private IngredientRepository ingredientRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private final String token = randomWord();
+    private final List<Long> postIds = new ArrayList<>();
+    private final List<Long> ingredientIds = new ArrayList<>();
+    private Long authorId;
+
+    @AfterEach
+    void tearDown() {
+        postRepository.deleteAllById(postIds);
+        ingredientRepository.deleteAllById(ingredientIds);
+        if (authorId != null) userRepository.deleteById(authorId);
+    }
+
+    @Test
+    void titleOutranksStepsAndStepsOutrankContent() {
+        Long inContent = create("Обед", "Сегодня пироги с капустой", List.of(), List.of("Нарезать капусту"));
+        Long inSteps = create("Обед", "Сегодня с капустой", List.of(), List.of("Затем испечь пироги"));
+        Long inTitle = create("Домашние пироги", "Сегодня с капустой", List.of(), List.of("Нарезать капусту"));
+
+        assertThat(ids(search("пироги", 10))).containsExactly(inTitle, inSteps, inContent);
+    }
+
+    @Test
+    void ingredientsAndStepsAreSearchableAfterCreateAndUpdate() {
+        Long oldIngredient = ingredient("тархун");
+        Long newIngredient = ingredient("эстрагон");
+        Long postId = create("Лимонад", "Домашний", List.of(oldIngredient), List.of("Настоять на мяте"));
+
+        assertThat(ids(search("тархун", 10))).containsExactly(postId);
+        assertThat(ids(search("мяте", 10))).containsExactly(postId);
+
+        PostUpdateDto dto = new PostUpdateDto();
+        dto.setPostType("recipe");
+        dto.setStatus("published");
+        dto.setTitle("Лимонад");
+        dto.setContent("Домашний " + token);
+        dto.setIngredients(List.of(new PostIngredientCreateDto(newIngredient, 1.0, "пучок")));
+        dto.setSteps(List.of());
+        postService.update(postId, dto, null);
+
+        // удалённые строки ушли из документа, добавленные — пришли
+        assertThat(search("тархун", 10)).isEmpty();
+        assertThat(search("мяте", 10)).isEmpty();
+        assertThat(ids(search("эстрагон", 10))).containsExactly(postId);
+    }
+
+    @Test
+    void cursorPagesCoverTheSameHitsAsOnePage() {
+        // одинаковые посты дают равный ранг: порядок внутри ничьей держится на id
+        for (int i = 0; i < 4; i++) create("Суп", "Свежий щавель", List.of(), List.of());
+        for (int i = 0; i < 3; i++) create("Суп с щавелем", "Свежий щавель", List.of(), List.of("Промыть щавель"));
+        List<Long> all = ids(search("щавель", 20));
+        assertThat(all).hasSize(7);
+
+        List<Long> paged = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            CursorPage<PostSearchHitDto> page = postService.search("щавель " + token, cursor, 3, null);
+            assertThat(page.getItems()).hasSizeLessThanOrEqualTo(3);
+            paged.addAll(ids(page.getItems()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertThat(pages).isEqualTo(3);
+        assertThat(paged).isEqualTo(all);
+        assertThat(new HashSet<>(paged)).hasSize(7);
+    }
+
+    @Test
+    void yoAndWordFormsMatch() {
+        Long hedgehogs = create("Сочные ёжики из фарша", "На ужин", List.of(), List.of());
+        Long beet = create("Салат", "Тёртая свекла с чесноком", List.of(), List.of());
+        Long pies = create("Обед", "Горячие пироги с капустой", List.of(), List.of());
+
+        assertThat(ids(search("ежик", 10))).containsExactly(hedgehogs);
+        assertThat(ids(search("свёкла", 10))).containsExactly(beet);
+        assertThat(ids(search("пирогами", 10))).containsExactly(pies);
+        assertThat(ids(search("пирогов", 10))).containsExactly(pies);
+    }
+
+    @Test
+    void draftsAreNotFound() {
+        Long published = create("Щи", "Кислые щи", List.of(), List.of());
+        Long draft = create("Щи", "Кислые щи", List.of(), List.of());
+        postRepository.findById(draft).ifPresent(p -> {
+            p.setStatus("draft");
+            postRepository.save(p);
+        });
+
+        assertThat(ids(search("щи", 10))).containsExactly(published);
+    }
+
+    private List<PostSearchHitDto> search(String query, int limit) {
+        return postService.search(query + " " + token, null, limit, null).getItems();
+    }
+
+    private static List<Long> ids(List<PostSearchHitDto> hits) {
+        return hits.stream().map(h -> h.getPost().getId()).toList();
+    }
+
+    private Long create(String title, String content, List<Long> ingredients, List<String> steps) {
+        PostCreateDto dto = new PostCreateDto();
+        dto.setPostType("recipe");
+        dto.setStatus("published");
+        dto.setTitle(title);
+        dto.setContent(content + " " + token);
+        dto.setAuthorId(author());
+        dto.setIngredients(ingredients.stream().map(id -> new PostIngredientCreateDto(id, 100.0, "г")).toList());
+        dto.setSteps(steps(steps));
+        Long id = postService.create(dto).getId();
+        postIds.add(id);
+        return id;
+    }
+
+    private static List<RecipeStepCreateDto> steps(List<String> descriptions) {
+        List<RecipeStepCreateDto> steps = new ArrayList<>();
+        for (String d : descriptions) {
+            RecipeStepCreateDto step = new RecipeStepCreateDto();
+            step.setOrder(steps.size() + 1);
+            step.setDescription(d);
+            steps.add(step);
+        }
+        return steps;
+    }
+
+    private Long ingredient(String name) {
+        Long id = ingredientRepository.save(Ingredient.builder().name(name + " " + token).build()).getId();
+        ingredientIds.add(id);
+        return id;
+    }
+
+    private Long author() {
+        if (authorId == null) {
+            authorId = userRepository.save(User.builder()
+                    .username("search-" + token)
+                    .email("search-" + token + "@example.local")
+                    .build()).getId();
+        }
+        return authorId;
+    }
+
+    // только латинские буквы: такое слово не разбивается парсером и не совпадает ни с чем в общей БД
+    private static String randomWord() {
+        Random rnd = new Random();
+        StringBuilder sb = new StringBuilder("zq");
+        for (int i = 0; i < 10; i++) sb.append((char) ('a' + rnd.nextInt(26)));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,137 @@
+package ru.zagrebin.service;
+
+import jakarta.persistence.EntityNotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.zagrebin.model.User;
+import ru.zagrebin.repository.UserRepository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Подписки из многих потоков на одного автора: строк user_subscriptions ровно по одной на подписчика,
+ * повторные подписки/отписки отвечают false, а SubscriptionIndex совпадает с таблицей.
+ */
+@SpringBootTest
+class SubscriptionServiceConcurrencyTest {
+
+    private static final int USERS = 32;
+    private static final int THREADS = 16;
+    private static final int REPEATS = 4;
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private final List<Long> userIds = new ArrayList<>();
+    private Long authorId;
+
+    @BeforeEach
+    void setUp() {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        for (int i = 0; i <= USERS; i++) {
+            User u = userRepository.save(User.builder()
+                    .username("sub-" + suffix + "-" + i)
+                    .email("sub-" + suffix + "-" + i + "@example.local")
+                    .build());
+            userIds.add(u.getId());
+        }
+        authorId = userIds.remove(0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        userRepository.deleteAllById(userIds);
+        userRepository.deleteById(authorId);
+    }
+
+    @Test
+    void concurrentFollowsAndUnfollowsAreIdempotent() throws Exception {
+        // половина читателей загрузила подписки в индекс до начала — проверяется и write-through, и загрузка
+        for (int i = 0; i < USERS; i += 2) {
+            assertThat(subscriptionService.isSubscribed(userIds.get(i), authorId)).isFalse();
+        }
+
+        AtomicInteger followed = new AtomicInteger();
+        hammer(userId -> {
+            if (subscriptionService.subscribe(userId, authorId)) followed.incrementAndGet();
+        });
+        assertThat(followed.get()).isEqualTo(USERS);
+        assertThat(userRepository.findSubscriberIds(authorId, USERS * 2)).containsExactlyInAnyOrderElementsOf(userIds);
+        for (Long userId : userIds) {
+            assertThat(subscriptionService.isSubscribed(userId, authorId)).isTrue();
+            assertThat(subscriptionService.isSubscribed(authorId, userId)).isFalse();
+        }
+
+        AtomicInteger unfollowed = new AtomicInteger();
+        hammer(userId -> {
+            if (subscriptionService.unsubscribe(userId, authorId)) unfollowed.incrementAndGet();
+        });
+        assertThat(unfollowed.get()).isEqualTo(USERS);
+        assertThat(userRepository.findSubscriberIds(authorId, USERS * 2)).isEmpty();
+        for (Long userId : userIds) {
+            assertThat(subscriptionService.isSubscribed(userId, authorId)).isFalse();
+        }
+    }
+
+    @Test
+    void followingManyAuthorsKeepsIndexSorted() {
+        Long reader = userIds.get(0);
+        assertThat(subscriptionService.isSubscribed(reader, authorId)).isFalse();
+        // подписки в порядке, не совпадающем с порядком id: вставка в середину отсортированного массива
+        List<Long> authors = new ArrayList<>(userIds.subList(1, USERS));
+        Collections.shuffle(authors, new Random(3));
+        for (Long a : authors) assertThat(subscriptionService.subscribe(reader, a)).isTrue();
+        for (int i = 0; i < authors.size(); i += 3) assertThat(subscriptionService.unsubscribe(reader, authors.get(i))).isTrue();
+
+        for (int i = 0; i < authors.size(); i++) {
+            assertThat(subscriptionService.isSubscribed(reader, authors.get(i))).isEqualTo(i % 3 != 0);
+        }
+        assertThat(subscriptionService.isSubscribed(reader, authorId)).isFalse();
+    }
+
+    @Test
+    void rejectsSelfAndUnknownUsers() {
+        Long reader = userIds.get(0);
+        assertThatThrownBy(() -> subscriptionService.subscribe(reader, reader))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> subscriptionService.subscribe(reader, Long.MAX_VALUE))
+                .isInstanceOf(EntityNotFoundException.class);
+        assertThat(subscriptionService.unsubscribe(reader, Long.MAX_VALUE)).isFalse();
+    }
+
+    private void hammer(Consumer<Long> action) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int r = 0; r < REPEATS; r++) {
+            for (Long userId : userIds) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    action.accept(userId);
+                    return null;
+                }));
+            }
+        }
+        start.countDown();
+        for (Future<?> f : futures) {
+            f.get(30, TimeUnit.SECONDS); // пробрасывает исключения из потоков
+        }
+        pool.shutdown();
+    }
+}
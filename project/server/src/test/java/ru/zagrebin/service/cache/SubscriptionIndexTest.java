@@ -0,0 +1,138 @@
+package ru.zagrebin.service.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.zagrebin.repository.UserRepository;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Write-through подписок в отсортированный long[]: после случайных подписок и отписок ответы
+ * совпадают с множеством строк «таблицы», а загрузка из БД происходит один раз.
+ * Пересечение с набором авторов совпадает с перебором, для неполного массива — одним запросом.
+ */
+class SubscriptionIndexTest {
+
+    private static final long READER = 1;
+    private static final int AUTHORS = 300;
+
+    // «таблица» user_subscriptions: подписчик -> авторы
+    private final Map<Long, TreeSet<Long>> table = new HashMap<>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final AtomicInteger existsQueries = new AtomicInteger();
+    private final AtomicInteger amongQueries = new AtomicInteger();
+
+    @Test
+    void writeThroughMatchesTableAfterRandomFollowsAndUnfollows() {
+        SubscriptionIndex index = new SubscriptionIndex(users(), new SimpleMeterRegistry(), 1000, 10_000);
+        Random rnd = new Random(11);
+        follow(index, 5);
+        assertThat(index.isSubscribed(READER, 5L)).isTrue(); // массив загружен
+
+        for (int op = 0; op < 5000; op++) {
+            long author = 1 + rnd.nextInt(AUTHORS);
+            if (rnd.nextInt(3) == 0) unfollow(index, author); else follow(index, author);
+            // повтор — как двойной клик: массив не меняется
+            if (rnd.nextInt(10) == 0) follow(index, author);
+        }
+
+        Set<Long> expected = table.getOrDefault(READER, new TreeSet<>());
+        for (long author = 0; author <= AUTHORS + 1; author++) {
+            assertThat(index.isSubscribed(READER, author)).as("author %d", author).isEqualTo(expected.contains(author));
+        }
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(existsQueries.get()).isZero();
+    }
+
+    @Test
+    void unloadedReaderIsReadFromTableWithNewRow() {
+        SubscriptionIndex index = new SubscriptionIndex(users(), new SimpleMeterRegistry(), 1000, 10_000);
+        follow(index, 7); // массива ещё нет — write-through ничего не делает
+
+        assertThat(index.isSubscribed(READER, 7L)).isTrue();
+        assertThat(index.isSubscribed(READER, 8L)).isFalse();
+        assertThat(index.isSubscribed(null, 7L)).isFalse();
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    void truncatedFollowingFallsBackToTable() {
+        // хранится только префикс из двух авторов — остальное перепроверяется запросом
+        SubscriptionIndex index = new SubscriptionIndex(users(), new SimpleMeterRegistry(), 1000, 2);
+        for (long author = 10; author <= 14; author++) follow(index, author);
+
+        assertThat(index.isSubscribed(READER, 10L)).isTrue();
+        assertThat(existsQueries.get()).isZero();
+        assertThat(index.isSubscribed(READER, 14L)).isTrue();
+        assertThat(index.isSubscribed(READER, 15L)).isFalse();
+        assertThat(existsQueries.get()).isEqualTo(2);
+
+        // подписка при неполном массиве сбрасывает его: следующая проверка перечитывает таблицу
+        follow(index, 3);
+        assertThat(index.isSubscribed(READER, 3L)).isTrue();
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void subscribedAmongMatchesBruteForce() {
+        Random rnd = new Random(3);
+        for (long author = 1; author <= AUTHORS; author++) {
+            if (rnd.nextInt(3) == 0) table.computeIfAbsent(READER, k -> new TreeSet<>()).add(author);
+        }
+        // полный массив и неполный (хранится префикс из 20 авторов)
+        for (int maxFollows : new int[]{10_000, 20}) {
+            SubscriptionIndex index = new SubscriptionIndex(users(), new SimpleMeterRegistry(), 1000, maxFollows);
+            for (int q = 0; q < 200; q++) {
+                // и меньше, и больше числа подписок читателя
+                int density = 1 + rnd.nextInt(q % 2 == 0 ? 2 : 60);
+                long[] authors = LongStream.rangeClosed(0, AUTHORS + 1)
+                        .filter(a -> rnd.nextInt(density) == 0).toArray();
+                Long[] expected = Arrays.stream(authors).filter(a -> table.get(READER).contains(a)).boxed().toArray(Long[]::new);
+                int before = amongQueries.get();
+                assertThat(index.subscribedAmong(READER, authors)).as("max %d, %s", maxFollows, Arrays.toString(authors))
+                        .containsExactly(expected);
+                assertThat(amongQueries.get() - before).isLessThanOrEqualTo(maxFollows == 20 ? 1 : 0);
+            }
+            assertThat(index.subscribedAmong(null, new long[]{1})).isEmpty();
+        }
+        assertThat(existsQueries.get()).isZero();
+    }
+
+    // как SubscriptionService: строка в таблице, затем write-through (вне транзакции — сразу)
+    private void follow(SubscriptionIndex index, long author) {
+        if (table.computeIfAbsent(READER, k -> new TreeSet<>()).add(author)) index.added(READER, author);
+    }
+
+    private void unfollow(SubscriptionIndex index, long author) {
+        if (table.computeIfAbsent(READER, k -> new TreeSet<>()).remove(author)) index.removed(READER, author);
+    }
+
+    private UserRepository users() {
+        return (UserRepository) Proxy.newProxyInstance(UserRepository.class.getClassLoader(),
+                new Class<?>[]{UserRepository.class}, (proxy, method, args) -> {
+                    Set<Long> authors = table.getOrDefault((Long) args[0], new TreeSet<>());
+                    switch (method.getName()) {
+                        case "findSubscribedToIds":
+                            loads.incrementAndGet();
+                            return authors.stream().limit((Integer) args[1]).toList();
+                        case "findSubscribedToIdsAmong":
+                            amongQueries.incrementAndGet();
+                            // порядок строк из БД не задан
+                            List<Long> found = new ArrayList<>();
+                            for (Long a : (Long[]) args[1]) if (authors.contains(a)) found.add(a);
+                            Collections.reverse(found);
+                            return found;
+                        case "existsSubscription":
+                            existsQueries.incrementAndGet();
+                            return authors.contains((Long) args[1]);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
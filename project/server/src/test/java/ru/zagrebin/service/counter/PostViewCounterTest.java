@@ -0,0 +1,189 @@
+package ru.zagrebin.service.counter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import ru.zagrebin.dto.PostFullDto;
+import ru.zagrebin.repository.PostRepository;
+import ru.zagrebin.repository.projection.PostViewsView;
+import ru.zagrebin.service.cache.PostFullCache;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Буфер просмотров: сброс в собственном потоке по расписанию, возврат дельт при ошибке записи,
+ * точное число просмотров при загрузке поста в кэш в любой момент сброса.
+ */
+class PostViewCounterTest {
+
+    @Test
+    void flushesOnItsOwnThread() throws Exception {
+        List<String> threads = new CopyOnWriteArrayList<>();
+        FakePosts posts = new FakePosts();
+        posts.onUpdate = () -> threads.add(Thread.currentThread().getName());
+        PostViewCounter counter = new PostViewCounter(posts.repository(), cache(), posts, 20);
+        counter.start();
+        try {
+            counter.increment(1L);
+            for (int i = 0; i < 100 && threads.isEmpty(); i++) Thread.sleep(10);
+            assertThat(threads).containsExactly("post-views-flush");
+            assertThat(counter.pending(1L)).isZero();
+        } finally {
+            counter.shutdown();
+        }
+    }
+
+    @Test
+    void failedFlushKeepsDeltas() {
+        FakePosts posts = new FakePosts();
+        posts.committed.put(7L, 0L);
+        boolean[] fail = {true};
+        // запись прошла, а коммит — нет
+        posts.onCommit = () -> {
+            if (fail[0]) throw new IllegalStateException("db down");
+        };
+        PostViewCounter counter = new PostViewCounter(posts.repository(), cache(), posts, 60_000);
+        counter.increment(7L);
+        counter.increment(7L);
+
+        counter.flush();
+        assertThat(counter.pending(7L)).isEqualTo(2);
+        assertThat(posts.committed).containsEntry(7L, 0L);
+        assertThat(counter.views(7L, 0)).isEqualTo(2);
+
+        fail[0] = false;
+        counter.flush();
+        assertThat(counter.pending(7L)).isZero();
+        assertThat(posts.committed).containsEntry(7L, 2L);
+        assertThat(counter.views(7L, 0)).isEqualTo(2);
+    }
+
+    @Test
+    void postLoadedDuringFlushIsCountedOnce() {
+        FakePosts posts = new FakePosts();
+        posts.committed.put(1L, 10L);
+        PostFullCache cache = cache();
+        PostViewCounter counter = new PostViewCounter(posts.repository(), cache, posts, 60_000);
+        for (int i = 0; i < 5; i++) counter.increment(1L);
+        assertThat(read(cache, counter, posts)).isEqualTo(15);
+
+        // в каждой точке сброса число не проседает; после коммита запись кэша выбрасывается
+        // и загружается заново — уже с записанной дельтой
+        List<Long> seen = new ArrayList<>();
+        posts.onUpdate = () -> seen.add(read(cache, counter, posts));
+        posts.onCommit = () -> {
+            seen.add(read(cache, counter, posts));
+            cache.invalidate(1L);
+        };
+        posts.afterCommit = () -> seen.add(read(cache, counter, posts));
+        counter.flush();
+
+        assertThat(seen).containsExactly(15L, 15L, 15L);
+        assertThat(read(cache, counter, posts)).isEqualTo(15);
+        assertThat(cache.get(1L, id -> null).getViewsCount()).isEqualTo(15);
+
+        // и следующий сброс не прибавляет старую дельту второй раз
+        posts.onUpdate = posts.onCommit = posts.afterCommit = () -> {};
+        counter.increment(1L);
+        counter.flush();
+        assertThat(posts.committed).containsEntry(1L, 16L);
+        assertThat(read(cache, counter, posts)).isEqualTo(16);
+    }
+
+    @Test
+    void postCachedBeforeFlushIsRaisedToWrittenCount() {
+        FakePosts posts = new FakePosts();
+        posts.committed.put(1L, 10L);
+        PostFullCache cache = cache();
+        PostViewCounter counter = new PostViewCounter(posts.repository(), cache, posts, 60_000);
+        assertThat(read(cache, counter, posts)).isEqualTo(10);
+        for (int i = 0; i < 3; i++) counter.increment(1L);
+
+        counter.flush();
+
+        assertThat(cache.get(1L, id -> null).getViewsCount()).isEqualTo(13);
+        assertThat(read(cache, counter, posts)).isEqualTo(13);
+    }
+
+    // как PostServiceImpl.getFullPost, но без учёта самого чтения
+    private static long read(PostFullCache cache, PostViewCounter counter, FakePosts posts) {
+        PostFullDto base = cache.get(1L, id -> {
+            PostFullDto dto = new PostFullDto();
+            dto.setId(id);
+            dto.setViewsCount(posts.committed.get(id));
+            return dto;
+        });
+        return counter.views(1L, base.getViewsCount());
+    }
+
+    private static PostFullCache cache() {
+        return new PostFullCache(1 << 20, new SimpleMeterRegistry());
+    }
+
+    /**
+     * views_count постов с транзакцией: addViews пишет в копию, коммит подменяет ею видимое состояние.
+     */
+    private static final class FakePosts extends AbstractPlatformTransactionManager {
+        final Map<Long, Long> committed = new HashMap<>();
+        Map<Long, Long> staged;
+        Runnable onUpdate = () -> {};
+        Runnable onCommit = () -> {};
+        Runnable afterCommit = () -> {};
+
+        PostRepository repository() {
+            return (PostRepository) Proxy.newProxyInstance(PostRepository.class.getClassLoader(),
+                    new Class<?>[]{PostRepository.class}, (proxy, method, args) -> {
+                        if (!method.getName().equals("addViews")) throw new UnsupportedOperationException(method.getName());
+                        Long[] ids = (Long[]) args[0];
+                        Long[] deltas = (Long[]) args[1];
+                        List<PostViewsView> rows = new ArrayList<>();
+                        for (int i = 0; i < ids.length; i++) {
+                            if (!staged.containsKey(ids[i])) continue;
+                            long views = staged.get(ids[i]) + deltas[i];
+                            staged.put(ids[i], views);
+                            rows.add(row(ids[i], views));
+                        }
+                        onUpdate.run();
+                        return rows;
+                    });
+        }
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            staged = new HashMap<>(committed);
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+            onCommit.run();
+            committed.putAll(staged);
+            afterCommit.run();
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+            staged = null;
+        }
+
+        private static PostViewsView row(long id, long views) {
+            return new PostViewsView() {
+                @Override public Long getId() { return id; }
+                @Override public Long getViewsCount() { return views; }
+            };
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ru.zagrebin.service.counter;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.zagrebin.model.Post;
+import ru.zagrebin.model.User;
+import ru.zagrebin.repository.PostRepository;
+import ru.zagrebin.repository.UserRepository;
+import ru.zagrebin.service.PostService;
+import ru.zagrebin.service.cache.PostFullCache;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Просмотры полного поста на настоящей БД: сброс пишет views_count, а ответ не меняется
+ * ни для записи кэша, загруженной до сброса, ни для загруженной после.
+ */
+@SpringBootTest(properties = "posts.views.flush-interval-ms=3600000")
+class PostViewsFlushTest {
+
+    @Autowired
+    private PostService postService;
+
+    @Autowired
+    private PostViewCounter postViewCounter;
+
+    @Autowired
+    private PostFullCache postFullCache;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private Long userId;
+    private Long postId;
+
+    @BeforeEach
+    void setUp() {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        userId = userRepository.save(User.builder()
+                .username("views-" + suffix)
+                .email("views-" + suffix + "@example.local")
+                .build()).getId();
+        Post post = new Post();
+        post.setTitle("Просмотры " + suffix);
+        post.setStatus("published");
+        post.setPostType("recipe");
+        post.setAuthor(userRepository.getReferenceById(userId));
+        postId = postRepository.save(post).getId();
+    }
+
+    @AfterEach
+    void tearDown() {
+        postRepository.deleteById(postId);
+        userRepository.deleteById(userId);
+    }
+
+    @Test
+    void flushedViewsAreCountedOnce() {
+        for (int i = 1; i <= 3; i++) assertThat(postService.getFullPost(postId, null).getViewsCount()).isEqualTo(i);
+
+        postViewCounter.flush();
+
+        assertThat(postRepository.findById(postId).orElseThrow().getViewsCount()).isEqualTo(3);
+        assertThat(postService.getFullPost(postId, null).getViewsCount()).isEqualTo(4);
+        // запись кэша загружается заново уже с записанными просмотрами
+        postFullCache.invalidate(postId);
+        assertThat(postService.getFullPost(postId, null).getViewsCount()).isEqualTo(5);
+
+        postViewCounter.flush();
+        assertThat(postRepository.findById(postId).orElseThrow().getViewsCount()).isEqualTo(5);
+        assertThat(postService.getFullPost(postId, null).getViewsCount()).isEqualTo(6);
+    }
+}
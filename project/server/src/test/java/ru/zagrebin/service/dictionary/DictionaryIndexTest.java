@@ -0,0 +1,80 @@
+package ru.zagrebin.service.dictionary;
+
+import org.junit.jupiter.api.Test;
+import ru.zagrebin.repository.projection.DictionaryEntryView;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.zagrebin.service.dictionary.DictionaryTestRepositories.entry;
+import static ru.zagrebin.service.dictionary.DictionaryTestRepositories.ingredients;
+import static ru.zagrebin.service.dictionary.DictionaryTestRepositories.tags;
+
+/**
+ * Одновременные пересборки (старт приложения и расписание) не подменяют свежий снимок устаревшим;
+ * серия изменений постов пересобирает словари один раз после паузы.
+ */
+class DictionaryIndexTest {
+
+    @Test
+    void concurrentRebuildsDoNotPublishStaleSnapshot() throws Exception {
+        CountDownLatch firstReading = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        AtomicInteger reads = new AtomicInteger();
+        DictionaryIndex index = new DictionaryIndex(tags(() -> {
+            if (reads.incrementAndGet() == 1) {
+                // первая пересборка прочитала старые данные и «застряла» до подмены снимка
+                firstReading.countDown();
+                await(releaseFirst);
+                return List.<DictionaryEntryView>of(entry(1, "Старый", null, 1));
+            }
+            return List.<DictionaryEntryView>of(entry(1, "Новый", null, 1));
+        }), ingredients(List::of), 500, 600_000, 100);
+
+        Thread first = new Thread(index::rebuild);
+        first.start();
+        await(firstReading);
+        Thread second = new Thread(index::rebuild);
+        second.start();
+        // без взаимного исключения вторая пересборка успела бы закончиться раньше первой
+        second.join(300);
+        releaseFirst.countDown();
+        first.join(5000);
+        second.join(5000);
+
+        assertThat(reads.get()).isEqualTo(2);
+        assertThat(index.findTags("", 0, 10)).extracting("name").containsExactly("Новый");
+    }
+
+    @Test
+    void changesAreRebuiltOnceAfterDebounce() throws Exception {
+        AtomicInteger reads = new AtomicInteger();
+        DictionaryIndex index = new DictionaryIndex(tags(() -> List.<DictionaryEntryView>of(
+                entry(1, reads.incrementAndGet() == 1 ? "Старый" : "Новый", null, 1))), ingredients(List::of), 100, 600_000, 100);
+        try {
+            index.rebuild();
+            // вне транзакции changedAfterCommit назначает пересборку сразу
+            for (int i = 0; i < 5; i++) index.changedAfterCommit();
+            assertThat(index.findTags("", 0, 10)).extracting("name").containsExactly("Старый");
+
+            for (int i = 0; i < 100 && reads.get() < 2; i++) Thread.sleep(20);
+            Thread.sleep(300);
+            assertThat(reads.get()).isEqualTo(2);
+            assertThat(index.findTags("", 0, 10)).extracting("name").containsExactly("Новый");
+        } finally {
+            index.shutdown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) throw new IllegalStateException("timeout");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package ru.zagrebin.service.dictionary;
+
+import ru.zagrebin.repository.IngredientRepository;
+import ru.zagrebin.repository.TagRepository;
+import ru.zagrebin.repository.projection.DictionaryEntryView;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Заглушки репозиториев для DictionaryIndex: отвечают только на findDictionaryEntries.
+ */
+public final class DictionaryTestRepositories {
+
+    private DictionaryTestRepositories() {}
+
+    public static TagRepository tags(Supplier<List<DictionaryEntryView>> rows) {
+        return stub(TagRepository.class, rows);
+    }
+
+    public static IngredientRepository ingredients(Supplier<List<DictionaryEntryView>> rows) {
+        return stub(IngredientRepository.class, rows);
+    }
+
+    public static DictionaryEntryView entry(long id, String name, String color, long usage) {
+        return new DictionaryEntryView() {
+            @Override public Long getId() { return id; }
+            @Override public String getName() { return name; }
+            @Override public String getColor() { return color; }
+            @Override public Long getUsage() { return usage; }
+        };
+    }
+
+    private static <T> T stub(Class<T> type, Supplier<List<DictionaryEntryView>> rows) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getName().equals("findDictionaryEntries")) return rows.get();
+            throw new UnsupportedOperationException(method.getName());
+        }));
+    }
+}
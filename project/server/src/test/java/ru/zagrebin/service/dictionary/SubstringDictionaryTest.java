@@ -0,0 +1,58 @@
+package ru.zagrebin.service.dictionary;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Поиск по подстроке в SubstringDictionary: регистр, ё, порядок по рангу, страницы; сверка с перебором.
+ */
+class SubstringDictionaryTest {
+
+    @Test
+    void findsSubstringsInRankOrder() {
+        // порядок списка — ранг: «Сыр» используется чаще всего
+        SubstringDictionary<String> dict = new SubstringDictionary<>(
+                List.of("Сыр", "Картофель", "Сыр моцарелла", "Свёкла", "Морковь", "Сырок"), Function.identity());
+
+        assertThat(dict.find("сыр", 0, 10)).containsExactly("Сыр", "Сыр моцарелла", "Сырок");
+        assertThat(dict.find("МОЦ", 0, 10)).containsExactly("Сыр моцарелла");
+        assertThat(dict.find("рков", 0, 10)).containsExactly("Морковь");
+        assertThat(dict.find("свекл", 0, 10)).containsExactly("Свёкла");
+        assertThat(dict.find("ф", 0, 10)).containsExactly("Картофель");
+        assertThat(dict.find("тунец", 0, 10)).isEmpty();
+
+        // страницы и пустой запрос
+        assertThat(dict.find("сыр", 1, 1)).containsExactly("Сыр моцарелла");
+        assertThat(dict.find("  ", 0, 2)).containsExactly("Сыр", "Картофель");
+        assertThat(dict.find(null, 5, 10)).containsExactly("Сырок");
+        assertThat(dict.find("", 10, 10)).isEmpty();
+    }
+
+    @Test
+    void matchesBruteForce() {
+        Random rnd = new Random(5);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int len = 1 + rnd.nextInt(14);
+            for (int j = 0; j < len; j++) sb.append("абвгдеёжАБВ ".charAt(rnd.nextInt(12)));
+            names.add(sb.toString());
+        }
+        SubstringDictionary<String> dict = new SubstringDictionary<>(names, Function.identity());
+        for (int q = 0; q < 300; q++) {
+            String query = names.get(rnd.nextInt(names.size()));
+            int from = rnd.nextInt(query.length());
+            query = query.substring(from, from + 1 + rnd.nextInt(Math.min(3, query.length() - from)));
+            String folded = SubstringDictionary.fold(query.strip());
+            List<String> expected = names.stream()
+                    .filter(n -> SubstringDictionary.fold(n).contains(folded))
+                    .collect(Collectors.toList());
+            assertThat(dict.find(query, 0, Integer.MAX_VALUE)).as(query).isEqualTo(expected);
+        }
+    }
+}
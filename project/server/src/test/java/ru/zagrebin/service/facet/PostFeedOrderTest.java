@@ -0,0 +1,128 @@
+package ru.zagrebin.service.facet;
+
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+import ru.zagrebin.repository.PostRepository;
+import ru.zagrebin.repository.projection.TimelineKeyView;
+import ru.zagrebin.service.pagination.PostCursor;
+
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Страницы PostFeedOrder сверяются с сортировкой перебором — для маленьких и больших выборок, после
+ * сдвигов, удалений и слияний; пересборка не затирает изменения, пришедшие во время неё.
+ */
+class PostFeedOrderTest {
+
+    private static final int POSTS = 6000;
+    private static final long T0 = 1_700_000_000_000_000L;
+
+    @Test
+    void pagesMatchBruteForce() {
+        Random rnd = new Random(5);
+        PostFeedOrder order = new PostFeedOrder(null);
+        Map<Integer, Long> micros = new HashMap<>();
+        for (int postId = 1; postId <= POSTS; postId++) {
+            // время растёт с id, но не строго: соседи переставлены, бывают совпадения
+            put(order, micros, postId, T0 + postId * 10L + rnd.nextInt(30));
+        }
+        // сдвиги, удаления и возвраты на прежнюю позицию — с несколькими слияниями по пути
+        for (int i = 0; i < 4000; i++) {
+            int postId = 1 + rnd.nextInt(POSTS);
+            int action = rnd.nextInt(4);
+            if (action == 0) {
+                micros.remove(postId);
+                order.removeAfterCommit((long) postId);
+            } else if (action == 1) {
+                put(order, micros, postId, T0 + postId * 10L);
+            } else {
+                put(order, micros, postId, T0 + rnd.nextInt(POSTS * 10));
+            }
+        }
+
+        for (int q = 0; q < 300; q++) {
+            // от пары постов до почти всех: страница берётся то отбором, то проходом по ленте
+            int density = 1 + rnd.nextInt(q % 2 == 0 ? 3 : 2000);
+            RoaringBitmap matched = new RoaringBitmap();
+            for (int postId = 1; postId <= POSTS + 10; postId++) {
+                if (rnd.nextInt(density) == 0) matched.add(postId);
+            }
+            List<PostCursor> expected = micros.entrySet().stream()
+                    .filter(e -> matched.contains(e.getKey()))
+                    .sorted((a, b) -> !a.getValue().equals(b.getValue())
+                            ? Long.compare(b.getValue(), a.getValue())
+                            : Integer.compare(b.getKey(), a.getKey()))
+                    .map(e -> PostCursor.ofMicros(e.getValue(), e.getKey()))
+                    .toList();
+            int limit = 1 + rnd.nextInt(25);
+
+            // постранично до конца, как клиент по курсору
+            List<PostCursor> paged = new ArrayList<>();
+            PostCursor after = null;
+            for (int page = 0; page <= expected.size() / limit + 1; page++) {
+                List<PostCursor> keys = order.page(matched, after, limit);
+                assertThat(keys).hasSizeLessThanOrEqualTo(limit);
+                if (keys.isEmpty()) break;
+                paged.addAll(keys);
+                after = keys.get(keys.size() - 1);
+            }
+            assertThat(keys(paged)).as("density %d, limit %d", density, limit).isEqualTo(keys(expected));
+        }
+    }
+
+    @Test
+    void rebuildKeepsWritesMadeWhileLoading() {
+        PostFeedOrder[] holder = new PostFeedOrder[1];
+        Supplier<List<TimelineKeyView>> rows = () -> {
+            // пока идёт запрос, пост 2 сняли с публикации, посту 3 сменили время, пост 4 опубликовали
+            holder[0].removeAfterCommit(2L);
+            holder[0].putAfterCommit(3L, time(T0 + 50));
+            holder[0].putAfterCommit(4L, time(T0 + 5));
+            return List.of(key(1, T0 + 10), key(2, T0 + 20), key(3, T0 + 30));
+        };
+        PostFeedOrder order = new PostFeedOrder(posts(rows));
+        holder[0] = order;
+        // устаревшая запись, которой в БД уже нет
+        order.putAfterCommit(99L, time(T0 + 99));
+
+        order.rebuild();
+
+        assertThat(keys(order.page(RoaringBitmap.bitmapOf(1, 2, 3, 4, 99), null, 10)))
+                .containsExactly("3@" + (T0 + 50), "1@" + (T0 + 10), "4@" + (T0 + 5));
+    }
+
+    private static void put(PostFeedOrder order, Map<Integer, Long> micros, int postId, long m) {
+        micros.put(postId, m);
+        order.putAfterCommit((long) postId, time(m)); // вне транзакции применяется сразу
+    }
+
+    private static List<String> keys(List<PostCursor> cursors) {
+        return cursors.stream().map(c -> c.getId() + "@" + c.getCreatedAtMicros()).toList();
+    }
+
+    private static OffsetDateTime time(long micros) {
+        return PostCursor.ofMicros(micros, 0).getCreatedAt();
+    }
+
+    private static TimelineKeyView key(long postId, long micros) {
+        Instant createdAt = time(micros).toInstant();
+        return new TimelineKeyView() {
+            @Override public Long getPostId() { return postId; }
+            @Override public Instant getCreatedAt() { return createdAt; }
+        };
+    }
+
+    private static PostRepository posts(Supplier<List<TimelineKeyView>> rows) {
+        return (PostRepository) Proxy.newProxyInstance(PostRepository.class.getClassLoader(),
+                new Class<?>[]{PostRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findPublishedKeys")) return rows.get();
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
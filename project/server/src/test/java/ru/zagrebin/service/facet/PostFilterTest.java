@@ -0,0 +1,41 @@
+package ru.zagrebin.service.facet;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Пустой фильтр ведёт в обычную ленту, любой заданный параметр — в фильтрованную; режим тегов по умолчанию all.
+ */
+class PostFilterTest {
+
+    @Test
+    void emptyOnlyWithoutTagsAndBounds() {
+        PostFilter empty = PostFilter.builder().build();
+        assertThat(empty.isEmpty()).isTrue();
+        assertThat(empty.getTags()).isEmpty();
+        assertThat(empty.getMode()).isEqualTo(TagMatchMode.ALL);
+
+        assertThat(PostFilter.builder().tags(List.of("soup")).build().isEmpty()).isFalse();
+        assertThat(PostFilter.builder().caloriesMin(0).build().isEmpty()).isFalse();
+        assertThat(PostFilter.builder().caloriesMax(500).build().isEmpty()).isFalse();
+        assertThat(PostFilter.builder().cookingTimeMin(10).build().isEmpty()).isFalse();
+        assertThat(PostFilter.builder().cookingTimeMax(30).build().isEmpty()).isFalse();
+        // режим без тегов ничего не фильтрует
+        assertThat(PostFilter.builder().mode(TagMatchMode.ANY).build().isEmpty()).isTrue();
+    }
+
+    @Test
+    void parsesMatchMode() {
+        assertThat(TagMatchMode.parse(null)).isEqualTo(TagMatchMode.ALL);
+        assertThat(TagMatchMode.parse(" ")).isEqualTo(TagMatchMode.ALL);
+        assertThat(TagMatchMode.parse("any")).isEqualTo(TagMatchMode.ANY);
+        assertThat(TagMatchMode.parse(" ALL ")).isEqualTo(TagMatchMode.ALL);
+        assertThatThrownBy(() -> TagMatchMode.parse("some"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("some");
+    }
+}
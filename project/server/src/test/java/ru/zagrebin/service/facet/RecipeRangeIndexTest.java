@@ -0,0 +1,153 @@
+package ru.zagrebin.service.facet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.roaringbitmap.RoaringBitmap;
+import ru.zagrebin.repository.PostRepository;
+import ru.zagrebin.repository.projection.PostRangeView;
+import ru.zagrebin.service.pagination.PostCursor;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Диапазонные запросы RecipeRangeIndex сверяются с перебором; пересборка не затирает изменения, пришедшие
+ * во время неё. Бенчмарк на 1M постов (диапазон, теги с фасетами и страница в порядке ленты) запускается отдельно:
+ * mvn test -Dtest=RecipeRangeIndexTest -Dbenchmark=true
+ */
+class RecipeRangeIndexTest {
+
+    private static final int POSTS = 3000;
+
+    @Test
+    void rangeQueriesMatchBruteForce() {
+        Random rnd = new Random(7);
+        RecipeRangeIndex index = new RecipeRangeIndex(null);
+        Map<Integer, Integer> calories = new HashMap<>();
+        Map<Integer, Integer> time = new HashMap<>();
+        for (int postId = 1; postId <= POSTS; postId++) {
+            Integer c = rnd.nextInt(10) == 0 ? null : rnd.nextInt(1500);
+            Integer t = rnd.nextInt(10) == 0 ? null : rnd.nextInt(240);
+            if (c != null) calories.put(postId, c);
+            if (t != null) time.put(postId, t);
+            index.putAfterCommit((long) postId, c, t); // вне транзакции применяется сразу
+        }
+        // изменение и удаление поверх загруженного индекса
+        calories.put(5, 1499);
+        time.remove(5);
+        index.putAfterCommit(5L, 1499, null);
+        calories.remove(6);
+        time.remove(6);
+        index.removeAfterCommit(6L);
+
+        assertThat(index.match(null, null, null, null)).isNull();
+        for (int q = 0; q < 200; q++) {
+            Integer cMin = rnd.nextBoolean() ? null : rnd.nextInt(1600) - 50;
+            Integer cMax = rnd.nextBoolean() ? null : rnd.nextInt(1600) - 50;
+            Integer tMin = rnd.nextBoolean() ? null : rnd.nextInt(260);
+            Integer tMax = rnd.nextBoolean() ? null : rnd.nextInt(260);
+            if (cMin == null && cMax == null && tMin == null && tMax == null) cMax = 500;
+
+            RoaringBitmap expected = new RoaringBitmap();
+            for (int postId = 1; postId <= POSTS; postId++) {
+                if ((cMin != null || cMax != null) && !in(calories.get(postId), cMin, cMax)) continue;
+                if ((tMin != null || tMax != null) && !in(time.get(postId), tMin, tMax)) continue;
+                expected.add(postId);
+            }
+            assertThat(index.match(cMin, cMax, tMin, tMax))
+                    .as("calories [%s, %s], time [%s, %s]", cMin, cMax, tMin, tMax)
+                    .isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void rebuildKeepsWritesMadeWhileLoading() {
+        RecipeRangeIndex[] holder = new RecipeRangeIndex[1];
+        Supplier<List<PostRangeView>> rows = () -> {
+            // пока идёт запрос, пост 2 сняли с публикации, посту 3 сменили калорийность, пост 4 опубликовали
+            holder[0].removeAfterCommit(2L);
+            holder[0].putAfterCommit(3L, 900, 30);
+            holder[0].putAfterCommit(4L, 100, null);
+            return List.of(row(1, 100, 10), row(2, 100, 10), row(3, 100, 10));
+        };
+        RecipeRangeIndex index = new RecipeRangeIndex(posts(rows));
+        holder[0] = index;
+        // устаревшая запись, которой в БД уже нет
+        index.putAfterCommit(99L, 100, 10);
+
+        index.rebuild();
+
+        assertThat(index.match(0, 200, null, null)).containsExactly(1, 4);
+        assertThat(index.match(800, null, null, null)).containsExactly(3);
+        assertThat(index.match(null, null, 0, 60)).containsExactly(1, 3);
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void rangeAndTagFilterOnMillionPosts() {
+        int posts = 1_000_000;
+        int tags = 200;
+        Random rnd = new Random(1);
+        RecipeRangeIndex ranges = new RecipeRangeIndex(null);
+        TagFacetIndex facets = new TagFacetIndex(null, 30);
+        PostFeedOrder order = new PostFeedOrder(null);
+        // время создания растёт с id, но с перестановками соседей
+        long[] micros = new long[posts + 1];
+        for (int postId = 1; postId <= posts; postId++) micros[postId] = 1_700_000_000_000_000L + postId * 1000L + rnd.nextInt(5000);
+        for (long postId = 1; postId <= posts; postId++) {
+            order.putAfterCommit(postId, PostCursor.ofMicros(micros[(int) postId], postId).getCreatedAt());
+            ranges.putAfterCommit(postId, rnd.nextInt(1500), 5 + rnd.nextInt(235));
+            int n = 1 + rnd.nextInt(5);
+            List<Long> postTags = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) postTags.add(1L + rnd.nextInt(tags));
+            facets.putAfterCommit(postId, postTags);
+        }
+
+        int warmup = 200;
+        int runs = 2000;
+        long[] nanos = new long[runs];
+        long sink = 0;
+        for (int q = 0; q < warmup + runs; q++) {
+            int cMin = rnd.nextInt(1000);
+            int tMax = 15 + rnd.nextInt(120);
+            List<Long> tagIds = q % 2 == 0 ? List.of(1L + rnd.nextInt(tags)) : Collections.emptyList();
+            int at = 1 + rnd.nextInt(posts);
+            PostCursor after = q % 3 == 0 ? PostCursor.ofMicros(micros[at], at) : null;
+
+            long start = System.nanoTime();
+            RoaringBitmap restrict = ranges.match(cMin, cMin + 300, null, tMax);
+            TagFacetIndex.Result result = facets.filter(tagIds, TagMatchMode.ALL, restrict);
+            List<PostCursor> page = order.page(result.getMatched(), after, 21);
+            long elapsed = System.nanoTime() - start;
+
+            sink += result.getTotal() + page.size();
+            if (q >= warmup) nanos[q - warmup] = elapsed;
+        }
+        Arrays.sort(nanos);
+        System.out.printf("range+tag filter, %d posts, %d queries: p50=%.2f ms, p99=%.2f ms, max=%.2f ms (sink %d)%n",
+                posts, runs, nanos[runs / 2] / 1e6, nanos[runs * 99 / 100] / 1e6, nanos[runs - 1] / 1e6, sink);
+    }
+
+    private static PostRangeView row(long id, Integer calories, Integer time) {
+        return new PostRangeView() {
+            @Override public Long getId() { return id; }
+            @Override public Integer getCalories() { return calories; }
+            @Override public Integer getCookingTimeMinutes() { return time; }
+        };
+    }
+
+    private static PostRepository posts(Supplier<List<PostRangeView>> rows) {
+        return (PostRepository) Proxy.newProxyInstance(PostRepository.class.getClassLoader(),
+                new Class<?>[]{PostRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findPublishedRangeValues")) return rows.get();
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static boolean in(Integer value, Integer min, Integer max) {
+        return value != null && (min == null || value >= min) && (max == null || value <= max);
+    }
+}
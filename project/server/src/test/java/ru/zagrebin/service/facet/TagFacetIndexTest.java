@@ -0,0 +1,156 @@
+package ru.zagrebin.service.facet;
+
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+import ru.zagrebin.repository.PostRepository;
+import ru.zagrebin.repository.projection.PostTagPairView;
+import ru.zagrebin.service.bitmap.PostBitmapIndex;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Выборка, общий размер и фасеты TagFacetIndex сверяются с перебором по тем же постам;
+ * пересборка из БД не затирает изменения, пришедшие во время неё.
+ */
+class TagFacetIndexTest {
+
+    private static final int POSTS = 2000;
+    private static final int MAX_FACETS = 5;
+
+    @Test
+    void filterMatchesBruteForce() {
+        filterMatchesBruteForce(12, 11);
+    }
+
+    // тегов больше, чем постов в большинстве выборок: фасеты набираются с отсечением по размеру тега
+    @Test
+    void filterMatchesBruteForceWithManyTags() {
+        filterMatchesBruteForce(400, 13);
+    }
+
+    private void filterMatchesBruteForce(long tagCount, long seed) {
+        Random rnd = new Random(seed);
+        TagFacetIndex index = new TagFacetIndex(null, MAX_FACETS);
+        Map<Long, Set<Long>> tagsByPost = new HashMap<>();
+        for (long postId = 1; postId <= POSTS; postId++) {
+            Set<Long> tags = new HashSet<>();
+            // теги с меньшим id встречаются чаще
+            for (long tag = 1; tag <= tagCount; tag++) {
+                if (rnd.nextInt((int) tag + 1) == 0) tags.add(tag);
+            }
+            tagsByPost.put(postId, tags);
+            index.putAfterCommit(postId, tags); // вне транзакции применяется сразу
+        }
+        // смена тегов и удаление поверх загруженного индекса
+        tagsByPost.put(7L, Set.of(tagCount));
+        index.putAfterCommit(7L, Set.of(tagCount));
+        tagsByPost.remove(8L);
+        index.removeAfterCommit(8L);
+
+        for (int q = 0; q < 200; q++) {
+            TagMatchMode mode = rnd.nextBoolean() ? TagMatchMode.ALL : TagMatchMode.ANY;
+            List<Long> query = new ArrayList<>();
+            int n = 1 + rnd.nextInt(3);
+            for (int i = 0; i < n; i++) query.add(1L + rnd.nextInt((int) tagCount));
+            RoaringBitmap restrict = null;
+            if (rnd.nextBoolean()) {
+                restrict = new RoaringBitmap();
+                for (int postId = 1; postId <= POSTS; postId++) {
+                    if (rnd.nextInt(3) == 0) restrict.add(postId);
+                }
+            }
+            Long before = rnd.nextBoolean() ? null : (long) rnd.nextInt(POSTS + 10);
+            int limit = 1 + rnd.nextInt(30);
+
+            List<Long> matched = new ArrayList<>();
+            for (long postId = POSTS; postId >= 1; postId--) {
+                Set<Long> tags = tagsByPost.get(postId);
+                if (tags == null) continue;
+                boolean ok = mode == TagMatchMode.ALL ? tags.containsAll(query) : query.stream().anyMatch(tags::contains);
+                if (ok && (restrict == null || restrict.contains((int) postId))) matched.add(postId);
+            }
+            List<Long> page = matched.stream()
+                    .filter(id -> before == null || id < before)
+                    .limit(limit)
+                    .toList();
+
+            TagFacetIndex.Result result = index.filter(query, mode, restrict == null ? null : restrict.clone());
+            String as = mode + " " + query + ", before " + before;
+            assertThat(PostBitmapIndex.pageDesc(result.getMatched(), before, limit)).as(as).isEqualTo(page);
+            assertThat(result.getTotal()).as(as).isEqualTo(matched.size());
+            assertThat(result.getFacetCounts()).as(as).isEqualTo(facets(tagsByPost, matched));
+        }
+    }
+
+    @Test
+    void withoutTagsSelectionIsRestrict() {
+        TagFacetIndex index = new TagFacetIndex(null, MAX_FACETS);
+        index.putAfterCommit(1L, List.of(1L));
+        index.putAfterCommit(2L, List.of());
+        index.putAfterCommit(3L, List.of(1L, 2L));
+
+        // пост без тегов тоже попадает в выборку диапазона
+        TagFacetIndex.Result result = index.filter(List.of(), TagMatchMode.ALL, RoaringBitmap.bitmapOf(1, 2));
+        assertThat(result.getMatched()).containsExactly(1, 2);
+        assertThat(result.getTotal()).isEqualTo(2);
+        assertThat(result.getFacetCounts()).containsExactly(Map.entry(1L, 1L));
+
+        assertThat(index.filter(List.of(99L), TagMatchMode.ALL, null).getTotal()).isZero();
+        assertThat(index.filter(List.of(2L, 99L), TagMatchMode.ANY, null).getMatched()).containsExactly(3);
+    }
+
+    @Test
+    void rebuildKeepsWritesMadeWhileLoading() {
+        TagFacetIndex[] holder = new TagFacetIndex[1];
+        Supplier<List<PostTagPairView>> rows = () -> {
+            // пока идёт запрос, пост 2 сняли с публикации, пост 3 изменили, пост 4 опубликовали
+            holder[0].removeAfterCommit(2L);
+            holder[0].putAfterCommit(3L, List.of(10L));
+            holder[0].putAfterCommit(4L, List.of(10L, 11L));
+            return List.of(pair(1, 10), pair(2, 10), pair(3, 20));
+        };
+        TagFacetIndex index = new TagFacetIndex(posts(rows), MAX_FACETS);
+        holder[0] = index;
+        // устаревшая запись, которой в БД уже нет
+        index.putAfterCommit(99L, List.of(10L));
+
+        index.rebuild();
+
+        TagFacetIndex.Result result = index.filter(List.of(), TagMatchMode.ALL, null);
+        assertThat(result.getMatched()).containsExactly(1, 3, 4);
+        assertThat(result.getFacetCounts()).containsExactly(Map.entry(10L, 3L), Map.entry(11L, 1L));
+    }
+
+    private static PostTagPairView pair(long postId, long tagId) {
+        return new PostTagPairView() {
+            @Override public Long getPostId() { return postId; }
+            @Override public Long getTagId() { return tagId; }
+        };
+    }
+
+    private static PostRepository posts(Supplier<List<PostTagPairView>> rows) {
+        return (PostRepository) Proxy.newProxyInstance(PostRepository.class.getClassLoader(),
+                new Class<?>[]{PostRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findPublishedTagPairs")) return rows.get();
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    // count по убыванию, при равенстве — по id тега; не больше MAX_FACETS
+    private static Map<Long, Long> facets(Map<Long, Set<Long>> tagsByPost, List<Long> matched) {
+        Map<Long, Long> counts = new HashMap<>();
+        for (Long postId : matched) {
+            for (Long tag : tagsByPost.get(postId)) counts.merge(tag, 1L, Long::sum);
+        }
+        Map<Long, Long> top = new LinkedHashMap<>();
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<Long, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(MAX_FACETS)
+                .forEach(e -> top.put(e.getKey(), e.getValue()));
+        return top;
+    }
+}
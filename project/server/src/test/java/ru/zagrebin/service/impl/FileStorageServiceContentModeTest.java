@@ -0,0 +1,189 @@
+package ru.zagrebin.service.impl;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.zagrebin.model.MediaBlob;
+import ru.zagrebin.repository.MediaBlobRepository;
+import ru.zagrebin.service.FileStorageService;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * media.storage-mode: content. Одинаковые байты — один файл; ссылки на него считают посты (attach/delete),
+ * а не загрузки; файл без ссылок уходит с диска только после коммита.
+ * orphan-max-age-ms: 0 — файл без ссылок удаляется сразу, без срока на сохранение поста.
+ * Аватары хранятся отдельными файлами и уборке не подлежат.
+ */
+@SpringBootTest(properties = {
+        "media.storage-mode=content",
+        "media.derivatives.enabled=false",
+        "media.blobs.orphan-max-age-ms=0"
+})
+class FileStorageServiceContentModeTest {
+
+    private static final Path MEDIA;
+
+    static {
+        try {
+            MEDIA = Files.createTempDirectory("media-content-test");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void mediaPath(DynamicPropertyRegistry registry) {
+        registry.add("media.path", MEDIA::toString);
+    }
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private MediaBlobRepository mediaBlobRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void sameBytesAreStoredOnce() {
+        byte[] bytes = randomBytes();
+        String first = store(bytes, "a.bin");
+        String second = store(bytes, "b.bin");
+
+        assertThat(second).isEqualTo(first);
+        assertThat(fileStorageService.resolveUrl(first)).exists();
+        // загрузка ссылкой не считается
+        assertThat(refCount(first)).isZero();
+    }
+
+    @Test
+    void lastReleaseDeletesFile() {
+        String url = store(randomBytes(), "a.bin");
+        Path file = fileStorageService.resolveUrl(url);
+        // два поста с одним URL — две ссылки
+        fileStorageService.attach(url);
+        fileStorageService.attach(url);
+        assertThat(refCount(url)).isEqualTo(2);
+
+        assertThat(fileStorageService.delete(url)).isTrue();
+        assertThat(refCount(url)).isEqualTo(1);
+        assertThat(file).exists();
+
+        assertThat(fileStorageService.delete(url)).isTrue();
+        assertThat(mediaBlobRepository.findById(hash(url))).isEmpty();
+        assertThat(file).doesNotExist();
+        // ссылок больше нет — повторное снятие ничего не делает
+        assertThat(fileStorageService.delete(url)).isFalse();
+    }
+
+    @Test
+    void rollbackKeepsReferenceAndFile() {
+        String url = store(randomBytes(), "a.bin");
+        fileStorageService.attach(url);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            fileStorageService.delete(url);
+            status.setRollbackOnly();
+        });
+
+        assertThat(refCount(url)).isEqualTo(1);
+        assertThat(fileStorageService.resolveUrl(url)).exists();
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            fileStorageService.delete(url);
+            // до коммита файл ещё на месте
+            assertThat(fileStorageService.resolveUrl(url)).exists();
+        });
+        assertThat(fileStorageService.resolveUrl(url)).doesNotExist();
+    }
+
+    @Test
+    void unreferencedUploadIsSwept() {
+        String url = store(randomBytes(), "a.bin");
+        assertThat(fileStorageService.resolveUrl(url)).exists();
+
+        ((FileStorageServiceImpl) fileStorageService).sweepOrphanBlobs();
+
+        assertThat(mediaBlobRepository.findById(hash(url))).isEmpty();
+        assertThat(fileStorageService.resolveUrl(url)).doesNotExist();
+    }
+
+    @Test
+    void avatarUploadSurvivesSweep() throws IOException {
+        byte[] bytes = randomBytes();
+        String url = fileStorageService.store(new ByteArrayInputStream(bytes), "me.jpg", "users/avatars", Long.MAX_VALUE);
+        Path file = fileStorageService.resolveUrl(url);
+
+        ((FileStorageServiceImpl) fileStorageService).sweepOrphanBlobs();
+
+        // аватар не из поста: ссылки на него не считаются, и в blobs/ он не попадает
+        assertThat(url).contains("/users/avatars/");
+        assertThat(file).exists();
+        assertThat(Files.readAllBytes(file)).isEqualTo(bytes);
+    }
+
+    @Test
+    void concurrentUploadsOfSameBytesShareOneFile() throws Exception {
+        byte[] bytes = randomBytes();
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                return store(bytes, "same.bin");
+            }));
+        }
+        start.countDown();
+        Set<String> urls = new HashSet<>();
+        for (Future<String> f : futures) urls.add(f.get(30, TimeUnit.SECONDS));
+        pool.shutdown();
+
+        assertThat(urls).hasSize(1);
+        String url = urls.iterator().next();
+        Path file = fileStorageService.resolveUrl(url);
+        assertThat(file).exists();
+        assertThat(Files.readAllBytes(file)).isEqualTo(bytes);
+        try (var siblings = Files.list(file.getParent())) {
+            assertThat(siblings.filter(p -> p.getFileName().toString().startsWith(hash(url)))).hasSize(1);
+        }
+        assertThat(refCount(url)).isZero();
+    }
+
+    private String store(byte[] bytes, String name) {
+        return fileStorageService.store(new ByteArrayInputStream(bytes), name, "posts", Long.MAX_VALUE);
+    }
+
+    private int refCount(String url) {
+        return mediaBlobRepository.findById(hash(url)).map(MediaBlob::getRefCount).orElseThrow();
+    }
+
+    private static String hash(String url) {
+        String name = url.substring(url.lastIndexOf('/') + 1);
+        return name.substring(0, name.indexOf('.'));
+    }
+
+    // каждый тест со своим содержимым: база между запусками не очищается
+    private static byte[] randomBytes() {
+        return (UUID.randomUUID() + "-" + UUID.randomUUID()).getBytes();
+    }
+}
@@ -0,0 +1,32 @@
+package ru.zagrebin.service.media;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * BlurHash: длина и заголовок по числу компонент, средний цвет в DC-компоненте.
+ */
+class BlurHashTest {
+
+    @Test
+    void solidColorIsEncodedInDcComponent() {
+        BufferedImage red = new BufferedImage(32, 24, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 24; y++) for (int x = 0; x < 32; x++) red.setRGB(x, y, 0xFF0000);
+
+        // 'L' — 4×3 компоненты, "TI:j" — DC #FF0000; у j = 1 по 0..h-1 сумма косинусов не ноль, отсюда 'D'
+        assertThat(BlurHash.encode(red, 4, 3)).isEqualTo("LDTI:j]9fQ]9|co1fQo1fQfQfQfQ");
+    }
+
+    @Test
+    void lengthDependsOnComponents() {
+        BufferedImage img = new BufferedImage(30, 40, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 40; y++) for (int x = 0; x < 30; x++) img.setRGB(x, y, (x * 8) << 16 | (y * 6) << 8);
+
+        String portrait = BlurHash.encode(img, 3, 4);
+        assertThat(portrait).hasSize(4 + 2 + 2 * 11).startsWith("T");
+        assertThat(BlurHash.encode(img, 1, 1)).hasSize(6);
+    }
+}
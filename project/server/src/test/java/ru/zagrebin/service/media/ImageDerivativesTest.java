@@ -0,0 +1,101 @@
+package ru.zagrebin.service.media;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Уменьшенные копии: только те ширины, что уже оригинала, с учётом поворота из EXIF.
+ */
+class ImageDerivativesTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void buildsVariantsNarrowerThanOriginal() throws Exception {
+        Path original = dir.resolve("cover.png");
+        ImageIO.write(image(1000, 500, BufferedImage.TYPE_INT_ARGB), "png", original.toFile());
+
+        assertThat(new ImageDerivatives(true, 1, 1).generate(original)).isEqualTo(2);
+
+        assertThat(size(dir.resolve("cover_w720.png"))).containsExactly(720, 360);
+        assertThat(size(dir.resolve("cover_w320.png"))).containsExactly(320, 160);
+        assertThat(dir.resolve("cover_w1280.png")).doesNotExist();
+    }
+
+    @Test
+    void appliesExifOrientation() throws Exception {
+        // в файле 1600×900, но Orientation = 6: показывать повёрнутым на 90°, то есть 900×1600
+        Path original = dir.resolve("photo.jpg");
+        Files.write(original, withOrientation(jpeg(image(1600, 900, BufferedImage.TYPE_INT_RGB)), 6));
+        assertThat(ExifOrientation.read(original)).isEqualTo(6);
+
+        assertThat(new ImageDerivatives(true, 1, 1).generate(original)).isEqualTo(2);
+
+        assertThat(size(dir.resolve("photo_w720.jpg"))).containsExactly(720, 1280);
+        assertThat(size(dir.resolve("photo_w320.jpg"))).containsExactly(320, 569);
+        assertThat(dir.resolve("photo_w1280.jpg")).doesNotExist();
+    }
+
+    @Test
+    void variantPathPicksNearestWidth() {
+        assertThat(ImageVariants.variantPath("posts/a.jpg", 100)).isEqualTo("posts/a_w320.jpg");
+        assertThat(ImageVariants.variantPath("posts/a.jpg", 721)).isEqualTo("posts/a_w1280.jpg");
+        assertThat(ImageVariants.variantPath("posts/a.jpg", 5000)).isEqualTo("posts/a_w1280.jpg");
+        assertThat(ImageVariants.variantPath("posts/a.webp", 320)).isNull();
+        assertThat(ImageVariants.urls("https://cdn.example.com/a.jpg")).isEmpty();
+        assertThat(ImageVariants.urls("/media/a.jpg")).containsEntry(720, "/media/a.jpg?w=720");
+    }
+
+    private static BufferedImage image(int w, int h, int type) {
+        BufferedImage img = new BufferedImage(w, h, type);
+        Graphics2D g = img.createGraphics();
+        g.setColor(Color.ORANGE);
+        g.fillRect(0, 0, w, h);
+        g.setColor(Color.BLUE);
+        g.fillRect(0, 0, w / 2, h / 2);
+        g.dispose();
+        return img;
+    }
+
+    private static byte[] jpeg(BufferedImage img) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(img, "jpeg", out);
+        return out.toByteArray();
+    }
+
+    // APP1 с EXIF (big-endian TIFF, IFD0 из одной записи Orientation) сразу после SOI
+    private static byte[] withOrientation(byte[] jpeg, int orientation) {
+        byte[] exif = {
+                'E', 'x', 'i', 'f', 0, 0,
+                'M', 'M', 0, 42, 0, 0, 0, 8,
+                0, 1,
+                0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, (byte) orientation, 0, 0,
+                0, 0, 0, 0
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(jpeg, 0, 2);
+        out.write(0xFF);
+        out.write(0xE1);
+        out.write((exif.length + 2) >> 8);
+        out.write((exif.length + 2) & 0xFF);
+        out.write(exif, 0, exif.length);
+        out.write(jpeg, 2, jpeg.length - 2);
+        return out.toByteArray();
+    }
+
+    private static int[] size(Path file) throws Exception {
+        BufferedImage img = ImageIO.read(file.toFile());
+        return new int[]{img.getWidth(), img.getHeight()};
+    }
+}
@@ -0,0 +1,233 @@
+package ru.zagrebin.service.media;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.multipart.MultipartFile;
+import ru.zagrebin.service.FileStorageService;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Докачиваемые загрузки: куски строго подряд, проверка смещения и размера, итоговый файл и его SHA-256;
+ * пока кусок читается из сети, параллельный кусок, чистка и отмена его не ждут.
+ */
+class ResumableUploadsTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void chunksAreAppendedInOrderAndStoredOnComplete() throws Exception {
+        StubStorage storage = new StubStorage(dir);
+        ResumableUploads uploads = new ResumableUploads(storage, 60_000);
+        byte[] data = new byte[200_000];
+        new Random(1).nextBytes(data);
+
+        ResumableUploads.Session s = uploads.create("posts/covers", "photo.jpg", data.length);
+        assertThat(uploads.append(s, 0, slice(data, 0, 70_000))).isEqualTo(70_000);
+
+        // повтор уже принятого куска и пропуск вперёд — конфликт с настоящим смещением
+        assertThatThrownBy(() -> uploads.append(s, 0, slice(data, 0, 70_000)))
+                .isInstanceOf(UploadOffsetConflictException.class)
+                .extracting("offset").isEqualTo(70_000L);
+        assertThatThrownBy(() -> uploads.append(s, 100_000, slice(data, 100_000, 200_000)))
+                .isInstanceOf(UploadOffsetConflictException.class);
+        // не всё принято — завершать рано
+        assertThatThrownBy(() -> uploads.complete(s)).isInstanceOf(UploadOffsetConflictException.class);
+
+        uploads.append(s, 70_000, slice(data, 70_000, 200_000));
+        assertThat(uploads.get(s.getId()).getOffset()).isEqualTo(data.length);
+        assertThat(uploads.complete(s)).isEqualTo("/media/stored");
+
+        assertThat(storage.stored).isEqualTo(data);
+        assertThat(storage.sha256).isEqualTo(MessageDigest.getInstance("SHA-256").digest(data));
+        assertThat(storage.filename).isEqualTo("photo.jpg");
+        assertThat(uploads.get(s.getId())).isNull();
+    }
+
+    @Test
+    void chunkBeyondDeclaredSizeIsRejected() throws Exception {
+        ResumableUploads uploads = new ResumableUploads(new StubStorage(dir), 60_000);
+        ResumableUploads.Session s = uploads.create("misc", null, 10);
+        assertThatThrownBy(() -> uploads.append(s, 0, new ByteArrayInputStream(new byte[11])))
+                .isInstanceOf(UploadTooLargeException.class);
+        assertThat(s.getOffset()).isZero();
+    }
+
+    @Test
+    void idleSessionsExpire() throws Exception {
+        ResumableUploads uploads = new ResumableUploads(new StubStorage(dir), -1);
+        ResumableUploads.Session s = uploads.create("misc", null, 10);
+        uploads.expire();
+        assertThat(uploads.get(s.getId())).isNull();
+        try (var files = Files.list(dir)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void chunkInProgressIsNotWaitedFor() throws Exception {
+        ResumableUploads uploads = new ResumableUploads(new StubStorage(dir), -1);
+        ResumableUploads.Session s = uploads.create("misc", null, 100);
+        StalledBody body = new StalledBody(40);
+        CompletableFuture<Long> first = CompletableFuture.supplyAsync(() -> append(uploads, s, 0, body));
+        assertThat(body.sent.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // второй кусок той же сессии — сразу конфликт с уже принятым смещением
+        assertThatThrownBy(() -> uploads.append(s, 0, new ByteArrayInputStream(new byte[10])))
+                .isInstanceOf(UploadOffsetConflictException.class)
+                .extracting("offset").isEqualTo(40L);
+        assertThatThrownBy(() -> uploads.complete(s)).isInstanceOf(UploadOffsetConflictException.class);
+        // чистка не ждёт записи и не трогает сессию, в которую пишут, хотя срок у неё истёк
+        uploads.expire();
+        assertThat(uploads.get(s.getId())).isSameAs(s);
+
+        body.resume.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(80);
+        uploads.expire();
+        assertThat(uploads.get(s.getId())).isNull();
+        try (var files = Files.list(dir)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void abortDuringChunkDeletesFileWhenWriterLetsGo() throws Exception {
+        ResumableUploads uploads = new ResumableUploads(new StubStorage(dir), 60_000);
+        ResumableUploads.Session s = uploads.create("misc", null, 100);
+        StalledBody body = new StalledBody(40);
+        CompletableFuture<Long> first = CompletableFuture.supplyAsync(() -> append(uploads, s, 0, body));
+        assertThat(body.sent.await(5, TimeUnit.SECONDS)).isTrue();
+
+        uploads.abort(s);
+        assertThat(uploads.get(s.getId())).isNull();
+
+        // остаток куска уже не пишется, файл удаляет пишущий поток
+        body.resume.countDown();
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(UploadOffsetConflictException.class);
+        try (var files = Files.list(dir)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    private static long append(ResumableUploads uploads, ResumableUploads.Session s, long offset, InputStream body) {
+        try {
+            return uploads.append(s, offset, body);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Тело куска, которое отдаёт head байт и ждёт resume, как медленный клиент; затем ещё head байт.
+     */
+    private static final class StalledBody extends InputStream {
+        final CountDownLatch sent = new CountDownLatch(1);
+        final CountDownLatch resume = new CountDownLatch(1);
+        private final int head;
+        private int reads;
+
+        StalledBody(int head) {
+            this.head = head;
+        }
+
+        @Override
+        public int read() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            switch (reads++) {
+                case 0:
+                    return head;
+                case 1:
+                    sent.countDown();
+                    try {
+                        resume.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    return head;
+                default:
+                    return -1;
+            }
+        }
+    }
+
+    private static InputStream slice(byte[] data, int from, int to) {
+        return new ByteArrayInputStream(Arrays.copyOfRange(data, from, to));
+    }
+
+    private static final class StubStorage implements FileStorageService {
+        private final Path dir;
+        byte[] stored;
+        byte[] sha256;
+        String filename;
+
+        StubStorage(Path dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        public Path createTempFile() throws IOException {
+            return Files.createTempFile(dir, "upload-", ".part");
+        }
+
+        @Override
+        public String store(Path tempFile, String originalFilename, String targetSubdir, byte[] sha256) {
+            try {
+                stored = Files.readAllBytes(tempFile);
+                Files.delete(tempFile);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            this.sha256 = sha256;
+            this.filename = originalFilename;
+            return "/media/stored";
+        }
+
+        @Override
+        public String store(MultipartFile file, String targetSubdir) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String store(InputStream body, String originalFilename, String targetSubdir, long maxBytes) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void attach(String fileUrl) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean delete(String fileUrl) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Path resolveUrl(String fileUrl) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Path resolvePath(String relativePath) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package ru.zagrebin.service.media;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Копии по запросу: одно построение на одновременные запросы, вытеснение по объёму, нормализация параметров,
+ * оригинал как точный ответ, когда копия не нужна.
+ */
+class VariantCacheTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void concurrentRequestsShareOneResize() throws Exception {
+        Path original = image("a.jpg", 1200, 800);
+        VariantCache cache = new VariantCache(dir.toString(), Long.MAX_VALUE, 2, 5000);
+
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Path>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                return cache.get(original, "a.jpg", 300, 70);
+            }));
+        }
+        start.countDown();
+        Path first = results.get(0).get();
+        for (Future<Path> f : results) assertThat(f.get()).isEqualTo(first);
+        pool.shutdown();
+
+        assertThat(cached()).hasSize(1);
+        BufferedImage variant = ImageIO.read(first.toFile());
+        assertThat(variant.getWidth()).isEqualTo(320);
+        assertThat(variant.getHeight()).isEqualTo(213);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() throws Exception {
+        Path original = image("b.png", 1000, 1000);
+        VariantCache probe = new VariantCache(dir.resolve("probe").toString(), Long.MAX_VALUE, 1, 5000);
+        long budget = Files.size(probe.get(original, "b.png", 64, null))
+                + Files.size(probe.get(original, "b.png", 128, null));
+
+        // помещаются копии 64 и 128 (96 меньше 128), но не все три
+        VariantCache cache = new VariantCache(dir.toString(), budget, 1, 5000);
+        Path w64 = cache.get(original, "b.png", 64, null);
+        Path w96 = cache.get(original, "b.png", 96, null);
+        cache.get(original, "b.png", 64, null);
+        Path w128 = cache.get(original, "b.png", 128, null);
+
+        assertThat(w64).exists();
+        assertThat(w96).doesNotExist();
+        assertThat(w128).exists();
+    }
+
+    @Test
+    void noVariantWiderThanOriginal() throws Exception {
+        Path original = image("c.jpg", 200, 100);
+        VariantCache cache = new VariantCache(dir.toString(), Long.MAX_VALUE, 1, 5000);
+        assertThat(cache.get(original, "c.jpg", 640, null)).isEqualTo(original);
+        assertThat(cache.get(original, "c.webp", 64, null)).isEqualTo(original);
+        assertThat(cached()).isEmpty();
+    }
+
+    @Test
+    void originalNotWiderIsAnsweredFromHeaderWithoutResizeSlot() throws Exception {
+        Path original = image("e.jpg", 200, 100);
+        // мест для построения нет: будь нужно декодирование, запрос ждал бы wait-ms и получал null
+        VariantCache cache = new VariantCache(dir.toString(), Long.MAX_VALUE, 0, 5000);
+
+        long began = System.nanoTime();
+        assertThat(cache.get(original, "e.jpg", 200, null)).isEqualTo(original);
+        assertThat(cache.get(original, "e.jpg", 1000, 50)).isEqualTo(original);
+        assertThat(System.nanoTime() - began).isLessThan(2_000_000_000L);
+
+        // ширина запомнена: заголовок второй раз не читается (в жизни оригиналы не меняются)
+        Files.write(original, new byte[]{1, 2, 3});
+        assertThat(cache.get(original, "e.jpg", 640, null)).isEqualTo(original);
+    }
+
+    @Test
+    void busyResizesServeOriginalWithinWait() throws Exception {
+        Path original = image("d.jpg", 1200, 800);
+        // ни одного свободного места для построения: каждый запрос ждёт не дольше wait-ms
+        VariantCache cache = new VariantCache(dir.toString(), Long.MAX_VALUE, 0, 100);
+
+        int threads = 4;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Path>> results = new ArrayList<>();
+        long began = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                return cache.get(original, "d.jpg", 300, null);
+            }));
+        }
+        start.countDown();
+        for (Future<Path> f : results) assertThat(f.get()).isNull();
+        pool.shutdown();
+
+        assertThat(System.nanoTime() - began).isLessThan(2_000_000_000L);
+        assertThat(cached()).isEmpty();
+    }
+
+    @Test
+    void parametersAreRounded() {
+        assertThat(VariantCache.normalizeWidth(1)).isEqualTo(32);
+        assertThat(VariantCache.normalizeWidth(300)).isEqualTo(320);
+        assertThat(VariantCache.normalizeWidth(100_000)).isEqualTo(VariantCache.MAX_WIDTH);
+        assertThat(VariantCache.normalizeQuality(null)).isEqualTo(85);
+        assertThat(VariantCache.normalizeQuality(71)).isEqualTo(75);
+        assertThat(VariantCache.normalizeQuality(5)).isEqualTo(30);
+    }
+
+    private Path image(String name, int w, int h) throws Exception {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < h; y++) for (int x = 0; x < w; x++) img.setRGB(x, y, (x * 31 + y * 17) & 0xFFFFFF);
+        Path file = dir.resolve(name);
+        ImageIO.write(img, name.endsWith(".png") ? "png" : "jpeg", file.toFile());
+        return file;
+    }
+
+    private List<Path> cached() throws Exception {
+        try (Stream<Path> files = Files.list(dir.resolve(VariantCache.CACHE_DIR))) {
+            return files.filter(f -> !f.getFileName().toString().startsWith(".")).toList();
+        }
+    }
+}
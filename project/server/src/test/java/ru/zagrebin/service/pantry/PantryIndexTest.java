@@ -0,0 +1,116 @@
+package ru.zagrebin.service.pantry;
+
+import org.junit.jupiter.api.Test;
+import ru.zagrebin.repository.PostRepository;
+import ru.zagrebin.repository.projection.PostIngredientPairView;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Битмап-запросы PantryIndex сверяются с перебором по тем же случайным рецептам;
+ * пересборка из БД не затирает изменения, пришедшие во время неё.
+ */
+class PantryIndexTest {
+
+    private static final int POSTS = 2000;
+    private static final int INGREDIENTS = 40;
+
+    @Test
+    void bitmapQueriesMatchBruteForce() {
+        Random rnd = new Random(42);
+        PantryIndex index = new PantryIndex(null);
+        Map<Long, Set<Long>> recipes = new HashMap<>();
+        for (long postId = 1; postId <= POSTS; postId++) {
+            int size = 1 + rnd.nextInt(12);
+            Set<Long> ings = new HashSet<>();
+            while (ings.size() < size) ings.add(1L + rnd.nextInt(INGREDIENTS));
+            recipes.put(postId, ings);
+            index.putAfterCommit(postId, ings); // вне транзакции применяется сразу
+        }
+        // изменение и удаление поверх загруженного индекса
+        recipes.put(7L, Set.of(1L, 2L));
+        index.putAfterCommit(7L, recipes.get(7L));
+        recipes.remove(8L);
+        index.removeAfterCommit(8L);
+
+        for (int q = 0; q < 50; q++) {
+            Set<Long> pantry = new HashSet<>();
+            int n = 1 + rnd.nextInt(20);
+            while (pantry.size() < n) pantry.add(1L + rnd.nextInt(INGREDIENTS));
+            int maxMissing = rnd.nextInt(4);
+
+            assertThat(index.find(PantryMode.COVERED, pantry, 0, null, POSTS))
+                    .isEqualTo(expected(recipes, r -> pantry.containsAll(r)));
+            assertThat(index.find(PantryMode.MISSING, pantry, maxMissing, null, POSTS))
+                    .isEqualTo(expected(recipes, r -> {
+                        long hits = r.stream().filter(pantry::contains).count();
+                        return hits > 0 && r.size() - hits <= maxMissing;
+                    }));
+            Set<Long> wanted = pantry.stream().limit(2).collect(Collectors.toSet());
+            assertThat(index.find(PantryMode.CONTAINS, wanted, 0, null, POSTS))
+                    .isEqualTo(expected(recipes, r -> r.containsAll(wanted)));
+        }
+    }
+
+    @Test
+    void pagesAreDisjointAndDescending() {
+        PantryIndex index = new PantryIndex(null);
+        for (long postId = 1; postId <= 25; postId++) {
+            index.putAfterCommit(postId, List.of(1L));
+        }
+        List<Long> first = index.find(PantryMode.COVERED, List.of(1L), 0, null, 10);
+        List<Long> second = index.find(PantryMode.COVERED, List.of(1L), 0, first.get(first.size() - 1), 10);
+        assertThat(first).startsWith(25L).hasSize(10);
+        assertThat(second).startsWith(15L).hasSize(10).doesNotContainAnyElementsOf(first);
+    }
+
+    @Test
+    void rebuildKeepsWritesMadeWhileLoading() {
+        PantryIndex[] holder = new PantryIndex[1];
+        Supplier<List<PostIngredientPairView>> rows = () -> {
+            // пока идёт запрос, пост 2 сняли с публикации, пост 3 изменили, пост 4 опубликовали
+            holder[0].removeAfterCommit(2L);
+            holder[0].putAfterCommit(3L, List.of(10L));
+            holder[0].putAfterCommit(4L, List.of(10L, 11L));
+            return List.of(pair(1, 10), pair(2, 10), pair(3, 20));
+        };
+        PantryIndex index = new PantryIndex(posts(rows));
+        holder[0] = index;
+        // устаревшая запись, которой в БД уже нет
+        index.putAfterCommit(99L, List.of(10L));
+
+        index.rebuild();
+
+        assertThat(index.find(PantryMode.CONTAINS, List.of(10L), 0, null, 10)).containsExactly(4L, 3L, 1L);
+        assertThat(index.find(PantryMode.CONTAINS, List.of(20L), 0, null, 10)).isEmpty();
+        assertThat(index.find(PantryMode.COVERED, List.of(10L, 11L), 0, null, 10)).containsExactly(4L, 3L, 1L);
+    }
+
+    private static PostIngredientPairView pair(long postId, long ingredientId) {
+        return new PostIngredientPairView() {
+            @Override public Long getPostId() { return postId; }
+            @Override public Long getIngredientId() { return ingredientId; }
+        };
+    }
+
+    private static PostRepository posts(Supplier<List<PostIngredientPairView>> rows) {
+        return (PostRepository) Proxy.newProxyInstance(PostRepository.class.getClassLoader(),
+                new Class<?>[]{PostRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findPublishedIngredientPairs")) return rows.get();
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static List<Long> expected(Map<Long, Set<Long>> recipes, java.util.function.Predicate<Set<Long>> match) {
+        return recipes.entrySet().stream()
+                .filter(e -> match.test(e.getValue()))
+                .map(Map.Entry::getKey)
+                .sorted(Comparator.reverseOrder())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,171 @@
+package ru.zagrebin.service.related;
+
+import org.junit.jupiter.api.Test;
+import ru.zagrebin.repository.PostRepository;
+import ru.zagrebin.repository.projection.PostIngredientPairView;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Похожие рецепты сверяются с перебором точного Жаккара по тем же случайным рецептам;
+ * из огромных корзин читается одна и та же выборка.
+ */
+class RelatedRecipesIndexTest {
+
+    private static final int POSTS = 2000;
+    private static final int INGREDIENTS = 60;
+    private static final int LIMIT = 10;
+    // при 16 полосах по 2 строки пара с таким сходством не найдётся с вероятностью ~1e-5
+    private static final double SURE = 0.7;
+
+    @Test
+    void topKMatchesBruteForceJaccard() {
+        Random rnd = new Random(7);
+        RelatedRecipesIndex index = new RelatedRecipesIndex(null, 16, 2, 2000, 8000);
+        Map<Long, long[]> recipes = new HashMap<>();
+        for (long postId = 1; postId <= POSTS; postId++) {
+            long[] ings = randomRecipe(rnd);
+            // каждый пятый — вариация одного из предыдущих, иначе сильно похожих пар почти нет
+            if (postId > 1 && postId % 5 == 0) ings = variation(rnd, recipes.get(1 + (long) rnd.nextInt((int) postId - 1)));
+            recipes.put(postId, ings);
+            index.putAfterCommit(postId, boxed(ings)); // вне транзакции применяется сразу
+        }
+        // изменение и удаление поверх загруженного индекса
+        recipes.put(7L, recipes.get(10L).clone());
+        index.putAfterCommit(7L, boxed(recipes.get(7L)));
+        recipes.remove(8L);
+        index.removeAfterCommit(8L);
+
+        int checkedSure = 0;
+        for (long postId = 1; postId <= POSTS; postId += 13) {
+            if (!recipes.containsKey(postId)) continue;
+            List<Long> actual = index.related(postId, LIMIT);
+            List<Long> expected = bruteForce(recipes, postId);
+
+            // порядок результата — тот же, что у перебора: сходство по убыванию, при равенстве новее
+            long[] own = recipes.get(postId);
+            for (int i = 1; i < actual.size(); i++) {
+                double prev = RelatedRecipesIndex.jaccard(own, recipes.get(actual.get(i - 1)));
+                double cur = RelatedRecipesIndex.jaccard(own, recipes.get(actual.get(i)));
+                assertThat(prev > cur || (prev == cur && actual.get(i - 1) > actual.get(i))).isTrue();
+            }
+            // заведомо похожие из top-k перебора найдены все и стоят первыми
+            List<Long> sure = expected.stream()
+                    .filter(id -> RelatedRecipesIndex.jaccard(own, recipes.get(id)) >= SURE)
+                    .toList();
+            assertThat(actual.size()).isGreaterThanOrEqualTo(sure.size());
+            assertThat(actual.subList(0, sure.size())).isEqualTo(sure);
+            checkedSure += sure.size();
+        }
+        assertThat(checkedSure).isGreaterThan(20);
+        assertThat(index.related(8L, LIMIT)).isEmpty();
+        assertThat(index.related(10L, LIMIT)).startsWith(7L);
+    }
+
+    @Test
+    void candidateCapPrefersMoreCollidingBandsOverOlderPosts() {
+        // старые посты делят с запросом часть полос, новый — все; лимит кандидатов много меньше их числа
+        RelatedRecipesIndex index = new RelatedRecipesIndex(null, 16, 2, 3, 8000);
+        List<Long> query = List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L);
+        for (long postId = 1; postId <= 200; postId++) {
+            index.putAfterCommit(postId, List.of(1L, 2L, 3L, 4L, 5L, 6L, 1000 + postId, 2000 + postId));
+        }
+        index.putAfterCommit(1000L, query);
+        index.putAfterCommit(1001L, query);
+
+        assertThat(index.related(1001L, 1)).containsExactly(1000L);
+    }
+
+    @Test
+    void hugeBucketsAreReadUpToScanLimitFromTheSameSample() {
+        // 3000 одинаковых рецептов: все 16 корзин запроса — по 3000 постов, читается по 100 из каждой
+        RelatedRecipesIndex index = new RelatedRecipesIndex(null, 16, 2, 2000, 100);
+        for (long postId = 1; postId <= 3000; postId++) {
+            index.putAfterCommit(postId, List.of(1L, 2L, 3L));
+        }
+        index.removeAfterCommit(500L);
+
+        // выборка — первые 100 по хэшу id, одна для всех корзин; среди равных по сходству — новее выше
+        List<Long> sample = new ArrayList<>();
+        for (long postId = 1; postId <= 3000; postId++) {
+            if (postId != 500) sample.add(postId);
+        }
+        sample.sort(Comparator.comparingLong(RelatedRecipesIndex::rank));
+        long query = sample.get(0);
+        List<Long> expected = sample.subList(1, 100).stream().sorted(Comparator.reverseOrder()).limit(LIMIT).toList();
+
+        assertThat(index.related(query, LIMIT)).isEqualTo(expected);
+    }
+
+    @Test
+    void rebuildReplacesStateAndKeepsWritesMadeWhileLoading() {
+        RelatedRecipesIndex[] holder = new RelatedRecipesIndex[1];
+        Supplier<List<PostIngredientPairView>> rows = () -> {
+            // пока идёт запрос, пост 2 сняли с публикации, а пост 3 изменили
+            holder[0].removeAfterCommit(2L);
+            holder[0].putAfterCommit(3L, List.of(10L, 11L, 12L));
+            return List.of(pair(1, 10), pair(1, 11), pair(1, 12), pair(2, 10), pair(2, 11), pair(2, 12),
+                    pair(3, 20), pair(3, 21), pair(3, 22));
+        };
+        RelatedRecipesIndex index = new RelatedRecipesIndex(posts(rows), 16, 2, 2000, 8000);
+        holder[0] = index;
+        // устаревшая запись, которой в БД уже нет
+        index.putAfterCommit(99L, List.of(10L, 11L, 12L));
+
+        index.rebuild();
+
+        assertThat(index.related(1L, LIMIT)).containsExactly(3L);
+        assertThat(index.related(2L, LIMIT)).isEmpty();
+        assertThat(index.related(99L, LIMIT)).isEmpty();
+    }
+
+    private static List<Long> bruteForce(Map<Long, long[]> recipes, long postId) {
+        long[] own = recipes.get(postId);
+        return recipes.keySet().stream()
+                .filter(id -> id != postId && RelatedRecipesIndex.jaccard(own, recipes.get(id)) > 0)
+                .sorted(Comparator.<Long>comparingDouble(id -> RelatedRecipesIndex.jaccard(own, recipes.get(id)))
+                        .reversed()
+                        .thenComparing(Comparator.reverseOrder()))
+                .limit(LIMIT)
+                .toList();
+    }
+
+    private static long[] randomRecipe(Random rnd) {
+        int size = 3 + rnd.nextInt(10);
+        Set<Long> ings = new HashSet<>();
+        while (ings.size() < size) ings.add(1L + rnd.nextInt(INGREDIENTS));
+        return ings.stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    // тот же рецепт с одним ингредиентом заменённым или добавленным
+    private static long[] variation(Random rnd, long[] base) {
+        Set<Long> ings = new HashSet<>();
+        for (long x : base) ings.add(x);
+        if (rnd.nextBoolean() && ings.size() > 3) ings.remove(base[rnd.nextInt(base.length)]);
+        ings.add(1L + rnd.nextInt(INGREDIENTS));
+        return ings.stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    private static List<Long> boxed(long[] ids) {
+        return Arrays.stream(ids).boxed().toList();
+    }
+
+    private static PostIngredientPairView pair(long postId, long ingredientId) {
+        return new PostIngredientPairView() {
+            @Override public Long getPostId() { return postId; }
+            @Override public Long getIngredientId() { return ingredientId; }
+        };
+    }
+
+    private static PostRepository posts(Supplier<List<PostIngredientPairView>> rows) {
+        return (PostRepository) Proxy.newProxyInstance(PostRepository.class.getClassLoader(),
+                new Class<?>[]{PostRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findPublishedIngredientPairs")) return rows.get();
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,368 @@
+package ru.zagrebin.service.search;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import ru.zagrebin.repository.PostRepository;
+import ru.zagrebin.repository.projection.PostSearchDocView;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Префиксные запросы PostSearchIndex: кто находится, порядок, изменение и удаление поста, слова длиннее
+ * граммы; пересборка не затирает изменения, пришедшие во время неё.
+ * Бенчмарк на 1M постов запускается отдельно: mvn test -Dtest=PostSearchIndexTest -Dbenchmark=true
+ */
+class PostSearchIndexTest {
+
+    @Test
+    void everyQueryWordMatchesAsPrefix() {
+        PostSearchIndex index = new PostSearchIndex(null, 2, 12);
+        index.putAfterCommit(1L, "Картошка с фаршем", "Сытно и быстро", List.of("картофель", "фарш говяжий"));
+        index.putAfterCommit(2L, "Котлеты из фарша", "Домашние", List.of("фарш", "лук"));
+        index.putAfterCommit(3L, "Салат с тунцом", "Лёгкий ужин", List.of("тунец", "огурец"));
+
+        assertThat(ids(index.suggest("фар", 10))).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(ids(index.suggest("фар кот", 10))).containsExactly(2L);
+        assertThat(ids(index.suggest("ЛЕГК", 10))).containsExactly(3L); // регистр и ё
+        assertThat(index.suggest("фарш рыба", 10)).isEmpty();
+        assertThat(index.suggest("к", 10)).isEmpty(); // короче min-gram
+
+        // слово, совпавшее целиком, выше префикса: «фарш» есть у 1 и 2, у 4 только «фаршированные»
+        index.putAfterCommit(4L, "Фаршированные перцы", null, List.of("перец"));
+        List<Long> farsh = ids(index.suggest("фарш", 10));
+        assertThat(farsh).containsExactlyInAnyOrder(1L, 2L, 4L);
+        assertThat(farsh.get(farsh.size() - 1)).isEqualTo(4L);
+
+        index.putAfterCommit(2L, "Тефтели", "Домашние", List.of("лук"));
+        index.removeAfterCommit(3L);
+        assertThat(ids(index.suggest("фар", 10))).containsExactlyInAnyOrder(1L, 4L);
+        assertThat(ids(index.suggest("теф", 10))).containsExactly(2L);
+        assertThat(index.suggest("тун", 10)).isEmpty();
+    }
+
+    @Test
+    void wordLongerThanGramMatchesOnlyItself() {
+        // у обоих слов общие первые 12 букв — одна грамма
+        PostSearchIndex index = new PostSearchIndex(null, 2, 12);
+        index.putAfterCommit(1L, "Суперзапеченный картофель", null, List.of());
+        index.putAfterCommit(2L, "Суперзапеченная тыква", null, List.of());
+        index.putAfterCommit(3L, "Суперзапеченная суперзапеченная тыква", null, List.of());
+
+        assertThat(ids(index.suggest("суперзапеченный", 10))).containsExactly(1L);
+        assertThat(ids(index.suggest("суперзапеченная", 10))).containsExactly(3L, 2L);
+        assertThat(ids(index.suggest("суперзапеченн", 10))).containsExactlyInAnyOrder(1L, 2L, 3L);
+        assertThat(index.suggest("суперзапеченные", 10)).isEmpty();
+        assertThat(index.suggest("суперзапеченный тыква", 10)).isEmpty();
+
+        index.putAfterCommit(1L, "Тыква", null, List.of());
+        assertThat(index.suggest("суперзапеченный", 10)).isEmpty();
+    }
+
+    @Test
+    void rebuildKeepsWritesMadeWhileLoading() {
+        PostSearchIndex[] holder = new PostSearchIndex[1];
+        Supplier<List<PostSearchDocView>> rows = () -> {
+            // пока идёт запрос, пост 2 сняли с публикации, пост 3 переименовали, пост 4 опубликовали
+            holder[0].removeAfterCommit(2L);
+            holder[0].putAfterCommit(3L, "Борщ", null, List.of("свекла"));
+            holder[0].putAfterCommit(4L, "Солянка сборная", null, List.of());
+            return List.of(doc(1, "Суп гороховый", "горох"), doc(2, "Суп куриный", "курица"), doc(3, "Суп рыбный", null));
+        };
+        PostSearchIndex index = new PostSearchIndex(posts(rows), 2, 12);
+        holder[0] = index;
+        // устаревшая запись, которой в БД уже нет
+        index.putAfterCommit(99L, "Суп старый", null, List.of());
+
+        index.rebuild();
+
+        assertThat(ids(index.suggest("суп", 10))).containsExactly(1L);
+        assertThat(ids(index.suggest("свек", 10))).containsExactly(3L);
+        assertThat(ids(index.suggest("сборн", 10))).containsExactly(4L);
+        assertThat(ids(index.suggest("гор", 10))).containsExactly(1L);
+        assertThat(index.suggest("кур", 10)).isEmpty();
+    }
+
+    @Test
+    void limitKeepsBestHits() {
+        PostSearchIndex index = new PostSearchIndex(null, 2, 12);
+        for (long id = 1; id <= 50; id++) {
+            index.putAfterCommit(id, id % 10 == 0 ? "Суп суп" : "Суп", null, List.of());
+        }
+        List<PostSearchIndex.Hit> top = index.suggest("суп", 5);
+        assertThat(ids(top)).containsExactly(50L, 40L, 30L, 20L, 10L);
+    }
+
+    @Test
+    void earlyTerminationKeepsExactTopK() {
+        // частые префиксы дают списки длиннее порога обхода по вкладу; при limit больше числа совпадений
+        // останова нет, и первые 10 полного ранжирования должны совпасть с ответом на limit = 10
+        Random rnd = new Random(11);
+        String[] vocabulary = {"суп", "сырники", "салат", "соус", "сметана", "пирог", "паста", "плов", "омлет", "окрошка"};
+        PostSearchIndex index = new PostSearchIndex(null, 2, 12);
+        for (long id = 1; id <= 20_000; id++) {
+            index.putAfterCommit(id, words(rnd, vocabulary, 1 + rnd.nextInt(4)), words(rnd, vocabulary, rnd.nextInt(12)),
+                    List.of(vocabulary[rnd.nextInt(vocabulary.length)]));
+        }
+        for (String q : List.of("с", "су", "суп", "са", "п", "пл", "о", "с п", "сы ом", "соус паста")) {
+            List<Long> full = ids(index.suggest(q, 100_000));
+            assertThat(ids(index.suggest(q, 10))).as(q).isEqualTo(full.subList(0, Math.min(10, full.size())));
+        }
+    }
+
+    @Test
+    void suggestMatchesBruteForceBm25() {
+        // 12 000 документов из словаря в 40 слов: у частых префиксов списки длиннее IMPACT_ORDER_MIN_SIZE
+        // (обход по вкладу), у редких слов — короче (обход по id); длины часто совпадают — много равных score
+        Random rnd = new Random(5);
+        String[] vocabulary = new String[40];
+        for (int i = 0; i < vocabulary.length; i++) {
+            StringBuilder w = new StringBuilder();
+            int len = 3 + rnd.nextInt(6);
+            for (int j = 0; j < len; j++) w.append((char) ('а' + rnd.nextInt(6)));
+            vocabulary[i] = w.toString();
+        }
+        // частые слова длиннее граммы с общими первыми 12 буквами и само 12-буквенное слово
+        vocabulary[0] = "абвгдеабвгдеа";
+        vocabulary[1] = "абвгдеабвгдебв";
+        vocabulary[2] = "абвгдеабвгде";
+        vocabulary[3] = "абвгдеабвгдеавг";
+        PostSearchIndex index = new PostSearchIndex(null, 2, 12);
+        Map<Long, String[]> docs = new HashMap<>();
+        for (long id = 1; id <= 12_000; id++) {
+            String[] fields = {words(rnd, vocabulary, 1 + rnd.nextInt(2)), words(rnd, vocabulary, rnd.nextInt(3)),
+                    words(rnd, vocabulary, rnd.nextInt(2))};
+            docs.put(id, fields);
+            index.putAfterCommit(id, fields[0], fields[1], List.of(fields[2]));
+        }
+        for (long id = 1; id <= 12_000; id += 97) {
+            docs.remove(id);
+            index.removeAfterCommit(id);
+        }
+        // правки после построения порядков по вкладу: часть доходит до перестройки, часть остаётся досчётом
+        for (int i = 0; i < 400; i++) {
+            long id = 1 + rnd.nextInt(12_000);
+            String[] fields = {words(rnd, vocabulary, 1 + rnd.nextInt(3)), words(rnd, vocabulary, rnd.nextInt(4)),
+                    words(rnd, vocabulary, rnd.nextInt(2))};
+            docs.put(id, fields);
+            index.putAfterCommit(id, fields[0], fields[1], List.of(fields[2]));
+        }
+
+        Bm25 bm25 = new Bm25(docs);
+        for (int q = 0; q < 300; q++) {
+            StringJoiner query = new StringJoiner(" ");
+            int words = 1 + rnd.nextInt(3);
+            for (int i = 0; i < words; i++) {
+                String w = vocabulary[zipf(rnd, vocabulary.length)];
+                query.add(w.substring(0, 2 + rnd.nextInt(w.length() - 1)));
+            }
+            int limit = 1 + rnd.nextInt(20);
+            List<PostSearchIndex.Hit> actual = index.suggest(query.toString(), limit);
+            List<double[]> expected = bm25.top(query.toString(), limit); // {postId, score}
+
+            // эталон считает в том же порядке операций, поэтому равные score равны точно и порядок
+            // при равенстве (новее выше) проверяется вместе с составом top-k
+            assertThat(ids(actual)).as(query.toString())
+                    .isEqualTo(expected.stream().map(h -> (long) h[0]).collect(Collectors.toList()));
+            for (int i = 0; i < actual.size(); i++) {
+                assertThat(actual.get(i).getScore()).as(query + " #" + i).isCloseTo(expected.get(i)[1], within(1e-9));
+            }
+        }
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void prefixQueriesOnMillionPosts() {
+        int posts = Integer.getInteger("benchmark.posts", 1_000_000);
+        Random rnd = new Random(3);
+        String[] vocabulary = new String[20_000];
+        for (int i = 0; i < vocabulary.length; i++) {
+            StringBuilder w = new StringBuilder();
+            int len = 4 + rnd.nextInt(8);
+            for (int j = 0; j < len; j++) w.append((char) ('а' + rnd.nextInt(32)));
+            vocabulary[i] = w.toString();
+        }
+        // строки выборки создаются при обходе: в памяти одновременно только индекс
+        String separator = String.valueOf((char) 31);
+        List<PostSearchDocView> rows = new AbstractList<>() {
+            @Override
+            public PostSearchDocView get(int i) {
+                Random r = new Random(i);
+                String title = words(r, vocabulary, 4);
+                String excerpt = words(r, vocabulary, 10);
+                String names = String.join(separator, words(r, vocabulary, 1), words(r, vocabulary, 1), words(r, vocabulary, 1));
+                return new PostSearchDocView() {
+                    @Override public Long getId() { return i + 1L; }
+                    @Override public String getTitle() { return title; }
+                    @Override public String getExcerpt() { return excerpt; }
+                    @Override public String getIngredientNames() { return names; }
+                };
+            }
+
+            @Override
+            public int size() {
+                return posts;
+            }
+        };
+        // загрузка — как при старте, затем правки постов после неё: часть изменений ждёт слияния в порядки по вкладу
+        PostSearchIndex index = new PostSearchIndex(posts(() -> rows), 2, 12);
+        long buildStart = System.nanoTime();
+        index.rebuild();
+        long buildMs = (System.nanoTime() - buildStart) / 1_000_000;
+        int updates = 2_000;
+        long updateStart = System.nanoTime();
+        for (int i = 0; i < updates; i++) {
+            index.putAfterCommit((long) (1 + rnd.nextInt(posts)), words(rnd, vocabulary, 4), words(rnd, vocabulary, 10),
+                    List.of(words(rnd, vocabulary, 1), words(rnd, vocabulary, 1), words(rnd, vocabulary, 1)));
+        }
+        double updateMs = (System.nanoTime() - updateStart) / 1e6 / updates;
+
+        int warmup = 2000;
+        int runs = 20_000;
+        long[] nanos = new long[runs];
+        long sink = 0;
+        for (int q = 0; q < warmup + runs; q++) {
+            String first = vocabulary[zipf(rnd, vocabulary.length)];
+            String query = rnd.nextBoolean()
+                    ? first.substring(0, 3 + rnd.nextInt(first.length() - 3))
+                    : first + " " + vocabulary[zipf(rnd, vocabulary.length)].substring(0, 3);
+            long start = System.nanoTime();
+            List<PostSearchIndex.Hit> hits = index.suggest(query, 10);
+            long elapsed = System.nanoTime() - start;
+            sink += hits.size();
+            if (q >= warmup) nanos[q - warmup] = elapsed;
+        }
+        Arrays.sort(nanos);
+        System.out.printf("suggest, %d posts (built in %d ms, %.3f ms per update), %d queries: p50=%.3f ms, p99=%.3f ms, "
+                        + "max=%.3f ms (sink %d)%n", posts, buildMs, updateMs, runs, nanos[runs / 2] / 1e6,
+                nanos[runs * 99 / 100] / 1e6, nanos[runs - 1] / 1e6, sink);
+    }
+
+    /**
+     * Эталон: BM25 по определению из описания PostSearchIndex, перебором всех документов.
+     */
+    private static final class Bm25 {
+        private static final int[] WEIGHTS = {3, 1, 2}; // заголовок, анонс, ингредиенты
+        private static final int MAX_GRAM = 12;
+
+        private final Map<Long, List<List<String>>> fields = new HashMap<>();
+        private final Map<Long, Integer> lengths = new HashMap<>();
+        // грамма -> {df префикса, df целого слова}
+        private final Map<String, int[]> dfs = new HashMap<>();
+        private final double avgLength;
+
+        Bm25(Map<Long, String[]> docs) {
+            long total = 0;
+            for (Map.Entry<Long, String[]> e : docs.entrySet()) {
+                List<List<String>> tokens = new ArrayList<>();
+                int length = 0;
+                for (int f = 0; f < 3; f++) {
+                    List<String> t = tokens(e.getValue()[f]);
+                    tokens.add(t);
+                    length += t.size() * WEIGHTS[f];
+                }
+                fields.put(e.getKey(), tokens);
+                lengths.put(e.getKey(), Math.max(length, 1));
+                total += Math.max(length, 1);
+            }
+            avgLength = fields.isEmpty() ? 1 : (double) total / fields.size();
+        }
+
+        List<double[]> top(String query, int limit) {
+            return fields.keySet().stream()
+                    .map(id -> new double[]{id, score(query, id)})
+                    .filter(h -> !Double.isNaN(h[1]))
+                    .sorted((a, b) -> a[1] != b[1] ? Double.compare(b[1], a[1]) : Double.compare(b[0], a[0]))
+                    .limit(limit)
+                    .collect(Collectors.toList());
+        }
+
+        // NaN — какое-то слово запроса не начинает ни одного слова документа;
+        // у слова длиннее граммы tf — по самому слову, а df (и idf целого слова) — по грамме
+        double score(String query, long id) {
+            double norm = 1.2 * (1 - 0.75 + 0.75 * lengths.get(id) / avgLength);
+            double score = 0;
+            for (String token : tokens(query)) {
+                boolean longToken = token.length() > MAX_GRAM;
+                String gram = longToken ? token.substring(0, MAX_GRAM) : token;
+                int[] f = freqs(id, token);
+                if (f[0] == 0) return Double.NaN;
+                int[] df = dfs.computeIfAbsent(gram, g -> {
+                    int[] d = new int[2];
+                    for (Long other : fields.keySet()) {
+                        int[] o = freqs(other, g);
+                        if (o[0] > 0) d[0]++;
+                        if (o[1] > 0) d[1]++;
+                    }
+                    return d;
+                });
+                score += idf(df[0]) * f[0] * (1.2 + 1) / (f[0] + norm);
+                if (f[1] > 0) score += idf(longToken ? df[0] : df[1]) * f[1] * (1.2 + 1) / (f[1] + norm);
+            }
+            return score;
+        }
+
+        // {взвешенное число слов с префиксом gram, взвешенное число слов, равных gram}, не больше 127
+        private int[] freqs(long id, String gram) {
+            int prefix = 0, exact = 0;
+            List<List<String>> tokens = fields.get(id);
+            for (int f = 0; f < 3; f++) {
+                for (String t : tokens.get(f)) {
+                    if (t.startsWith(gram)) prefix += WEIGHTS[f];
+                    if (t.equals(gram)) exact += WEIGHTS[f];
+                }
+            }
+            return new int[]{Math.min(prefix, 127), Math.min(exact, 127)};
+        }
+
+        private double idf(int df) {
+            return Math.log(1 + (fields.size() - df + 0.5) / (df + 0.5));
+        }
+
+        private static List<String> tokens(String text) {
+            List<String> out = new ArrayList<>();
+            if (text == null) return out;
+            for (String t : text.toLowerCase(Locale.ROOT).replace('ё', 'е').split("[^\\p{L}\\p{Nd}]+")) {
+                if (t.length() >= 2) out.add(t);
+            }
+            return out;
+        }
+    }
+
+    private static PostSearchDocView doc(long id, String title, String ingredients) {
+        return new PostSearchDocView() {
+            @Override public Long getId() { return id; }
+            @Override public String getTitle() { return title; }
+            @Override public String getExcerpt() { return null; }
+            @Override public String getIngredientNames() { return ingredients; }
+        };
+    }
+
+    private static PostRepository posts(Supplier<List<PostSearchDocView>> rows) {
+        return (PostRepository) Proxy.newProxyInstance(PostRepository.class.getClassLoader(),
+                new Class<?>[]{PostRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findPublishedSearchDocs")) return rows.get();
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static List<Long> ids(List<PostSearchIndex.Hit> hits) {
+        return hits.stream().map(PostSearchIndex.Hit::getPostId).collect(Collectors.toList());
+    }
+
+    private static String words(Random rnd, String[] vocabulary, int n) {
+        StringJoiner joiner = new StringJoiner(" ");
+        for (int i = 0; i < n; i++) joiner.add(vocabulary[zipf(rnd, vocabulary.length)]);
+        return joiner.toString();
+    }
+
+    // грубое приближение Ципфа: частые слова встречаются заметно чаще редких
+    private static int zipf(Random rnd, int n) {
+        return (int) Math.min(n - 1, Math.floor(Math.pow(n, rnd.nextDouble())) - 1);
+    }
+}
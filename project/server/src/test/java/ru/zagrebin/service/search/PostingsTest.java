@@ -0,0 +1,54 @@
+package ru.zagrebin.service.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Порядок обхода по вкладу после слияния изменений совпадает с построенным заново по тому же списку.
+ */
+class PostingsTest {
+
+    @Test
+    void mergedImpactOrderEqualsFullBuild() {
+        Random rnd = new Random(7);
+        int[] lengths = new int[5000];
+        Postings p = new Postings("су");
+        for (int doc = 1; doc < 3000; doc++) {
+            lengths[doc] = 1 + rnd.nextInt(20);
+            p.add(doc, 1 + rnd.nextInt(4), rnd.nextInt(3));
+        }
+        p.refreshImpactOrder(lengths, 1000);
+        assertThat(p.impactOrder()).isNotNull();
+
+        // новые, изменённые (с другой длиной) и удалённые документы вперемешку, порой один и тот же;
+        // сразу после каждого слияния порядок сверяется с построенным заново
+        int merges = 0;
+        for (int i = 0; i < 8000; i++) {
+            int doc = 1 + rnd.nextInt(lengths.length - 1);
+            if (rnd.nextInt(4) == 0) {
+                p.remove(doc);
+            } else {
+                lengths[doc] = 1 + rnd.nextInt(20);
+                p.add(doc, 1 + rnd.nextInt(4), rnd.nextInt(3));
+            }
+            p.refreshImpactOrder(lengths, 1000);
+            if (p.dirtySize() > 0) continue;
+            merges++;
+
+            Postings fresh = new Postings("су");
+            for (int j = 0; j < p.size; j++) fresh.add(p.docs[j], p.freqs[j], p.exactFreqs[j]);
+            fresh.refreshImpactOrder(lengths, 1000);
+            Postings.ImpactOrder merged = p.impactOrder();
+            Postings.ImpactOrder built = fresh.impactOrder();
+            assertThat(merged.docs).isEqualTo(built.docs);
+            assertThat(merged.groupMinLength).isEqualTo(built.groupMinLength);
+            assertThat(merged.groupFreq).isEqualTo(built.groupFreq);
+            assertThat(merged.groupExactFreq).isEqualTo(built.groupExactFreq);
+            assertThat(merged.groupStart).isEqualTo(built.groupStart);
+        }
+        assertThat(merges).isGreaterThan(20);
+    }
+}
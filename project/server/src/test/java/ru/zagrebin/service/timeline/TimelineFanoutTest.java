@@ -0,0 +1,191 @@
+package ru.zagrebin.service.timeline;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.zagrebin.dto.PostCardDto;
+import ru.zagrebin.dto.PostCreateDto;
+import ru.zagrebin.model.User;
+import ru.zagrebin.repository.PostRepository;
+import ru.zagrebin.repository.TimelineRepository;
+import ru.zagrebin.repository.UserRepository;
+import ru.zagrebin.repository.projection.TimelineKeyView;
+import ru.zagrebin.service.PostService;
+import ru.zagrebin.service.SubscriptionService;
+import ru.zagrebin.service.pagination.CursorPage;
+import ru.zagrebin.service.pagination.PostCursor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Лента подписок: fan-out при публикации, удаление поста из загруженных буферов, подмешивание
+ * при чтении постов авторов сверх порога подписчиков и срезание таблицы до capacity.
+ */
+@SpringBootTest(properties = {
+        "posts.timeline.capacity=3",
+        "posts.timeline.fanout-max-followers=2",
+        "posts.timeline.high-follower-refresh-ms=3600000",
+        "posts.timeline.trim-interval-ms=3600000"
+})
+class TimelineFanoutTest {
+
+    @Autowired
+    private PostService postService;
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private TimelineFanout timelineFanout;
+
+    @Autowired
+    private TimelineBuffer timelineBuffer;
+
+    @Autowired
+    private TimelineRepository timelineRepository;
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private final String suffix = UUID.randomUUID().toString().substring(0, 8);
+    private final List<Long> userIds = new ArrayList<>();
+    private final List<Long> postIds = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        postRepository.deleteAllById(postIds);
+        userRepository.deleteAllById(userIds);
+    }
+
+    @Test
+    void publishedPostReachesLoadedAndColdTimelines() {
+        Long author = user("author");
+        Long warm = user("warm");
+        Long cold = user("cold");
+        subscriptionService.subscribe(warm, author);
+        subscriptionService.subscribe(cold, author);
+        assertThat(feed(warm)).isEmpty(); // буфер загружен до публикации
+
+        Long postId = publish(author);
+
+        assertThat(feed(warm)).containsExactly(postId);
+        assertThat(feed(cold)).containsExactly(postId);
+        assertThat(rows(warm)).containsExactly(postId);
+        assertThat(rows(cold)).containsExactly(postId);
+    }
+
+    @Test
+    void deletedPostLeavesLoadedTimelines() {
+        Long author = user("author");
+        Long reader = user("reader");
+        subscriptionService.subscribe(reader, author);
+        Long kept = publish(author);
+        Long deleted = publish(author);
+        assertThat(feed(reader)).containsExactly(deleted, kept);
+
+        postService.delete(deleted);
+        postIds.remove(deleted);
+
+        assertThat(buffered(reader)).containsExactly(kept);
+        assertThat(rows(reader)).containsExactly(kept);
+    }
+
+    @Test
+    void deletedPostOfAuthorPastThresholdLeavesTimelinesFilledBeforeIt() {
+        Long author = user("author");
+        Long first = user("first");
+        Long second = user("second");
+        subscriptionService.subscribe(first, author);
+        subscriptionService.subscribe(second, author);
+        Long postId = publish(author);
+        assertThat(buffered(first)).containsExactly(postId);
+
+        // третий подписчик — автор уже сверх порога, подписчиков для удаления из буферов не перечислить
+        subscriptionService.subscribe(user("third"), author);
+        postService.delete(postId);
+        postIds.remove(postId);
+
+        assertThat(buffered(first)).isEmpty();
+        assertThat(buffered(second)).isEmpty();
+    }
+
+    @Test
+    void postsOfAuthorPastThresholdAreMergedOnRead() {
+        Long popular = user("popular");
+        Long regular = user("regular");
+        Long reader = user("reader");
+        subscriptionService.subscribe(reader, popular);
+        subscriptionService.subscribe(user("fan1"), popular);
+        subscriptionService.subscribe(user("fan2"), popular);
+        subscriptionService.subscribe(reader, regular);
+
+        Long older = publish(regular);
+        Long pulled = publish(popular);
+        Long newest = publish(regular);
+
+        // пост популярного автора не раскладывается по таблице, но есть в ленте на своём месте
+        assertThat(rows(reader)).containsExactly(newest, older);
+        assertThat(feed(reader)).containsExactly(newest, pulled, older);
+
+        CursorPage<PostCardDto> page = postService.getFollowingFeed(reader, null, 2);
+        assertThat(page.getItems()).extracting(PostCardDto::getId).containsExactly(newest, pulled);
+        CursorPage<PostCardDto> rest = postService.getFollowingFeed(reader, page.getNextCursor(), 2);
+        assertThat(rest.getItems()).extracting(PostCardDto::getId).containsExactly(older);
+        assertThat(rest.getNextCursor()).isNull();
+    }
+
+    @Test
+    void trimKeepsNewestRowsUpToCapacity() {
+        Long author = user("author");
+        Long reader = user("reader");
+        subscriptionService.subscribe(reader, author);
+        List<Long> published = new ArrayList<>();
+        for (int i = 0; i < 5; i++) published.add(publish(author));
+        assertThat(rows(reader)).hasSize(5);
+
+        timelineFanout.trim();
+
+        assertThat(rows(reader)).containsExactly(published.get(4), published.get(3), published.get(2));
+        assertThat(feed(reader)).containsExactly(published.get(4), published.get(3), published.get(2));
+    }
+
+    private Long user(String name) {
+        User u = userRepository.save(User.builder()
+                .username("timeline-" + suffix + "-" + name)
+                .email("timeline-" + suffix + "-" + name + "@example.local")
+                .build());
+        userIds.add(u.getId());
+        return u.getId();
+    }
+
+    private Long publish(Long authorId) {
+        PostCreateDto dto = new PostCreateDto();
+        dto.setPostType("recipe");
+        dto.setStatus("published");
+        dto.setTitle("Лента " + suffix + " " + postIds.size());
+        dto.setAuthorId(authorId);
+        Long id = postService.create(dto).getId();
+        postIds.add(id);
+        return id;
+    }
+
+    private List<Long> feed(Long userId) {
+        return postService.getFollowingFeed(userId, null, 10).getItems().stream().map(PostCardDto::getId).toList();
+    }
+
+    private List<Long> buffered(Long userId) {
+        return timelineBuffer.slice(userId, null, 10).stream().map(PostCursor::getId).toList();
+    }
+
+    private List<Long> rows(Long userId) {
+        return timelineRepository.findLatest(userId, 10).stream().map(TimelineKeyView::getPostId).toList();
+    }
+}
@@ -0,0 +1,90 @@
+package ru.zagrebin.service.trending;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Затухание счетов: анлайк вычитает вклад именно снятого лайка на момент его постановки.
+ */
+class TrendingScoresTest {
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2026-01-01T00:00:00Z"));
+    // период полураспада 24 ч, лайк весит 1
+    private final TrendingScores scores = new TrendingScores(null, 24, 1.0, 0.05, 10, clock);
+
+    @Test
+    void unlikeOfOldLikeKeepsNewerLikes() {
+        Instant first = clock.instant();
+        scores.likedAfterCommit(1L);
+        clock.advance(Duration.ofHours(10));
+        scores.likedAfterCommit(1L);
+        clock.advance(Duration.ofHours(10));
+
+        scores.unlikedAfterCommit(1L, first);
+
+        // остался только второй лайк, ему 10 ч
+        assertThat(scores.score(1L)).isCloseTo(Math.pow(2, -10.0 / 24), within(1e-9));
+        assertThat(scores.top(10)).containsExactly(1L);
+    }
+
+    @Test
+    void unlikeOfLastLikeRemovesPost() {
+        Instant likedAt = clock.instant();
+        scores.likedAfterCommit(1L);
+        scores.likedAfterCommit(2L);
+        clock.advance(Duration.ofHours(30));
+
+        scores.unlikedAfterCommit(1L, likedAt);
+
+        assertThat(scores.score(1L)).isZero();
+        assertThat(scores.score(2L)).isCloseTo(Math.pow(2, -30.0 / 24), within(1e-9));
+        assertThat(scores.top(10)).containsExactly(2L);
+    }
+
+    @Test
+    void fresherEventsRankHigher() {
+        scores.likedAfterCommit(1L);
+        scores.likedAfterCommit(1L);
+        clock.advance(Duration.ofHours(48));
+        // два лайка двое суток назад весят 0.5, свежий — 1
+        scores.likedAfterCommit(2L);
+
+        assertThat(scores.top(10)).containsExactly(2L, 1L);
+        assertThat(scores.score(1L)).isCloseTo(0.5, within(1e-9));
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration d) {
+            now = now.plus(d);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
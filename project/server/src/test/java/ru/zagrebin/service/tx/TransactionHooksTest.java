@@ -0,0 +1,52 @@
+package ru.zagrebin.service.tx;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * afterCommit: вне транзакции — сразу, в транзакции — только после коммита, при откате — никогда.
+ */
+class TransactionHooksTest {
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void runsImmediatelyWithoutTransaction() {
+        AtomicInteger runs = new AtomicInteger();
+        TransactionHooks.afterCommit(runs::incrementAndGet);
+        assertThat(runs).hasValue(1);
+    }
+
+    @Test
+    void runsOnlyAfterCommit() {
+        AtomicInteger runs = new AtomicInteger();
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionHooks.afterCommit(runs::incrementAndGet);
+        assertThat(runs).hasValue(0);
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertThat(runs).hasValue(1);
+    }
+
+    @Test
+    void skippedOnRollback() {
+        AtomicInteger runs = new AtomicInteger();
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionHooks.afterCommit(runs::incrementAndGet);
+
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        assertThat(runs).hasValue(0);
+    }
+}